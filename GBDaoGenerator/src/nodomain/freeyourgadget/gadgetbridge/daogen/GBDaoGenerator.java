@@ -54,7 +54,7 @@ public class GBDaoGenerator {
 
 
     public static void main(String[] args) throws Exception {
-        final Schema schema = new Schema(86, MAIN_PACKAGE + ".entities");
+        final Schema schema = new Schema(88, MAIN_PACKAGE + ".entities");
 
         Entity userAttributes = addUserAttributes(schema);
         Entity user = addUserInfo(schema, userAttributes);
@@ -170,6 +170,7 @@ public class GBDaoGenerator {
 
         addActivitySummary(schema, user, device);
         addBatteryLevel(schema, device);
+        addDailySummary(schema, device);
         new DaoGenerator().generateAll(schema, "app/src/main/java");
     }
 
@@ -1013,11 +1014,12 @@ public class GBDaoGenerator {
                 "This class represents a sample specific to the device. Values like activity kind or\n" +
                         "intensity, are device specific. Normalized values can be retrieved through the\n" +
                         "corresponding {@link SampleProvider}.");
-        activitySample.addIntProperty("timestamp").notNull().codeBeforeGetterAndSetter(OVERRIDE).primaryKey();
+        Property timestamp = activitySample.addIntProperty("timestamp").notNull().codeBeforeGetterAndSetter(OVERRIDE).primaryKey().getProperty();
         Property deviceId = activitySample.addLongProperty("deviceId").primaryKey().notNull().codeBeforeGetterAndSetter(OVERRIDE).getProperty();
         activitySample.addToOne(device, deviceId);
         Property userId = activitySample.addLongProperty("userId").notNull().codeBeforeGetterAndSetter(OVERRIDE).getProperty();
         activitySample.addToOne(user, userId);
+        addDeviceTimestampIndex(activitySample, deviceId, timestamp);
     }
 
     private static void addCommonTimeSampleProperties(String superClass, Entity timeSample, Entity user, Entity device) {
@@ -1026,11 +1028,24 @@ public class GBDaoGenerator {
         timeSample.setJavaDoc(
                 "This class represents a sample specific to the device. Values might be device specific, depending on the sample type.\n" +
                         "Normalized values can be retrieved through the corresponding {@link TimeSampleProvider}.");
-        timeSample.addLongProperty("timestamp").notNull().codeBeforeGetterAndSetter(OVERRIDE).primaryKey();
+        Property timestamp = timeSample.addLongProperty("timestamp").notNull().codeBeforeGetterAndSetter(OVERRIDE).primaryKey().getProperty();
         Property deviceId = timeSample.addLongProperty("deviceId").primaryKey().notNull().codeBeforeGetterAndSetter(OVERRIDE).getProperty();
         timeSample.addToOne(device, deviceId);
         Property userId = timeSample.addLongProperty("userId").notNull().codeBeforeGetterAndSetter(OVERRIDE).getProperty();
         timeSample.addToOne(user, userId);
+        addDeviceTimestampIndex(timeSample, deviceId, timestamp);
+    }
+
+    /**
+     * The primary key of the samples starts with the timestamp, so per-device lookups of the
+     * first / latest sample (where deviceId order by timestamp limit 1) would scan the whole table.
+     * Existing databases get the index through DaoMaster.createAllTables(db, true) on upgrade.
+     */
+    private static void addDeviceTimestampIndex(Entity sample, Property deviceId, Property timestamp) {
+        final Index index = new Index();
+        index.addProperty(deviceId);
+        index.addProperty(timestamp);
+        sample.addIndex(index);
     }
 
     private static void addCalendarSyncState(Schema schema, Entity device) {
@@ -1211,6 +1226,33 @@ public class GBDaoGenerator {
         return batteryLevel;
     }
 
+    private static Entity addDailySummary(Schema schema, Entity device) {
+        Entity dailySummary = addEntity(schema, "DailySummary");
+        dailySummary.setJavaDoc(
+                "Totals of a single day for a device, calculated from its samples.\n" +
+                        "They are kept up to date after each sync, so that the totals do not need to be\n" +
+                        "recalculated from the samples every time they are shown.");
+        dailySummary.implementsSerializable();
+        Property deviceId = dailySummary.addLongProperty("deviceId").primaryKey().notNull().getProperty();
+        dailySummary.addToOne(device, deviceId);
+        dailySummary.addIntProperty("day").notNull().primaryKey().javaDocGetterAndSetter("The local date, as yyyyMMdd.");
+        dailySummary.addIntProperty("computedAt").notNull().javaDocGetterAndSetter("Unix timestamp of the calculation, in seconds.");
+        dailySummary.addIntProperty("steps").notNull();
+        dailySummary.addIntProperty("distanceCm").notNull();
+        dailySummary.addIntProperty("activeMinutes").notNull();
+        dailySummary.addIntProperty("lightSleepSeconds").notNull();
+        dailySummary.addIntProperty("deepSleepSeconds").notNull();
+        dailySummary.addIntProperty("remSleepSeconds").notNull();
+        dailySummary.addIntProperty("awakeSleepSeconds").notNull();
+        dailySummary.addIntProperty("heartRateMin").notNull();
+        dailySummary.addIntProperty("heartRateAvg").notNull();
+        dailySummary.addIntProperty("heartRateMax").notNull();
+        dailySummary.addIntProperty("heartRateResting").notNull().javaDocGetterAndSetter("The last resting heart rate measured by the device on this day, or 0.");
+        dailySummary.addIntProperty("hrvAverage").notNull().javaDocGetterAndSetter("The last night average HRV, in milliseconds, or 0.");
+        dailySummary.addIntProperty("weightGrams").notNull().javaDocGetterAndSetter("The last weight measured on this day, in grams, or 0.");
+        return dailySummary;
+    }
+
     private static Entity addFitProActivitySample(Schema schema, Entity user, Entity device) {
         Entity activitySample = addEntity(schema, "FitProActivitySample");
         activitySample.implementsSerializable();
@@ -38,6 +38,7 @@ import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Build.VERSION;
@@ -63,6 +64,7 @@ import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import nodomain.freeyourgadget.gadgetbridge.activities.ControlCenterv2;
 import nodomain.freeyourgadget.gadgetbridge.activities.devicesettings.DeviceSettingsPreferenceConst;
@@ -123,6 +125,11 @@ public class GBApplication extends Application {
 
     private static GBApplication context;
     private static final Lock dbLock = new ReentrantLock();
+    /**
+     * Guards the database against being closed (e.g. for import/export) while read-only
+     * handlers are in use. Readers share the read lock, closing the database takes the write lock.
+     */
+    private static final ReentrantReadWriteLock dbReadersLock = new ReentrantReadWriteLock();
     private static DeviceService deviceService;
     private static SharedPreferences sharedPrefs;
     private static final String PREFS_VERSION = "shared_preferences_version";
@@ -132,6 +139,7 @@ public class GBApplication extends Application {
     private static final LimitedQueue<Integer, String> mIDSenderLookup = new LimitedQueue<>(16);
     private static GBPrefs prefs;
     private static LockHandler lockHandler;
+    private static ReadOnlyLockHandler readOnlyLockHandler;
     /**
      * Note: is null on Lollipop
      */
@@ -342,10 +350,35 @@ public class GBApplication extends Application {
         }
         SQLiteDatabase db = helper.getWritableDatabase();
         DaoMaster daoMaster = new DaoMaster(db);
+        // device ids are only valid for the database they were looked up in
+        DBHelper.invalidateDeviceIdCache();
         if (lockHandler == null) {
             lockHandler = new LockHandler();
+            readOnlyLockHandler = new ReadOnlyLockHandler(lockHandler);
         }
         lockHandler.init(daoMaster, helper);
+        final SQLiteDatabase readOnlyDb = openReadOnlyDatabase(db);
+        readOnlyLockHandler.init(readOnlyDb, readOnlyDb != db);
+    }
+
+    /**
+     * Opens a separate read-only connection to the database, for the read-only handlers.
+     * Write-ahead logging is enabled like for the writer, see {@link DBOpenHelper}, which lets
+     * the connection pool open several connections, so that concurrent readers do not wait for
+     * each other. Falls back to the connection of the writer for in-memory databases (tests).
+     */
+    private static SQLiteDatabase openReadOnlyDatabase(SQLiteDatabase db) {
+        final String path = db.getPath();
+        if (path == null || ":memory:".equals(path)) {
+            return db;
+        }
+        try {
+            return SQLiteDatabase.openDatabase(path, null,
+                    SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Unable to open read-only database connection, sharing the writer's", e);
+            return db;
+        }
     }
 
     public static Context getContext() {
@@ -406,6 +439,87 @@ public class GBApplication extends Application {
         dbLock.unlock();
     }
 
+    /**
+     * Returns a DBHandler instance for reading only, or throws GBException
+     * when that was not successful.
+     * <p>
+     * In contrast to #acquireDB, any number of readers may hold a read-only handler
+     * at the same time, and they do not wait for a writer holding #acquireDB. The database
+     * uses write-ahead logging, so readers see the last committed state while a writer
+     * (e.g. a sync) is busy. Only closing the database (import/export) waits for all readers.
+     * <p>
+     * Callers must call #releaseReadOnlyDB when they are done (from the same thread
+     * that acquired it!), which is done automatically when using try-with-resources.
+     * Callers must not write through the returned handler and must not hold a reference to it.
+     *
+     * @return the read-only DBHandler
+     * @throws GBException
+     * @see #releaseReadOnlyDB()
+     */
+    public static DBHandler acquireReadOnlyDB() throws GBException {
+        try {
+            if (dbReadersLock.readLock().tryLock(30, TimeUnit.SECONDS)) {
+                return readOnlyLockHandler;
+            }
+        } catch (InterruptedException ex) {
+            Log.i(TAG, "Interrupted while waiting for DB read lock");
+        }
+        throw new GBException("Unable to access the database.");
+    }
+
+    /**
+     * Releases a read-only database handler.
+     *
+     * @throws IllegalMonitorStateException if the current thread is not holding a read-only handler
+     * @see #acquireReadOnlyDB()
+     */
+    public static void releaseReadOnlyDB() {
+        dbReadersLock.readLock().unlock();
+    }
+
+    /**
+     * Returns whether any read-only handler is currently held, e.g. to postpone maintenance
+     * that would have to wait for the readers.
+     */
+    public static boolean isReadOnlyDBInUse() {
+        return dbReadersLock.getReadLockCount() > 0;
+    }
+
+    /**
+     * Waits until all read-only handlers are released and blocks new ones from
+     * being acquired, so that the database can be closed. Must be called from the
+     * thread that holds #acquireDB.
+     *
+     * @throws IllegalStateException if the readers did not finish in time
+     * @see #unblockReadOnlyDB()
+     */
+    static void blockReadOnlyDB() {
+        if (dbReadersLock.isWriteLockedByCurrentThread()) {
+            readOnlyLockHandler.closeConnection();
+            return;
+        }
+        try {
+            if (dbReadersLock.writeLock().tryLock(30, TimeUnit.SECONDS)) {
+                readOnlyLockHandler.closeConnection();
+                return;
+            }
+        } catch (InterruptedException ex) {
+            Log.i(TAG, "Interrupted while waiting for DB readers");
+        }
+        throw new IllegalStateException("Unable to close the database while it is being read");
+    }
+
+    /**
+     * Allows read-only handlers to be acquired again after the database was reopened.
+     *
+     * @see #blockReadOnlyDB()
+     */
+    static void unblockReadOnlyDB() {
+        if (dbReadersLock.isWriteLockedByCurrentThread()) {
+            dbReadersLock.writeLock().unlock();
+        }
+    }
+
     public static boolean isRunningMarshmallowOrLater() {
         return VERSION.SDK_INT >= Build.VERSION_CODES.M;
     }
@@ -618,6 +732,7 @@ public class GBApplication extends Application {
         if (lockHandler != null) {
             lockHandler.closeDb();
         }
+        DBHelper.invalidateDeviceIdCache();
         boolean result = deleteOldActivityDatabase(context);
         result &= getContext().deleteDatabase(DATABASE_NAME);
         return result;
@@ -80,8 +80,12 @@ public class LockHandler implements DBHandler {
         if (session != null) {
             throw new IllegalStateException("session must be null");
         }
-        // this will create completely new db instances and in turn update this handler through #init()
-        GBApplication.app().setupDatabase();
+        try {
+            // this will create completely new db instances and in turn update this handler through #init()
+            GBApplication.app().setupDatabase();
+        } finally {
+            GBApplication.unblockReadOnlyDB();
+        }
     }
 
     @Override
@@ -89,6 +93,8 @@ public class LockHandler implements DBHandler {
         if (session == null) {
             throw new IllegalStateException("session must not be null");
         }
+        // wait for readers to finish, they stay blocked until #openDb()
+        GBApplication.blockReadOnlyDB();
         session.clear();
         session.getDatabase().close();
         session = null;
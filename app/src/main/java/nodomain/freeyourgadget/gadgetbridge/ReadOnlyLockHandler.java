@@ -0,0 +1,119 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import de.greenrobot.dao.identityscope.IdentityScopeType;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoMaster;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+
+/**
+ * Provides read-only access to the database, see {@link GBApplication#acquireReadOnlyDB()}.
+ * Uses its own read-only connection and its own {@link DaoSession} without identity scope, so
+ * that readers never share entity instances with the writer. Does not allow closing or reopening
+ * the database, this is done through the shared {@link LockHandler}.
+ */
+public class ReadOnlyLockHandler implements DBHandler {
+    private final LockHandler delegate;
+
+    private SQLiteDatabase database = null;
+    private boolean ownsDatabase = false;
+    private DaoMaster daoMaster = null;
+    private DaoSession session = null;
+
+    public ReadOnlyLockHandler(LockHandler delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Sets the read-only connection to use.
+     *
+     * @param database     the read-only connection
+     * @param ownsDatabase whether the connection is closed with {@link #closeConnection()}, i.e.
+     *                     it is not the connection of the writer
+     */
+    synchronized void init(SQLiteDatabase database, boolean ownsDatabase) {
+        // the previous connection belongs to a database that was closed already
+        closeConnection();
+        this.database = database;
+        this.ownsDatabase = ownsDatabase;
+        daoMaster = new DaoMaster(database);
+        session = daoMaster.newSession(IdentityScopeType.None);
+    }
+
+    /**
+     * Closes the read-only connection, while no readers are active.
+     */
+    synchronized void closeConnection() {
+        if (database == null) {
+            return;
+        }
+        if (ownsDatabase) {
+            database.close();
+        }
+        database = null;
+        daoMaster = null;
+        session = null;
+    }
+
+    private void ensureValid() {
+        if (database == null) {
+            throw new IllegalStateException("ReadOnlyLockHandler is not in a valid state");
+        }
+    }
+
+    @Override
+    public void close() {
+        GBApplication.releaseReadOnlyDB();
+    }
+
+    @Override
+    public void openDb() {
+        throw new UnsupportedOperationException("read-only handler cannot reopen the database");
+    }
+
+    @Override
+    public void closeDb() {
+        throw new UnsupportedOperationException("read-only handler cannot close the database");
+    }
+
+    @Override
+    public SQLiteOpenHelper getHelper() {
+        return delegate.getHelper();
+    }
+
+    @Override
+    public synchronized SQLiteDatabase getDatabase() {
+        ensureValid();
+        return database;
+    }
+
+    @Override
+    public synchronized DaoMaster getDaoMaster() {
+        ensureValid();
+        return daoMaster;
+    }
+
+    @Override
+    public synchronized DaoSession getDaoSession() {
+        ensureValid();
+        return session;
+    }
+}
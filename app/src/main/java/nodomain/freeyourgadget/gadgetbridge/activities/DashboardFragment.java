@@ -66,6 +66,7 @@ import nodomain.freeyourgadget.gadgetbridge.activities.dashboard.AbstractDashboa
 import nodomain.freeyourgadget.gadgetbridge.activities.dashboard.DashboardActiveTimeWidget;
 import nodomain.freeyourgadget.gadgetbridge.activities.dashboard.DashboardBodyEnergyWidget;
 import nodomain.freeyourgadget.gadgetbridge.activities.dashboard.DashboardCalendarActivity;
+import nodomain.freeyourgadget.gadgetbridge.activities.dashboard.DashboardDataService;
 import nodomain.freeyourgadget.gadgetbridge.activities.dashboard.DashboardDistanceWidget;
 import nodomain.freeyourgadget.gadgetbridge.activities.dashboard.DashboardGoalsWidget;
 import nodomain.freeyourgadget.gadgetbridge.activities.dashboard.DashboardHrvWidget;
@@ -78,8 +79,10 @@ import nodomain.freeyourgadget.gadgetbridge.activities.dashboard.DashboardTodayW
 import nodomain.freeyourgadget.gadgetbridge.activities.dashboard.DashboardVO2MaxCyclingWidget;
 import nodomain.freeyourgadget.gadgetbridge.activities.dashboard.DashboardVO2MaxAnyWidget;
 import nodomain.freeyourgadget.gadgetbridge.activities.dashboard.DashboardVO2MaxRunningWidget;
+import nodomain.freeyourgadget.gadgetbridge.entities.DailySummary;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityUser;
 import nodomain.freeyourgadget.gadgetbridge.util.DashboardUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.DateTimeUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
@@ -94,6 +97,8 @@ public class DashboardFragment extends Fragment implements MenuProvider {
     private final Map<String, AbstractDashboardWidget> widgetMap = new HashMap<>();
     private DashboardData dashboardData = new DashboardData();
     private boolean isConfigChanged = false;
+    // incremented on each refresh, so that the snapshots of previous refreshes are discarded
+    private int dataGeneration = 0;
 
     private ActivityResultLauncher<Intent> calendarLauncher;
     private final ActivityResultCallback<ActivityResult> calendarCallback = result -> {
@@ -233,6 +238,25 @@ public class DashboardFragment extends Fragment implements MenuProvider {
         dashboardData.clear();
         reloadPreferences();
         draw();
+        loadData();
+    }
+
+    /**
+     * Computes a new snapshot of the dashboard data in the background, and updates all
+     * widgets from it once it is complete.
+     */
+    private void loadData() {
+        final DashboardData snapshot = dashboardData.createSnapshot();
+        final int generation = ++dataGeneration;
+        DashboardDataService.load(snapshot, new ArrayList<>(widgetMap.values()), () -> {
+            if (generation != dataGeneration || !isAdded()) {
+                return;
+            }
+            dashboardData.apply(snapshot);
+            for (final AbstractDashboardWidget widget : widgetMap.values()) {
+                widget.update();
+            }
+        });
     }
 
     private void reloadPreferences() {
@@ -318,8 +342,6 @@ public class DashboardFragment extends Fragment implements MenuProvider {
                 createWidget(widget, cardsEnabled, columnSpan);
 
                 widgetMap.put(widgetName, widget);
-            } else {
-                widget.update();
             }
         }
     }
@@ -362,6 +384,10 @@ public class DashboardFragment extends Fragment implements MenuProvider {
      * dashboard widgets. Since retrieving this data can be costly, this class makes sure it will
      * only be done once. It will be passed to every widget, making sure they have the necessary
      * data available.
+     * <p>
+     * On each refresh, a snapshot is computed by the {@link DashboardDataService} and then
+     * applied to this object on the UI thread, so the widgets never see a partially computed
+     * refresh.
      */
     public static class DashboardData implements Serializable {
         public boolean showAllDevices;
@@ -378,8 +404,88 @@ public class DashboardFragment extends Fragment implements MenuProvider {
         private float distanceGoalFactor;
         private long activeMinutesTotal;
         private float activeMinutesGoalFactor;
+        // whether the totals were set from the daily summaries, instead of computed when needed
+        private boolean totalsLoaded;
+        private boolean loaded;
         private final Map<String, Serializable> genericData = new ConcurrentHashMap<>();
 
+        /**
+         * Returns a new, empty object with the same settings, to compute a snapshot into.
+         */
+        public DashboardData createSnapshot() {
+            final DashboardData snapshot = new DashboardData();
+            snapshot.showAllDevices = showAllDevices;
+            snapshot.showDeviceList = showDeviceList;
+            snapshot.hrIntervalSecs = hrIntervalSecs;
+            snapshot.timeFrom = timeFrom;
+            snapshot.timeTo = timeTo;
+            return snapshot;
+        }
+
+        /**
+         * Replaces the data with the one of the computed snapshot.
+         */
+        public synchronized void apply(final DashboardData snapshot) {
+            clear();
+            stepsTotal = snapshot.stepsTotal;
+            stepsGoalFactor = snapshot.stepsGoalFactor;
+            sleepTotalMinutes = snapshot.sleepTotalMinutes;
+            sleepGoalFactor = snapshot.sleepGoalFactor;
+            distanceTotalMeters = snapshot.distanceTotalMeters;
+            distanceGoalFactor = snapshot.distanceGoalFactor;
+            activeMinutesTotal = snapshot.activeMinutesTotal;
+            activeMinutesGoalFactor = snapshot.activeMinutesGoalFactor;
+            totalsLoaded = snapshot.totalsLoaded;
+            generalizedActivities.addAll(snapshot.generalizedActivities);
+            genericData.putAll(snapshot.genericData);
+            loaded = true;
+        }
+
+        /**
+         * Sets the totals and goal factors from the daily summaries of the shown devices.
+         * Entries may be null for devices whose summary could not be read.
+         */
+        public synchronized void setTotals(final DailySummary[] summaries) {
+            final ActivityUser activityUser = new ActivityUser();
+            final int stepLength = activityUser.getStepLengthCm();
+
+            int steps = 0;
+            long distanceCm = 0;
+            long activeMinutes = 0;
+            long sleepMinutes = 0;
+            for (final DailySummary summary : summaries) {
+                if (summary == null) {
+                    continue;
+                }
+                steps += summary.getSteps();
+                if (summary.getSteps() > 0 && summary.getDistanceCm() > 0) {
+                    distanceCm += summary.getDistanceCm();
+                } else {
+                    distanceCm += (long) summary.getSteps() * stepLength;
+                }
+                activeMinutes += summary.getActiveMinutes();
+                // purposely not including awake sleep, like DailyTotals
+                sleepMinutes += summary.getLightSleepSeconds() / 60 + summary.getDeepSleepSeconds() / 60 + summary.getRemSleepSeconds() / 60;
+            }
+
+            stepsTotal = steps;
+            stepsGoalFactor = Math.min(1, steps / (float) activityUser.getStepsGoal());
+            distanceTotalMeters = distanceCm * 0.01f;
+            distanceGoalFactor = Math.min(1, distanceTotalMeters / activityUser.getDistanceGoalMeters());
+            activeMinutesTotal = activeMinutes;
+            activeMinutesGoalFactor = Math.min(1, activeMinutes / (float) activityUser.getActiveTimeGoalMinutes());
+            sleepTotalMinutes = sleepMinutes;
+            sleepGoalFactor = Math.min(1, sleepMinutes / (float) (activityUser.getSleepDurationGoal() * 60));
+            totalsLoaded = true;
+        }
+
+        /**
+         * Whether a complete snapshot was applied since the last {@link #clear()}.
+         */
+        public boolean isLoaded() {
+            return loaded;
+        }
+
         public void clear() {
             stepsTotal = 0;
             stepsGoalFactor = 0;
@@ -389,12 +495,15 @@ public class DashboardFragment extends Fragment implements MenuProvider {
             distanceGoalFactor = 0;
             activeMinutesTotal = 0;
             activeMinutesGoalFactor = 0;
+            totalsLoaded = false;
+            loaded = false;
             generalizedActivities.clear();
             genericData.clear();
         }
 
         public boolean isEmpty() {
-            return (stepsTotal == 0 &&
+            return (!loaded &&
+                    stepsTotal == 0 &&
                     stepsGoalFactor == 0 &&
                     sleepTotalMinutes == 0 &&
                     sleepGoalFactor == 0 &&
@@ -407,49 +516,49 @@ public class DashboardFragment extends Fragment implements MenuProvider {
         }
 
         public synchronized int getStepsTotal() {
-            if (stepsTotal == 0)
+            if (!totalsLoaded && stepsTotal == 0)
                 stepsTotal = DashboardUtils.getStepsTotal(this);
             return stepsTotal;
         }
 
         public synchronized float getStepsGoalFactor() {
-            if (stepsGoalFactor == 0)
+            if (!totalsLoaded && stepsGoalFactor == 0)
                 stepsGoalFactor = DashboardUtils.getStepsGoalFactor(this);
             return stepsGoalFactor;
         }
 
         public synchronized float getDistanceTotal() {
-            if (distanceTotalMeters == 0)
+            if (!totalsLoaded && distanceTotalMeters == 0)
                 distanceTotalMeters = DashboardUtils.getDistanceTotal(this);
             return distanceTotalMeters;
         }
 
         public synchronized float getDistanceGoalFactor() {
-            if (distanceGoalFactor == 0)
+            if (!totalsLoaded && distanceGoalFactor == 0)
                 distanceGoalFactor = DashboardUtils.getDistanceGoalFactor(this);
             return distanceGoalFactor;
         }
 
         public synchronized long getActiveMinutesTotal() {
-            if (activeMinutesTotal == 0)
+            if (!totalsLoaded && activeMinutesTotal == 0)
                 activeMinutesTotal = DashboardUtils.getActiveMinutesTotal(this);
             return activeMinutesTotal;
         }
 
         public synchronized float getActiveMinutesGoalFactor() {
-            if (activeMinutesGoalFactor == 0)
+            if (!totalsLoaded && activeMinutesGoalFactor == 0)
                 activeMinutesGoalFactor = DashboardUtils.getActiveMinutesGoalFactor(this);
             return activeMinutesGoalFactor;
         }
 
         public synchronized long getSleepMinutesTotal() {
-            if (sleepTotalMinutes == 0)
+            if (!totalsLoaded && sleepTotalMinutes == 0)
                 sleepTotalMinutes = DashboardUtils.getSleepMinutesTotal(this);
             return sleepTotalMinutes;
         }
 
         public synchronized float getSleepMinutesGoalFactor() {
-            if (sleepGoalFactor == 0)
+            if (!totalsLoaded && sleepGoalFactor == 0)
                 sleepGoalFactor = DashboardUtils.getSleepMinutesGoalFactor(this);
             return sleepGoalFactor;
         }
@@ -123,6 +123,7 @@ import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
 import nodomain.freeyourgadget.gadgetbridge.model.RecordedDataTypes;
 import nodomain.freeyourgadget.gadgetbridge.model.Weather;
 import nodomain.freeyourgadget.gadgetbridge.model.WeatherSpec;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.BtLEMetrics;
 import nodomain.freeyourgadget.gadgetbridge.service.serial.GBDeviceProtocol;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 import nodomain.freeyourgadget.gadgetbridge.util.PendingIntentUtils;
@@ -420,6 +421,9 @@ public class DebugActivity extends AbstractGBActivity {
             }
         });
 
+        Button showBleMetricsButton = findViewById(R.id.showBleMetricsButton);
+        showBleMetricsButton.setOnClickListener(v -> displayBleMetrics());
+
         Button setMusicInfoButton = findViewById(R.id.setMusicInfoButton);
         setMusicInfoButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -1102,6 +1106,28 @@ public class DebugActivity extends AbstractGBActivity {
                 .show();
     }
 
+    private void displayBleMetrics() {
+        final String metrics = BtLEMetrics.dumpAll();
+
+        new MaterialAlertDialogBuilder(DebugActivity.this)
+                .setCancelable(true)
+                .setTitle(R.string.debugactivity_ble_metrics_title)
+                .setMessage(metrics)
+                .setPositiveButton(R.string.ok, (dialog, which) -> {
+                })
+                .setNeutralButton(android.R.string.copy, (dialog, which) -> {
+                    final ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
+                    ClipData clip = ClipData.newPlainText(getString(R.string.debugactivity_ble_metrics_title), metrics);
+                    clipboard.setPrimaryClip(clip);
+                })
+                .setNegativeButton(R.string.debugactivity_ble_metrics_reset, (dialog, which) -> {
+                    for (final BtLEMetrics deviceMetrics : BtLEMetrics.getAll()) {
+                        deviceMetrics.reset();
+                    }
+                })
+                .show();
+    }
+
     private String getWeatherInfo(final WeatherSpec weatherSpec) {
         final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.ROOT);
 
@@ -26,7 +26,9 @@ import android.os.AsyncTask;
 import android.os.Bundle;
 import android.text.format.DateUtils;
 import android.view.View;
+import android.view.ViewGroup;
 
+import androidx.annotation.Nullable;
 import androidx.fragment.app.FragmentActivity;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
@@ -39,10 +41,14 @@ import org.slf4j.LoggerFactory;
 
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.AbstractGBFragment;
 import nodomain.freeyourgadget.gadgetbridge.database.DBAccess;
@@ -86,6 +92,12 @@ public abstract class AbstractChartFragment<D extends ChartsData> extends Abstra
     private boolean mChartDirty = true;
     private AsyncTask refreshTask;
 
+    // the period the user navigated by last, which is prefetched in both directions
+    private int mNavigationField = Calendar.DATE;
+    private int mNavigationAmount = 1;
+    // the date range of the prefetch running on the current thread, if any
+    private final ThreadLocal<Date[]> mPrefetchRange = new ThreadLocal<>();
+
     protected AbstractChartFragment(String... intentFilterActions) {
         mIntentFilterActions = new HashSet<>();
         if (intentFilterActions != null) {
@@ -125,6 +137,17 @@ public abstract class AbstractChartFragment<D extends ChartsData> extends Abstra
 
     protected abstract void updateChartsnUIThread(D chartsData);
 
+    /**
+     * Returns the fragment specific part of the key under which the data returned by
+     * #refreshInBackground is kept in the {@link ChartsDataCache}, e.g. settings that change
+     * the data, or null if the data must not be cached because #refreshInBackground has
+     * side effects.
+     */
+    @Nullable
+    protected String getChartsDataCacheKey() {
+        return null;
+    }
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -173,10 +196,18 @@ public abstract class AbstractChartFragment<D extends ChartsData> extends Abstra
     }
 
     public Date getStartDate() {
+        final Date[] prefetchRange = mPrefetchRange.get();
+        if (prefetchRange != null) {
+            return prefetchRange[0];
+        }
         return getChartsHost().getStartDate();
     }
 
     public Date getEndDate() {
+        final Date[] prefetchRange = mPrefetchRange.get();
+        if (prefetchRange != null) {
+            return prefetchRange[1];
+        }
         return getChartsHost().getEndDate();
     }
 
@@ -210,14 +241,19 @@ public abstract class AbstractChartFragment<D extends ChartsData> extends Abstra
             updateDateInfo(getStartDate(), getEndDate());
             refresh();
         } else if (ChartsHost.DATE_NEXT_DAY.equals(action)) {
+            setNavigationPeriod(Calendar.DATE, 1);
             handleDate(getStartDate(), getEndDate(), +1);
         } else if (ChartsHost.DATE_PREV_DAY.equals(action)) {
+            setNavigationPeriod(Calendar.DATE, 1);
             handleDate(getStartDate(), getEndDate(), -1);
         } else if (ChartsHost.DATE_NEXT_WEEK.equals(action)) {
+            setNavigationPeriod(Calendar.DATE, 7);
             handleDate(getStartDate(), getEndDate(), +7);
         } else if (ChartsHost.DATE_PREV_WEEK.equals(action)) {
+            setNavigationPeriod(Calendar.DATE, 7);
             handleDate(getStartDate(), getEndDate(), -7);
         } else if (ChartsHost.DATE_NEXT_MONTH.equals(action)) {
+            setNavigationPeriod(Calendar.MONTH, 1);
             //calculate dates to jump by month but keep subsequent logic working
             int time1 = DateTimeUtils.shiftMonths((int) (getStartDate().getTime() / 1000), 1);
             int time2 = DateTimeUtils.shiftMonths((int) (getEndDate().getTime() / 1000), 1);
@@ -225,6 +261,7 @@ public abstract class AbstractChartFragment<D extends ChartsData> extends Abstra
             Date date2 = DateTimeUtils.shiftByDays(new Date(time2 * 1000L), 30);
             handleDate(date1, date2, -30);
         } else if (ChartsHost.DATE_PREV_MONTH.equals(action)) {
+            setNavigationPeriod(Calendar.MONTH, 1);
             int time1 = DateTimeUtils.shiftMonths((int) (getStartDate().getTime() / 1000), -1);
             int time2 = DateTimeUtils.shiftMonths((int) (getEndDate().getTime() / 1000), -1);
             Date date1 = DateTimeUtils.shiftByDays(new Date(time1 * 1000L), -30);
@@ -233,6 +270,11 @@ public abstract class AbstractChartFragment<D extends ChartsData> extends Abstra
         }
     }
 
+    private void setNavigationPeriod(final int field, final int amount) {
+        mNavigationField = field;
+        mNavigationAmount = amount;
+    }
+
     /**
      * Default implementation shifts the dates by one day, if visible
      * and calls #refreshIfVisible().
@@ -331,21 +373,114 @@ public abstract class AbstractChartFragment<D extends ChartsData> extends Abstra
                 if (refreshTask != null && refreshTask.getStatus() != AsyncTask.Status.FINISHED) {
                     refreshTask.cancel(true);
                 }
-                refreshTask = createRefreshTask("Visualizing data", getActivity()).execute();
+                final String cacheKey = createChartsDataCacheKey(chartsHost);
+                if (cacheKey != null && getView() != null) {
+                    @SuppressWarnings("unchecked")
+                    final D cachedData = (D) chartsHost.getChartsDataCache().get(cacheKey);
+                    if (cachedData != null) {
+                        LOG.debug("Using cached data for {}", getTitle());
+                        updateChartsnUIThread(cachedData);
+                        renderCharts();
+                        prefetchAdjacentPeriods(chartsHost);
+                        return;
+                    }
+                    chartsHost.getChartsDataPrefetcher().cancelAllExcept(cacheKey);
+                }
+                refreshTask = createRefreshTask("Visualizing data", getActivity(), cacheKey).execute();
+            }
+        }
+    }
+
+    @Nullable
+    private String createChartsDataCacheKey(final ChartsHost chartsHost) {
+        return createChartsDataCacheKey(chartsHost, getStartDate(), getEndDate());
+    }
+
+    @Nullable
+    private String createChartsDataCacheKey(final ChartsHost chartsHost, final Date startDate, final Date endDate) {
+        final String fragmentKey = getChartsDataCacheKey();
+        if (fragmentKey == null) {
+            return null;
+        }
+        return ChartsDataCache.createKey(chartsHost.getDevice(), getClass(), toTimestamp(startDate), toTimestamp(endDate), fragmentKey);
+    }
+
+    /**
+     * Computes the data of the previous and next period in the background, the same way the
+     * navigation buttons would shift the dates, so that it is cached when the user navigates there.
+     * Only done for fragments whose data can be cached, see #getChartsDataCacheKey().
+     */
+    private void prefetchAdjacentPeriods(final ChartsHost chartsHost) {
+        if (!isVisibleInActivity() || getChartsDataCacheKey() == null) {
+            return;
+        }
+
+        final Date startDate = getStartDate();
+        final Date endDate = getEndDate();
+        final ChartsDataCache cache = chartsHost.getChartsDataCache();
+        final Map<String, Runnable> tasks = new LinkedHashMap<>();
+        for (final int direction : new int[]{-1, +1}) {
+            final Date prefetchStart = shiftByNavigationPeriod(startDate, direction);
+            final Date prefetchEnd = shiftByNavigationPeriod(endDate, direction);
+            if (prefetchEnd.after(new Date())) {
+                continue;
             }
+            final String cacheKey = createChartsDataCacheKey(chartsHost, prefetchStart, prefetchEnd);
+            if (cacheKey != null && cache.get(cacheKey) == null) {
+                tasks.put(cacheKey, createPrefetchTask(chartsHost, cacheKey, prefetchStart, prefetchEnd, cache.getGeneration()));
+            }
+        }
+        chartsHost.getChartsDataPrefetcher().prefetch(tasks);
+    }
+
+    private Date shiftByNavigationPeriod(final Date date, final int direction) {
+        if (mNavigationField == Calendar.MONTH) {
+            final int timestamp = DateTimeUtils.shiftMonths(toTimestamp(date), direction * mNavigationAmount);
+            return new Date(timestamp * 1000L);
         }
+        return DateTimeUtils.shiftByDays(date, direction * mNavigationAmount);
     }
 
-    private RefreshTask createRefreshTask(final String task, final Context context) {
-        return new RefreshTask(task, context);
+    private Runnable createPrefetchTask(final ChartsHost chartsHost,
+                                        final String cacheKey,
+                                        final Date startDate,
+                                        final Date endDate,
+                                        final int cacheGeneration) {
+        final ChartsHost prefetchHost = new PrefetchChartsHost(chartsHost, startDate, endDate);
+        return () -> {
+            mPrefetchRange.set(new Date[]{startDate, endDate});
+            try (DBHandler db = GBApplication.acquireReadOnlyDB()) {
+                final D chartsData = refreshInBackground(prefetchHost, db, chartsHost.getDevice());
+                if (chartsData != null && !Thread.currentThread().isInterrupted()) {
+                    chartsHost.getChartsDataCache().put(cacheKey, chartsData, cacheGeneration);
+                }
+            } catch (final Exception e) {
+                LOG.debug("Failed to prefetch data for {}", cacheKey, e);
+            } finally {
+                mPrefetchRange.remove();
+            }
+        };
+    }
+
+    private RefreshTask createRefreshTask(final String task, final Context context, @Nullable final String cacheKey) {
+        return new RefreshTask(task, context, cacheKey);
     }
 
     @SuppressLint("StaticFieldLeak")
     private final class RefreshTask extends DBAccess {
+        private final String cacheKey;
+        private final int cacheGeneration;
         private D chartsData;
 
-        public RefreshTask(final String task, final Context context) {
+        public RefreshTask(final String task, final Context context, @Nullable final String cacheKey) {
             super(task, context);
+            this.cacheKey = cacheKey;
+            this.cacheGeneration = getChartsHost().getChartsDataCache().getGeneration();
+        }
+
+        @Override
+        protected boolean isReadOnly() {
+            return true;
         }
 
         @Override
@@ -353,6 +488,9 @@ public abstract class AbstractChartFragment<D extends ChartsData> extends Abstra
             final ChartsHost chartsHost = getChartsHost();
             if (chartsHost != null) {
                 chartsData = refreshInBackground(chartsHost, db, chartsHost.getDevice());
+                if (cacheKey != null && chartsData != null && !isCancelled()) {
+                    chartsHost.getChartsDataCache().put(cacheKey, chartsData, cacheGeneration);
+                }
             } else {
                 cancel(true);
             }
@@ -365,6 +503,9 @@ public abstract class AbstractChartFragment<D extends ChartsData> extends Abstra
             if (activity != null && !activity.isFinishing() && !activity.isDestroyed()) {
                 updateChartsnUIThread(chartsData);
                 renderCharts();
+                if (cacheKey != null) {
+                    prefetchAdjacentPeriods(getChartsHost());
+                }
             } else {
                 LOG.info("Not rendering charts because activity is not available anymore");
             }
@@ -400,4 +541,70 @@ public abstract class AbstractChartFragment<D extends ChartsData> extends Abstra
             getChartsHost().setDateInfo(DateTimeUtils.formatDateRange(from, to, dateFlags));
         }
     }
+
+    /**
+     * A {@link ChartsHost} for prefetching, which reports the date range of the prefetched
+     * period instead of the one being shown.
+     */
+    private static final class PrefetchChartsHost implements ChartsHost {
+        private final ChartsHost delegate;
+        private final Date startDate;
+        private final Date endDate;
+
+        private PrefetchChartsHost(final ChartsHost delegate, final Date startDate, final Date endDate) {
+            this.delegate = delegate;
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
+
+        @Override
+        public GBDevice getDevice() {
+            return delegate.getDevice();
+        }
+
+        @Override
+        public ChartsDataCache getChartsDataCache() {
+            return delegate.getChartsDataCache();
+        }
+
+        @Override
+        public ChartsDataPrefetcher getChartsDataPrefetcher() {
+            return delegate.getChartsDataPrefetcher();
+        }
+
+        @Override
+        public void setStartDate(final Date startDate) {
+            throw new UnsupportedOperationException("Dates can not be changed while prefetching");
+        }
+
+        @Override
+        public void setEndDate(final Date endDate) {
+            throw new UnsupportedOperationException("Dates can not be changed while prefetching");
+        }
+
+        @Override
+        public Date getStartDate() {
+            return startDate;
+        }
+
+        @Override
+        public Date getEndDate() {
+            return endDate;
+        }
+
+        @Override
+        public void setDateInfo(final String dateInfo) {
+            throw new UnsupportedOperationException("The UI can not be changed while prefetching");
+        }
+
+        @Override
+        public ViewGroup getDateBar() {
+            throw new UnsupportedOperationException("The UI can not be changed while prefetching");
+        }
+
+        @Override
+        public void enableSwipeRefresh(final boolean enable) {
+            throw new UnsupportedOperationException("The UI can not be changed while prefetching");
+        }
+    }
 }
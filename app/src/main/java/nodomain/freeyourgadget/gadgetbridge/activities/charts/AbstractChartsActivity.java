@@ -82,6 +82,9 @@ public abstract class AbstractChartsActivity extends AbstractGBFragmentActivity
     private GBDevice mGBDevice;
     private ViewGroup dateBar;
 
+    private final ChartsDataCache chartsDataCache = new ChartsDataCache();
+    private final ChartsDataPrefetcher chartsDataPrefetcher = new ChartsDataPrefetcher();
+
     private ActivityResultLauncher<Intent> chartsPreferencesLauncher;
     private final ActivityResultCallback<ActivityResult> chartsPreferencesCallback = result -> {
         recreate();
@@ -91,7 +94,6 @@ public abstract class AbstractChartsActivity extends AbstractGBFragmentActivity
         @Override
         public void onReceive(final Context context, final Intent intent) {
             final String action = intent.getAction();
-            //noinspection SwitchStatementWithTooFewBranches
             switch (Objects.requireNonNull(action)) {
                 case GBDevice.ACTION_DEVICE_CHANGED:
                     final GBDevice dev = intent.getParcelableExtra(GBDevice.EXTRA_DEVICE);
@@ -99,6 +101,14 @@ public abstract class AbstractChartsActivity extends AbstractGBFragmentActivity
                         refreshBusyState(dev);
                     }
                     break;
+                case GBApplication.ACTION_NEW_DATA:
+                    final GBDevice newDataDevice = intent.getParcelableExtra(GBDevice.EXTRA_DEVICE);
+                    if (newDataDevice == null || newDataDevice.equals(mGBDevice)) {
+                        chartsDataPrefetcher.cancelAll();
+                        chartsDataCache.invalidate(mGBDevice);
+                        LocalBroadcastManager.getInstance(context).sendBroadcast(new Intent(REFRESH));
+                    }
+                    break;
             }
         }
     };
@@ -110,6 +120,8 @@ public abstract class AbstractChartsActivity extends AbstractGBFragmentActivity
             final boolean wasBusy = swipeLayout.isRefreshing();
             swipeLayout.setRefreshing(false);
             if (wasBusy) {
+                chartsDataPrefetcher.cancelAll();
+                chartsDataCache.invalidate(mGBDevice);
                 LocalBroadcastManager.getInstance(this).sendBroadcast(new Intent(REFRESH));
             }
         }
@@ -146,6 +158,7 @@ public abstract class AbstractChartsActivity extends AbstractGBFragmentActivity
 
         final IntentFilter filterLocal = new IntentFilter();
         filterLocal.addAction(GBDevice.ACTION_DEVICE_CHANGED);
+        filterLocal.addAction(GBApplication.ACTION_NEW_DATA);
         LocalBroadcastManager.getInstance(this).registerReceiver(mReceiver, filterLocal);
 
         // Open the specified fragment, if any, and setup single page view if specified
@@ -263,6 +276,16 @@ public abstract class AbstractChartsActivity extends AbstractGBFragmentActivity
         return mGBDevice;
     }
 
+    @Override
+    public ChartsDataCache getChartsDataCache() {
+        return chartsDataCache;
+    }
+
+    @Override
+    public ChartsDataPrefetcher getChartsDataPrefetcher() {
+        return chartsDataPrefetcher;
+    }
+
     @Override
     public void setStartDate(Date startDate) {
         mStartDate = startDate;
@@ -300,6 +323,7 @@ public abstract class AbstractChartsActivity extends AbstractGBFragmentActivity
     @Override
     protected void onDestroy() {
         LocalBroadcastManager.getInstance(this).unregisterReceiver(mReceiver);
+        chartsDataPrefetcher.shutdown();
         super.onDestroy();
     }
 
@@ -44,6 +44,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
@@ -51,9 +52,12 @@ import java.util.Locale;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.database.DailySummaryManager;
+import nodomain.freeyourgadget.gadgetbridge.entities.DailySummary;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySampleBatch;
 import nodomain.freeyourgadget.gadgetbridge.util.LimitedQueue;
 
 
@@ -126,8 +130,9 @@ public abstract class AbstractWeekChartFragment extends AbstractActivityChartFra
         long daily_balance = 0;
         TOTAL_DAYS_FOR_AVERAGE=0;
 
+        List<ActivityAmounts> amountsOfDays = getActivityAmountsForDays(db, day, TOTAL_DAYS, device);
         for (int counter = 0; counter < TOTAL_DAYS; counter++) {
-            ActivityAmounts amounts = getActivityAmountsForDay(db, day, device);
+            ActivityAmounts amounts = amountsOfDays.get(counter);
             daily_balance=calculateBalance(amounts);
             if (daily_balance > 0) {
                 TOTAL_DAYS_FOR_AVERAGE++;
@@ -302,22 +307,6 @@ public abstract class AbstractWeekChartFragment extends AbstractActivityChartFra
         yAxisRight.setTextColor(CHART_TEXT_COLOR);
     }
 
-    private List<? extends ActivitySample> getSamplesOfDay(DBHandler db, Calendar day, int offsetHours, GBDevice device) {
-        int startTs;
-        int endTs;
-
-        day = (Calendar) day.clone(); // do not modify the caller's argument
-        day.set(Calendar.HOUR_OF_DAY, 0);
-        day.set(Calendar.MINUTE, 0);
-        day.set(Calendar.SECOND, 0);
-        day.add(Calendar.HOUR, offsetHours);
-
-        startTs = (int) (day.getTimeInMillis() / 1000);
-        endTs = startTs + 24 * 60 * 60 - 1;
-
-        return getSamples(db, device, startTs, endTs);
-    }
-
     @Override
     protected List<? extends ActivitySample> getSamples(DBHandler db, GBDevice device, int tsFrom, int tsTo) {
         return super.getAllSamples(db, device, tsFrom, tsTo);
@@ -352,26 +341,114 @@ public abstract class AbstractWeekChartFragment extends AbstractActivityChartFra
     }
 
     protected ActivityAmounts getActivityAmountsForDay(DBHandler db, Calendar day, GBDevice device) {
+        return getActivityAmountsForDays(db, day, 1, device).get(0);
+    }
 
+    /**
+     * Returns the activity amounts of {@code days} consecutive days, starting with {@code firstDay}.
+     * The days that are not cached yet are loaded together, instead of one query per day.
+     * <p>
+     * For the offsets of the stored {@link DailySummary} rollups (midnight for the steps and
+     * {@link DailySummaryManager#SLEEP_OFFSET_HOURS} for the sleep), the amounts are read from
+     * them. Missing or outdated days are calculated together, from samples loaded with a single
+     * query, and stored by the {@link DailySummaryManager}. Any other offset is
+     * calculated from the samples and only kept in the in-memory cache: a summary holds a single
+     * day boundary per value, so storing amounts for arbitrary offsets would need a separate
+     * rollup per offset. All charts in the tree use one of the stored offsets.
+     */
+    protected List<ActivityAmounts> getActivityAmountsForDays(DBHandler db, Calendar firstDay, int days, GBDevice device) {
         LimitedQueue<Integer, ActivityAmounts> activityAmountCache = null;
-        ActivityAmounts amounts = null;
+        ActivityAmounts[] amounts = new ActivityAmounts[days];
+        int[] keys = new int[days];
+        int firstMissing = -1;
+        int lastMissing = -1;
 
         Activity activity = getActivity();
-        int key = (int) (day.getTimeInMillis() / 1000) + (mOffsetHours * 3600);
         if (activity != null) {
             activityAmountCache = ((ActivityChartsActivity) activity).mActivityAmountCache;
-            amounts = activityAmountCache.lookup(key);
         }
 
-        if (amounts == null) {
-            ActivityAnalysis analysis = new ActivityAnalysis();
-            amounts = analysis.calculateActivityAmounts(getSamplesOfDay(db, day, mOffsetHours, device));
+        Calendar day = (Calendar) firstDay.clone(); // do not modify the caller's argument
+        for (int i = 0; i < days; i++) {
+            keys[i] = (int) (day.getTimeInMillis() / 1000) + (mOffsetHours * 3600);
             if (activityAmountCache != null) {
-                activityAmountCache.add(key, amounts);
+                amounts[i] = activityAmountCache.lookup(keys[i]);
             }
+            if (amounts[i] == null) {
+                if (firstMissing < 0) {
+                    firstMissing = i;
+                }
+                lastMissing = i;
+            }
+            day.add(Calendar.DATE, 1);
         }
 
-        return amounts;
+        if (firstMissing >= 0) {
+            Calendar from = (Calendar) firstDay.clone();
+            from.add(Calendar.DATE, firstMissing);
+            List<ActivityAmounts> loaded = new ArrayList<>(lastMissing - firstMissing + 1);
+            if (mOffsetHours == 0 || mOffsetHours == DailySummaryManager.SLEEP_OFFSET_HOURS) {
+                // the stored summaries contain the steps of the day and the sleep of the night before
+                Calendar to = (Calendar) firstDay.clone();
+                to.add(Calendar.DATE, lastMissing);
+                for (DailySummary summary : DailySummaryManager.getDailySummaries(device, from, to, db)) {
+                    loaded.add(DailySummaryManager.toActivityAmounts(summary));
+                }
+            } else {
+                // not covered by the stored summaries, see above
+                for (ActivitySampleBatch samples : getSamplesOfDays(db, from, lastMissing - firstMissing + 1, mOffsetHours, device)) {
+                    loaded.add(new ActivityAnalysis().calculateActivityAmounts(samples));
+                }
+            }
+
+            for (int i = firstMissing; i <= lastMissing; i++) {
+                if (amounts[i] == null) {
+                    amounts[i] = loaded.get(i - firstMissing);
+                    if (activityAmountCache != null) {
+                        activityAmountCache.add(keys[i], amounts[i]);
+                    }
+                }
+            }
+        }
+
+        return Arrays.asList(amounts);
+    }
+
+    /**
+     * Loads the samples of {@code days} consecutive days, starting with {@code firstDay}, with a
+     * single query and splits them into one batch per day. Each day starts at midnight, shifted
+     * by {@code offsetHours}.
+     */
+    protected List<ActivitySampleBatch> getSamplesOfDays(DBHandler db, Calendar firstDay, int days, int offsetHours, GBDevice device) {
+        int[] startTs = new int[days];
+        Calendar day = (Calendar) firstDay.clone(); // do not modify the caller's argument
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        for (int i = 0; i < days; i++) {
+            Calendar start = (Calendar) day.clone();
+            start.add(Calendar.HOUR, offsetHours);
+            startTs[i] = (int) (start.getTimeInMillis() / 1000);
+            day.add(Calendar.DATE, 1);
+        }
+
+        List<? extends ActivitySample> samples = getSamples(db, device, startTs[0], startTs[days - 1] + 24 * 60 * 60 - 1);
+
+        List<ActivitySampleBatch> result = new ArrayList<>(days);
+        int first = 0;
+        for (int i = 0; i < days; i++) {
+            int endTs = startTs[i] + 24 * 60 * 60 - 1;
+            // the days may overlap when the clocks are changed, so every day searches its own start
+            while (first < samples.size() && samples.get(first).getTimestamp() < startTs[i]) {
+                first++;
+            }
+            ActivitySampleBatch batch = new ActivitySampleBatch();
+            for (int j = first; j < samples.size() && samples.get(j).getTimestamp() <= endTs; j++) {
+                batch.accept(samples.get(j));
+            }
+            result.add(batch);
+        }
+        return result;
     }
 
     private int getRangeDays(){
@@ -22,11 +22,14 @@ import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.Consumer;
 
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmount;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySampleBatch;
 
 public class ActivityAnalysis {
     public static final Logger LOG = LoggerFactory.getLogger(ActivityAnalysis.class);
@@ -37,52 +40,64 @@ public class ActivityAnalysis {
     private int maxSpeed = 0;
 
     public ActivityAmounts calculateActivityAmounts(List<? extends ActivitySample> samples) {
-        ActivityAmount deepSleep = new ActivityAmount(ActivityKind.DEEP_SLEEP);
-        ActivityAmount lightSleep = new ActivityAmount(ActivityKind.LIGHT_SLEEP);
-        ActivityAmount remSleep = new ActivityAmount(ActivityKind.REM_SLEEP);
-        ActivityAmount awakeSleep = new ActivityAmount(ActivityKind.AWAKE_SLEEP);
-        ActivityAmount notWorn = new ActivityAmount(ActivityKind.NOT_WORN);
-        ActivityAmount activity = new ActivityAmount(ActivityKind.ACTIVITY);
-
-        ActivityAmount previousAmount = null;
-        ActivitySample previousSample = null;
+        ActivityAmountsCollector collector = new ActivityAmountsCollector();
         for (ActivitySample sample : samples) {
-            ActivityAmount amount;
-            switch (sample.getKind()) {
-                case DEEP_SLEEP:
-                    amount = deepSleep;
-                    break;
-                case LIGHT_SLEEP:
-                    amount = lightSleep;
-                    break;
-                case REM_SLEEP:
-                    amount = remSleep;
-                    break;
-                case AWAKE_SLEEP:
-                    amount = awakeSleep;
-                    break;
-                case NOT_WORN:
-                    amount = notWorn;
-                    break;
-                case ACTIVITY:
-                default:
-                    amount = activity;
-                    break;
-            }
+            collector.accept(sample);
+        }
+        return collector.getActivityAmounts();
+    }
+
+    public ActivityAmounts calculateActivityAmounts(ActivitySampleBatch batch) {
+        ActivityAmountsCollector collector = new ActivityAmountsCollector();
+        collector.acceptAll(batch);
+        return collector.getActivityAmounts();
+    }
+
+    /**
+     * Returns a consumer that calculates the same as {@link #calculateActivityAmounts(List)},
+     * for samples that are streamed, e.g. from {@link SampleProvider#forEachActivitySample}.
+     * The samples must be passed in timestamp order.
+     */
+    public ActivityAmountsCollector newActivityAmountsCollector() {
+        return new ActivityAmountsCollector();
+    }
+
+    public class ActivityAmountsCollector implements Consumer<ActivitySample> {
+        private final ActivityAmount deepSleep = new ActivityAmount(ActivityKind.DEEP_SLEEP);
+        private final ActivityAmount lightSleep = new ActivityAmount(ActivityKind.LIGHT_SLEEP);
+        private final ActivityAmount remSleep = new ActivityAmount(ActivityKind.REM_SLEEP);
+        private final ActivityAmount awakeSleep = new ActivityAmount(ActivityKind.AWAKE_SLEEP);
+        private final ActivityAmount notWorn = new ActivityAmount(ActivityKind.NOT_WORN);
+        private final ActivityAmount activity = new ActivityAmount(ActivityKind.ACTIVITY);
+
+        private ActivityAmount previousAmount = null;
+        // only the values needed from the previous sample, so that it can be garbage collected
+        private boolean hasPreviousSample = false;
+        private int previousTimestamp;
+        private int previousRawKind;
+
+        private ActivityAmountsCollector() {
+        }
+
+        @Override
+        public void accept(ActivitySample sample) {
+            add(sample.getTimestamp(), sample.getKind().getCode(), sample.getRawKind(), sample.getSteps(), sample.getDistanceCm());
+        }
+
+        private void add(int timestamp, int kindCode, int rawKind, int steps, int distance) {
+            ActivityAmount amount = getAmount(kindCode);
 
-            int steps = sample.getSteps();
             if (steps > 0) {
                 amount.addSteps(steps);
             }
 
-            final int distance = sample.getDistanceCm();
             if (distance >= 0) {
                 amount.addDistance(distance);
             }
 
-            if (previousSample != null) {
-                long timeDifference = sample.getTimestamp() - previousSample.getTimestamp();
-                if (previousSample.getRawKind() == sample.getRawKind()) {
+            if (hasPreviousSample) {
+                long timeDifference = timestamp - previousTimestamp;
+                if (previousRawKind == rawKind) {
                     amount.addSeconds(timeDifference);
                 } else {
                     long sharedTimeDifference = (long) (timeDifference / 2.0f);
@@ -91,7 +106,7 @@ public class ActivityAnalysis {
                 }
 
                 // add time
-                if (steps > 0 && sample.getKind() == ActivityKind.ACTIVITY) {
+                if (steps > 0 && kindCode == ActivityKind.ACTIVITY.getCode()) {
                     if (steps > maxSpeed) {
                         maxSpeed = steps;
                     }
@@ -107,36 +122,64 @@ public class ActivityAnalysis {
                 }
             }
 
-            amount.setStartDate(sample.getTimestamp());
-            amount.setEndDate(sample.getTimestamp());
+            amount.setStartDate(timestamp);
+            amount.setEndDate(timestamp);
 
             previousAmount = amount;
-            previousSample = sample;
+            hasPreviousSample = true;
+            previousTimestamp = timestamp;
+            previousRawKind = rawKind;
         }
 
-        ActivityAmounts result = new ActivityAmounts();
-        if (deepSleep.getTotalSeconds() > 0) {
-            result.addAmount(deepSleep);
-        }
-        if (lightSleep.getTotalSeconds() > 0) {
-            result.addAmount(lightSleep);
-        }
-        if (remSleep.getTotalSeconds() > 0) {
-            result.addAmount(remSleep);
-        }
-        if (awakeSleep.getTotalSeconds() > 0) {
-            result.addAmount(awakeSleep);
-        }
-        if (activity.getTotalSeconds() > 0) {
-            result.addAmount(activity);
+        private ActivityAmount getAmount(int kindCode) {
+            if (kindCode == ActivityKind.DEEP_SLEEP.getCode()) {
+                return deepSleep;
+            } else if (kindCode == ActivityKind.LIGHT_SLEEP.getCode()) {
+                return lightSleep;
+            } else if (kindCode == ActivityKind.REM_SLEEP.getCode()) {
+                return remSleep;
+            } else if (kindCode == ActivityKind.AWAKE_SLEEP.getCode()) {
+                return awakeSleep;
+            } else if (kindCode == ActivityKind.NOT_WORN.getCode()) {
+                return notWorn;
+            }
+            return activity;
         }
-        if (notWorn.getTotalSeconds() > 0) {
-            result.addAmount(notWorn);
+
+        /**
+         * Adds all samples of the given batch, which must follow the previously added samples.
+         */
+        public void acceptAll(ActivitySampleBatch batch) {
+            for (int i = 0; i < batch.size(); i++) {
+                add(batch.getTimestamp(i), batch.getKindCode(i), batch.getRawKind(i), batch.getSteps(i), batch.getDistanceCm(i));
+            }
         }
 
-        result.calculatePercentages();
+        public ActivityAmounts getActivityAmounts() {
+            ActivityAmounts result = new ActivityAmounts();
+            if (deepSleep.getTotalSeconds() > 0) {
+                result.addAmount(deepSleep);
+            }
+            if (lightSleep.getTotalSeconds() > 0) {
+                result.addAmount(lightSleep);
+            }
+            if (remSleep.getTotalSeconds() > 0) {
+                result.addAmount(remSleep);
+            }
+            if (awakeSleep.getTotalSeconds() > 0) {
+                result.addAmount(awakeSleep);
+            }
+            if (activity.getTotalSeconds() > 0) {
+                result.addAmount(activity);
+            }
+            if (notWorn.getTotalSeconds() > 0) {
+                result.addAmount(notWorn);
+            }
+
+            result.calculatePercentages();
 
-        return result;
+            return result;
+        }
     }
 
     int calculateTotalSteps(List<? extends ActivitySample> samples) {
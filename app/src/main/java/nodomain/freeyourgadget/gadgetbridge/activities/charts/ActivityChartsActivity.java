@@ -28,6 +28,9 @@ import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentStatePagerAdapter;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -38,6 +41,8 @@ import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.AbstractFragmentPagerAdapter;
 import nodomain.freeyourgadget.gadgetbridge.activities.AbstractGBFragment;
 import nodomain.freeyourgadget.gadgetbridge.activities.devicesettings.DeviceSettingsPreferenceConst;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.database.DailySummaryManager;
 import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCoordinator;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
@@ -46,6 +51,8 @@ import nodomain.freeyourgadget.gadgetbridge.util.LimitedQueue;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
 
 public class ActivityChartsActivity extends AbstractChartsActivity {
+    private static final Logger LOG = LoggerFactory.getLogger(ActivityChartsActivity.class);
+
     LimitedQueue<Integer, ActivityAmounts> mActivityAmountCache = new LimitedQueue<>(60);
 
     @Override
@@ -75,6 +82,27 @@ public class ActivityChartsActivity extends AbstractChartsActivity {
         return fillChartsTabsList(getDevice(), this);
     }
 
+    /**
+     * The trends are shown from the daily summaries, which are calculated for the activity samples
+     * and the measured values. Devices that do not measure any of them anymore may still have
+     * summaries of their older data.
+     */
+    private static boolean hasTrends(final GBDevice device) {
+        final DeviceCoordinator coordinator = device.getDeviceCoordinator();
+        if (coordinator.supportsActivityTracking() ||
+                coordinator.supportsWeightMeasurement() ||
+                coordinator.supportsHrvMeasurement() ||
+                coordinator.supportsHeartRateRestingMeasurement(device)) {
+            return true;
+        }
+        try (DBHandler db = GBApplication.acquireReadOnlyDB()) {
+            return DailySummaryManager.hasDailySummaries(device, db);
+        } catch (final Exception e) {
+            LOG.warn("Failed to check for daily summaries of {}", device, e);
+            return false;
+        }
+    }
+
     private static List<String> fillChartsTabsList(final GBDevice device, final Context context) {
         final List<String> tabList;
         final Prefs prefs = new Prefs(GBApplication.getDeviceSpecificSharedPrefs(device.getAddress()));
@@ -133,6 +161,9 @@ public class ActivityChartsActivity extends AbstractChartsActivity {
         if (!coordinator.supportsVO2Max()) {
             tabList.remove("vo2max");
         }
+        if (!hasTrends(device)) {
+            tabList.remove("trends");
+        }
         return tabList;
     }
 
@@ -187,6 +218,8 @@ public class ActivityChartsActivity extends AbstractChartsActivity {
                     return new CyclingChartFragment();
                 case "weight":
                     return new WeightChartFragment();
+                case "trends":
+                    return new TrendsChartFragment();
             }
 
             return new UnknownFragment();
@@ -232,6 +265,8 @@ public class ActivityChartsActivity extends AbstractChartsActivity {
                     return getString(R.string.title_cycling);
                 case "weight":
                     return getString(R.string.menuitem_weight);
+                case "trends":
+                    return getString(R.string.charts_trends);
             }
 
             return String.format(Locale.getDefault(), "Unknown %d", position);
@@ -49,6 +49,7 @@ import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySampleBatch;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySession;
 import nodomain.freeyourgadget.gadgetbridge.util.DateTimeUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.FormatUtils;
@@ -211,7 +212,7 @@ public class ActivityListingDashboard extends MaterialDialogFragment {
     private ActivitySession get_data(GBDevice gbDevice, DBHandler db, int timeFrom, int timeTo) {
 
         List<ActivitySession> stepSessions;
-        List<? extends ActivitySample> activitySamples = getAllSamples(db, gbDevice, timeFrom, timeTo);
+        ActivitySampleBatch activitySamples = getSampleBatch(db, gbDevice, timeFrom, timeTo);
         StepAnalysis stepAnalysis = new StepAnalysis();
 
         boolean isEmptySummary = false;
@@ -230,9 +231,9 @@ public class ActivityListingDashboard extends MaterialDialogFragment {
         return coordinator.getSampleProvider(device, db.getDaoSession());
     }
 
-    protected List<? extends ActivitySample> getAllSamples(DBHandler db, GBDevice device, int tsFrom, int tsTo) {
+    protected ActivitySampleBatch getSampleBatch(DBHandler db, GBDevice device, int tsFrom, int tsTo) {
         SampleProvider<? extends ActivitySample> provider = getProvider(db, device);
-        return provider.getAllActivitySamples(tsFrom, tsTo);
+        return ActivitySampleBatch.fromProvider(provider, tsFrom, tsTo);
     }
 
     void indicate_progress(boolean inProgress) {
@@ -304,6 +305,11 @@ public class ActivityListingDashboard extends MaterialDialogFragment {
             super(task, context);
         }
 
+        @Override
+        protected boolean isReadOnly() {
+            return true;
+        }
+
         @Override
         protected void doInBackground(DBHandler db) {
             stepSessionsSummary = get_data(gbDevice, db, timeFrom, timeTo);
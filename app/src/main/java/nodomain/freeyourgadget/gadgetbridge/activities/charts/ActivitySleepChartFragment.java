@@ -50,6 +50,7 @@ public class ActivitySleepChartFragment extends AbstractActivityChartFragment<De
     protected static final Logger LOG = LoggerFactory.getLogger(ActivitySleepChartFragment.class);
 
     private LineChart mChart;
+    private ChartDecimator mChartDecimator;
 
     private int mSmartAlarmFrom = -1;
     private int mSmartAlarmTo = -1;
@@ -62,6 +63,7 @@ public class ActivitySleepChartFragment extends AbstractActivityChartFragment<De
         View rootView = inflater.inflate(R.layout.fragment_charts, container, false);
 
         mChart = (LineChart) rootView.findViewById(R.id.activitysleepchart);
+        mChartDecimator = new ChartDecimator(mChart);
 
         setupChart();
 
@@ -126,6 +128,11 @@ public class ActivitySleepChartFragment extends AbstractActivityChartFragment<De
         }
     }
 
+    @Override
+    protected String getChartsDataCacheKey() {
+        return "";
+    }
+
     @Override
     protected DefaultChartsData<LineData> refreshInBackground(ChartsHost chartsHost, DBHandler db, GBDevice device) {
         List<? extends ActivitySample> samples = getSamples(db, device);
@@ -140,7 +147,7 @@ public class ActivitySleepChartFragment extends AbstractActivityChartFragment<De
         mChart.getLegend().setTextColor(LEGEND_TEXT_COLOR);
         mChart.setData(null); // workaround for https://github.com/PhilJay/MPAndroidChart/issues/2317
         mChart.getXAxis().setValueFormatter(dcd.getXValueFormatter());
-        mChart.setData((LineData) dcd.getData());
+        mChartDecimator.setData((LineData) dcd.getData());
     }
 
     @Override
@@ -0,0 +1,261 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.activities.charts;
+
+import android.view.MotionEvent;
+
+import androidx.annotation.Nullable;
+
+import com.github.mikephil.charting.charts.BarLineChartBase;
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.data.LineDataSet;
+import com.github.mikephil.charting.interfaces.datasets.IDataSet;
+import com.github.mikephil.charting.interfaces.datasets.ILineDataSet;
+import com.github.mikephil.charting.listener.ChartTouchListener;
+import com.github.mikephil.charting.listener.OnChartGestureListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Reduces the entries of the line datasets of a chart to what can be shown at its current
+ * width and zoom level, since drawing (and touching) tens of thousands of entries per day of
+ * high resolution samples is slow.
+ * <p>
+ * The x range of each dataset is split into one bucket per pixel, and only the first, the
+ * minimum, the maximum and the last entry of each bucket are kept. This keeps the shape of the
+ * line, including its peaks, gaps and overall minimum and maximum, so the axes do not change.
+ * The full entries are kept aside and decimated again when the chart is zoomed.
+ * <p>
+ * The chart data must be set through {@link #setData(LineData)}, and all methods must be called
+ * on the UI thread. A gesture listener must be set on the chart before creating the decimator,
+ * it is still notified.
+ */
+public class ChartDecimator implements OnChartGestureListener {
+    /**
+     * Datasets with at most this many entries per pixel are drawn as they are.
+     */
+    private static final int MAX_ENTRIES_PER_PIXEL = 4;
+
+    /**
+     * The full entries of the datasets that were decimated. The datasets may be cached with their
+     * {@link ChartsData} and shown again later, even by another fragment instance, so this is not
+     * kept per chart.
+     */
+    private static final Map<IDataSet<?>, List<Entry>> FULL_ENTRIES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final BarLineChartBase<LineData> chart;
+    @Nullable
+    private final OnChartGestureListener previousListener;
+
+    private int currentBuckets = 0;
+
+    public ChartDecimator(final BarLineChartBase<LineData> chart) {
+        this.chart = chart;
+        // the chart only has a single gesture listener, keep notifying the one set before
+        this.previousListener = chart.getOnChartGestureListener();
+        chart.setOnChartGestureListener(this);
+        chart.addOnLayoutChangeListener((v, left, top, right, bottom, oldLeft, oldTop, oldRight, oldBottom) -> {
+            if (right - left != oldRight - oldLeft) {
+                update();
+            }
+        });
+    }
+
+    /**
+     * Sets the data of the chart, decimated for its current width and zoom level.
+     */
+    public void setData(@Nullable final LineData data) {
+        currentBuckets = 0;
+        if (data != null) {
+            for (final ILineDataSet dataSet : data.getDataSets()) {
+                if (dataSet instanceof LineDataSet && !FULL_ENTRIES.containsKey(dataSet)) {
+                    FULL_ENTRIES.put(dataSet, ((LineDataSet) dataSet).getValues());
+                }
+            }
+            decimate(data, getBuckets());
+        }
+        chart.setData(data);
+    }
+
+    /**
+     * Decimates the data again, if the resolution changed significantly since the last time.
+     */
+    public void update() {
+        final LineData data = chart.getData();
+        if (data == null || currentBuckets == 0) {
+            return;
+        }
+        final int buckets = getBuckets();
+        // zooming fires many small steps, only decimate again once the resolution doubled or halved
+        if (buckets < currentBuckets * 2 && buckets > currentBuckets / 2) {
+            return;
+        }
+        decimate(data, buckets);
+        data.notifyDataChanged();
+        chart.notifyDataSetChanged();
+        chart.invalidate();
+    }
+
+    private void decimate(final LineData data, final int buckets) {
+        currentBuckets = buckets;
+        for (final ILineDataSet dataSet : data.getDataSets()) {
+            final List<Entry> entries = FULL_ENTRIES.get(dataSet);
+            if (entries != null) {
+                ((LineDataSet) dataSet).setValues(decimate(entries, buckets));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries of the dataset before it was decimated, e.g. to estimate the
+     * memory it uses, since the full entries are kept as long as the dataset.
+     */
+    public static int getFullEntryCount(final IDataSet<?> dataSet) {
+        final List<Entry> entries = FULL_ENTRIES.get(dataSet);
+        return entries != null ? entries.size() : dataSet.getEntryCount();
+    }
+
+    /**
+     * Returns the number of buckets for the full x range of the data, i.e. the width of the
+     * chart in pixels, multiplied by the zoom level.
+     */
+    private int getBuckets() {
+        float width = chart.getViewPortHandler().contentWidth();
+        if (width <= 0) {
+            // not laid out yet
+            width = chart.getResources().getDisplayMetrics().widthPixels;
+        }
+        return Math.max(1, Math.round(width * chart.getViewPortHandler().getScaleX()));
+    }
+
+    /**
+     * Returns the first, minimum, maximum and last entry of each of the buckets the x range of
+     * the entries is divided into, in their original order. The entries must be sorted by x.
+     */
+    public static List<Entry> decimate(final List<Entry> entries, final int buckets) {
+        final int size = entries.size();
+        if (size <= buckets * MAX_ENTRIES_PER_PIXEL) {
+            return entries;
+        }
+
+        final float xMin = entries.get(0).getX();
+        final float bucketWidth = (entries.get(size - 1).getX() - xMin) / buckets;
+        if (bucketWidth <= 0) {
+            return entries;
+        }
+
+        final List<Entry> result = new ArrayList<>(buckets * MAX_ENTRIES_PER_PIXEL);
+        final int[] indexes = new int[4];
+        int i = 0;
+        while (i < size) {
+            final int bucket = bucketOf(entries.get(i), xMin, bucketWidth, buckets);
+            final int first = i;
+            int min = i;
+            int max = i;
+            for (i++; i < size && bucketOf(entries.get(i), xMin, bucketWidth, buckets) == bucket; i++) {
+                final float y = entries.get(i).getY();
+                if (y < entries.get(min).getY()) {
+                    min = i;
+                } else if (y > entries.get(max).getY()) {
+                    max = i;
+                }
+            }
+            final int last = i - 1;
+
+            indexes[0] = first;
+            indexes[1] = min;
+            indexes[2] = max;
+            indexes[3] = last;
+            Arrays.sort(indexes);
+            for (int j = 0; j < indexes.length; j++) {
+                if (j == 0 || indexes[j] != indexes[j - 1]) {
+                    result.add(entries.get(indexes[j]));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int bucketOf(final Entry entry, final float xMin, final float bucketWidth, final int buckets) {
+        // the last entry is at the end of the last bucket
+        return Math.min(buckets - 1, (int) ((entry.getX() - xMin) / bucketWidth));
+    }
+
+    @Override
+    public void onChartGestureStart(final MotionEvent me, final ChartTouchListener.ChartGesture lastPerformedGesture) {
+        if (previousListener != null) {
+            previousListener.onChartGestureStart(me, lastPerformedGesture);
+        }
+    }
+
+    @Override
+    public void onChartGestureEnd(final MotionEvent me, final ChartTouchListener.ChartGesture lastPerformedGesture) {
+        update();
+        if (previousListener != null) {
+            previousListener.onChartGestureEnd(me, lastPerformedGesture);
+        }
+    }
+
+    @Override
+    public void onChartLongPressed(final MotionEvent me) {
+        if (previousListener != null) {
+            previousListener.onChartLongPressed(me);
+        }
+    }
+
+    @Override
+    public void onChartDoubleTapped(final MotionEvent me) {
+        if (previousListener != null) {
+            previousListener.onChartDoubleTapped(me);
+        }
+    }
+
+    @Override
+    public void onChartSingleTapped(final MotionEvent me) {
+        if (previousListener != null) {
+            previousListener.onChartSingleTapped(me);
+        }
+    }
+
+    @Override
+    public void onChartFling(final MotionEvent me1, final MotionEvent me2, final float velocityX, final float velocityY) {
+        if (previousListener != null) {
+            previousListener.onChartFling(me1, me2, velocityX, velocityY);
+        }
+    }
+
+    @Override
+    public void onChartScale(final MotionEvent me, final float scaleX, final float scaleY) {
+        update();
+        if (previousListener != null) {
+            previousListener.onChartScale(me, scaleX, scaleY);
+        }
+    }
+
+    @Override
+    public void onChartTranslate(final MotionEvent me, final float dX, final float dY) {
+        if (previousListener != null) {
+            previousListener.onChartTranslate(me, dX, dY);
+        }
+    }
+}
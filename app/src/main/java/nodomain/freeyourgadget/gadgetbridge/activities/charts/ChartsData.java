@@ -17,4 +17,11 @@
 package nodomain.freeyourgadget.gadgetbridge.activities.charts;
 
 public abstract class ChartsData {
+    /**
+     * Returns a rough estimate of the memory used by this data, in bytes, so that the
+     * {@link ChartsDataCache} can limit its size.
+     */
+    public long getEstimatedSize() {
+        return 16 * 1024;
+    }
 }
@@ -0,0 +1,128 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.activities.charts;
+
+import androidx.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+
+/**
+ * A least recently used cache of the {@link ChartsData} computed by the chart fragments, so
+ * that paging back and forth between dates does not query and analyze the same samples again.
+ * <p>
+ * The cache is owned by the {@link ChartsHost}, which invalidates it when new data arrives for
+ * the device. Its size is limited by the {@link ChartsData#getEstimatedSize()} of the entries.
+ */
+public class ChartsDataCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ChartsDataCache.class);
+
+    private static final long MAX_SIZE_LIMIT = 32 * 1024 * 1024;
+
+    private final long maxSize;
+    private final LinkedHashMap<String, ChartsData> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // the estimated size of each entry when it was put, since the data may change while it is
+    // shown, e.g. when it is decimated
+    private final Map<String, Long> sizes = new HashMap<>();
+    private long size = 0;
+    private int generation = 0;
+
+    public ChartsDataCache() {
+        this(Math.min(Runtime.getRuntime().maxMemory() / 16, MAX_SIZE_LIMIT));
+    }
+
+    public ChartsDataCache(final long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public static String createKey(final GBDevice device,
+                                   final Class<?> fragmentClass,
+                                   final int tsStart,
+                                   final int tsEnd,
+                                   final String extra) {
+        return device.getAddress() + "|" + fragmentClass.getName() + "|" + tsStart + "|" + tsEnd + "|" + extra;
+    }
+
+    @Nullable
+    public synchronized ChartsData get(final String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Returns the current generation of the cache, which changes whenever it is invalidated.
+     * Data computed from the database should be put together with the generation from before
+     * it was read, so that it is discarded if new data arrived in the meantime.
+     */
+    public synchronized int getGeneration() {
+        return generation;
+    }
+
+    public synchronized void put(final String key, final ChartsData data, final int expectedGeneration) {
+        if (expectedGeneration != generation) {
+            LOG.debug("Not caching {}, cache was invalidated", key);
+            return;
+        }
+        final long dataSize = data.getEstimatedSize();
+        if (dataSize > maxSize) {
+            return;
+        }
+
+        entries.put(key, data);
+        final Long previousSize = sizes.put(key, dataSize);
+        if (previousSize != null) {
+            size -= previousSize;
+        }
+        size += dataSize;
+
+        final Iterator<Map.Entry<String, ChartsData>> it = entries.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            final Map.Entry<String, ChartsData> eldest = it.next();
+            size -= sizes.remove(eldest.getKey());
+            it.remove();
+        }
+    }
+
+    /**
+     * Removes all cached data of the given device.
+     */
+    public synchronized void invalidate(final GBDevice device) {
+        final String prefix = device.getAddress() + "|";
+        final Iterator<Map.Entry<String, ChartsData>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<String, ChartsData> entry = it.next();
+            if (entry.getKey().startsWith(prefix)) {
+                size -= sizes.remove(entry.getKey());
+                it.remove();
+            }
+        }
+        generation++;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        sizes.clear();
+        size = 0;
+        generation++;
+    }
+}
@@ -0,0 +1,123 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.activities.charts;
+
+import android.os.Process;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the {@link ChartsData} of the periods next to the one being shown in the background,
+ * so that it is already in the {@link ChartsDataCache} when the user navigates there.
+ * <p>
+ * The work runs on a single low priority thread, and at most {@link #MAX_PENDING} prefetches
+ * are queued. Whenever new prefetches are requested, the ones for other periods are cancelled,
+ * since the user moved away from them.
+ */
+public class ChartsDataPrefetcher {
+    private static final Logger LOG = LoggerFactory.getLogger(ChartsDataPrefetcher.class);
+
+    private static final int MAX_PENDING = 4;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            1, 1,
+            30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(MAX_PENDING),
+            runnable -> {
+                final Thread thread = new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "ChartsDataPrefetcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    private final Map<String, Future<?>> pending = new HashMap<>();
+
+    public ChartsDataPrefetcher() {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the given prefetches, by cache key, and cancels all pending prefetches for other
+     * keys. Prefetches that are already pending for the same key are kept.
+     */
+    public synchronized void prefetch(final Map<String, Runnable> tasks) {
+        cancelStale(tasks.keySet());
+
+        for (final Map.Entry<String, Runnable> task : tasks.entrySet()) {
+            if (pending.containsKey(task.getKey())) {
+                continue;
+            }
+            try {
+                pending.put(task.getKey(), executor.submit(task.getValue()));
+            } catch (final RejectedExecutionException e) {
+                LOG.debug("Not prefetching {}, too many pending prefetches", task.getKey());
+            }
+        }
+    }
+
+    /**
+     * Cancels all pending prefetches, except the one for the given key, e.g. because the user
+     * jumped to a period that was not prefetched.
+     */
+    public synchronized void cancelAllExcept(final String key) {
+        cancelStale(Collections.singleton(key));
+    }
+
+    private void cancelStale(final Set<String> keysToKeep) {
+        final Iterator<Map.Entry<String, Future<?>>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<String, Future<?>> entry = it.next();
+            if (entry.getValue().isDone()) {
+                it.remove();
+            } else if (!keysToKeep.contains(entry.getKey())) {
+                LOG.debug("Cancelling stale prefetch of {}", entry.getKey());
+                entry.getValue().cancel(true);
+                it.remove();
+            }
+        }
+        // remove the cancelled tasks from the queue, so that they do not take up its capacity
+        executor.purge();
+    }
+
+    public synchronized void cancelAll() {
+        for (final Future<?> future : pending.values()) {
+            future.cancel(true);
+        }
+        pending.clear();
+        executor.purge();
+    }
+
+    public synchronized void shutdown() {
+        cancelAll();
+        executor.shutdownNow();
+    }
+}
@@ -35,6 +35,10 @@ public interface ChartsHost {
 
     GBDevice getDevice();
 
+    ChartsDataCache getChartsDataCache();
+
+    ChartsDataPrefetcher getChartsDataPrefetcher();
+
     void setStartDate(Date startDate);
 
     void setEndDate(Date endDate);
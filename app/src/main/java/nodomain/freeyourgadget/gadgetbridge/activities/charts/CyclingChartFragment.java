@@ -79,6 +79,11 @@ public class CyclingChartFragment extends AbstractChartFragment<CyclingChartFrag
         }
     }
 
+    @Override
+    protected String getChartsDataCacheKey() {
+        return "";
+    }
+
     @Override
     protected CyclingChartsData refreshInBackground(ChartsHost chartsHost, DBHandler db, GBDevice device) {
         List<CyclingSample> samples = getSamples(db, device);
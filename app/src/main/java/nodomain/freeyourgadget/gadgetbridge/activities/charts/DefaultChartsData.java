@@ -18,6 +18,7 @@ package nodomain.freeyourgadget.gadgetbridge.activities.charts;
 
 import com.github.mikephil.charting.data.ChartData;
 import com.github.mikephil.charting.formatter.ValueFormatter;
+import com.github.mikephil.charting.interfaces.datasets.IDataSet;
 
 public class DefaultChartsData<T extends ChartData<?>> extends ChartsData {
     private final T data;
@@ -35,4 +36,18 @@ public class DefaultChartsData<T extends ChartData<?>> extends ChartsData {
     public T getData() {
         return data;
     }
+
+    @Override
+    public long getEstimatedSize() {
+        if (data == null) {
+            return 1024;
+        }
+        // each entry is an object with a couple of floats, referenced from the data set. A
+        // decimated data set still keeps all of its entries, see ChartDecimator
+        long entries = 0;
+        for (final IDataSet<?> dataSet : data.getDataSets()) {
+            entries += ChartDecimator.getFullEntryCount(dataSet);
+        }
+        return 1024 + entries * 48L;
+    }
 }
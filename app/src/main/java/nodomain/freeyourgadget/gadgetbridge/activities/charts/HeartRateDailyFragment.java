@@ -25,7 +25,6 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Comparator;
-import java.util.Date;
 import java.util.List;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
@@ -54,6 +53,7 @@ public class HeartRateDailyFragment extends AbstractChartFragment<HeartRateDaily
     private TextView hrMinimum;
     private TextView hrMaximum;
     private LineChart hrLineChart;
+    private ChartDecimator hrChartDecimator;
 
 
     @Override
@@ -68,6 +68,7 @@ public class HeartRateDailyFragment extends AbstractChartFragment<HeartRateDaily
 
         mDateView = rootView.findViewById(R.id.hr_date_view);
         hrLineChart = rootView.findViewById(R.id.heart_rate_line_chart);
+        hrChartDecimator = new ChartDecimator(hrLineChart);
         hrResting = rootView.findViewById(R.id.hr_resting);
         hrAverage = rootView.findViewById(R.id.hr_average);
         hrMinimum = rootView.findViewById(R.id.hr_minimum);
@@ -112,6 +113,11 @@ public class HeartRateDailyFragment extends AbstractChartFragment<HeartRateDaily
         }
     }
 
+    @Override
+    protected String getChartsDataCacheKey() {
+        return "";
+    }
+
     @Override
     protected HeartRateDailyFragment.HeartRateData refreshInBackground(ChartsHost chartsHost, DBHandler db, GBDevice device) {
         Calendar day = Calendar.getInstance();
@@ -123,9 +129,6 @@ public class HeartRateDailyFragment extends AbstractChartFragment<HeartRateDaily
         day.add(Calendar.HOUR, 0);
         int startTs = (int) (day.getTimeInMillis() / 1000);
         int endTs = startTs + 24 * 60 * 60 - 1;
-        Date date = new Date((long) endTs * 1000);
-        String formattedDate = new SimpleDateFormat("E, MMM dd").format(date);
-        mDateView.setText(formattedDate);
         List<? extends ActivitySample> samples = getActivitySamples(db, device, startTs, endTs);
 
         int restingHeartRate = -1;
@@ -211,6 +214,9 @@ public class HeartRateDailyFragment extends AbstractChartFragment<HeartRateDaily
 
     @Override
     protected void updateChartsnUIThread(HeartRateDailyFragment.HeartRateData data) {
+        String formattedDate = new SimpleDateFormat("E, MMM dd").format(getEndDate());
+        mDateView.setText(formattedDate);
+
         HeartRateUtils heartRateUtilsInstance = HeartRateUtils.getInstance();
         final TimestampTranslation tsTranslation = new TimestampTranslation();
         final List<Entry> lineEntries = new ArrayList<>();
@@ -275,7 +281,7 @@ public class HeartRateDailyFragment extends AbstractChartFragment<HeartRateDaily
         }
 
         hrLineChart.getXAxis().setValueFormatter(new SampleXLabelFormatter(tsTranslation, "HH:mm"));
-        hrLineChart.setData(new LineData(dataSet));
+        hrChartDecimator.setData(new LineData(dataSet));
 
         hrLineChart.getAxisLeft().removeAllLimitLines();
 
@@ -304,5 +310,10 @@ public class HeartRateDailyFragment extends AbstractChartFragment<HeartRateDaily
             this.samples = samples;
             this.restingHeartRate = restingHeartRate;
         }
+
+        @Override
+        public long getEstimatedSize() {
+            return 1024 + samples.size() * 96L;
+        }
     }
 }
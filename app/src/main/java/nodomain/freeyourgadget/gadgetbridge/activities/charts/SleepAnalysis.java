@@ -22,85 +22,157 @@ import java.util.List;
 
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
-
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySampleBatch;
+
+/**
+ * Finds the sleep sessions in activity samples.
+ * <p>
+ * Like {@link StepAnalysis}, the analysis keeps its state after the last processed sample as a
+ * checkpoint, so that newly arrived samples can be processed without going over the older ones.
+ */
 public class SleepAnalysis {
 
     public static final long MIN_SESSION_LENGTH = 5 * 60;
     public static final long MAX_WAKE_PHASE_LENGTH = 2 * 60 * 60;
 
+    private static final int LIGHT_SLEEP_CODE = ActivityKind.LIGHT_SLEEP.getCode();
+    private static final int DEEP_SLEEP_CODE = ActivityKind.DEEP_SLEEP.getCode();
+    private static final int REM_SLEEP_CODE = ActivityKind.REM_SLEEP.getCode();
+    private static final int AWAKE_SLEEP_CODE = ActivityKind.AWAKE_SLEEP.getCode();
+
+    // checkpoint of the analysis after the last processed sample
+    private final List<SleepSession> completedSessions = new ArrayList<>();
+    private int processedSamples = 0;
+    private int previousTimestamp = 0;
+    private Date sleepStart = null;
+    private Date sleepEnd = null;
+    private long lightSleepDuration = 0;
+    private long deepSleepDuration = 0;
+    private long remSleepDuration = 0;
+    private long awakeSleepDuration = 0;
+    private long durationSinceLastSleep = 0;
+
+    public void reset() {
+        completedSessions.clear();
+        processedSamples = 0;
+        previousTimestamp = 0;
+        durationSinceLastSleep = 0;
+        closeSession(false);
+    }
+
     public List<SleepSession> calculateSleepSessions(List<? extends ActivitySample> samples) {
-        List<SleepSession> result = new ArrayList<>();
-
-        ActivitySample previousSample = null;
-        Date sleepStart = null;
-        Date sleepEnd = null;
-        long lightSleepDuration = 0;
-        long deepSleepDuration = 0;
-        long remSleepDuration = 0;
-        long awakeSleepDuration = 0;
-        long durationSinceLastSleep = 0;
-
-        for (ActivitySample sample : samples) {
-            if (isSleep(sample)) {
-                if (sleepStart == null)
-                    sleepStart = getDateFromSample(sample);
-                sleepEnd = getDateFromSample(sample);
-
-                durationSinceLastSleep = 0;
-            } else {
-                //exclude "not worn" times from sleep sessions as this makes a discrepancy with the charts
-                if (lightSleepDuration + deepSleepDuration + remSleepDuration + awakeSleepDuration > MIN_SESSION_LENGTH)
-                    result.add(new SleepSession(sleepStart, sleepEnd, lightSleepDuration, deepSleepDuration, remSleepDuration, awakeSleepDuration));
-                sleepStart = null;
-                sleepEnd = null;
-                lightSleepDuration = 0;
-                deepSleepDuration = 0;
-                remSleepDuration = 0;
-                awakeSleepDuration = 0;
+        return calculateSleepSessions(ActivitySampleBatch.fromSamples(samples));
+    }
+
+    public List<SleepSession> calculateSleepSessions(ActivitySampleBatch samples) {
+        reset();
+        addSamples(samples, 0);
+        return getSleepSessions();
+    }
+
+    /**
+     * Continues the analysis with the samples that were not processed yet. The batch must start
+     * with the samples that were processed before. If it does not, the analysis starts over.
+     *
+     * @return the sleep sessions of all samples processed so far
+     */
+    public List<SleepSession> update(ActivitySampleBatch samples) {
+        if (processedSamples > 0 && (processedSamples > samples.size()
+                || samples.getTimestamp(processedSamples - 1) != previousTimestamp
+                || (processedSamples < samples.size() && samples.getTimestamp(processedSamples) <= previousTimestamp))) {
+            reset();
+        }
+        addSamples(samples, processedSamples);
+        return getSleepSessions();
+    }
+
+    /**
+     * Processes the samples of the batch that are newer than the last processed sample.
+     */
+    public void addSamples(ActivitySampleBatch samples) {
+        int from = 0;
+        if (processedSamples > 0) {
+            while (from < samples.size() && samples.getTimestamp(from) <= previousTimestamp) {
+                from++;
             }
+        }
+        addSamples(samples, from);
+    }
+
+    private void addSamples(ActivitySampleBatch samples, int from) {
+        for (int i = from; i < samples.size(); i++) {
+            processSample(samples.getTimestamp(i), samples.getKindCode(i));
+        }
+    }
 
-            if (previousSample != null) {
-                long durationSinceLastSample = sample.getTimestamp() - previousSample.getTimestamp();
-                if (sample.getKind() == ActivityKind.LIGHT_SLEEP) {
-                    lightSleepDuration += durationSinceLastSample;
-                } else if (sample.getKind() == ActivityKind.DEEP_SLEEP) {
-                    deepSleepDuration += durationSinceLastSample;
-                } else if (sample.getKind() == ActivityKind.REM_SLEEP) {
-                    remSleepDuration += durationSinceLastSample;
-                } else if (sample.getKind() == ActivityKind.AWAKE_SLEEP) {
-                    awakeSleepDuration += durationSinceLastSample;
-                } else {
-                    durationSinceLastSleep += durationSinceLastSample;
-                    if (sleepStart != null && durationSinceLastSleep > MAX_WAKE_PHASE_LENGTH) {
-                        if (lightSleepDuration + deepSleepDuration + remSleepDuration + awakeSleepDuration > MIN_SESSION_LENGTH)
-                            result.add(new SleepSession(sleepStart, sleepEnd, lightSleepDuration, deepSleepDuration, remSleepDuration, awakeSleepDuration));
-                        sleepStart = null;
-                        sleepEnd = null;
-                        lightSleepDuration = 0;
-                        deepSleepDuration = 0;
-                        remSleepDuration = 0;
-                        awakeSleepDuration = 0;
-                    }
+    private void processSample(int timestamp, int kind) {
+        if (kind == LIGHT_SLEEP_CODE || kind == DEEP_SLEEP_CODE || kind == REM_SLEEP_CODE || kind == AWAKE_SLEEP_CODE) {
+            if (sleepStart == null)
+                sleepStart = getDateFromTimestamp(timestamp);
+            sleepEnd = getDateFromTimestamp(timestamp);
+
+            durationSinceLastSleep = 0;
+        } else {
+            //exclude "not worn" times from sleep sessions as this makes a discrepancy with the charts
+            closeSession(true);
+        }
+
+        if (processedSamples > 0) {
+            long durationSinceLastSample = timestamp - previousTimestamp;
+            if (kind == LIGHT_SLEEP_CODE) {
+                lightSleepDuration += durationSinceLastSample;
+            } else if (kind == DEEP_SLEEP_CODE) {
+                deepSleepDuration += durationSinceLastSample;
+            } else if (kind == REM_SLEEP_CODE) {
+                remSleepDuration += durationSinceLastSample;
+            } else if (kind == AWAKE_SLEEP_CODE) {
+                awakeSleepDuration += durationSinceLastSample;
+            } else {
+                durationSinceLastSleep += durationSinceLastSample;
+                if (sleepStart != null && durationSinceLastSleep > MAX_WAKE_PHASE_LENGTH) {
+                    closeSession(true);
                 }
             }
-
-            previousSample = sample;
         }
-        if (lightSleepDuration + deepSleepDuration + remSleepDuration + awakeSleepDuration > MIN_SESSION_LENGTH) {
+
+        processedSamples++;
+        previousTimestamp = timestamp;
+    }
+
+    private boolean isValidSession() {
+        return lightSleepDuration + deepSleepDuration + remSleepDuration + awakeSleepDuration > MIN_SESSION_LENGTH;
+    }
+
+    private void closeSession(boolean keep) {
+        if (keep && isValidSession())
+            completedSessions.add(new SleepSession(sleepStart, sleepEnd, lightSleepDuration, deepSleepDuration, remSleepDuration, awakeSleepDuration));
+        sleepStart = null;
+        sleepEnd = null;
+        lightSleepDuration = 0;
+        deepSleepDuration = 0;
+        remSleepDuration = 0;
+        awakeSleepDuration = 0;
+    }
+
+    /**
+     * Returns the sleep sessions of all samples processed so far, including the one that is
+     * still ongoing, if any.
+     */
+    public List<SleepSession> getSleepSessions() {
+        List<SleepSession> result = new ArrayList<>(completedSessions.size() + 1);
+        result.addAll(completedSessions);
+        if (isValidSession()) {
             result.add(new SleepSession(sleepStart, sleepEnd, lightSleepDuration, deepSleepDuration, remSleepDuration, awakeSleepDuration));
         }
         return result;
     }
 
-    private boolean isSleep(ActivitySample sample) {
-        return sample.getKind() == ActivityKind.DEEP_SLEEP ||
-                sample.getKind() == ActivityKind.LIGHT_SLEEP ||
-                sample.getKind() == ActivityKind.REM_SLEEP ||
-                sample.getKind() == ActivityKind.AWAKE_SLEEP;
+    public int getLastProcessedTimestamp() {
+        return previousTimestamp;
     }
 
-    private Date getDateFromSample(ActivitySample sample) {
-        return new Date(sample.getTimestamp() * 1000L);
+    private Date getDateFromTimestamp(int timestamp) {
+        return new Date(timestamp * 1000L);
     }
 
 
@@ -59,6 +59,7 @@ public class Spo2ChartFragment extends AbstractChartFragment<Spo2ChartFragment.S
     protected static final Logger LOG = LoggerFactory.getLogger(Spo2ChartFragment.class);
 
     private LineChart mSpo2Chart;
+    private ChartDecimator mSpo2ChartDecimator;
 
     private int BACKGROUND_COLOR;
     private int DESCRIPTION_COLOR;
@@ -88,6 +89,11 @@ public class Spo2ChartFragment extends AbstractChartFragment<Spo2ChartFragment.S
         SPO2_AVERAGE_LABEL = requireContext().getString(R.string.charts_legend_spo2_average);
     }
 
+    @Override
+    protected String getChartsDataCacheKey() {
+        return "";
+    }
+
     @Override
     protected Spo2ChartsData refreshInBackground(final ChartsHost chartsHost, final DBHandler db, final GBDevice device) {
         final List<? extends Spo2Sample> samples = getSamples(db, device);
@@ -119,7 +125,7 @@ public class Spo2ChartFragment extends AbstractChartFragment<Spo2ChartFragment.S
         final DefaultChartsData<LineData> chartsData = spo2Data.getChartsData();
         mSpo2Chart.setData(null); // workaround for https://github.com/PhilJay/MPAndroidChart/issues/2317
         mSpo2Chart.getXAxis().setValueFormatter(chartsData.getXValueFormatter());
-        mSpo2Chart.setData(chartsData.getData());
+        mSpo2ChartDecimator.setData(chartsData.getData());
         mSpo2Chart.getAxisLeft().removeAllLimitLines();
 
         LOG.debug("SpO2 average: {}", spo2Data.getAverage());
@@ -152,6 +158,7 @@ public class Spo2ChartFragment extends AbstractChartFragment<Spo2ChartFragment.S
         final View rootView = inflater.inflate(R.layout.fragment_charts, container, false);
 
         mSpo2Chart = rootView.findViewById(R.id.activitysleepchart);
+        mSpo2ChartDecimator = new ChartDecimator(mSpo2Chart);
 
         setupLineChart();
 
@@ -283,5 +290,10 @@ public class Spo2ChartFragment extends AbstractChartFragment<Spo2ChartFragment.S
         public int getAverage() {
             return average;
         }
+
+        @Override
+        public long getEstimatedSize() {
+            return chartsData.getEstimatedSize();
+        }
     }
 }
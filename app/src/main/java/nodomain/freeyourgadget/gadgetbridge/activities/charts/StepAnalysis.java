@@ -20,6 +20,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -27,159 +28,312 @@ import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.activities.HeartRateUtils;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySampleBatch;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySession;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityUser;
 
+/**
+ * Splits activity samples into step sessions.
+ * <p>
+ * The analysis is incremental: its state after the last processed sample, including the session
+ * that is still open, is kept as a checkpoint, so that newly arrived samples can be processed with
+ * {@link #update(ActivitySampleBatch)} or {@link #addSamples(ActivitySampleBatch)} without going
+ * over the older samples again. {@link #calculateStepSessions(ActivitySampleBatch)} starts over.
+ */
 public class StepAnalysis {
     protected static final Logger LOG = LoggerFactory.getLogger(StepAnalysis.class);
     private int totalDailySteps = 0;
 
-    public List<ActivitySession> calculateStepSessions(List<? extends ActivitySample> samples) {
-        LOG.debug("get all samples activity sessions: {}", samples.size());
-        List<ActivitySession> result = new ArrayList<>();
-        ActivityUser activityUser = new ActivityUser();
-        final int MIN_SESSION_LENGTH = 60 * GBApplication.getPrefs().getInt("chart_list_min_session_length", 5);
-        final int MAX_IDLE_PHASE_LENGTH = 60 * GBApplication.getPrefs().getInt("chart_list_max_idle_phase_length", 5);
-        final int MIN_STEPS_PER_MINUTE = GBApplication.getPrefs().getInt("chart_list_min_steps_per_minute", 40);
-        int stepLengthCm = activityUser.getStepLengthCm();
-        final double STEP_LENGTH_M = stepLengthCm * 0.01;
-        final double MIN_SESSION_INTENSITY = Math.max(0, Math.min(1, MIN_STEPS_PER_MINUTE * 0.01));
+    private final HeartRateUtils heartRateUtilsInstance = HeartRateUtils.getInstance();
+
+    private int MIN_SESSION_LENGTH;
+    private int MAX_IDLE_PHASE_LENGTH;
+    private int MIN_STEPS_PER_MINUTE;
+    private int MIN_STEPS_PER_MINUTE_FOR_RUN;
+    private int stepLengthCm;
+    private double MIN_SESSION_INTENSITY;
+    // the settings the checkpoint was calculated with
+    private int[] settings;
+
+    // checkpoint of the analysis after the last processed sample
+    private final List<ActivitySession> completedSessions = new ArrayList<>();
+    private int processedSamples = 0;
+    private int lastProcessedTimestamp = 0;
+
+    private boolean hasPreviousSample = false;
+    private int previousTimestamp = 0;
+    private boolean inSession = false;
+    private int sessionStart = 0;
+    private int activeSteps = 0; //steps that we count
+    private int activeDistanceCm = 0;
+    private int stepsBetweenActivePeriods = 0; //steps during time when we maybe take a rest but then restart
+    private int distanceBetweenActivePeriods = 0;
+    private int durationSinceLastActiveStep = 0;
+
+    // sums and counts of the valid heart rate values, instead of lists of them
+    private int heartRateSum = 0;
+    private int heartRateCount = 0;
+    private int heartRateBetweenActivePeriodsSum = 0;
+    private int heartRateBetweenActivePeriodsCount = 0;
+
+    private float activeIntensity = 0;
+    private float intensityBetweenActivePeriods = 0;
+
+    public StepAnalysis() {
+        reset();
+    }
+
+    /**
+     * Discards the checkpoint, and reloads the settings of the analysis.
+     */
+    public void reset() {
+        settings = readSettings();
+        MIN_SESSION_LENGTH = 60 * settings[0];
+        MAX_IDLE_PHASE_LENGTH = 60 * settings[1];
+        MIN_STEPS_PER_MINUTE = settings[2];
+        MIN_STEPS_PER_MINUTE_FOR_RUN = settings[3];
+        stepLengthCm = settings[4];
+        MIN_SESSION_INTENSITY = Math.max(0, Math.min(1, MIN_STEPS_PER_MINUTE * 0.01));
+
         totalDailySteps = 0;
+        completedSessions.clear();
+        processedSamples = 0;
+        lastProcessedTimestamp = 0;
+        hasPreviousSample = false;
+        previousTimestamp = 0;
+        inSession = false;
+        intensityBetweenActivePeriods = 0;
+    }
+
+    private static int[] readSettings() {
+        return new int[]{
+                GBApplication.getPrefs().getInt("chart_list_min_session_length", 5),
+                GBApplication.getPrefs().getInt("chart_list_max_idle_phase_length", 5),
+                GBApplication.getPrefs().getInt("chart_list_min_steps_per_minute", 40),
+                GBApplication.getPrefs().getInt("chart_list_min_steps_per_minute_for_run", 120),
+                new ActivityUser().getStepLengthCm(),
+        };
+    }
 
-        ActivitySample previousSample = null;
-        Date sessionStart = null;
-        Date sessionEnd;
-        int activeSteps = 0; //steps that we count
-        int activeDistanceCm = 0;
-        int stepsBetweenActivePeriods = 0; //steps during time when we maybe take a rest but then restart
-        int distanceBetweenActivePeriods = 0;
-        int durationSinceLastActiveStep = 0;
-        ActivityKind activityKind;
+    /**
+     * Returns whether the settings of the analysis changed since the checkpoint was started, so
+     * that continuing it would not give the same sessions as a new analysis.
+     */
+    public boolean hasSettingsChanged() {
+        return !Arrays.equals(settings, readSettings());
+    }
 
-        List<Integer> heartRateSum = new ArrayList<>();
-        List<Integer> heartRateBetweenActivePeriodsSum = new ArrayList<>();
+    public List<ActivitySession> calculateStepSessions(List<? extends ActivitySample> samples) {
+        return calculateStepSessions(ActivitySampleBatch.fromSamples(samples));
+    }
+
+    public List<ActivitySession> calculateStepSessions(ActivitySampleBatch samples) {
+        LOG.debug("get all samples activity sessions: {}", samples.size());
+        reset();
+        addSamples(samples, 0);
+        return getSessions();
+    }
+
+    /**
+     * Continues the analysis with the samples that were not processed yet. The batch must start
+     * with the samples that were processed before, e.g. because the samples of the same day were
+     * loaded again. If it does not, e.g. because older samples were synced in the meantime, or the
+     * settings changed, the analysis starts over. Only the timestamps of the processed samples are
+     * compared, callers that can not rule out samples being replaced in place must reset first.
+     *
+     * @return the sessions of all samples processed so far
+     */
+    public List<ActivitySession> update(ActivitySampleBatch samples) {
+        if (hasSettingsChanged() || !isContinuationOf(samples)) {
+            LOG.debug("Samples or settings do not match the checkpoint, starting over");
+            reset();
+        }
+        addSamples(samples, processedSamples);
+        return getSessions();
+    }
 
-        float activeIntensity = 0;
-        float intensityBetweenActivePeriods = 0;
-        HeartRateUtils heartRateUtilsInstance = HeartRateUtils.getInstance();
+    private boolean isContinuationOf(ActivitySampleBatch samples) {
+        if (processedSamples == 0) {
+            return true;
+        }
+        if (processedSamples > samples.size() || samples.getTimestamp(processedSamples - 1) != lastProcessedTimestamp) {
+            return false;
+        }
+        return processedSamples == samples.size() || samples.getTimestamp(processedSamples) > lastProcessedTimestamp;
+    }
 
-        for (ActivitySample sample : samples) {
-            int steps = sample.getSteps();
-            if (steps > 0) {
-                totalDailySteps += steps;
+    /**
+     * Processes the samples of the batch that are newer than the last processed sample, e.g. the
+     * samples that were received since the last call.
+     */
+    public void addSamples(ActivitySampleBatch samples) {
+        int from = 0;
+        if (processedSamples > 0) {
+            while (from < samples.size() && samples.getTimestamp(from) <= lastProcessedTimestamp) {
+                from++;
             }
+        }
+        addSamples(samples, from);
+    }
+
+    private void addSamples(ActivitySampleBatch samples, int from) {
+        for (int i = from; i < samples.size(); i++) {
+            processSample(
+                    samples.getTimestamp(i),
+                    samples.getSteps(i),
+                    samples.getDistanceCm(i),
+                    samples.getHeartRate(i),
+                    samples.getIntensity(i),
+                    samples.isTrailing(i)
+            );
+            processedSamples++;
+            lastProcessedTimestamp = samples.getTimestamp(i);
+        }
+    }
+
+    private void processSample(int timestamp, int steps, int distanceCm, int heartRate, float intensity, boolean trailing) {
+        if (steps > 0) {
+            totalDailySteps += steps;
+        }
 
-            /*
-             * FIXME This should only consider non-sleep samples. However, this always had the wrong
-             *  check for that, so it processed everything. In #3977, that was corrected, which
-             *  introduces a regression for some devices such as the Amazfit Bip. Processing everything
-             *  seems to work, but this logic needs to be reviewed.
-             */
-            if (!(sample instanceof TrailingActivitySample)) { //trailing samples have wrong date and make trailing activity have 0 duration
-
-                if (sessionStart == null) {
-                    sessionStart = getDateFromSample(sample);
-                    if (sample.getSteps() >= 0) {
-                        activeSteps = sample.getSteps();
-                    } else {
-                        activeSteps = 0;
-                    }
-                    if (sample.getDistanceCm() >= 0) {
-                        activeDistanceCm = sample.getDistanceCm();
-                    } else if (activeSteps > 0) {
-                        activeDistanceCm = activeSteps * stepLengthCm;
-                    } else {
-                        activeDistanceCm = 0;
-                    }
-                    activeIntensity = sample.getIntensity();
-                    heartRateSum = new ArrayList<>();
-                    if (heartRateUtilsInstance.isValidHeartRateValue(sample.getHeartRate())) {
-                        heartRateSum.add(sample.getHeartRate());
-                    }
-                    durationSinceLastActiveStep = 0;
-                    stepsBetweenActivePeriods = 0;
-                    distanceBetweenActivePeriods = 0;
-                    heartRateBetweenActivePeriodsSum = new ArrayList<>();
-                    previousSample = null;
+        /*
+         * FIXME This should only consider non-sleep samples. However, this always had the wrong
+         *  check for that, so it processed everything. In #3977, that was corrected, which
+         *  introduces a regression for some devices such as the Amazfit Bip. Processing everything
+         *  seems to work, but this logic needs to be reviewed.
+         */
+        if (trailing) { //trailing samples have wrong date and make trailing activity have 0 duration
+            return;
+        }
+
+        if (!inSession) {
+            inSession = true;
+            sessionStart = timestamp;
+            if (steps >= 0) {
+                activeSteps = steps;
+            } else {
+                activeSteps = 0;
+            }
+            if (distanceCm >= 0) {
+                activeDistanceCm = distanceCm;
+            } else if (activeSteps > 0) {
+                activeDistanceCm = activeSteps * stepLengthCm;
+            } else {
+                activeDistanceCm = 0;
+            }
+            activeIntensity = intensity;
+            heartRateSum = 0;
+            heartRateCount = 0;
+            if (heartRateUtilsInstance.isValidHeartRateValue(heartRate)) {
+                heartRateSum += heartRate;
+                heartRateCount++;
+            }
+            durationSinceLastActiveStep = 0;
+            stepsBetweenActivePeriods = 0;
+            distanceBetweenActivePeriods = 0;
+            heartRateBetweenActivePeriodsSum = 0;
+            heartRateBetweenActivePeriodsCount = 0;
+            hasPreviousSample = false;
+        }
+        if (hasPreviousSample) {
+            int durationSinceLastSample = timestamp - previousTimestamp;
+
+            if (steps > MIN_STEPS_PER_MINUTE || //either some steps
+                    (intensity > MIN_SESSION_INTENSITY && steps > 0)) { //or some intensity plus at least one step
+                activeSteps += steps + stepsBetweenActivePeriods;
+                if (distanceCm >= 0) {
+                    activeDistanceCm += distanceCm + distanceBetweenActivePeriods;
+                } else {
+                    activeDistanceCm += steps * stepLengthCm + distanceBetweenActivePeriods;
+                }
+                activeIntensity += intensity + intensityBetweenActivePeriods;
+                if (heartRateUtilsInstance.isValidHeartRateValue(heartRate)) {
+                    heartRateSum += heartRate;
+                    heartRateCount++;
                 }
-                if (previousSample != null) {
-                    int durationSinceLastSample = sample.getTimestamp() - previousSample.getTimestamp();
-
-                    if (sample.getSteps() > MIN_STEPS_PER_MINUTE || //either some steps
-                            (sample.getIntensity() > MIN_SESSION_INTENSITY && sample.getSteps() > 0)) { //or some intensity plus at least one step
-                        activeSteps += sample.getSteps() + stepsBetweenActivePeriods;
-                        if (sample.getDistanceCm() >= 0) {
-                            activeDistanceCm += sample.getDistanceCm() + distanceBetweenActivePeriods;
-                        } else {
-                            activeDistanceCm += sample.getSteps() * stepLengthCm + distanceBetweenActivePeriods;
-                        }
-                        activeIntensity += sample.getIntensity() + intensityBetweenActivePeriods;
-                        if (heartRateUtilsInstance.isValidHeartRateValue(sample.getHeartRate())) {
-                            heartRateSum.add(sample.getHeartRate());
-                        }
-                        heartRateSum.addAll(heartRateBetweenActivePeriodsSum);
-                        heartRateBetweenActivePeriodsSum = new ArrayList<>();
-                        stepsBetweenActivePeriods = 0;
-                        distanceBetweenActivePeriods = 0;
-                        intensityBetweenActivePeriods = 0;
-                        durationSinceLastActiveStep = 0;
-
-                    } else { //short break data to remember, we will add it to the rest later, if break not too long
-                        if (sample.getSteps() >= 0) {
-                            stepsBetweenActivePeriods += sample.getSteps();
-                        }
-                        if (sample.getDistanceCm() >= 0) {
-                            distanceBetweenActivePeriods += sample.getDistanceCm();
-                        } else if (sample.getSteps() > 0) {
-                            distanceBetweenActivePeriods += sample.getSteps() * stepLengthCm;
-                        }
-                        if (heartRateUtilsInstance.isValidHeartRateValue(sample.getHeartRate())) {
-                            heartRateBetweenActivePeriodsSum.add(sample.getHeartRate());
-                        }
-                        durationSinceLastActiveStep += durationSinceLastSample;
-                        intensityBetweenActivePeriods += sample.getIntensity();
-                    }
-                    if (durationSinceLastActiveStep >= MAX_IDLE_PHASE_LENGTH) { //break too long, we split here
-
-                        int current = sample.getTimestamp();
-                        int starting = (int) (sessionStart.getTime() / 1000);
-                        int session_length = current - starting - durationSinceLastActiveStep;
-
-                        if (session_length >= MIN_SESSION_LENGTH) { //valid activity session
-                            int heartRateAverage = heartRateSum.toArray().length > 0 ? calculateSumOfInts(heartRateSum) / heartRateSum.toArray().length : 0;
-                            float distance = activeDistanceCm * 0.01f;
-                            sessionEnd = new Date((sample.getTimestamp() - durationSinceLastActiveStep) * 1000L);
-                            activityKind = detect_activity_kind(session_length, activeSteps, heartRateAverage, activeIntensity);
-                            ActivitySession activitySession = new ActivitySession(sessionStart, sessionEnd, activeSteps, heartRateAverage, activeIntensity, distance, activityKind);
-                            //activitySession.setSessionType(ActivitySession.SESSION_ONGOING);
-                            result.add(activitySession);
-                        }
-                        sessionStart = null;
-                    }
+                heartRateSum += heartRateBetweenActivePeriodsSum;
+                heartRateCount += heartRateBetweenActivePeriodsCount;
+                heartRateBetweenActivePeriodsSum = 0;
+                heartRateBetweenActivePeriodsCount = 0;
+                stepsBetweenActivePeriods = 0;
+                distanceBetweenActivePeriods = 0;
+                intensityBetweenActivePeriods = 0;
+                durationSinceLastActiveStep = 0;
+
+            } else { //short break data to remember, we will add it to the rest later, if break not too long
+                if (steps >= 0) {
+                    stepsBetweenActivePeriods += steps;
                 }
-                previousSample = sample;
+                if (distanceCm >= 0) {
+                    distanceBetweenActivePeriods += distanceCm;
+                } else if (steps > 0) {
+                    distanceBetweenActivePeriods += steps * stepLengthCm;
+                }
+                if (heartRateUtilsInstance.isValidHeartRateValue(heartRate)) {
+                    heartRateBetweenActivePeriodsSum += heartRate;
+                    heartRateBetweenActivePeriodsCount++;
+                }
+                durationSinceLastActiveStep += durationSinceLastSample;
+                intensityBetweenActivePeriods += intensity;
             }
-        }
-        //trailing activity: make sure we show the last portion of the data as well in case no further activity is recorded yet
+            if (durationSinceLastActiveStep >= MAX_IDLE_PHASE_LENGTH) { //break too long, we split here
 
-        if (sessionStart != null) {
-            int current = previousSample.getTimestamp();
-            int starting = (int) (sessionStart.getTime() / 1000);
-            int session_length = current - starting - durationSinceLastActiveStep;
-
-            if (session_length >= MIN_SESSION_LENGTH) {
-                int heartRateAverage = heartRateSum.toArray().length > 0 ? calculateSumOfInts(heartRateSum) / heartRateSum.toArray().length : 0;
-                float distance = activeDistanceCm * 0.01f;
-                sessionEnd = getDateFromSample(previousSample);
-                activityKind = detect_activity_kind(session_length, activeSteps, heartRateAverage, activeIntensity);
-                ActivitySession ongoingActivity = new ActivitySession(sessionStart, sessionEnd, activeSteps, heartRateAverage, activeIntensity, distance, activityKind);
-                ongoingActivity.setSessionType(ActivitySession.SESSION_ONGOING);
-                result.add(ongoingActivity);
+                int session_length = timestamp - sessionStart - durationSinceLastActiveStep;
+
+                if (session_length >= MIN_SESSION_LENGTH) { //valid activity session
+                    Date sessionEnd = new Date((timestamp - durationSinceLastActiveStep) * 1000L);
+                    //activitySession.setSessionType(ActivitySession.SESSION_ONGOING);
+                    completedSessions.add(createSession(session_length, sessionEnd));
+                }
+                inSession = false;
             }
         }
+        hasPreviousSample = true;
+        previousTimestamp = timestamp;
+    }
+
+    private ActivitySession createSession(int session_length, Date sessionEnd) {
+        int heartRateAverage = heartRateCount > 0 ? heartRateSum / heartRateCount : 0;
+        float distance = activeDistanceCm * 0.01f;
+        ActivityKind activityKind = detect_activity_kind(session_length, activeSteps, heartRateAverage, activeIntensity);
+        return new ActivitySession(new Date(sessionStart * 1000L), sessionEnd, activeSteps, heartRateAverage, activeIntensity, distance, activityKind);
+    }
+
+    /**
+     * Returns the sessions of all samples processed so far, including the session that is
+     * still ongoing, if any.
+     */
+    public List<ActivitySession> getSessions() {
+        List<ActivitySession> result = new ArrayList<>(completedSessions.size() + 1);
+        result.addAll(completedSessions);
+        ActivitySession ongoingActivity = getOngoingSession();
+        if (ongoingActivity != null) {
+            result.add(ongoingActivity);
+        }
         return result;
     }
 
+    /**
+     * Returns the session that is still ongoing after the last processed sample, or null.
+     */
+    public ActivitySession getOngoingSession() {
+        //trailing activity: make sure we show the last portion of the data as well in case no further activity is recorded yet
+        if (!inSession) {
+            return null;
+        }
+        int session_length = previousTimestamp - sessionStart - durationSinceLastActiveStep;
+        if (session_length < MIN_SESSION_LENGTH) {
+            return null;
+        }
+        ActivitySession ongoingActivity = createSession(session_length, new Date(previousTimestamp * 1000L));
+        ongoingActivity.setSessionType(ActivitySession.SESSION_ONGOING);
+        return ongoingActivity;
+    }
+
+    public int getLastProcessedTimestamp() {
+        return lastProcessedTimestamp;
+    }
+
     public ActivitySession calculateSummary(List<ActivitySession> sessions, boolean empty) {
 
         Date startTime = null;
@@ -240,7 +394,6 @@ public class StepAnalysis {
     }
 
     private ActivityKind detect_activity_kind(int session_length, int activeSteps, int heartRateAverage, float intensity) {
-        final int MIN_STEPS_PER_MINUTE_FOR_RUN = GBApplication.getPrefs().getInt("chart_list_min_steps_per_minute_for_run", 120);
         int spm = (int) (activeSteps / (session_length / 60));
         if (spm > MIN_STEPS_PER_MINUTE_FOR_RUN) {
             return ActivityKind.RUNNING;
@@ -253,8 +406,4 @@ public class StepAnalysis {
         }
         return ActivityKind.ACTIVITY;
     }
-
-    private Date getDateFromSample(ActivitySample sample) {
-        return new Date(sample.getTimestamp() * 1000L);
-    }
 }
@@ -0,0 +1,218 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.activities.charts;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.database.DailySummaryManager;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+
+/**
+ * Calculates the step streaks shown by {@link StepStreaksDashboard} in a single pass over the
+ * daily step totals, which must be added in chronological order, without gaps.
+ * <p>
+ * The state only depends on the days added so far, so it can be persisted once the last added
+ * day can no longer change with a sync (see {@link DailySummaryManager#getLastSettledDay(GBDevice)}),
+ * and later calculations only need to add the days since. A persisted state is discarded when
+ * the goal changes or the daily summaries were invalidated.
+ */
+public class StepStreaksCalculator {
+    private static final Logger LOG = LoggerFactory.getLogger(StepStreaksCalculator.class);
+
+    static final String PREF_STATE = "step_streaks_state";
+    static final int STATE_VERSION = 1;
+
+    private final int goal;
+    private int lastDay = 0;
+
+    private int runDays = 0;
+    private int runSteps = 0;
+    private int runTimestamp = 0;
+
+    private int maxDays = 0;
+    private int maxSteps = 0;
+    private int maxTimestamp = 0;
+
+    private int totalSteps = 0;
+    private int goalDays = 0;
+    private int stepDays = 0;
+    private int firstStepsTimestamp = 0;
+
+    public StepStreaksCalculator(final int goal) {
+        this.goal = goal;
+    }
+
+    /**
+     * Adds the steps of the day following the last added one.
+     *
+     * @param day       the day, as yyyyMMdd
+     * @param timestamp the start of the day, in seconds
+     * @param isToday   if the goal is not reached today, it may still be reached later, so
+     *                  today does not interrupt the current streak
+     */
+    public void addDay(final int day, final int timestamp, final int steps, final boolean isToday) {
+        lastDay = day;
+
+        if (steps > 0) {
+            stepDays++;
+            totalSteps += steps;
+            if (firstStepsTimestamp == 0) {
+                firstStepsTimestamp = timestamp;
+            }
+        }
+
+        if (steps >= goal) {
+            if (runDays == 0) {
+                runTimestamp = timestamp;
+            }
+            runDays++;
+            runSteps += steps;
+            goalDays++;
+        } else if (!isToday) {
+            updateMaximum();
+            runDays = 0;
+            runSteps = 0;
+            runTimestamp = 0;
+        }
+    }
+
+    private void updateMaximum() {
+        // on a tie, the most recent streak is shown
+        if (runDays > 0 && runDays >= maxDays) {
+            maxDays = runDays;
+            maxSteps = runSteps;
+            maxTimestamp = runTimestamp;
+        }
+    }
+
+    /**
+     * Returns the last added day, as yyyyMMdd, or 0 if no day was added yet.
+     */
+    public int getLastDay() {
+        return lastDay;
+    }
+
+    public int getCurrentDays() {
+        return runDays;
+    }
+
+    public int getCurrentSteps() {
+        return runSteps;
+    }
+
+    public int getCurrentTimestamp() {
+        return runTimestamp;
+    }
+
+    public int getMaximumDays() {
+        return Math.max(maxDays, runDays);
+    }
+
+    public int getMaximumSteps() {
+        return runDays > 0 && runDays >= maxDays ? runSteps : maxSteps;
+    }
+
+    public int getMaximumTimestamp() {
+        return runDays > 0 && runDays >= maxDays ? runTimestamp : maxTimestamp;
+    }
+
+    public int getTotalSteps() {
+        return totalSteps;
+    }
+
+    /**
+     * Returns the number of days on which the goal was reached.
+     */
+    public int getGoalDays() {
+        return goalDays;
+    }
+
+    /**
+     * Returns the number of days with any steps.
+     */
+    public int getStepDays() {
+        return stepDays;
+    }
+
+    public int getFirstStepsTimestamp() {
+        return firstStepsTimestamp;
+    }
+
+    /**
+     * Returns the persisted state of the device, or null if there is none for the given goal.
+     */
+    @Nullable
+    public static StepStreaksCalculator load(final GBDevice device, final int goal) {
+        final SharedPreferences prefs = GBApplication.getDeviceSpecificSharedPrefs(device.getAddress());
+        final String state = prefs.getString(PREF_STATE, null);
+        if (state == null) {
+            return null;
+        }
+
+        try {
+            final String[] values = state.split(",");
+            if (values.length != 14
+                    || Integer.parseInt(values[0]) != STATE_VERSION
+                    || Integer.parseInt(values[1]) != DailySummaryManager.getGeneration()
+                    || Integer.parseInt(values[2]) != goal) {
+                return null;
+            }
+            final StepStreaksCalculator calculator = new StepStreaksCalculator(goal);
+            calculator.lastDay = Integer.parseInt(values[3]);
+            calculator.runDays = Integer.parseInt(values[4]);
+            calculator.runSteps = Integer.parseInt(values[5]);
+            calculator.runTimestamp = Integer.parseInt(values[6]);
+            calculator.maxDays = Integer.parseInt(values[7]);
+            calculator.maxSteps = Integer.parseInt(values[8]);
+            calculator.maxTimestamp = Integer.parseInt(values[9]);
+            calculator.totalSteps = Integer.parseInt(values[10]);
+            calculator.goalDays = Integer.parseInt(values[11]);
+            calculator.stepDays = Integer.parseInt(values[12]);
+            calculator.firstStepsTimestamp = Integer.parseInt(values[13]);
+            return calculator;
+        } catch (final NumberFormatException e) {
+            LOG.warn("Invalid step streaks state: {}", state, e);
+            return null;
+        }
+    }
+
+    public void save(final GBDevice device) {
+        final String state = STATE_VERSION + "," +
+                DailySummaryManager.getGeneration() + "," +
+                goal + "," +
+                lastDay + "," +
+                runDays + "," +
+                runSteps + "," +
+                runTimestamp + "," +
+                maxDays + "," +
+                maxSteps + "," +
+                maxTimestamp + "," +
+                totalSteps + "," +
+                goalDays + "," +
+                stepDays + "," +
+                firstStepsTimestamp;
+        GBApplication.getDeviceSpecificSharedPrefs(device.getAddress()).edit()
+                .putString(PREF_STATE, state)
+                .apply();
+    }
+}
@@ -26,7 +26,6 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.text.format.DateUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -49,11 +48,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.database.DBAccess;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.database.DailySummaryManager;
+import nodomain.freeyourgadget.gadgetbridge.entities.DailySummary;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.model.DailyTotals;
@@ -71,9 +73,8 @@ public class StepStreaksDashboard extends MaterialDialogFragment {
     private StepsStreaks stepsStreaks = new StepsStreaks();
     private static final String GOAL = "goal";
     private static final String STREAKS = "streaks";
-    private static final String PERIOD_CURRENT = "current";
-    private static final String PERIOD_TOTALS = "totals";
-    private static final int MIN_YEAR = 2015; //we go back in time, this is minimal year boundary
+    private static final int MIN_YEAR = 2015; //this is the minimal year boundary of the data
+    private static final int DAYS_PER_QUERY = 366;
 
     public StepStreaksDashboard() {
 
@@ -81,8 +82,9 @@ public class StepStreaksDashboard extends MaterialDialogFragment {
 
     //Calculates some stats for longest streak (daily steps goal being reached for subsequent days
     //without interruption (day with steps less then goal)
+    //The streaks are calculated in a single pass over the daily totals, and the state is
+    //persisted up to the last day that can no longer change, see StepStreaksCalculator
     //Possible improvements/nice to haves:
-    //- cache values until new activity fetch is performed
     //- read the goals from the USER_ATTRIBUTES table. But, this would also require to be able
     //to edit/add values there...
 
@@ -140,10 +142,10 @@ public class StepStreaksDashboard extends MaterialDialogFragment {
                 cancelTasks = true;
                 indicate_progress(false);
                 populateData();
+                return;
             }
         }
-        createTaskCalculateLatestStepsStreak("Visualizing data current", getActivity(), PERIOD_CURRENT).execute();
-        createTaskCalculateLatestStepsStreak("Visualizing data maximum", getActivity(), PERIOD_TOTALS).execute();
+        createTaskCalculateLatestStepsStreak("Visualizing data", getActivity()).execute();
     }
 
     void indicate_progress(boolean inProgress) {
@@ -234,29 +236,24 @@ public class StepStreaksDashboard extends MaterialDialogFragment {
         }
     }
 
-    protected TaskCalculateLatestStepsStreak createTaskCalculateLatestStepsStreak(String taskName, Context context, String period) {
-        return new TaskCalculateLatestStepsStreak(taskName, context, period);
+    protected TaskCalculateLatestStepsStreak createTaskCalculateLatestStepsStreak(String taskName, Context context) {
+        return new TaskCalculateLatestStepsStreak(taskName, context);
     }
 
     public class TaskCalculateLatestStepsStreak extends DBAccess {
-        String period;
 
-        public TaskCalculateLatestStepsStreak(String taskName, Context context, String period) {
+        public TaskCalculateLatestStepsStreak(String taskName, Context context) {
             super(taskName, context);
-            this.period = period;
         }
 
         @Override
-        protected void doInBackground(DBHandler db) {
-            switch (period) {
-                case PERIOD_CURRENT:
-                    calculateStreakData(db, PERIOD_CURRENT, gbDevice, stepsGoal);
+        protected boolean isReadOnly() {
+            return true;
+        }
 
-                    break;
-                case PERIOD_TOTALS:
-                    calculateStreakData(db, PERIOD_TOTALS, gbDevice, stepsGoal);
-                    break;
-            }
+        @Override
+        protected void doInBackground(DBHandler db) {
+            calculateStreakData(db, gbDevice, stepsGoal);
         }
 
         @Override
@@ -269,10 +266,8 @@ public class StepStreaksDashboard extends MaterialDialogFragment {
             super.onPostExecute(o);
             FragmentActivity activity = getActivity();
             if (activity != null && !activity.isFinishing() && !activity.isDestroyed()) {
-                if (period.equals(PERIOD_TOTALS)) {
-                    backgroundTaskFinished = true;
-                    indicate_progress(false);
-                }
+                backgroundTaskFinished = true;
+                indicate_progress(false);
                 populateData();
             } else {
                 LOG.info("Not filling data because activity is not available anymore");
@@ -280,82 +275,96 @@ public class StepStreaksDashboard extends MaterialDialogFragment {
         }
     }
 
-    private void calculateStreakData(DBHandler db, String period, GBDevice device, int goal) {
+    private void calculateStreakData(DBHandler db, GBDevice device, int goal) {
+        Calendar today = Calendar.getInstance();
+        int todayKey = DailySummaryManager.toDayKey(today);
+        Calendar yesterday = (Calendar) today.clone();
+        yesterday.add(Calendar.DATE, -1);
+        //the state is persisted up to this day, the following days may still change with a sync
+        int settledDay = Math.min(DailySummaryManager.getLastSettledDay(device), DailySummaryManager.toDayKey(yesterday));
+
         Calendar day = Calendar.getInstance();
-        int streak_steps = 0;
-        int streak_days = 0;
-        int timestamp = 0;
-
-        int all_step_days = 0;
-        int all_streak_days = 0;
-        int all_steps = 0;
-        int firstDataTimestamp = 0;
-
-        ActivitySample firstSample = DailyTotals.getFirstSample(db, device);
-        if (firstSample == null) { //no data at all
-            return;
+        StepStreaksCalculator calculator = StepStreaksCalculator.load(device, goal);
+        if (calculator != null && calculator.getLastDay() <= settledDay) {
+            int lastDay = calculator.getLastDay();
+            day.set(lastDay / 10000, lastDay / 100 % 100 - 1, lastDay % 100);
+            day.add(Calendar.DATE, 1);
+        } else {
+            calculator = new StepStreaksCalculator(goal);
+            ActivitySample firstSample = DailyTotals.getFirstSample(db, device);
+            if (firstSample == null) { //no data at all
+                return;
+            }
+            day.setTimeInMillis(firstSample.getTimestamp() * 1000L);
+            if (day.get(Calendar.YEAR) < MIN_YEAR) {
+                //avoid starting too far back, if the data has a timestamp too far into the past
+                day.set(MIN_YEAR, Calendar.JANUARY, 1);
+            }
         }
-        Calendar firstDate = Calendar.getInstance();
-        firstDate.setTime(DateTimeUtils.shiftByDays(new Date(firstSample.getTimestamp() * 1000L), -1));
-        //go one day back, to ensure we are before the first day, to calculate first day data as well
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        day.set(Calendar.MILLISECOND, 0);
 
-        while (true) {
+        //the daily totals are read in chunks, each of them with a single query
+        while (DailySummaryManager.toDayKey(day) <= todayKey) {
             if (cancelTasks) {
                 GB.toast("Cancelling background jobs", Toast.LENGTH_SHORT, GB.INFO);
-                break;
+                return;
             }
 
-            DailyTotals daily_data = DailyTotals.getDailyTotalsForDevice(device, day, db);
-            int steps_this_day = (int) daily_data.getSteps();
+            Calendar chunkEnd = (Calendar) day.clone();
+            chunkEnd.add(Calendar.DATE, DAYS_PER_QUERY - 1);
+            if (DailySummaryManager.toDayKey(chunkEnd) > todayKey) {
+                chunkEnd = today;
+            }
 
-            if (steps_this_day > 0) {
-                all_step_days++;
-                all_steps += steps_this_day;
-                firstDataTimestamp = (int) (day.getTimeInMillis() / 1000);
+            List<DailySummary> summaries = getDailySummaries(db, device, day, chunkEnd, settledDay);
+            for (DailySummary summary : summaries) {
+                calculator.addDay(summary.getDay(), (int) (day.getTimeInMillis() / 1000), summary.getSteps(), summary.getDay() == todayKey);
+                if (summary.getDay() == settledDay) {
+                    calculator.save(device);
+                }
+                day.add(Calendar.DATE, 1);
             }
+        }
 
-            if (steps_this_day >= goal) {
-                streak_steps += steps_this_day;
-                streak_days++;
-                all_streak_days++;
-                timestamp = (int) (day.getTimeInMillis() / 1000);
-                Date newDate = DateTimeUtils.shiftByDays(new Date(day.getTimeInMillis()), -1);
-                day.setTime(newDate);
-            } else if (DateUtils.isToday(day.getTimeInMillis())) {
-                //if goal is not reached today, we might still get our steps later
-                // so do not count this day but do not interrupt
-                Date newDate = DateTimeUtils.shiftByDays(new Date(day.getTimeInMillis()), -1);
-                day.setTime(newDate);
-            } else {
-                if (period.equals(PERIOD_CURRENT)) {
-                    stepsStreaks.current.days = streak_days;
-                    stepsStreaks.current.steps = streak_steps;
-                    stepsStreaks.current.timestamp = timestamp;
-                    return;
-                } else if (period.equals(PERIOD_TOTALS)) {
-                    //reset max
-                    if (streak_days > stepsStreaks.maximum.days) {
-                        stepsStreaks.maximum.steps = streak_steps;
-                        stepsStreaks.maximum.days = streak_days;
-                        stepsStreaks.maximum.timestamp = timestamp;
-                    }
-
-                    streak_days = 0;
-                    streak_steps = 0;
-                    Date newDate = DateTimeUtils.shiftByDays(new Date(day.getTimeInMillis()), -1);
-                    day.setTime(newDate);
-                    if (day.before(firstDate) || day.get(Calendar.YEAR) < MIN_YEAR) {
-                        //avoid rolling back too far, if the data has a timestamp too far into future
-                        //we could make this date configurable if needed for people who imported old data
-                        stepsStreaks.total.steps = all_steps;
-                        stepsStreaks.total.days = all_streak_days;
-                        stepsStreaks.total.total_days = all_step_days;
-                        stepsStreaks.total.timestamp = firstDataTimestamp;
-                        return;
-                    }
+        stepsStreaks.current.days = calculator.getCurrentDays();
+        stepsStreaks.current.steps = calculator.getCurrentSteps();
+        stepsStreaks.current.timestamp = calculator.getCurrentTimestamp();
+
+        stepsStreaks.maximum.days = calculator.getMaximumDays();
+        stepsStreaks.maximum.steps = calculator.getMaximumSteps();
+        stepsStreaks.maximum.timestamp = calculator.getMaximumTimestamp();
+
+        stepsStreaks.total.steps = calculator.getTotalSteps();
+        stepsStreaks.total.days = calculator.getGoalDays();
+        stepsStreaks.total.total_days = calculator.getStepDays();
+        stepsStreaks.total.timestamp = calculator.getFirstStepsTimestamp();
+    }
+
+    /**
+     * Returns the summaries of the days from {@code from} to {@code to}. The settled days are
+     * seeded from the stored summaries, without calculating them from the samples, unless some
+     * of them were not stored yet.
+     */
+    private static List<DailySummary> getDailySummaries(DBHandler db, GBDevice device, Calendar from, Calendar to, int settledDay) {
+        if (DailySummaryManager.toDayKey(to) <= settledDay) {
+            List<DailySummary> stored = DailySummaryManager.getStoredDailySummaries(device, from, to, db);
+            Calendar day = (Calendar) from.clone();
+            boolean complete = true;
+            for (DailySummary summary : stored) {
+                if (summary.getDay() != DailySummaryManager.toDayKey(day)) {
+                    complete = false;
+                    break;
                 }
+                day.add(Calendar.DATE, 1);
+            }
+            if (complete && DailySummaryManager.toDayKey(day) > DailySummaryManager.toDayKey(to)) {
+                return stored;
             }
         }
+        return DailySummaryManager.getDailySummaries(device, from, to, db);
     }
 
     private void take_share_screenshot(Context context) {
@@ -97,12 +97,15 @@ public class StepsDailyFragment extends StepsFragment<StepsDailyFragment.StepsDa
         return getString(R.string.steps);
     }
 
+    @Override
+    protected String getChartsDataCacheKey() {
+        return "";
+    }
+
     @Override
     protected StepsDailyFragment.StepsData refreshInBackground(ChartsHost chartsHost, DBHandler db, GBDevice device) {
         Calendar day = Calendar.getInstance();
         day.setTime(chartsHost.getEndDate());
-        String formattedDate = new SimpleDateFormat("E, MMM dd").format(chartsHost.getEndDate());
-        mDateView.setText(formattedDate);
         List<StepsDay> stepsDayList = getMyStepsDaysData(db, day, device);
         final StepsDay stepsDay;
         if (stepsDayList.isEmpty()) {
@@ -117,6 +120,9 @@ public class StepsDailyFragment extends StepsFragment<StepsDailyFragment.StepsDa
 
     @Override
     protected void updateChartsnUIThread(StepsDailyFragment.StepsData stepsData) {
+        String formattedDate = new SimpleDateFormat("E, MMM dd").format(getEndDate());
+        mDateView.setText(formattedDate);
+
         final int width = (int) TypedValue.applyDimension(
                 TypedValue.COMPLEX_UNIT_DIP,
                 300,
@@ -286,5 +292,10 @@ public class StepsDailyFragment extends StepsFragment<StepsDailyFragment.StepsDa
             this.todayStepsDay = todayStepsDay;
             this.samples = samplesOfDay;
         }
+
+        @Override
+        public long getEstimatedSize() {
+            return 1024 + samples.size() * 96L;
+        }
     }
 }
@@ -74,6 +74,7 @@ public class StressChartFragment extends AbstractChartFragment<StressChartFragme
     protected static final Logger LOG = LoggerFactory.getLogger(ActivitySleepChartFragment.class);
 
     private LineChart mStressChart;
+    private ChartDecimator mStressChartDecimator;
     private PieChart mStressLevelsPieChart;
     private TextView stressChartRelaxedTime;
     private TextView stressChartMildTime;
@@ -102,6 +103,11 @@ public class StressChartFragment extends AbstractChartFragment<StressChartFragme
         STRESS_AVERAGE_LABEL = requireContext().getString(R.string.charts_legend_stress_average);
     }
 
+    @Override
+    protected String getChartsDataCacheKey() {
+        return "";
+    }
+
     @Override
     protected StressChartsData refreshInBackground(final ChartsHost chartsHost, final DBHandler db, final GBDevice device) {
         int tsEnd = getTSEnd();
@@ -185,7 +191,7 @@ public class StressChartFragment extends AbstractChartFragment<StressChartFragme
         final DefaultChartsData<LineData> chartsData = stressData.getChartsData();
         mStressChart.setData(null); // workaround for https://github.com/PhilJay/MPAndroidChart/issues/2317
         mStressChart.getXAxis().setValueFormatter(chartsData.getXValueFormatter());
-        mStressChart.setData(chartsData.getData());
+        mStressChartDecimator.setData(chartsData.getData());
         mStressChart.getAxisRight().removeAllLimitLines();
 
         if (stressData.getAverage() > 0) {
@@ -215,6 +221,7 @@ public class StressChartFragment extends AbstractChartFragment<StressChartFragme
         }
 
         mStressChart = rootView.findViewById(R.id.stress_line_chart);
+        mStressChartDecimator = new ChartDecimator(mStressChart);
         mStressLevelsPieChart = rootView.findViewById(R.id.stress_pie_chart);
         stressChartRelaxedTime = rootView.findViewById(R.id.stress_chart_relaxed_time);
         stressChartMildTime = rootView.findViewById(R.id.stress_chart_mild_time);
@@ -528,6 +535,11 @@ public class StressChartFragment extends AbstractChartFragment<StressChartFragme
         public int getAverage() {
             return average;
         }
+
+        @Override
+        public long getEstimatedSize() {
+            return chartsData.getEstimatedSize();
+        }
     }
 
     public enum StressType {
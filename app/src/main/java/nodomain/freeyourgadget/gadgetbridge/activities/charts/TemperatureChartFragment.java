@@ -54,6 +54,7 @@ public class TemperatureChartFragment extends AbstractChartFragment<TemperatureC
     protected static final Logger LOG = LoggerFactory.getLogger(TemperatureChartFragment.class);
 
     private LineChart mTemperatureChart;
+    private ChartDecimator mTemperatureChartDecimator;
     private int BACKGROUND_COLOR;
     private int DESCRIPTION_COLOR;
     private int CHART_TEXT_COLOR;
@@ -76,6 +77,11 @@ public class TemperatureChartFragment extends AbstractChartFragment<TemperatureC
         }
     }
 
+    @Override
+    protected String getChartsDataCacheKey() {
+        return "";
+    }
+
     @Override
     protected TemperatureChartsData refreshInBackground(final ChartsHost chartsHost, final DBHandler db, final GBDevice device) {
         final List<? extends TemperatureSample> samples = getSamples(db, device);
@@ -95,7 +101,7 @@ public class TemperatureChartFragment extends AbstractChartFragment<TemperatureC
         mTemperatureChart.getAxisLeft().setAxisMinimum(30f);
         mTemperatureChart.getAxisLeft().setAxisMaximum(45f);
 
-        mTemperatureChart.setData(temperatureData.getData());
+        mTemperatureChartDecimator.setData(temperatureData.getData());
     }
 
     @Override
@@ -110,6 +116,7 @@ public class TemperatureChartFragment extends AbstractChartFragment<TemperatureC
         final View rootView = inflater.inflate(R.layout.fragment_temperaturechart, container, false);
 
         mTemperatureChart = rootView.findViewById(R.id.temperature_line_chart);
+        mTemperatureChartDecimator = new ChartDecimator(mTemperatureChart);
 
         setupLineChart();
 
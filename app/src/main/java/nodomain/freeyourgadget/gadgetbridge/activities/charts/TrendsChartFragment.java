@@ -0,0 +1,416 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.activities.charts;
+
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.Spinner;
+import android.widget.TextView;
+
+import androidx.annotation.Nullable;
+
+import com.github.mikephil.charting.animation.Easing;
+import com.github.mikephil.charting.charts.Chart;
+import com.github.mikephil.charting.charts.LineChart;
+import com.github.mikephil.charting.components.XAxis;
+import com.github.mikephil.charting.components.YAxis;
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.data.LineDataSet;
+import com.github.mikephil.charting.formatter.ValueFormatter;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.R;
+import nodomain.freeyourgadget.gadgetbridge.activities.SettingsActivity;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.database.DailySummaryManager;
+import nodomain.freeyourgadget.gadgetbridge.entities.DailySummary;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+
+/**
+ * Shows the weekly or monthly averages of a metric over one or more years. They are calculated
+ * from the stored {@link DailySummary} rows only, which are kept up to date in the background
+ * after each sync, so even the longest range only reads a single row per day.
+ */
+public class TrendsChartFragment extends AbstractChartFragment<TrendsChartFragment.TrendsChartsData> {
+    private int colorBackground;
+    private int colorSecondaryText;
+    private boolean imperialUnits;
+
+    private Metric metric = Metric.STEPS;
+    private Range range = Range.MONTHS_12;
+
+    private LineChart chart;
+    private TextView textTimeSpan;
+    private TextView textAverage;
+
+    @Override
+    public String getTitle() {
+        return getString(R.string.charts_trends);
+    }
+
+    @Override
+    protected void init() {
+        colorBackground = GBApplication.getBackgroundColor(requireContext());
+        colorSecondaryText = GBApplication.getSecondaryTextColor(requireContext());
+
+        final String unitSystem = GBApplication.getPrefs().getString(SettingsActivity.PREF_MEASUREMENT_SYSTEM, getString(R.string.p_unit_metric));
+        imperialUnits = unitSystem.equals(getString(R.string.p_unit_imperial));
+    }
+
+    @Override
+    protected boolean isSingleDay() {
+        return false;
+    }
+
+    @Override
+    protected String getChartsDataCacheKey() {
+        return metric.name() + "_" + range.name();
+    }
+
+    @Override
+    protected TrendsChartsData refreshInBackground(final ChartsHost chartsHost, final DBHandler db, final GBDevice device) {
+        final Calendar end = Calendar.getInstance();
+        end.setTime(getEndDate());
+        final Calendar start = range.getStart(end);
+
+        final List<DailySummary> summaries = DailySummaryManager.getStoredDailySummaries(device, start, end, db);
+        return createChartsData(summaries, start, end);
+    }
+
+    @Override
+    protected void renderCharts() {
+        chart.animateX(ANIM_TIME, Easing.EaseInOutQuart);
+    }
+
+    @Override
+    protected void setupLegend(final Chart<?> chart) {
+    }
+
+    @Override
+    protected void updateChartsnUIThread(final TrendsChartsData chartsData) {
+        chart.setData(null); // workaround for https://github.com/PhilJay/MPAndroidChart/issues/2317
+        chart.getXAxis().setValueFormatter(chartsData.getXValueFormatter());
+        chart.getXAxis().setAvoidFirstLastClipping(true);
+        chart.setData(chartsData.getData());
+
+        final SimpleDateFormat format = new SimpleDateFormat("MMM yyyy", Locale.getDefault());
+        textTimeSpan.setText(format.format(chartsData.start.getTime()) + " - " + format.format(chartsData.end.getTime()));
+        textAverage.setText(chartsData.average != null ? formatValue(chartsData.average) : getString(R.string.stats_empty_value));
+    }
+
+    @Override
+    public View onCreateView(final LayoutInflater inflater, final ViewGroup container, final Bundle savedInstanceState) {
+        final View rootView = inflater.inflate(R.layout.fragment_trends_chart, container, false);
+
+        chart = rootView.findViewById(R.id.trends_chart);
+        textTimeSpan = rootView.findViewById(R.id.trends_time_span_text);
+        textAverage = rootView.findViewById(R.id.trends_average_text);
+
+        final Spinner metricSpinner = rootView.findViewById(R.id.trends_metric_spinner);
+        metricSpinner.setSelection(metric.ordinal());
+        metricSpinner.setOnItemSelectedListener(new SelectionListener() {
+            @Override
+            public void onItemSelected(final AdapterView<?> parent, final View view, final int position, final long id) {
+                if (metric.ordinal() != position) {
+                    metric = Metric.values()[position];
+                    refresh();
+                }
+            }
+        });
+        final Spinner rangeSpinner = rootView.findViewById(R.id.trends_range_spinner);
+        rangeSpinner.setSelection(range.ordinal());
+        rangeSpinner.setOnItemSelectedListener(new SelectionListener() {
+            @Override
+            public void onItemSelected(final AdapterView<?> parent, final View view, final int position, final long id) {
+                if (range.ordinal() != position) {
+                    range = Range.values()[position];
+                    refresh();
+                }
+            }
+        });
+
+        configureBarLineChartDefaults(chart);
+        chart.setBackgroundColor(colorBackground);
+        chart.getDescription().setEnabled(false);
+        chart.getLegend().setEnabled(false);
+        chart.getAxisRight().setEnabled(false);
+        chart.setDoubleTapToZoomEnabled(false);
+
+        final XAxis xAxis = chart.getXAxis();
+        xAxis.setTextColor(colorSecondaryText);
+        xAxis.setDrawLabels(true);
+        xAxis.setGranularity(1f);
+
+        final YAxis yAxis = chart.getAxisLeft();
+        yAxis.setTextColor(colorSecondaryText);
+        yAxis.setDrawGridLines(true);
+
+        refresh();
+
+        return rootView;
+    }
+
+    private TrendsChartsData createChartsData(final List<DailySummary> summaries, final Calendar start, final Calendar end) {
+        final List<Calendar> buckets = getBuckets(range, start, end);
+        final Averages averages = calculateAverages(summaries, metric, imperialUnits, buckets);
+
+        final List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < buckets.size(); i++) {
+            if (!Float.isNaN(averages.buckets[i])) {
+                entries.add(new Entry(i, averages.buckets[i]));
+            }
+        }
+
+        final LineDataSet dataSet = new LineDataSet(entries, getString(metric.getLabel()));
+        dataSet.setLineWidth(2.2f);
+        dataSet.setColor(getResources().getColor(metric.getColor()));
+        dataSet.setCircleColor(getResources().getColor(metric.getColor()));
+        dataSet.setMode(LineDataSet.Mode.HORIZONTAL_BEZIER);
+        dataSet.setCubicIntensity(0.1f);
+        dataSet.setCircleRadius(3);
+        dataSet.setDrawCircleHole(false);
+        dataSet.setDrawValues(false);
+
+        return new TrendsChartsData(
+                new LineData(dataSet),
+                new BucketFormatter(buckets, range),
+                start,
+                end,
+                averages.total
+        );
+    }
+
+    /**
+     * Returns the start of each bucket of the range, from the one containing {@code start} to
+     * the one containing {@code end}.
+     */
+    static List<Calendar> getBuckets(final Range range, final Calendar start, final Calendar end) {
+        final List<Calendar> buckets = new ArrayList<>();
+        final Calendar bucket = range.getBucketStart(start);
+        while (!bucket.after(end)) {
+            buckets.add((Calendar) bucket.clone());
+            range.nextBucket(bucket);
+        }
+        return buckets;
+    }
+
+    /**
+     * Averages the values of the metric per bucket. Days without a value are not counted, so
+     * that e.g. the days without a weight measurement do not lower the average weight.
+     *
+     * @param summaries the summaries, ordered by day
+     * @param buckets   the start of each bucket, see {@link #getBuckets(Range, Calendar, Calendar)}
+     */
+    static Averages calculateAverages(final List<DailySummary> summaries, final Metric metric, final boolean imperialUnits, final List<Calendar> buckets) {
+        final double[] sums = new double[buckets.size()];
+        final int[] counts = new int[buckets.size()];
+        double totalSum = 0;
+        int totalCount = 0;
+        int bucketIndex = 0;
+        final Calendar day = Calendar.getInstance();
+        for (final DailySummary summary : summaries) {
+            final float value = metric.getValue(summary, imperialUnits);
+            if (value <= 0) {
+                continue;
+            }
+            day.clear();
+            day.set(summary.getDay() / 10000, summary.getDay() / 100 % 100 - 1, summary.getDay() % 100);
+            // the summaries are ordered by day, so the buckets only need to be walked once
+            while (bucketIndex + 1 < buckets.size() && !day.before(buckets.get(bucketIndex + 1))) {
+                bucketIndex++;
+            }
+            sums[bucketIndex] += value;
+            counts[bucketIndex]++;
+            totalSum += value;
+            totalCount++;
+        }
+
+        final float[] averages = new float[buckets.size()];
+        for (int i = 0; i < buckets.size(); i++) {
+            averages[i] = counts[i] > 0 ? (float) (sums[i] / counts[i]) : Float.NaN;
+        }
+        return new Averages(averages, totalCount > 0 ? (float) (totalSum / totalCount) : null);
+    }
+
+    private String formatValue(final float value) {
+        switch (metric) {
+            case SLEEP:
+                return getString(R.string.trends_hours_value, value);
+            case RESTING_HEART_RATE:
+                return getString(R.string.bpm_value_unit, Math.round(value));
+            case HRV:
+                return getString(R.string.trends_ms_value, Math.round(value));
+            case WEIGHT:
+                return getString(imperialUnits ? R.string.weight_lbs : R.string.weight_kg, value);
+            default:
+                return String.valueOf(Math.round(value));
+        }
+    }
+
+    enum Metric {
+        STEPS(R.string.steps, R.color.steps_color),
+        SLEEP(R.string.trends_sleep_duration, R.color.chart_light_sleep_light),
+        RESTING_HEART_RATE(R.string.trends_resting_heart_rate, R.color.chart_heartrate),
+        HRV(R.string.hrv, R.color.hrv_status_char_line_color),
+        WEIGHT(R.string.menuitem_weight, R.color.value_line_color),
+        ;
+
+        private final int label;
+        private final int color;
+
+        Metric(final int label, final int color) {
+            this.label = label;
+            this.color = color;
+        }
+
+        public int getLabel() {
+            return label;
+        }
+
+        public int getColor() {
+            return color;
+        }
+
+        /**
+         * Returns the value of the day, or 0 if there is none.
+         */
+        public float getValue(final DailySummary summary, final boolean imperialUnits) {
+            switch (this) {
+                case STEPS:
+                    return summary.getSteps();
+                case SLEEP:
+                    // awake time is not counted as sleep
+                    return (summary.getLightSleepSeconds() + summary.getDeepSleepSeconds() + summary.getRemSleepSeconds()) / 3600f;
+                case RESTING_HEART_RATE:
+                    return summary.getHeartRateResting();
+                case HRV:
+                    return summary.getHrvAverage();
+                case WEIGHT:
+                    return summary.getWeightGrams() / 1000f * (imperialUnits ? 2.2046226f : 1f);
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * The shown time range. A year is shown as weekly averages, longer ranges as monthly ones.
+     */
+    enum Range {
+        MONTHS_12(1, Calendar.WEEK_OF_YEAR),
+        YEARS_2(2, Calendar.MONTH),
+        YEARS_5(5, Calendar.MONTH),
+        ;
+
+        private final int years;
+        private final int bucketField;
+
+        Range(final int years, final int bucketField) {
+            this.years = years;
+            this.bucketField = bucketField;
+        }
+
+        public Calendar getStart(final Calendar end) {
+            final Calendar start = (Calendar) end.clone();
+            start.add(Calendar.YEAR, -years);
+            start.add(Calendar.DATE, 1);
+            return start;
+        }
+
+        public Calendar getBucketStart(final Calendar day) {
+            final Calendar start = Calendar.getInstance();
+            start.clear();
+            start.set(day.get(Calendar.YEAR), day.get(Calendar.MONTH), day.get(Calendar.DAY_OF_MONTH));
+            if (bucketField == Calendar.MONTH) {
+                start.set(Calendar.DAY_OF_MONTH, 1);
+            } else {
+                while (start.get(Calendar.DAY_OF_WEEK) != start.getFirstDayOfWeek()) {
+                    start.add(Calendar.DATE, -1);
+                }
+            }
+            return start;
+        }
+
+        public void nextBucket(final Calendar bucket) {
+            bucket.add(bucketField, 1);
+        }
+    }
+
+    static final class Averages {
+        /**
+         * The average of each bucket, or NaN if no day of the bucket has a value.
+         */
+        final float[] buckets;
+        /**
+         * The average of all days with a value, or null if there are none.
+         */
+        @Nullable
+        final Float total;
+
+        private Averages(final float[] buckets, @Nullable final Float total) {
+            this.buckets = buckets;
+            this.total = total;
+        }
+    }
+
+    private abstract static class SelectionListener implements AdapterView.OnItemSelectedListener {
+        @Override
+        public void onNothingSelected(final AdapterView<?> parent) {
+        }
+    }
+
+    protected static class TrendsChartsData extends DefaultChartsData<LineData> {
+        private final Calendar start;
+        private final Calendar end;
+        private final Float average;
+
+        public TrendsChartsData(final LineData lineData, final ValueFormatter xValueFormatter, final Calendar start, final Calendar end, final Float average) {
+            super(lineData, xValueFormatter);
+            this.start = start;
+            this.end = end;
+            this.average = average;
+        }
+    }
+
+    private static class BucketFormatter extends ValueFormatter {
+        private final List<Calendar> buckets;
+        private final SimpleDateFormat format;
+
+        public BucketFormatter(final List<Calendar> buckets, final Range range) {
+            this.buckets = buckets;
+            this.format = new SimpleDateFormat(range == Range.MONTHS_12 ? "dd.MM." : "MM.yy", Locale.getDefault());
+        }
+
+        @Override
+        public String getFormattedValue(final float value) {
+            final int index = Math.round(value);
+            if (index < 0 || index >= buckets.size()) {
+                return "";
+            }
+            return format.format(buckets.get(index).getTime());
+        }
+    }
+}
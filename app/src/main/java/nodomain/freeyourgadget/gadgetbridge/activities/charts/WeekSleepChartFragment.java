@@ -84,8 +84,9 @@ public class WeekSleepChartFragment extends AbstractWeekChartFragment {
         long deepWeeklyTotal = 0;
         long lightWeeklyTotal = 0;
 
+        List<ActivityAmounts> amountsOfDays = getActivityAmountsForDays(db, day, TOTAL_DAYS, device);
         for (int counter = 0; counter < TOTAL_DAYS; counter++) {
-            ActivityAmounts amounts = getActivityAmountsForDay(db, day, device);
+            ActivityAmounts amounts = amountsOfDays.get(counter);
             if (calculateBalance(amounts) > 0) {
                 TOTAL_DAYS_FOR_AVERAGE++;
             }
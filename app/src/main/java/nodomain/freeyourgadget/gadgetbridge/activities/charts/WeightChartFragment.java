@@ -99,6 +99,11 @@ public class WeightChartFragment extends AbstractChartFragment<WeightChartFragme
         return false;
     }
 
+    @Override
+    protected String getChartsDataCacheKey() {
+        return "";
+    }
+
     @Override
     protected WeightChartsData refreshInBackground(ChartsHost chartsHost, DBHandler db, GBDevice device) {
         long tsStart = getTSStart() * 1000L;
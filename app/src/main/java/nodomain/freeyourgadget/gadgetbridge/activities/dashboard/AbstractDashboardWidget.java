@@ -69,10 +69,28 @@ public abstract class AbstractDashboardWidget extends Fragment {
         }
     }
 
+    /**
+     * Shows the data of the last refresh, once it was computed.
+     */
     public void update() {
-        fillData();
+        if (dashboardData != null && dashboardData.isLoaded()) {
+            fillData();
+        }
+    }
+
+    /**
+     * This is called by the {@link DashboardDataService} on a background thread, together with
+     * the other widgets. It's expected that the snapshot be populated with the data of this widget
+     * that is not part of the totals.
+     *
+     * @param dashboardData the DashboardData snapshot to populate
+     */
+    protected void populateData(final DashboardFragment.DashboardData dashboardData) {
     }
 
+    /**
+     * This is called from the UI thread, once the {@link DashboardFragment.DashboardData} is loaded.
+     */
     protected abstract void fillData();
 
     protected boolean isSupportedBy(final GBDevice device) {
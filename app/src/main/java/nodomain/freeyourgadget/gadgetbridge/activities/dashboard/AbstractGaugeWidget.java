@@ -16,7 +16,6 @@
     along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.activities.dashboard;
 
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -62,7 +61,7 @@ public abstract class AbstractGaugeWidget extends AbstractDashboardWidget {
         final TextView gaugeLabel = fragmentView.findViewById(R.id.gauge_label);
         gaugeLabel.setText(label);
 
-        fillData();
+        update();
 
         return fragmentView;
     }
@@ -70,27 +69,21 @@ public abstract class AbstractGaugeWidget extends AbstractDashboardWidget {
     @Override
     public void onResume() {
         super.onResume();
-        if (gaugeValue != null && gaugeBar != null) fillData();
+        if (gaugeValue != null && gaugeBar != null) update();
     }
 
     @Override
     protected void fillData() {
         if (gaugeBar == null) return;
         gaugeBar.post(() -> {
-            final FillDataAsyncTask myAsyncTask = new FillDataAsyncTask();
-            myAsyncTask.execute();
+            try {
+                draw(dashboardData);
+            } catch (final Exception e) {
+                LOG.error("draw for {} failed", AbstractGaugeWidget.this.getClass().getSimpleName(), e);
+            }
         });
     }
 
-    /**
-     * This is called from the async task, outside of the UI thread. It's expected that
-     * {@link nodomain.freeyourgadget.gadgetbridge.activities.DashboardFragment.DashboardData} be
-     * populated with the necessary data for display.
-     *
-     * @param dashboardData the DashboardData to populate
-     */
-    protected abstract void populateData(DashboardFragment.DashboardData dashboardData);
-
     /**
      * This is called from the UI thread.
      *
@@ -98,32 +91,6 @@ public abstract class AbstractGaugeWidget extends AbstractDashboardWidget {
      */
     protected abstract void draw(DashboardFragment.DashboardData dashboardData);
 
-    private class FillDataAsyncTask extends AsyncTask<Void, Void, Void> {
-        @Override
-        protected Void doInBackground(final Void... params) {
-            final long nanoStart = System.nanoTime();
-            try {
-                populateData(dashboardData);
-            } catch (final Exception e) {
-                LOG.error("fillData for {} failed", AbstractGaugeWidget.this.getClass().getSimpleName(), e);
-            }
-            final long nanoEnd = System.nanoTime();
-            final long executionTime = (nanoEnd - nanoStart) / 1000000;
-            LOG.debug("fillData for {} took {}ms", AbstractGaugeWidget.this.getClass().getSimpleName(), executionTime);
-            return null;
-        }
-
-        @Override
-        protected void onPostExecute(final Void unused) {
-            super.onPostExecute(unused);
-            try {
-                draw(dashboardData);
-            } catch (final Exception e) {
-                LOG.error("draw for {} failed", AbstractGaugeWidget.this.getClass().getSimpleName(), e);
-            }
-        }
-    }
-
     protected void setText(final CharSequence text) {
         gaugeValue.setText(text);
     }
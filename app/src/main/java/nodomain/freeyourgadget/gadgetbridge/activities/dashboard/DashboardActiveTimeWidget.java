@@ -48,12 +48,6 @@ public class DashboardActiveTimeWidget extends AbstractGaugeWidget {
         return fragment;
     }
 
-    @Override
-    protected void populateData(final DashboardFragment.DashboardData dashboardData) {
-        dashboardData.getActiveMinutesTotal();
-        dashboardData.getActiveMinutesGoalFactor();
-    }
-
     @Override
     protected void draw(final DashboardFragment.DashboardData dashboardData) {
         final long totalActiveMinutes = dashboardData.getActiveMinutesTotal();
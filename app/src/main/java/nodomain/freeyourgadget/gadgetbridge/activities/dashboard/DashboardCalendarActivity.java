@@ -54,8 +54,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.AbstractGBActivity;
-import nodomain.freeyourgadget.gadgetbridge.activities.DashboardFragment;
-import nodomain.freeyourgadget.gadgetbridge.util.DashboardUtils;
+import nodomain.freeyourgadget.gadgetbridge.database.DailySummaryManager;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityUser;
 import nodomain.freeyourgadget.gadgetbridge.util.DateTimeUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
 
@@ -226,14 +226,24 @@ public class DashboardCalendarActivity extends AbstractGBActivity {
 
         @Override
         protected Void doInBackground(Void... params) {
+            if (dayCells.isEmpty()) {
+                return null;
+            }
+            // Fetch the steps of all shown days at once instead of querying each day
+            Calendar first = null;
+            Calendar last = null;
+            for (Calendar day : dayCells.keySet()) {
+                if (first == null || day.before(first)) first = day;
+                if (last == null || day.after(last)) last = day;
+            }
+            final Map<Integer, Integer> dailySteps = DashboardDataService.getDailySteps(showAllDevices, showDeviceList, first, last);
+            final float stepsGoal = new ActivityUser().getStepsGoal();
+
             for (Calendar day : dayCells.keySet()) {
                 // Determine day color by the amount of the steps goal reached
-                DashboardFragment.DashboardData dashboardData = new DashboardFragment.DashboardData();
-                dashboardData.showAllDevices = showAllDevices;
-                dashboardData.showDeviceList = showDeviceList;
-                dashboardData.timeTo = (int) (day.getTimeInMillis() / 1000);
-                dashboardData.timeFrom = DateTimeUtils.shiftDays(dashboardData.timeTo, -1);
-                float goalFactor = DashboardUtils.getStepsGoalFactor(dashboardData);
+                final Integer steps = dailySteps.get(DailySummaryManager.toDayKey(day));
+                float goalFactor = steps != null ? steps / stepsGoal : 0;
+                if (goalFactor > 1) goalFactor = 1;
                 @ColorInt int dayColor;
                 if (goalFactor >= 1) {
                     dayColor = color_100;
@@ -0,0 +1,190 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.activities.dashboard;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.activities.DashboardFragment;
+import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.database.DailySummaryManager;
+import nodomain.freeyourgadget.gadgetbridge.entities.DailySummary;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+
+/**
+ * Computes the {@link DashboardFragment.DashboardData} snapshot of a dashboard refresh.
+ * <p>
+ * The daily summary of each device and the data of each widget are computed in parallel on a
+ * bounded executor, each task with its own read-only database handle. The widgets are only
+ * drawn once the whole snapshot is complete, so that a refresh runs each query once, no matter
+ * how many widgets show its result.
+ */
+public class DashboardDataService {
+    private static final Logger LOG = LoggerFactory.getLogger(DashboardDataService.class);
+
+    private static final int THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final ThreadPoolExecutor executor = createExecutor();
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+
+    private static ThreadPoolExecutor createExecutor() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                THREADS,
+                THREADS,
+                30,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> new Thread(r, "dashboard-data-" + threadCount.incrementAndGet())
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Computes the totals of all shown devices and the data of the widgets into the snapshot,
+     * and runs {@code onLoaded} on the UI thread once all of it is done, even if parts failed.
+     *
+     * @param snapshot a new {@link DashboardFragment.DashboardData} with the settings of the
+     *                 refresh, see {@link DashboardFragment.DashboardData#createSnapshot()}
+     */
+    public static void load(final DashboardFragment.DashboardData snapshot,
+                            final Collection<AbstractDashboardWidget> widgets,
+                            final Runnable onLoaded) {
+        final long nanoStart = System.nanoTime();
+
+        final List<GBDevice> devices = getShownDevices(snapshot);
+        final Calendar day = Calendar.getInstance();
+        day.setTimeInMillis(snapshot.timeTo * 1000L);
+        final DailySummary[] summaries = new DailySummary[devices.size()];
+
+        final List<Runnable> tasks = new ArrayList<>(devices.size() + widgets.size());
+        for (int i = 0; i < devices.size(); i++) {
+            final int index = i;
+            final GBDevice device = devices.get(i);
+            tasks.add(() -> {
+                try (DBHandler db = GBApplication.acquireReadOnlyDB()) {
+                    summaries[index] = DailySummaryManager.getDailySummary(device, day, db);
+                } catch (final Exception e) {
+                    LOG.warn("Could not get the daily summary of {}", device, e);
+                }
+            });
+        }
+        for (final AbstractDashboardWidget widget : widgets) {
+            tasks.add(() -> {
+                try {
+                    widget.populateData(snapshot);
+                } catch (final Exception e) {
+                    LOG.error("populateData for {} failed", widget.getClass().getSimpleName(), e);
+                }
+            });
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(tasks.size());
+        final Runnable onTaskDone = () -> {
+            if (remaining.decrementAndGet() != 0) {
+                return;
+            }
+            snapshot.setTotals(summaries);
+            LOG.debug("Loading the dashboard data took {}ms", (System.nanoTime() - nanoStart) / 1000000);
+            handler.post(onLoaded);
+        };
+
+        if (tasks.isEmpty()) {
+            snapshot.setTotals(summaries);
+            handler.post(onLoaded);
+            return;
+        }
+        for (final Runnable task : tasks) {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    onTaskDone.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the total steps of all shown devices for each day from {@code from} to {@code to},
+     * both inclusive, keyed by day as yyyyMMdd. The summaries of each device are read with a
+     * single query, in parallel. Blocks until done, so it must not be called on the UI thread.
+     */
+    public static Map<Integer, Integer> getDailySteps(final boolean showAllDevices,
+                                                      final Set<String> showDeviceList,
+                                                      final Calendar from,
+                                                      final Calendar to) {
+        final DashboardFragment.DashboardData settings = new DashboardFragment.DashboardData();
+        settings.showAllDevices = showAllDevices;
+        settings.showDeviceList = showDeviceList;
+
+        final List<Future<List<DailySummary>>> futures = new ArrayList<>();
+        for (final GBDevice device : getShownDevices(settings)) {
+            futures.add(executor.submit(() -> {
+                try (DBHandler db = GBApplication.acquireReadOnlyDB()) {
+                    return DailySummaryManager.getDailySummaries(device, from, to, db);
+                }
+            }));
+        }
+
+        final Map<Integer, Integer> steps = new HashMap<>();
+        for (final Future<List<DailySummary>> future : futures) {
+            try {
+                for (final DailySummary summary : future.get()) {
+                    final Integer previous = steps.get(summary.getDay());
+                    steps.put(summary.getDay(), (previous != null ? previous : 0) + summary.getSteps());
+                }
+            } catch (final ExecutionException e) {
+                LOG.warn("Could not get the daily summaries", e.getCause());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return steps;
+    }
+
+    private static List<GBDevice> getShownDevices(final DashboardFragment.DashboardData dashboardData) {
+        final List<GBDevice> devices = new ArrayList<>();
+        for (final GBDevice dev : GBApplication.app().getDeviceManager().getDevices()) {
+            if ((dashboardData.showAllDevices || dashboardData.showDeviceList.contains(dev.getAddress())) && dev.getDeviceCoordinator().supportsActivityTracking()) {
+                devices.add(dev);
+            }
+        }
+        return devices;
+    }
+}
@@ -47,12 +47,6 @@ public class DashboardDistanceWidget extends AbstractGaugeWidget {
         return fragment;
     }
 
-    @Override
-    protected void populateData(final DashboardFragment.DashboardData dashboardData) {
-        dashboardData.getDistanceTotal();
-        dashboardData.getDistanceGoalFactor();
-    }
-
     @Override
     protected void draw(final DashboardFragment.DashboardData dashboardData) {
         setText(FormatUtils.getFormattedDistanceLabel(dashboardData.getDistanceTotal()));
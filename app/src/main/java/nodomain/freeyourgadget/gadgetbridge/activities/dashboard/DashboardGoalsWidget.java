@@ -96,7 +96,7 @@ public class DashboardGoalsWidget extends AbstractDashboardWidget {
     @Override
     public void onResume() {
         super.onResume();
-        if (goalsChart != null) fillData();
+        if (goalsChart != null) update();
     }
 
     @Override
@@ -54,12 +54,6 @@ public class DashboardSleepWidget extends AbstractGaugeWidget {
         return device.getDeviceCoordinator().supportsSleepMeasurement();
     }
 
-    @Override
-    protected void populateData(final DashboardFragment.DashboardData dashboardData) {
-        dashboardData.getSleepMinutesTotal();
-        dashboardData.getSleepMinutesGoalFactor();
-    }
-
     @Override
     protected void draw(final DashboardFragment.DashboardData dashboardData) {
         final long totalSleepMinutes = dashboardData.getSleepMinutesTotal();
@@ -46,12 +46,6 @@ public class DashboardStepsWidget extends AbstractGaugeWidget {
         return fragment;
     }
 
-    @Override
-    protected void populateData(final DashboardFragment.DashboardData dashboardData) {
-        dashboardData.getStepsTotal();
-        dashboardData.getStepsGoalFactor();
-    }
-
     @Override
     protected void draw(final DashboardFragment.DashboardData dashboardData) {
         setText(String.valueOf(dashboardData.getStepsTotal()));
@@ -21,7 +21,6 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.text.Spannable;
 import android.text.SpannableString;
@@ -52,10 +51,14 @@ import nodomain.freeyourgadget.gadgetbridge.activities.DashboardFragment;
 import nodomain.freeyourgadget.gadgetbridge.activities.HeartRateUtils;
 import nodomain.freeyourgadget.gadgetbridge.activities.charts.StepAnalysis;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.database.DailySummaryManager;
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummary;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySampleBatch;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySession;
 import nodomain.freeyourgadget.gadgetbridge.util.DashboardUtils;
 import nodomain.freeyourgadget.gadgetbridge.util.DateTimeUtils;
@@ -69,6 +72,14 @@ import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
 public class DashboardTodayWidget extends AbstractDashboardWidget {
     private static final Logger LOG = LoggerFactory.getLogger(DashboardTodayWidget.class);
 
+    // the samples and step analysis of the shown day of each device, by address, continued on the
+    // next refresh so that only the samples that arrived in the meantime are loaded and analyzed
+    private static final Map<String, SamplesCheckpoint> samplesCheckpoints = new HashMap<>();
+
+    // the samples loaded before that are loaded and compared again on a refresh, since devices
+    // may re-send the last samples with updated values
+    private static final int RECHECK_SECONDS = 60 * 60;
+
     private View todayView;
     private ImageView todayChart;
 
@@ -134,13 +145,31 @@ public class DashboardTodayWidget extends AbstractDashboardWidget {
     @Override
     public void onResume() {
         super.onResume();
-        if (todayChart != null) fillData();
+        if (todayChart != null) update();
+    }
+
+    /**
+     * Returns the start of the shown period, which includes the previous day if configured
+     * and the shown day is today.
+     */
+    private static int getTimeFrom(final DashboardFragment.DashboardData dashboardData) {
+        final Prefs prefs = GBApplication.getPrefs();
+        if (prefs.getBoolean("dashboard_widget_today_show_yesterday", false)) {
+            final Calendar today = Calendar.getInstance();
+            final Calendar dashboardDate = Calendar.getInstance();
+            dashboardDate.setTimeInMillis((dashboardData.timeFrom + 1) * 1000L);
+            if (DateTimeUtils.isSameDay(today, dashboardDate)) {
+                return dashboardData.timeFrom - 86400;
+            }
+        }
+        return dashboardData.timeFrom;
     }
 
     private void draw() {
         Prefs prefs = GBApplication.getPrefs();
         boolean upsideDown24h = prefs.getBoolean("dashboard_widget_today_24h_upside_down", false);
         boolean showYesterday = prefs.getBoolean("dashboard_widget_today_show_yesterday", false);
+        final long timeFrom = getTimeFrom(dashboardData);
 
         // Prepare circular chart
         long currentDayStart = dashboardData.timeTo - 86400;
@@ -232,7 +261,7 @@ public class DashboardTodayWidget extends AbstractDashboardWidget {
         }
 
         // Draw generalized activities on circular chart
-        long secondIndex = dashboardData.timeFrom;
+        long secondIndex = timeFrom;
         long currentTime = Calendar.getInstance().getTimeInMillis() / 1000;
         boolean dayIsToday = !(dashboardData.timeTo < currentTime);
         int startAngle = mode_24h && upsideDown24h ? 90 : 270;
@@ -256,15 +285,15 @@ public class DashboardTodayWidget extends AbstractDashboardWidget {
                 if (!mode_24h && secondIndex < midDaySecond && activity.timeFrom >= midDaySecond) {
                     paint.setStrokeWidth(barWidth / 3f);
                     paint.setColor(color_unknown);
-                    canvas.drawArc(innerCircleMargin, innerCircleMargin, width - innerCircleMargin, height - innerCircleMargin, startAngle + (secondIndex - dashboardData.timeFrom) / degreeFactor, (midDaySecond - secondIndex) / degreeFactor, false, paint);
+                    canvas.drawArc(innerCircleMargin, innerCircleMargin, width - innerCircleMargin, height - innerCircleMargin, startAngle + (secondIndex - timeFrom) / degreeFactor, (midDaySecond - secondIndex) / degreeFactor, false, paint);
                     secondIndex = midDaySecond;
                 }
                 if (activity.timeFrom > secondIndex) {
                     paint.setStrokeWidth(barWidth / 3f);
                     paint.setColor(color_unknown);
-                    canvas.drawArc(margin, margin, width - margin, height - margin, startAngle + (secondIndex - dashboardData.timeFrom) / degreeFactor, (activity.timeFrom - secondIndex) / degreeFactor, false, paint);
+                    canvas.drawArc(margin, margin, width - margin, height - margin, startAngle + (secondIndex - timeFrom) / degreeFactor, (activity.timeFrom - secondIndex) / degreeFactor, false, paint);
                 }
-                float start_angle = startAngle + (activity.timeFrom - dashboardData.timeFrom) / degreeFactor;
+                float start_angle = startAngle + (activity.timeFrom - timeFrom) / degreeFactor;
                 float sweep_angle = (activity.timeTo - activity.timeFrom) / degreeFactor;
                 if (activity.activityKind == ActivityKind.NOT_MEASURED) {
                     paint.setStrokeWidth(barWidth / 3f);
@@ -331,18 +360,18 @@ public class DashboardTodayWidget extends AbstractDashboardWidget {
             float margin = (mode_24h || currentTime >= midDaySecond) ? outerCircleMargin : innerCircleMargin;
             paint.setStrokeWidth(barWidth);
             paint.setColor(GBApplication.getTextColor(requireContext()));
-            canvas.drawArc(margin, margin, width - margin, height - margin, startAngle + (currentTime - dashboardData.timeFrom) / degreeFactor, 300 / degreeFactor, false, paint);
+            canvas.drawArc(margin, margin, width - margin, height - margin, startAngle + (currentTime - timeFrom) / degreeFactor, 300 / degreeFactor, false, paint);
         }
         // Fill remaining time until current time in 12h mode before midday
         if (!mode_24h && currentTime < midDaySecond) {
             // Fill inner bar up until current time
             paint.setStrokeWidth(barWidth / 3f);
             paint.setColor(color_unknown);
-            canvas.drawArc(innerCircleMargin, innerCircleMargin, width - innerCircleMargin, height - innerCircleMargin, startAngle + (secondIndex - dashboardData.timeFrom) / degreeFactor, (currentTime - secondIndex) / degreeFactor, false, paint);
+            canvas.drawArc(innerCircleMargin, innerCircleMargin, width - innerCircleMargin, height - innerCircleMargin, startAngle + (secondIndex - timeFrom) / degreeFactor, (currentTime - secondIndex) / degreeFactor, false, paint);
             // Fill inner bar up until midday
             paint.setStrokeWidth(barWidth / 3f);
             paint.setColor(color_unknown);
-            canvas.drawArc(innerCircleMargin, innerCircleMargin, width - innerCircleMargin, height - innerCircleMargin, startAngle + (currentTime - dashboardData.timeFrom) / degreeFactor, (midDaySecond - currentTime) / degreeFactor, false, paint);
+            canvas.drawArc(innerCircleMargin, innerCircleMargin, width - innerCircleMargin, height - innerCircleMargin, startAngle + (currentTime - timeFrom) / degreeFactor, (midDaySecond - currentTime) / degreeFactor, false, paint);
             // Fill outer bar up until midnight
             paint.setStrokeWidth(barWidth / 3f);
             paint.setColor(color_unknown);
@@ -354,24 +383,24 @@ public class DashboardTodayWidget extends AbstractDashboardWidget {
             if (!mode_24h && secondIndex < midDaySecond) {
                 paint.setStrokeWidth(barWidth / 3f);
                 paint.setColor(color_unknown);
-                canvas.drawArc(innerCircleMargin, innerCircleMargin, width - innerCircleMargin, height - innerCircleMargin, startAngle + (secondIndex - dashboardData.timeFrom) / degreeFactor, (midDaySecond - secondIndex) / degreeFactor, false, paint);
+                canvas.drawArc(innerCircleMargin, innerCircleMargin, width - innerCircleMargin, height - innerCircleMargin, startAngle + (secondIndex - timeFrom) / degreeFactor, (midDaySecond - secondIndex) / degreeFactor, false, paint);
                 secondIndex = midDaySecond;
             }
             // Fill outer bar up until current time
             paint.setStrokeWidth(barWidth / 3f);
             paint.setColor(color_unknown);
-            canvas.drawArc(outerCircleMargin, outerCircleMargin, width - outerCircleMargin, height - outerCircleMargin, startAngle + (secondIndex - dashboardData.timeFrom) / degreeFactor, (currentTime - secondIndex) / degreeFactor, false, paint);
+            canvas.drawArc(outerCircleMargin, outerCircleMargin, width - outerCircleMargin, height - outerCircleMargin, startAngle + (secondIndex - timeFrom) / degreeFactor, (currentTime - secondIndex) / degreeFactor, false, paint);
             // Fill outer bar up until midnight
             paint.setStrokeWidth(barWidth / 3f);
             paint.setColor(color_unknown);
-            canvas.drawArc(outerCircleMargin, outerCircleMargin, width - outerCircleMargin, height - outerCircleMargin, startAngle + (currentTime - dashboardData.timeFrom) / degreeFactor, (dashboardData.timeTo - currentTime) / degreeFactor, false, paint);
+            canvas.drawArc(outerCircleMargin, outerCircleMargin, width - outerCircleMargin, height - outerCircleMargin, startAngle + (currentTime - timeFrom) / degreeFactor, (dashboardData.timeTo - currentTime) / degreeFactor, false, paint);
         }
         // Only when displaying a past day
         if (secondIndex < dashboardData.timeTo && currentTime > dashboardData.timeTo) {
             // Fill outer bar up until midnight
             paint.setStrokeWidth(barWidth / 3f);
             paint.setColor(color_unknown);
-            canvas.drawArc(outerCircleMargin, outerCircleMargin, width - outerCircleMargin, height - outerCircleMargin, startAngle + (secondIndex - dashboardData.timeFrom) / degreeFactor, (dashboardData.timeTo - secondIndex) / degreeFactor, false, paint);
+            canvas.drawArc(outerCircleMargin, outerCircleMargin, width - outerCircleMargin, height - outerCircleMargin, startAngle + (secondIndex - timeFrom) / degreeFactor, (dashboardData.timeTo - secondIndex) / degreeFactor, false, paint);
         }
 
         todayChart.setImageBitmap(todayBitmap);
@@ -380,28 +409,35 @@ public class DashboardTodayWidget extends AbstractDashboardWidget {
     protected void fillData() {
         if (todayView == null) return;
 
-        Prefs prefs = GBApplication.getPrefs();
-        if (prefs.getBoolean("dashboard_widget_today_show_yesterday", false)) {
-            Calendar today = Calendar.getInstance();
-            Calendar dashboardDate = Calendar.getInstance();
-            dashboardDate.setTimeInMillis((dashboardData.timeFrom + 1) * 1000L);
-            if (DateTimeUtils.isSameDay(today, dashboardDate)) {
-                dashboardData.timeFrom -= 86400;
-            }
-        }
-
-        todayView.post(new Runnable() {
-            @Override
-            public void run() {
-                FillDataAsyncTask myAsyncTask = new FillDataAsyncTask();
-                myAsyncTask.execute();
+        todayView.post(() -> {
+            try {
+                draw();
+            } catch (final Exception e) {
+                LOG.error("calling draw() failed", e);
             }
         });
     }
 
-    private class FillDataAsyncTask extends AsyncTask<Void, Void, Void> {
+    @Override
+    protected void populateData(final DashboardFragment.DashboardData dashboardData) {
+        new GeneralizedActivitiesCalculator(dashboardData).calculate();
+    }
+
+    /**
+     * Calculates the {@link DashboardFragment.DashboardData#generalizedActivities} of a snapshot.
+     */
+    private static class GeneralizedActivitiesCalculator {
+        private final DashboardFragment.DashboardData dashboardData;
+        private final int timeFrom;
+        private final boolean mode_24h;
         private final TreeMap<Long, ActivityKind> activityTimestamps = new TreeMap<>();
 
+        private GeneralizedActivitiesCalculator(final DashboardFragment.DashboardData dashboardData) {
+            this.dashboardData = dashboardData;
+            this.timeFrom = getTimeFrom(dashboardData);
+            this.mode_24h = GBApplication.getPrefs().getBoolean("dashboard_widget_today_24h", false);
+        }
+
         /**
          * Add per-second activities to `activityTimestamps`
          */
@@ -526,8 +562,30 @@ public class DashboardTodayWidget extends AbstractDashboardWidget {
             }
         }
 
-        @Override
-        protected Void doInBackground(Void... params) {
+        /**
+         * Loads the samples of the device that were added since the previous refresh, and
+         * continues the step analysis with them. All samples of the day are loaded and analyzed
+         * again if the day, the analysis settings or the {@link DailySummaryManager#getGeneration()
+         * generation} changed, or if the recently loaded samples changed in the database.
+         */
+        private SamplesCheckpoint loadSamples(final GBDevice device, final DaoSession session) {
+            final SampleProvider<? extends ActivitySample> provider = device.getDeviceCoordinator().getSampleProvider(device, session);
+            final String key = timeFrom + "_" + dashboardData.timeTo + "_" + DailySummaryManager.getGeneration();
+            SamplesCheckpoint checkpoint = samplesCheckpoints.get(device.getAddress());
+            if (checkpoint != null && checkpoint.key.equals(key) && !checkpoint.stepAnalysis.hasSettingsChanged()) {
+                final int recheckFrom = checkpoint.getRecheckFrom();
+                if (checkpoint.append(recheckFrom, provider.getAllActivitySamples(recheckFrom, dashboardData.timeTo))) {
+                    return checkpoint;
+                }
+                LOG.debug("Samples of {} changed, loading all samples again", device);
+            }
+            checkpoint = new SamplesCheckpoint(key, timeFrom);
+            checkpoint.append(timeFrom, provider.getAllActivitySamples(timeFrom, dashboardData.timeTo));
+            samplesCheckpoints.put(device.getAddress(), checkpoint);
+            return checkpoint;
+        }
+
+        private void calculate() {
             final long nanoStart = System.nanoTime();
 
             // Retrieve activity data
@@ -536,13 +594,14 @@ public class DashboardTodayWidget extends AbstractDashboardWidget {
             List<ActivitySample> allActivitySamples = new ArrayList<>();
             List<ActivitySession> stepSessions = new ArrayList<>();
             List<BaseActivitySummary> activitySummaries = null;
-            try (DBHandler dbHandler = GBApplication.acquireDB()) {
+            try (DBHandler dbHandler = GBApplication.acquireReadOnlyDB()) {
                 for (GBDevice dev : devices) {
                     if ((dashboardData.showAllDevices || dashboardData.showDeviceList.contains(dev.getAddress())) && dev.getDeviceCoordinator().supportsActivityTracking()) {
-                        List<? extends ActivitySample> activitySamples = DashboardUtils.getAllSamples(dbHandler, dev, dashboardData);
-                        allActivitySamples.addAll(activitySamples);
-                        StepAnalysis stepAnalysis = new StepAnalysis();
-                        stepSessions.addAll(stepAnalysis.calculateStepSessions(activitySamples));
+                        synchronized (samplesCheckpoints) {
+                            final SamplesCheckpoint checkpoint = loadSamples(dev, dbHandler.getDaoSession());
+                            allActivitySamples.addAll(checkpoint.samples);
+                            stepSessions.addAll(checkpoint.stepSessions);
+                        }
                     }
                 }
                 activitySummaries = DashboardUtils.getWorkoutSamples(dbHandler, dashboardData);
@@ -576,19 +635,68 @@ public class DashboardTodayWidget extends AbstractDashboardWidget {
 
             final long nanoEnd = System.nanoTime();
             final long executionTime = (nanoEnd - nanoStart) / 1000000;
-            LOG.debug("fillData for {} took {}ms", DashboardTodayWidget.this.getClass().getSimpleName(), executionTime);
+            LOG.debug("populateData for {} took {}ms", DashboardTodayWidget.class.getSimpleName(), executionTime);
+        }
+    }
 
-            return null;
+    /**
+     * The samples of a device that were loaded for a day, and their step analysis.
+     */
+    private static final class SamplesCheckpoint {
+        private final String key;
+        private final int timeFrom;
+        private final List<ActivitySample> samples = new ArrayList<>();
+        private final StepAnalysis stepAnalysis = new StepAnalysis();
+        private List<ActivitySession> stepSessions = Collections.emptyList();
+
+        private SamplesCheckpoint(final String key, final int timeFrom) {
+            this.key = key;
+            this.timeFrom = timeFrom;
         }
 
-        @Override
-        protected void onPostExecute(final Void unused) {
-            super.onPostExecute(unused);
-            try {
-                draw();
-            } catch (final Exception e) {
-                LOG.error("calling draw() failed", e);
+        private int getRecheckFrom() {
+            if (samples.isEmpty()) {
+                return timeFrom;
+            }
+            return Math.max(timeFrom, samples.get(samples.size() - 1).getTimestamp() - RECHECK_SECONDS);
+        }
+
+        /**
+         * Adds the samples that were loaded from {@code from} on, and analyzes the new ones. The
+         * samples from {@code from} on that were loaded before must be loaded again unchanged.
+         *
+         * @return false if they changed, and all samples need to be loaded again
+         */
+        private boolean append(final int from, final List<? extends ActivitySample> loaded) {
+            int first = samples.size();
+            while (first > 0 && samples.get(first - 1).getTimestamp() >= from) {
+                first--;
             }
+            final int known = samples.size() - first;
+            if (loaded.size() < known) {
+                return false;
+            }
+            for (int i = 0; i < known; i++) {
+                if (!isSameSample(samples.get(first + i), loaded.get(i))) {
+                    return false;
+                }
+            }
+            final List<? extends ActivitySample> added = loaded.subList(known, loaded.size());
+            if (!added.isEmpty()) {
+                samples.addAll(added);
+                stepAnalysis.addSamples(ActivitySampleBatch.fromSamples(added));
+                stepSessions = stepAnalysis.getSessions();
+            }
+            return true;
+        }
+
+        private static boolean isSameSample(final ActivitySample a, final ActivitySample b) {
+            return a.getTimestamp() == b.getTimestamp() &&
+                    a.getRawKind() == b.getRawKind() &&
+                    a.getRawIntensity() == b.getRawIntensity() &&
+                    a.getSteps() == b.getSteps() &&
+                    a.getDistanceCm() == b.getDistanceCm() &&
+                    a.getHeartRate() == b.getHeartRate();
         }
     }
-}
\ No newline at end of file
+}
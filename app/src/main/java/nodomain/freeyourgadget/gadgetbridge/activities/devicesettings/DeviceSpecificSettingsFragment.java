@@ -1326,6 +1326,12 @@ public class DeviceSpecificSettingsFragment extends AbstractPreferenceFragment i
                         R.xml.devicesettings_chartstabs,
                         R.xml.devicesettings_device_card_activity_card_preferences
                 );
+                if (coordinator.supportsSampleRetention()) {
+                    deviceSpecificSettings.addRootScreen(
+                            DeviceSpecificSettingsScreen.ACTIVITY_INFO,
+                            R.xml.devicesettings_sample_retention
+                    );
+                }
             }
 
             deviceSpecificSettings.addRootScreen(
@@ -0,0 +1,257 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import de.greenrobot.dao.AbstractDao;
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+
+/**
+ * Collects samples that are received one by one from a device and writes them to the database
+ * in batches, using a single transaction per DAO instead of one transaction per sample.
+ * <p>
+ * Pending samples are flushed when {@link #getMaxPendingSamples()} is reached, after
+ * {@link #getMaxDelayMillis()} have passed since the first pending sample was added, and whenever
+ * {@link #flush()} or {@link #dispose()} are called. Device supports should flush before reading
+ * back samples they just added, before signalling the end of a data fetch, before acknowledging
+ * received data to the device, and when the device disconnects.
+ */
+public class BufferedSampleWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(BufferedSampleWriter.class);
+
+    public static final int DEFAULT_MAX_PENDING_SAMPLES = 250;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 5000;
+
+    private final String name;
+    private final int maxPendingSamples;
+    private final long maxDelayMillis;
+
+    private final Map<Class<?>, List<Object>> pendingSamples = new LinkedHashMap<>();
+    private int pendingCount = 0;
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean disposed = false;
+    private Runnable flushListener;
+
+    public BufferedSampleWriter(final String name) {
+        this(name, DEFAULT_MAX_PENDING_SAMPLES, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    public BufferedSampleWriter(final String name, final int maxPendingSamples, final long maxDelayMillis) {
+        this.name = name;
+        this.maxPendingSamples = Math.max(1, maxPendingSamples);
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    public int getMaxPendingSamples() {
+        return maxPendingSamples;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    /**
+     * Sets a listener that is run after pending samples were written to the database, e.g. to
+     * signal new data when samples are received in realtime.
+     */
+    public synchronized void setFlushListener(final Runnable flushListener) {
+        this.flushListener = flushListener;
+    }
+
+    /**
+     * Queues a sample to be inserted or replaced. The sample must be a greenDAO entity. It is only
+     * persisted when the writer is flushed, so any change made to it until then is persisted too.
+     */
+    public void add(final Object sample) {
+        final boolean flushNow;
+        synchronized (this) {
+            if (disposed) {
+                LOG.warn("{}: sample added after dispose, writing it immediately", name);
+            }
+            enqueue(sample);
+            flushNow = disposed || pendingCount >= maxPendingSamples;
+            if (!flushNow) {
+                scheduleFlush();
+            }
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    public void addAll(final Collection<?> samples) {
+        final boolean flushNow;
+        synchronized (this) {
+            for (final Object sample : samples) {
+                enqueue(sample);
+            }
+            flushNow = disposed || pendingCount >= maxPendingSamples;
+            if (!flushNow) {
+                scheduleFlush();
+            }
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    private void enqueue(final Object sample) {
+        List<Object> samples = pendingSamples.get(sample.getClass());
+        if (samples == null) {
+            samples = new ArrayList<>();
+            pendingSamples.put(sample.getClass(), samples);
+        }
+        // the same instance may be updated and added again, it only needs to be written once
+        for (int i = samples.size() - 1; i >= 0; i--) {
+            if (samples.get(i) == sample) {
+                return;
+            }
+        }
+        samples.add(sample);
+        pendingCount++;
+    }
+
+    /**
+     * Returns the most recently added pending sample of the given class that matches the
+     * predicate, or null if there is none. This allows a read-modify-write of a sample that
+     * was not written to the database yet.
+     */
+    public synchronized <T> T findPending(final Class<T> sampleClass, final Predicate<T> predicate) {
+        final List<Object> samples = pendingSamples.get(sampleClass);
+        if (samples == null) {
+            return null;
+        }
+        for (int i = samples.size() - 1; i >= 0; i--) {
+            final T sample = sampleClass.cast(samples.get(i));
+            if (predicate.test(sample)) {
+                return sample;
+            }
+        }
+        return null;
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    private void scheduleFlush() {
+        if (scheduledFlush != null || maxDelayMillis <= 0) {
+            return;
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+        }
+        scheduledFlush = scheduler.schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes all pending samples to the database.
+     *
+     * @return true if there was nothing to write or all pending samples were written
+     */
+    public boolean flush() {
+        synchronized (this) {
+            if (pendingCount == 0) {
+                cancelScheduledFlush();
+                return true;
+            }
+        }
+
+        // The database lock must always be taken before the monitor of this writer, since
+        // samples are usually added while the caller already holds the database lock
+        final long start = System.currentTimeMillis();
+        final Runnable listener;
+        try (DBHandler handler = GBApplication.acquireDB()) {
+            final DaoSession session = handler.getDaoSession();
+            synchronized (this) {
+                cancelScheduledFlush();
+                if (pendingCount == 0) {
+                    return true;
+                }
+                session.runInTx(() -> {
+                    for (final Map.Entry<Class<?>, List<Object>> entry : pendingSamples.entrySet()) {
+                        @SuppressWarnings("unchecked")
+                        final AbstractDao<Object, ?> dao = (AbstractDao<Object, ?>) session.getDao(entry.getKey());
+                        dao.insertOrReplaceInTx(entry.getValue());
+                    }
+                });
+                LOG.debug("{}: wrote {} samples in {}ms", name, pendingCount, System.currentTimeMillis() - start);
+                for (final List<Object> samples : pendingSamples.values()) {
+                    DailySummaryManager.onSamplesWritten(samples);
+                }
+                pendingSamples.clear();
+                pendingCount = 0;
+                listener = flushListener;
+            }
+        } catch (final Exception e) {
+            LOG.error("{}: failed to write pending samples", name, e);
+            return false;
+        }
+
+        if (listener != null) {
+            listener.run();
+        }
+        return true;
+    }
+
+    private void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+    /**
+     * Flushes the pending samples in the background and stops the flush timer, so that it can be
+     * called from the main thread. Samples added afterwards are written immediately.
+     */
+    public void dispose() {
+        final ScheduledExecutorService executor;
+        synchronized (this) {
+            if (disposed) {
+                return;
+            }
+            disposed = true;
+            cancelScheduledFlush();
+            executor = scheduler;
+            scheduler = null;
+            if (executor == null && pendingCount == 0) {
+                return;
+            }
+        }
+        final ScheduledExecutorService flushExecutor = executor != null ? executor : Executors.newSingleThreadScheduledExecutor();
+        // the pending flush still runs after shutdown
+        flushExecutor.execute(this::flush);
+        flushExecutor.shutdown();
+    }
+}
@@ -40,9 +40,17 @@ public abstract class DBAccess extends AsyncTask {
 
     protected abstract void doInBackground(DBHandler handler);
 
+    /**
+     * Whether #doInBackground(DBHandler) only reads from the database. If so, it runs
+     * with GBApplication#acquireReadOnlyDB() and does not wait for writers.
+     */
+    protected boolean isReadOnly() {
+        return false;
+    }
+
     @Override
     protected Object doInBackground(Object[] params) {
-        try (DBHandler db = GBApplication.acquireDB()) {
+        try (DBHandler db = isReadOnly() ? GBApplication.acquireReadOnlyDB() : GBApplication.acquireDB()) {
             doInBackground(db);
         } catch (Exception e) {
             mError = e;
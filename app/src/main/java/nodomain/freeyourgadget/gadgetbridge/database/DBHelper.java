@@ -22,6 +22,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -40,7 +41,9 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import de.greenrobot.dao.Property;
 import de.greenrobot.dao.query.Query;
@@ -89,6 +92,13 @@ import nodomain.freeyourgadget.gadgetbridge.util.GBPrefs;
 public class DBHelper {
     private static final Logger LOG = LoggerFactory.getLogger(DBHelper.class);
 
+    /**
+     * Database ids of the Device entities, by device address. Device ids never change for
+     * a given address, so this is only invalidated when the address changes, the device is
+     * deleted or the whole database is replaced.
+     */
+    private static final Map<String, Long> deviceIdCache = new ConcurrentHashMap<>();
+
     private final Context context;
 
     public DBHelper(Context context) {
@@ -145,6 +155,58 @@ public class DBHelper {
         }
     }
 
+    /**
+     * Exports a consistent snapshot of the database, without closing it and without holding
+     * the database lock while writing to the destination, which may be slow.
+     * <p>
+     * On Android 11 and newer, the snapshot is created with VACUUM INTO while only holding a
+     * read-only handler, so syncs can keep writing. On older versions, the database is closed
+     * and copied to a local file, and the lock is released before the copy to the destination.
+     */
+    public void exportDBSnapshot(OutputStream dest) throws IOException {
+        final File snapshot = createSnapshot();
+        try {
+            FileUtils.copyFileToStream(snapshot, dest);
+        } finally {
+            if (!snapshot.delete()) {
+                LOG.warn("Failed to delete database snapshot {}", snapshot);
+            }
+        }
+    }
+
+    private File createSnapshot() throws IOException {
+        final File snapshot = new File(context.getCacheDir(), "export_snapshot.db");
+        if (snapshot.exists() && !snapshot.delete()) {
+            throw new IOException("Unable to delete old snapshot: " + snapshot.getAbsolutePath());
+        }
+
+        final long start = System.currentTimeMillis();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // VACUUM INTO needs SQLite 3.27
+            try (DBHandler dbHandler = GBApplication.acquireReadOnlyDB()) {
+                dbHandler.getDatabase().execSQL("VACUUM INTO ?", new Object[]{snapshot.getAbsolutePath()});
+            } catch (final Exception e) {
+                throw new IOException("Failed to create database snapshot", e);
+            }
+        } else {
+            try (DBHandler dbHandler = GBApplication.acquireDB()) {
+                final String dbPath = getClosedDBPath(dbHandler);
+                try {
+                    FileUtils.copyFile(new File(dbPath), snapshot);
+                } finally {
+                    dbHandler.openDb();
+                }
+            } catch (final IOException e) {
+                throw e;
+            } catch (final Exception e) {
+                throw new IOException("Failed to create database snapshot", e);
+            }
+        }
+        LOG.info("Created database snapshot of {} bytes in {}ms", snapshot.length(), System.currentTimeMillis() - start);
+
+        return snapshot;
+    }
+
     private String getDate() {
         return new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
     }
@@ -161,6 +223,8 @@ public class DBHelper {
         } finally {
             dbHandler.openDb();
         }
+        // the summaries may not match the imported samples
+        DailySummaryManager.invalidateAll(dbHandler);
     }
 
     public void validateDB(SQLiteOpenHelper dbHandler) throws IOException {
@@ -384,6 +448,45 @@ public class DBHelper {
         return null;
     }
 
+    /**
+     * Finds the database id of the Device entity for the given GBDevice. In contrast to
+     * #findDevice, the id is cached, so this is cheap to call for every query.
+     * @param gbDevice
+     * @param session
+     * @return the id of the corresponding Device entity, or null if none
+     */
+    @Nullable
+    public static Long findDeviceId(GBDevice gbDevice, DaoSession session) {
+        final String address = gbDevice.getAddress();
+        Long deviceId = deviceIdCache.get(address);
+        if (deviceId == null) {
+            final Device device = findDevice(gbDevice, session);
+            if (device == null) {
+                // not cached, the device may be created later
+                return null;
+            }
+            deviceId = device.getId();
+            deviceIdCache.put(address, deviceId);
+        }
+        return deviceId;
+    }
+
+    /**
+     * Removes the cached database id of the device with the given address.
+     * @see #findDeviceId(GBDevice, DaoSession)
+     */
+    public static void invalidateDeviceId(final String address) {
+        deviceIdCache.remove(address);
+    }
+
+    /**
+     * Removes all cached device database ids, e.g. after the database was replaced.
+     * @see #findDeviceId(GBDevice, DaoSession)
+     */
+    public static void invalidateDeviceIdCache() {
+        deviceIdCache.clear();
+    }
+
     public static void updateDeviceMacAddress(final DaoSession session, final String oldAddress, final String newAddress) {
         final DeviceDao deviceDao = session.getDeviceDao();
         final Query<Device> query = deviceDao.queryBuilder().where(DeviceDao.Properties.Identifier.eq(oldAddress)).build();
@@ -396,6 +499,8 @@ public class DBHelper {
         final Device device = devices.get(0);
         device.setIdentifier(newAddress);
         session.getDeviceDao().update(device);
+        invalidateDeviceId(oldAddress);
+        invalidateDeviceId(newAddress);
     }
 
     /**
@@ -30,6 +30,8 @@ public class DBOpenHelper extends DaoMaster.OpenHelper {
         super(context, dbName, factory);
         updaterClassNamePrefix = dbName + "Update_";
         this.context = context;
+        // allow readers (charts, dashboard) to run in parallel with a writer, e.g. a sync
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -0,0 +1,843 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import android.content.SharedPreferences;
+import android.database.Cursor;
+
+import androidx.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.GBEnvironment;
+import nodomain.freeyourgadget.gadgetbridge.activities.HeartRateUtils;
+import nodomain.freeyourgadget.gadgetbridge.activities.charts.ActivityAnalysis;
+import nodomain.freeyourgadget.gadgetbridge.activities.charts.StepAnalysis;
+import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCoordinator;
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.devices.TimeSampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.entities.AbstractTimeSample;
+import nodomain.freeyourgadget.gadgetbridge.entities.DailySummary;
+import nodomain.freeyourgadget.gadgetbridge.entities.DailySummaryDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmount;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySampleBatch;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySession;
+import nodomain.freeyourgadget.gadgetbridge.model.HeartRateSample;
+import nodomain.freeyourgadget.gadgetbridge.model.HrvSummarySample;
+import nodomain.freeyourgadget.gadgetbridge.model.TimeSample;
+import nodomain.freeyourgadget.gadgetbridge.model.WeightSample;
+
+/**
+ * Maintains the {@link DailySummary} rollups, so that the daily totals do not need to be
+ * recalculated from the samples every time they are shown.
+ * <p>
+ * Missing or outdated summaries are calculated from the samples when they are requested, and
+ * stored in the background. After each sync, the summaries of the days that may have received
+ * new samples are recalculated, see {@link #updateAfterSync(GBDevice, Runnable)}. Afterwards, the
+ * missing summaries of older days are calculated as well, so that long-range trends only need to
+ * read the stored summaries, see {@link #getStoredDailySummaries(GBDevice, Calendar, Calendar, DBHandler)}.
+ */
+public class DailySummaryManager {
+    private static final Logger LOG = LoggerFactory.getLogger(DailySummaryManager.class);
+
+    /**
+     * Sleep is attributed to the day the user woke up, so it is calculated from noon of the
+     * previous day to noon of this day.
+     */
+    public static final int SLEEP_OFFSET_HOURS = -12;
+
+    // summaries of a day that has not ended yet are recalculated once they are this old
+    private static final int MAX_AGE_SECONDS = 10 * 60;
+    // after a sync, only this many days are recalculated, older ones are just discarded
+    private static final int MAX_UPDATE_DAYS = 62;
+    // missing summaries are calculated and stored in chunks of this many days, so that the
+    // database is not locked for the whole calculation
+    private static final int BACKFILL_CHUNK_DAYS = 31;
+    // the samples of at most this many days are loaded at once to calculate their summaries
+    private static final int MAX_LOADED_DAYS = 31;
+
+    private static final String PREF_LAST_SAMPLE_TIMESTAMP = "daily_summary_last_sample_timestamp";
+    private static final String PREF_GENERATION = "daily_summary_generation";
+    private static final String PREF_BACKFILL_GENERATION = "daily_summary_backfill_generation";
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Runs the backfills, separately from the summaries requested by the charts and dashboard,
+     * which must not wait for them.
+     */
+    private static final ExecutorService backfillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "DailySummaryBackfill");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /**
+     * The addresses of the devices whose backfill is queued or running.
+     */
+    private static final Set<String> pendingBackfills = Collections.synchronizedSet(new HashSet<>());
+
+    /**
+     * The earliest timestamp of the samples written since the last update, in milliseconds,
+     * by database id of the device. See {@link #onSamplesWritten(Iterable)}.
+     */
+    private static final Map<Long, Long> earliestWrittenMillis = new ConcurrentHashMap<>();
+
+    public static DailySummary getDailySummary(final GBDevice device, final Calendar day, final DBHandler db) {
+        final Long deviceId = DBHelper.findDeviceId(device, db.getDaoSession());
+        if (deviceId == null) {
+            return createEmptySummary(0, day);
+        }
+
+        final DailySummary summary = db.getDaoSession().getDailySummaryDao().queryBuilder()
+                .where(
+                        DailySummaryDao.Properties.DeviceId.eq(deviceId),
+                        DailySummaryDao.Properties.Day.eq(toDayKey(day))
+                ).unique();
+        if (summary != null && isUpToDate(summary, day)) {
+            return summary;
+        }
+
+        final DailySummary calculated = calculateDailySummary(device, deviceId, day, db);
+        storeInBackground(Collections.singletonList(calculated));
+        return calculated;
+    }
+
+    /**
+     * Returns the summaries of all days from {@code from} to {@code to}, both inclusive,
+     * in chronological order. The stored summaries are read with a single query, and the missing or
+     * outdated ones are calculated together, see {@link #calculateDailySummaries(GBDevice, long, List, DBHandler)}.
+     */
+    public static List<DailySummary> getDailySummaries(final GBDevice device, final Calendar from, final Calendar to, final DBHandler db) {
+        final List<DailySummary> result = new ArrayList<>();
+        final Calendar day = startOfDay(from);
+        final int lastDayKey = toDayKey(to);
+
+        final Long deviceId = DBHelper.findDeviceId(device, db.getDaoSession());
+        if (deviceId == null) {
+            while (toDayKey(day) <= lastDayKey) {
+                result.add(createEmptySummary(0, day));
+                day.add(Calendar.DATE, 1);
+            }
+            return result;
+        }
+
+        final List<DailySummary> stored = db.getDaoSession().getDailySummaryDao().queryBuilder()
+                .where(
+                        DailySummaryDao.Properties.DeviceId.eq(deviceId),
+                        DailySummaryDao.Properties.Day.between(toDayKey(day), lastDayKey)
+                ).list();
+        final Map<Integer, DailySummary> storedByDay = new HashMap<>(stored.size() * 2);
+        for (final DailySummary summary : stored) {
+            storedByDay.put(summary.getDay(), summary);
+        }
+
+        final List<Calendar> missingDays = new ArrayList<>();
+        while (toDayKey(day) <= lastDayKey) {
+            final DailySummary summary = storedByDay.get(toDayKey(day));
+            if (summary == null || !isUpToDate(summary, day)) {
+                missingDays.add((Calendar) day.clone());
+                result.add(null);
+            } else {
+                result.add(summary);
+            }
+            day.add(Calendar.DATE, 1);
+        }
+
+        if (!missingDays.isEmpty()) {
+            final List<DailySummary> calculated = calculateDailySummaries(device, deviceId, missingDays, db);
+            int next = 0;
+            for (int i = 0; i < result.size(); i++) {
+                if (result.get(i) == null) {
+                    result.set(i, calculated.get(next++));
+                }
+            }
+            storeInBackground(calculated);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the stored summaries of the days from {@code from} to {@code to}, both inclusive,
+     * in chronological order. Unlike {@link #getDailySummaries(GBDevice, Calendar, Calendar, DBHandler)},
+     * missing or outdated summaries are not calculated, so this only reads a single row per day,
+     * even for ranges of several years.
+     */
+    public static List<DailySummary> getStoredDailySummaries(final GBDevice device, final Calendar from, final Calendar to, final DBHandler db) {
+        final Long deviceId = DBHelper.findDeviceId(device, db.getDaoSession());
+        if (deviceId == null) {
+            return Collections.emptyList();
+        }
+        return db.getDaoSession().getDailySummaryDao().queryBuilder()
+                .where(
+                        DailySummaryDao.Properties.DeviceId.eq(deviceId),
+                        DailySummaryDao.Properties.Day.between(toDayKey(from), toDayKey(to))
+                )
+                .orderAsc(DailySummaryDao.Properties.Day)
+                .list();
+    }
+
+    /**
+     * Returns whether any summary of the device is stored.
+     */
+    public static boolean hasDailySummaries(final GBDevice device, final DBHandler db) {
+        final Long deviceId = DBHelper.findDeviceId(device, db.getDaoSession());
+        if (deviceId == null) {
+            return false;
+        }
+        return !db.getDaoSession().getDailySummaryDao().queryBuilder()
+                .where(DailySummaryDao.Properties.DeviceId.eq(deviceId))
+                .limit(1)
+                .list()
+                .isEmpty();
+    }
+
+    /**
+     * Remembers the earliest timestamp of the written samples that are part of the summaries,
+     * per device, so that the next {@link #updateAfterSync(GBDevice, Runnable) update} also
+     * recalculates older days, e.g. of re-synced or imported samples. Called by the sample
+     * providers whenever they write samples.
+     */
+    public static void onSamplesWritten(final Iterable<?> samples) {
+        long deviceId = -1;
+        long earliest = Long.MAX_VALUE;
+        for (final Object sample : samples) {
+            final long timestamp;
+            if (sample instanceof AbstractActivitySample) {
+                deviceId = ((AbstractActivitySample) sample).getDeviceId();
+                timestamp = ((AbstractActivitySample) sample).getTimestamp() * 1000L;
+            } else if (sample instanceof AbstractTimeSample
+                    && (sample instanceof HeartRateSample || sample instanceof HrvSummarySample || sample instanceof WeightSample)) {
+                deviceId = ((AbstractTimeSample) sample).getDeviceId();
+                timestamp = ((AbstractTimeSample) sample).getTimestamp();
+            } else {
+                continue;
+            }
+            earliest = Math.min(earliest, timestamp);
+        }
+        if (earliest != Long.MAX_VALUE) {
+            // the samples written together belong to the same device
+            earliestWrittenMillis.merge(deviceId, earliest, Math::min);
+        }
+    }
+
+    /**
+     * Recalculates the summaries of the days that may have been affected by the samples of the
+     * sync that just finished, from the day before its last sample or from the earliest sample
+     * written since the previous update, whichever is older, and runs {@code onFinish} afterwards,
+     * even on failure. The missing summaries of older days are calculated after that, once per
+     * {@link #getGeneration() generation}.
+     */
+    public static void updateAfterSync(final GBDevice device, @Nullable final Runnable onFinish) {
+        runInBackground(() -> {
+            try (DBHandler db = GBApplication.acquireDB()) {
+                updateAfterSync(device, db);
+            } catch (final Exception e) {
+                LOG.error("Failed to update the daily summaries of {}", device, e);
+            } finally {
+                // after the update, which may have started a new generation
+                scheduleBackfill(device);
+                if (onFinish != null) {
+                    onFinish.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Queues the backfill of the device, unless it already ran in the current generation or is
+     * already queued.
+     */
+    private static void scheduleBackfill(final GBDevice device) {
+        final String address = device.getAddress();
+        final int generation = getGeneration();
+        if (GBApplication.getDeviceSpecificSharedPrefs(address).getInt(PREF_BACKFILL_GENERATION, -1) == generation) {
+            return;
+        }
+        if (!pendingBackfills.add(address)) {
+            return;
+        }
+        final Runnable backfill = () -> {
+            try {
+                if (backfill(device)) {
+                    GBApplication.getDeviceSpecificSharedPrefs(address).edit()
+                            .putInt(PREF_BACKFILL_GENERATION, generation)
+                            .apply();
+                }
+            } catch (final Exception e) {
+                LOG.error("Failed to calculate the missing daily summaries of {}", device, e);
+            } finally {
+                pendingBackfills.remove(address);
+            }
+        };
+        if (GBEnvironment.env().isLocalTest()) {
+            backfill.run();
+        } else {
+            backfillExecutor.execute(backfill);
+        }
+    }
+
+    /**
+     * Calculates and stores the summaries of all days since the first activity sample or
+     * measurement that are not stored yet, e.g. the days before {@link #MAX_UPDATE_DAYS} or after the summaries were discarded.
+     * The summaries are calculated with a read-only handler, the database lock is only held to
+     * store them.
+     *
+     * @return whether all missing summaries were stored
+     */
+    static boolean backfill(final GBDevice device) throws Exception {
+        final Calendar day = Calendar.getInstance();
+        final Set<Integer> storedDays = new HashSet<>();
+        try (DBHandler db = GBApplication.acquireReadOnlyDB()) {
+            final Long deviceId = DBHelper.findDeviceId(device, db.getDaoSession());
+            if (deviceId == null) {
+                return false;
+            }
+            final long firstMillis = getFirstMeasurementMillis(device, db);
+            if (firstMillis < 0) {
+                return true;
+            }
+            day.setTimeInMillis(firstMillis);
+
+            try (Cursor cursor = db.getDatabase().rawQuery(
+                    "SELECT " + DailySummaryDao.Properties.Day.columnName +
+                            " FROM " + DailySummaryDao.TABLENAME +
+                            " WHERE " + DailySummaryDao.Properties.DeviceId.columnName + " = ?",
+                    new String[]{String.valueOf(deviceId)})) {
+                while (cursor.moveToNext()) {
+                    storedDays.add(cursor.getInt(0));
+                }
+            }
+        }
+
+        final int todayKey = toDayKey(Calendar.getInstance());
+        int calculatedDays = 0;
+        while (toDayKey(day) <= todayKey) {
+            final List<Calendar> missingDays = new ArrayList<>(BACKFILL_CHUNK_DAYS);
+            final List<DailySummary> summaries;
+            try (DBHandler db = GBApplication.acquireReadOnlyDB()) {
+                final Long deviceId = DBHelper.findDeviceId(device, db.getDaoSession());
+                if (deviceId == null) {
+                    return false;
+                }
+                while (toDayKey(day) <= todayKey && missingDays.size() < BACKFILL_CHUNK_DAYS) {
+                    if (!storedDays.contains(toDayKey(day))) {
+                        missingDays.add((Calendar) day.clone());
+                    }
+                    day.add(Calendar.DATE, 1);
+                }
+                summaries = calculateDailySummaries(device, deviceId, missingDays, db);
+            }
+            if (!summaries.isEmpty()) {
+                try (DBHandler db = GBApplication.acquireDB()) {
+                    storeMissing(db, summaries);
+                }
+            }
+            calculatedDays += summaries.size();
+        }
+
+        if (calculatedDays > 0) {
+            LOG.debug("Calculated {} missing daily summaries of {}", calculatedDays, device);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the time of the first activity sample or measurement of a value that is part of the
+     * summaries, in milliseconds, or -1 if there is none. Some devices measure e.g. the weight
+     * without tracking activity, or measured it before activity was tracked.
+     */
+    private static long getFirstMeasurementMillis(final GBDevice device, final DBHandler db) {
+        final DeviceCoordinator coordinator = device.getDeviceCoordinator();
+        final DaoSession session = db.getDaoSession();
+        long first = Long.MAX_VALUE;
+
+        final SampleProvider<? extends ActivitySample> provider = coordinator.getSampleProvider(device, session);
+        if (provider != null) {
+            final ActivitySample sample = provider.getFirstActivitySample();
+            if (sample != null) {
+                first = sample.getTimestamp() * 1000L;
+            }
+        }
+        if (coordinator.supportsHeartRateRestingMeasurement(device)) {
+            first = Math.min(first, getFirstSampleMillis(coordinator.getHeartRateRestingSampleProvider(device, session)));
+        }
+        if (coordinator.supportsHrvMeasurement()) {
+            first = Math.min(first, getFirstSampleMillis(coordinator.getHrvSummarySampleProvider(device, session)));
+        }
+        if (coordinator.supportsWeightMeasurement()) {
+            first = Math.min(first, getFirstSampleMillis(coordinator.getWeightSampleProvider(device, session)));
+        }
+        return first == Long.MAX_VALUE ? -1 : first;
+    }
+
+    private static long getFirstSampleMillis(@Nullable final TimeSampleProvider<? extends TimeSample> provider) {
+        if (provider == null) {
+            return Long.MAX_VALUE;
+        }
+        final TimeSample sample = provider.getFirstSample();
+        return sample != null ? sample.getTimestamp() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Stores the summaries whose day is not stored yet, so that the summaries stored in the
+     * meantime, e.g. by a sync, are not overwritten with older ones.
+     */
+    private static void storeMissing(final DBHandler db, final List<DailySummary> summaries) {
+        final DailySummary first = summaries.get(0);
+        final DailySummary last = summaries.get(summaries.size() - 1);
+        final Set<Integer> storedDays = new HashSet<>();
+        try (Cursor cursor = db.getDatabase().rawQuery(
+                "SELECT " + DailySummaryDao.Properties.Day.columnName +
+                        " FROM " + DailySummaryDao.TABLENAME +
+                        " WHERE " + DailySummaryDao.Properties.DeviceId.columnName + " = ?" +
+                        " AND " + DailySummaryDao.Properties.Day.columnName + " BETWEEN ? AND ?",
+                new String[]{String.valueOf(first.getDeviceId()), String.valueOf(first.getDay()), String.valueOf(last.getDay())})) {
+            while (cursor.moveToNext()) {
+                storedDays.add(cursor.getInt(0));
+            }
+        }
+        final List<DailySummary> missing = new ArrayList<>(summaries.size());
+        for (final DailySummary summary : summaries) {
+            if (!storedDays.contains(summary.getDay())) {
+                missing.add(summary);
+            }
+        }
+        db.getDaoSession().getDailySummaryDao().insertInTx(missing);
+    }
+
+    private static void updateAfterSync(final GBDevice device, final DBHandler db) {
+        final DaoSession session = db.getDaoSession();
+        final Long deviceId = DBHelper.findDeviceId(device, session);
+        if (deviceId == null) {
+            return;
+        }
+        final SampleProvider<? extends ActivitySample> provider = device.getDeviceCoordinator().getSampleProvider(device, session);
+        if (provider == null) {
+            return;
+        }
+        final ActivitySample latestSample = provider.getLatestActivitySample();
+        if (latestSample == null) {
+            return;
+        }
+
+        final SharedPreferences prefs = GBApplication.getDeviceSpecificSharedPrefs(device.getAddress());
+        final int lastSampleTimestamp = prefs.getInt(PREF_LAST_SAMPLE_TIMESTAMP, 0);
+        final Long earliestWritten = earliestWrittenMillis.get(deviceId);
+
+        final DailySummaryDao dao = session.getDailySummaryDao();
+        if (lastSampleTimestamp == 0) {
+            // we do not know which days are up to date, they will be calculated again when needed
+            LOG.debug("Discarding all daily summaries of {}", device);
+            dao.queryBuilder()
+                    .where(DailySummaryDao.Properties.DeviceId.eq(deviceId))
+                    .buildDelete().executeDeleteWithoutDetachingEntities();
+            GBApplication.getDeviceSpecificSharedPrefs(device.getAddress()).edit()
+                    .remove(PREF_BACKFILL_GENERATION)
+                    .apply();
+        } else {
+            // the samples before the last known one may still have changed slightly (e.g. the
+            // device re-sending the last hour), and affect the sleep of the following day
+            final Calendar day = Calendar.getInstance();
+            day.setTimeInMillis((lastSampleTimestamp - 24 * 60 * 60) * 1000L);
+            if (earliestWritten != null && earliestWritten < day.getTimeInMillis()) {
+                // older samples were written as well, e.g. re-synced or imported days
+                day.setTimeInMillis(earliestWritten);
+                if (toDayKey(day) <= getLastSettledDay(device)) {
+                    // values derived from the settled days, such as the step streaks, are outdated,
+                    // and the backfill needs to run again for the days that are not recalculated below
+                    LOG.debug("Samples of {} were written for settled day {}", device, toDayKey(day));
+                    nextGeneration();
+                }
+            }
+            final Calendar today = Calendar.getInstance();
+            final Calendar oldestUpdatedDay = (Calendar) today.clone();
+            oldestUpdatedDay.add(Calendar.DATE, -MAX_UPDATE_DAYS);
+
+            LOG.debug("Updating daily summaries of {} since {}", device, toDayKey(day));
+
+            dao.queryBuilder()
+                    .where(
+                            DailySummaryDao.Properties.DeviceId.eq(deviceId),
+                            DailySummaryDao.Properties.Day.ge(toDayKey(day))
+                    ).buildDelete().executeDeleteWithoutDetachingEntities();
+
+            if (day.before(oldestUpdatedDay)) {
+                day.setTimeInMillis(oldestUpdatedDay.getTimeInMillis());
+            }
+
+            final List<Calendar> days = new ArrayList<>();
+            while (toDayKey(day) <= toDayKey(today)) {
+                days.add((Calendar) day.clone());
+                day.add(Calendar.DATE, 1);
+            }
+            dao.insertOrReplaceInTx(calculateDailySummaries(device, deviceId, days, db));
+        }
+
+        prefs.edit().putInt(PREF_LAST_SAMPLE_TIMESTAMP, latestSample.getTimestamp()).apply();
+        if (earliestWritten != null) {
+            // unless older samples were written in the meantime
+            earliestWrittenMillis.remove(deviceId, earliestWritten);
+        }
+    }
+
+    /**
+     * Returns the last day whose summary will not be recalculated by the next sync, as yyyyMMdd,
+     * or 0 if the summaries of all days may still change. Values derived from the summaries up to
+     * this day stay valid until the {@link #getGeneration() generation} changes.
+     */
+    public static int getLastSettledDay(final GBDevice device) {
+        final SharedPreferences prefs = GBApplication.getDeviceSpecificSharedPrefs(device.getAddress());
+        final int lastSampleTimestamp = prefs.getInt(PREF_LAST_SAMPLE_TIMESTAMP, 0);
+        if (lastSampleTimestamp == 0) {
+            return 0;
+        }
+        // see updateAfterSync, the day before the last sample is recalculated as well
+        final Calendar day = Calendar.getInstance();
+        day.setTimeInMillis((lastSampleTimestamp - 24 * 60 * 60) * 1000L);
+        day.add(Calendar.DATE, -1);
+        return toDayKey(day);
+    }
+
+    /**
+     * Returns a number that changes whenever all summaries, or the summaries of settled days,
+     * see {@link #getLastSettledDay(GBDevice)}, are discarded.
+     */
+    public static int getGeneration() {
+        return GBApplication.getPrefs().getInt(PREF_GENERATION, 0);
+    }
+
+    /**
+     * Discards all summaries, e.g. after a database import.
+     */
+    public static void invalidateAll(final DBHandler db) {
+        db.getDaoSession().getDailySummaryDao().deleteAll();
+        nextGeneration();
+    }
+
+    /**
+     * Starts a new {@link #getGeneration() generation}, after all summaries or the summaries of
+     * settled days were deleted.
+     */
+    private static void nextGeneration() {
+        final SharedPreferences prefs = GBApplication.getPrefs().getPreferences();
+        prefs.edit().putInt(PREF_GENERATION, prefs.getInt(PREF_GENERATION, 0) + 1).apply();
+    }
+
+    public static void deleteDailySummaries(final long deviceId, final DaoSession session) {
+        session.getDailySummaryDao().queryBuilder()
+                .where(DailySummaryDao.Properties.DeviceId.eq(deviceId))
+                .buildDelete().executeDeleteWithoutDetachingEntities();
+    }
+
+    private static void storeInBackground(final List<DailySummary> summaries) {
+        runInBackground(() -> {
+            try (DBHandler db = GBApplication.acquireDB()) {
+                db.getDaoSession().getDailySummaryDao().insertOrReplaceInTx(summaries);
+            } catch (final Exception e) {
+                LOG.warn("Failed to store {} daily summaries", summaries.size(), e);
+            }
+        });
+    }
+
+    private static void runInBackground(final Runnable runnable) {
+        if (GBEnvironment.env().isLocalTest()) {
+            // the tests hold the database lock on their own thread
+            runnable.run();
+        } else {
+            executor.execute(runnable);
+        }
+    }
+
+    public static DailySummary calculateDailySummary(final GBDevice device, final long deviceId, final Calendar day, final DBHandler db) {
+        return calculateDailySummaries(device, deviceId, Collections.singletonList(day), db).get(0);
+    }
+
+    /**
+     * Calculates the summaries of the given days, which must be in chronological order. Instead of
+     * querying every day on its own, the samples and measurements of up to {@link #MAX_LOADED_DAYS}
+     * days are loaded with a single query per provider, and split into the days.
+     */
+    public static List<DailySummary> calculateDailySummaries(final GBDevice device, final long deviceId, final List<Calendar> days, final DBHandler db) {
+        final List<DailySummary> result = new ArrayList<>(days.size());
+        int first = 0;
+        while (first < days.size()) {
+            final Calendar limit = startOfDay(days.get(first));
+            limit.add(Calendar.DATE, MAX_LOADED_DAYS);
+            int end = first + 1;
+            while (end < days.size() && days.get(end).before(limit)) {
+                end++;
+            }
+            result.addAll(calculateLoadedDailySummaries(device, deviceId, days.subList(first, end), db));
+            first = end;
+        }
+        return result;
+    }
+
+    private static List<DailySummary> calculateLoadedDailySummaries(final GBDevice device, final long deviceId, final List<Calendar> days, final DBHandler db) {
+        final List<DailySummary> summaries = new ArrayList<>(days.size());
+        for (final Calendar day : days) {
+            summaries.add(createEmptySummary(deviceId, day));
+        }
+        addMeasurements(summaries, days, device, db);
+
+        final SampleProvider<? extends ActivitySample> provider = device.getDeviceCoordinator().getSampleProvider(device, db.getDaoSession());
+        if (provider == null) {
+            return summaries;
+        }
+
+        // the sleep of the first day starts before its steps, see SLEEP_OFFSET_HOURS
+        final Calendar firstDay = days.get(0);
+        final Calendar lastDay = days.get(days.size() - 1);
+        final int fromTs = Math.min(getStartOfDay(firstDay, 0), getStartOfDay(firstDay, SLEEP_OFFSET_HOURS));
+        final int toTs = Math.max(getStartOfDay(lastDay, 0), getStartOfDay(lastDay, SLEEP_OFFSET_HOURS)) + 24 * 60 * 60 - 1;
+        final ActivitySampleBatch samples = ActivitySampleBatch.fromProvider(provider, fromTs, toTs);
+
+        for (int i = 0; i < days.size(); i++) {
+            addActivity(
+                    summaries.get(i),
+                    getSamplesOfDay(samples, days.get(i), 0),
+                    getSamplesOfDay(samples, days.get(i), SLEEP_OFFSET_HOURS)
+            );
+        }
+
+        return summaries;
+    }
+
+    private static void addActivity(final DailySummary summary, final ActivitySampleBatch samples, final ActivitySampleBatch sleepSamples) {
+        final ActivityAmounts amounts = new ActivityAnalysis().calculateActivityAmounts(samples);
+        long steps = 0;
+        long distance = 0;
+        for (final ActivityAmount amount : amounts.getAmounts()) {
+            steps += amount.getTotalSteps();
+            distance += amount.getTotalDistance();
+        }
+        summary.setSteps((int) steps);
+        summary.setDistanceCm((int) distance);
+
+        final StepAnalysis stepAnalysis = new StepAnalysis();
+        final List<ActivitySession> stepSessions = stepAnalysis.calculateStepSessions(samples);
+        final ActivitySession stepSessionsSummary = stepAnalysis.calculateSummary(stepSessions, stepSessions.isEmpty());
+        final long activeMillis = stepSessionsSummary.getEndTime().getTime() - stepSessionsSummary.getStartTime().getTime();
+        summary.setActiveMinutes((int) (activeMillis / 1000 / 60));
+
+        final HeartRateUtils heartRateUtils = HeartRateUtils.getInstance();
+        int heartRateMin = Integer.MAX_VALUE;
+        int heartRateMax = 0;
+        long heartRateSum = 0;
+        int heartRateCount = 0;
+        for (int i = 0; i < samples.size(); i++) {
+            final int heartRate = samples.getHeartRate(i);
+            if (heartRateUtils.isValidHeartRateValue(heartRate)) {
+                heartRateMin = Math.min(heartRateMin, heartRate);
+                heartRateMax = Math.max(heartRateMax, heartRate);
+                heartRateSum += heartRate;
+                heartRateCount++;
+            }
+        }
+        if (heartRateCount > 0) {
+            summary.setHeartRateMin(heartRateMin);
+            summary.setHeartRateAvg((int) (heartRateSum / heartRateCount));
+            summary.setHeartRateMax(heartRateMax);
+        }
+
+        final ActivityAmounts sleepAmounts = new ActivityAnalysis().calculateActivityAmounts(sleepSamples);
+        for (final ActivityAmount amount : sleepAmounts.getAmounts()) {
+            final int seconds = (int) amount.getTotalSeconds();
+            switch (amount.getActivityKind()) {
+                case LIGHT_SLEEP:
+                    summary.setLightSleepSeconds(summary.getLightSleepSeconds() + seconds);
+                    break;
+                case DEEP_SLEEP:
+                    summary.setDeepSleepSeconds(summary.getDeepSleepSeconds() + seconds);
+                    break;
+                case REM_SLEEP:
+                    summary.setRemSleepSeconds(summary.getRemSleepSeconds() + seconds);
+                    break;
+                case AWAKE_SLEEP:
+                    summary.setAwakeSleepSeconds(summary.getAwakeSleepSeconds() + seconds);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Adds the values the device measures at most a few times per day, which are not part of
+     * the activity samples.
+     */
+    private static void addMeasurements(final List<DailySummary> summaries, final List<Calendar> days, final GBDevice device, final DBHandler db) {
+        final DeviceCoordinator coordinator = device.getDeviceCoordinator();
+        final DaoSession session = db.getDaoSession();
+
+        if (coordinator.supportsHeartRateRestingMeasurement(device)) {
+            final List<HeartRateSample> samples = getLastSamples(coordinator.getHeartRateRestingSampleProvider(device, session), days);
+            for (int i = 0; i < days.size(); i++) {
+                final HeartRateSample sample = samples.get(i);
+                if (sample != null && sample.getHeartRate() > 0) {
+                    summaries.get(i).setHeartRateResting(sample.getHeartRate());
+                }
+            }
+        }
+        if (coordinator.supportsHrvMeasurement()) {
+            final List<HrvSummarySample> samples = getLastSamples(coordinator.getHrvSummarySampleProvider(device, session), days);
+            for (int i = 0; i < days.size(); i++) {
+                final HrvSummarySample sample = samples.get(i);
+                if (sample != null && sample.getLastNightAverage() != null) {
+                    summaries.get(i).setHrvAverage(sample.getLastNightAverage());
+                }
+            }
+        }
+        if (coordinator.supportsWeightMeasurement()) {
+            final List<WeightSample> samples = getLastSamples(coordinator.getWeightSampleProvider(device, session), days);
+            for (int i = 0; i < days.size(); i++) {
+                final WeightSample sample = samples.get(i);
+                if (sample != null) {
+                    summaries.get(i).setWeightGrams(Math.round(sample.getWeightKg() * 1000));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the last sample of each of the given days, or null for the days without one. The
+     * samples of all days are read with a single query.
+     */
+    private static <T extends TimeSample> List<T> getLastSamples(@Nullable final TimeSampleProvider<? extends T> provider, final List<Calendar> days) {
+        final List<T> last = new ArrayList<>(Collections.<T>nCopies(days.size(), null));
+        if (provider == null) {
+            return last;
+        }
+        final long[] startMillis = new long[days.size()];
+        final long[] endMillis = new long[days.size()];
+        for (int i = 0; i < days.size(); i++) {
+            final Calendar day = startOfDay(days.get(i));
+            startMillis[i] = day.getTimeInMillis();
+            day.add(Calendar.DATE, 1);
+            endMillis[i] = day.getTimeInMillis();
+        }
+        for (final T sample : provider.getAllSamples(startMillis[0], endMillis[days.size() - 1] - 1)) {
+            int index = Arrays.binarySearch(startMillis, sample.getTimestamp());
+            if (index < 0) {
+                // the day that starts before the sample
+                index = -index - 2;
+            }
+            if (index < 0 || sample.getTimestamp() >= endMillis[index]) {
+                // between the requested days
+                continue;
+            }
+            final T current = last.get(index);
+            if (current == null || sample.getTimestamp() >= current.getTimestamp()) {
+                last.set(index, sample);
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Converts the summary to the amounts the charts work with. The sleep amounts are those of
+     * {@link #SLEEP_OFFSET_HOURS}, the steps and distance those of the day itself.
+     */
+    public static ActivityAmounts toActivityAmounts(final DailySummary summary) {
+        final ActivityAmounts result = new ActivityAmounts();
+        addAmount(result, ActivityKind.DEEP_SLEEP, summary.getDeepSleepSeconds());
+        addAmount(result, ActivityKind.LIGHT_SLEEP, summary.getLightSleepSeconds());
+        addAmount(result, ActivityKind.REM_SLEEP, summary.getRemSleepSeconds());
+        addAmount(result, ActivityKind.AWAKE_SLEEP, summary.getAwakeSleepSeconds());
+        if (summary.getSteps() > 0 || summary.getDistanceCm() > 0) {
+            final ActivityAmount activity = new ActivityAmount(ActivityKind.ACTIVITY);
+            activity.addSteps(summary.getSteps());
+            activity.addDistance(summary.getDistanceCm());
+            result.addAmount(activity);
+        }
+        result.calculatePercentages();
+        return result;
+    }
+
+    private static void addAmount(final ActivityAmounts amounts, final ActivityKind kind, final int seconds) {
+        if (seconds > 0) {
+            final ActivityAmount amount = new ActivityAmount(kind);
+            amount.addSeconds(seconds);
+            amounts.addAmount(amount);
+        }
+    }
+
+    /**
+     * Returns the samples of the day, which starts at midnight shifted by {@code offsetHours}.
+     */
+    private static ActivitySampleBatch getSamplesOfDay(final ActivitySampleBatch samples, final Calendar day, final int offsetHours) {
+        final int startTs = getStartOfDay(day, offsetHours);
+        return samples.copyOfRange(samples.indexOfTimestamp(startTs), samples.indexOfTimestamp(startTs + 24 * 60 * 60));
+    }
+
+    private static int getStartOfDay(final Calendar day, final int offsetHours) {
+        final Calendar start = startOfDay(day);
+        start.add(Calendar.HOUR, offsetHours);
+        return (int) (start.getTimeInMillis() / 1000);
+    }
+
+    private static boolean isUpToDate(final DailySummary summary, final Calendar day) {
+        final Calendar nextDay = startOfDay(day);
+        nextDay.add(Calendar.DATE, 1);
+        if (summary.getComputedAt() >= nextDay.getTimeInMillis() / 1000) {
+            return true;
+        }
+        return System.currentTimeMillis() / 1000 - summary.getComputedAt() < MAX_AGE_SECONDS;
+    }
+
+    private static DailySummary createEmptySummary(final long deviceId, final Calendar day) {
+        final DailySummary summary = new DailySummary();
+        summary.setDeviceId(deviceId);
+        summary.setDay(toDayKey(day));
+        summary.setComputedAt((int) (System.currentTimeMillis() / 1000));
+        return summary;
+    }
+
+    private static Calendar startOfDay(final Calendar day) {
+        final Calendar start = (Calendar) day.clone(); // do not modify the caller's argument
+        start.set(Calendar.HOUR_OF_DAY, 0);
+        start.set(Calendar.MINUTE, 0);
+        start.set(Calendar.SECOND, 0);
+        start.set(Calendar.MILLISECOND, 0);
+        return start;
+    }
+
+    public static int toDayKey(final Calendar day) {
+        return day.get(Calendar.YEAR) * 10000 + (day.get(Calendar.MONTH) + 1) * 100 + day.get(Calendar.DAY_OF_MONTH);
+    }
+}
@@ -23,6 +23,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.SystemClock;
 
@@ -94,28 +95,28 @@ public class PeriodicExporter extends BroadcastReceiver {
         return new RefreshTask(task, context);
     }
 
-    public class RefreshTask extends DBAccess {
+    public class RefreshTask extends AsyncTask<Void, Void, Void> {
         Context localContext;
 
         public RefreshTask(String task, Context context) {
-            super(task, context);
             localContext = context;
         }
 
         @Override
-        protected void doInBackground(DBHandler handler) {
+        protected Void doInBackground(Void... params) {
+            // the exports only acquire the database for as long as they need it, so that
+            // syncs are not blocked while writing to the export location
             LOG.info("Exporting DB in a background thread");
-            try (DBHandler dbHandler = GBApplication.acquireDB()) {
-                DBHelper helper = new DBHelper(localContext);
+            try {
                 String dst = GBApplication.getPrefs().getString(GBPrefs.AUTO_EXPORT_LOCATION, null);
                 if (dst == null) {
                     LOG.warn("Unable to export DB, export location not set");
                     broadcastSuccess(false);
-                    return;
+                    return null;
                 }
                 Uri dstUri = Uri.parse(dst);
                 try (OutputStream out = localContext.getContentResolver().openOutputStream(dstUri)) {
-                    helper.exportDB(dbHandler, out);
+                    new DBHelper(localContext).exportDBSnapshot(out);
                     GBApplication gbApp = GBApplication.app();
                     gbApp.setLastAutoExportTimestamp(System.currentTimeMillis());
                 }
@@ -128,6 +129,7 @@ public class PeriodicExporter extends BroadcastReceiver {
                 LOG.info("Exception while exporting DB: ", ex);
                 broadcastSuccess(false);
             }
+            return null;
         }
 
         private void broadcastSuccess(final boolean success) {
@@ -143,7 +145,7 @@ public class PeriodicExporter extends BroadcastReceiver {
         }
 
         @Override
-        protected void onPostExecute(Object o) {
+        protected void onPostExecute(Void result) {
         }
     }
 }
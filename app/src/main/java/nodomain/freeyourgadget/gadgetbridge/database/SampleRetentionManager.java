@@ -0,0 +1,473 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.database;
+
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import de.greenrobot.dao.Property;
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.activities.devicesettings.DeviceSettingsPreferenceConst;
+import nodomain.freeyourgadget.gadgetbridge.entities.GarminActivitySampleDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.GarminHrvValueSampleDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.HuamiExtendedActivitySampleDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.HuaweiWorkoutDataSampleDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.HuaweiWorkoutSummarySampleDao;
+import nodomain.freeyourgadget.gadgetbridge.entities.XiaomiActivitySampleDao;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.util.Prefs;
+
+/**
+ * Compacts the high resolution samples of a device that are older than the configured retention
+ * period ({@link DeviceSettingsPreferenceConst#PREF_SAMPLE_RETENTION_MONTHS}).
+ * <p>
+ * The samples of each bucket (e.g. 5 minutes) are replaced by a single sample in the same table,
+ * at the start of the bucket, whose values are aggregated from the original samples: steps are
+ * summed up, heart rate and intensities are averaged, the lowest oxygen saturation and the most
+ * frequent activity kind are kept.
+ * Since the rollups are regular samples, the sample providers and charts read them like any
+ * other sample, just with a lower resolution.
+ * <p>
+ * The extremes of a bucket do not fit in a single sample, so the missing {@link DailySummaryManager
+ * daily summaries} are stored before compacting. They keep the heart rate minimum and maximum, and
+ * the other totals of each day, as calculated from the full resolution samples.
+ * <p>
+ * The compaction runs in the background at most once a day per device, one day of samples per
+ * transaction, so that it never holds the database for long.
+ */
+public class SampleRetentionManager {
+    private static final Logger LOG = LoggerFactory.getLogger(SampleRetentionManager.class);
+
+    private static final String PREF_LAST_RUN = "sample_retention_last_run";
+    private static final String PREF_COMPACTED_UNTIL = "sample_retention_compacted_until_";
+
+    private static final long RUN_INTERVAL_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int CHUNK_SECONDS = 24 * 60 * 60;
+    // free pages are reused by new samples anyway, only vacuum if a lot of space can be reclaimed
+    private static final long VACUUM_MIN_FREE_BYTES = 32 * 1024 * 1024;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private enum Aggregation {
+        /**
+         * The value of the most recent sample of the bucket.
+         */
+        LAST,
+        /**
+         * The sum of the positive values, or the (negative) marker if there are none.
+         */
+        SUM_POSITIVE,
+        MAX,
+        /**
+         * The smallest of the positive values, or the largest value if there are none.
+         */
+        MIN_POSITIVE,
+        /**
+         * The average of the positive values, or the largest value if there are none.
+         */
+        AVG_POSITIVE,
+        /**
+         * The average of the valid heart rates, or the largest value if there are none.
+         */
+        AVG_HEART_RATE,
+        /**
+         * The most frequent value of the bucket.
+         */
+        DOMINANT,
+    }
+
+    private static class RetentionTable {
+        private final String tableName;
+        private final Property timestampProperty;
+        // 1 if the timestamps are in seconds, 1000 if they are in milliseconds
+        private final int timestampScale;
+        private final List<String> groupColumns;
+        // the condition to select the samples of a device, with a placeholder for the column prefix
+        private final String deviceCondition;
+        private final int bucketSeconds;
+        private final Map<String, Aggregation> aggregations = new HashMap<>();
+
+        private RetentionTable(final String tableName,
+                               final Property timestampProperty,
+                               final int timestampScale,
+                               final Property groupProperty,
+                               final String deviceCondition,
+                               final int bucketSeconds) {
+            this.tableName = tableName;
+            this.timestampProperty = timestampProperty;
+            this.timestampScale = timestampScale;
+            this.groupColumns = Collections.singletonList(groupProperty.columnName);
+            this.deviceCondition = deviceCondition;
+            this.bucketSeconds = bucketSeconds;
+        }
+
+        private RetentionTable aggregate(final Aggregation aggregation, final Property... properties) {
+            for (final Property property : properties) {
+                aggregations.put(property.columnName, aggregation);
+            }
+            return this;
+        }
+
+        private String getDeviceCondition(final String prefix) {
+            return String.format(deviceCondition, prefix);
+        }
+    }
+
+    private static final List<RetentionTable> TABLES = Arrays.asList(
+            new RetentionTable(
+                    HuamiExtendedActivitySampleDao.TABLENAME,
+                    HuamiExtendedActivitySampleDao.Properties.Timestamp,
+                    1,
+                    HuamiExtendedActivitySampleDao.Properties.DeviceId,
+                    "%sDEVICE_ID = ?",
+                    5 * 60
+            ).aggregate(Aggregation.SUM_POSITIVE, HuamiExtendedActivitySampleDao.Properties.Steps)
+                    .aggregate(Aggregation.AVG_HEART_RATE, HuamiExtendedActivitySampleDao.Properties.HeartRate)
+                    .aggregate(Aggregation.DOMINANT, HuamiExtendedActivitySampleDao.Properties.RawKind)
+                    .aggregate(Aggregation.AVG_POSITIVE,
+                            HuamiExtendedActivitySampleDao.Properties.RawIntensity,
+                            HuamiExtendedActivitySampleDao.Properties.Sleep,
+                            HuamiExtendedActivitySampleDao.Properties.DeepSleep,
+                            HuamiExtendedActivitySampleDao.Properties.RemSleep),
+            new RetentionTable(
+                    XiaomiActivitySampleDao.TABLENAME,
+                    XiaomiActivitySampleDao.Properties.Timestamp,
+                    1,
+                    XiaomiActivitySampleDao.Properties.DeviceId,
+                    "%sDEVICE_ID = ?",
+                    5 * 60
+            ).aggregate(Aggregation.SUM_POSITIVE, XiaomiActivitySampleDao.Properties.Steps)
+                    .aggregate(Aggregation.AVG_HEART_RATE, XiaomiActivitySampleDao.Properties.HeartRate)
+                    .aggregate(Aggregation.DOMINANT, XiaomiActivitySampleDao.Properties.RawKind)
+                    // a short drop of the oxygen saturation matters more than its average
+                    .aggregate(Aggregation.MIN_POSITIVE, XiaomiActivitySampleDao.Properties.Spo2)
+                    .aggregate(Aggregation.AVG_POSITIVE,
+                            XiaomiActivitySampleDao.Properties.RawIntensity,
+                            XiaomiActivitySampleDao.Properties.Stress),
+            // steps, distance and calories are cumulative for the day, so the largest one is kept
+            new RetentionTable(
+                    GarminActivitySampleDao.TABLENAME,
+                    GarminActivitySampleDao.Properties.Timestamp,
+                    1,
+                    GarminActivitySampleDao.Properties.DeviceId,
+                    "%sDEVICE_ID = ?",
+                    5 * 60
+            ).aggregate(Aggregation.MAX,
+                            GarminActivitySampleDao.Properties.Steps,
+                            GarminActivitySampleDao.Properties.DistanceCm,
+                            GarminActivitySampleDao.Properties.ActiveCalories)
+                    .aggregate(Aggregation.AVG_HEART_RATE, GarminActivitySampleDao.Properties.HeartRate)
+                    .aggregate(Aggregation.DOMINANT, GarminActivitySampleDao.Properties.RawKind)
+                    .aggregate(Aggregation.AVG_POSITIVE, GarminActivitySampleDao.Properties.RawIntensity),
+            new RetentionTable(
+                    GarminHrvValueSampleDao.TABLENAME,
+                    GarminHrvValueSampleDao.Properties.Timestamp,
+                    1000,
+                    GarminHrvValueSampleDao.Properties.DeviceId,
+                    "%sDEVICE_ID = ?",
+                    5 * 60
+            ).aggregate(Aggregation.AVG_POSITIVE, GarminHrvValueSampleDao.Properties.Value),
+            // workout data is only thinned out, the meaning of its values varies by workout type
+            new RetentionTable(
+                    HuaweiWorkoutDataSampleDao.TABLENAME,
+                    HuaweiWorkoutDataSampleDao.Properties.Timestamp,
+                    1,
+                    HuaweiWorkoutDataSampleDao.Properties.WorkoutId,
+                    "%sWORKOUT_ID IN (SELECT " + HuaweiWorkoutSummarySampleDao.Properties.WorkoutId.columnName +
+                            " FROM " + HuaweiWorkoutSummarySampleDao.TABLENAME +
+                            " WHERE " + HuaweiWorkoutSummarySampleDao.Properties.DeviceId.columnName + " = ?)",
+                    10
+            )
+    );
+
+    /**
+     * Starts compacting the samples of the device in the background, if a retention period is
+     * configured and the samples were not compacted in the last day.
+     */
+    public static void runIfDue(final GBDevice device) {
+        final SharedPreferences prefs = GBApplication.getDeviceSpecificSharedPrefs(device.getAddress());
+        final int retentionMonths = new Prefs(prefs).getInt(DeviceSettingsPreferenceConst.PREF_SAMPLE_RETENTION_MONTHS, 0);
+        if (retentionMonths <= 0) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        if (now - prefs.getLong(PREF_LAST_RUN, 0) < RUN_INTERVAL_MILLIS) {
+            return;
+        }
+        prefs.edit().putLong(PREF_LAST_RUN, now).apply();
+
+        executor.execute(() -> {
+            try {
+                compact(device, retentionMonths);
+            } catch (final Exception e) {
+                LOG.error("Failed to compact the samples of {}", device, e);
+            }
+        });
+    }
+
+    private static void compact(final GBDevice device, final int retentionMonths) throws Exception {
+        final Calendar cutoff = Calendar.getInstance();
+        cutoff.add(Calendar.MONTH, -retentionMonths);
+        final int cutoffTimestamp = (int) (cutoff.getTimeInMillis() / 1000L / CHUNK_SECONDS * CHUNK_SECONDS);
+
+        // the summaries are calculated from the samples, so they must be stored before the samples are compacted
+        if (!DailySummaryManager.backfill(device)) {
+            LOG.warn("Not compacting the samples of {}, the daily summaries could not be stored", device);
+            return;
+        }
+
+        final SharedPreferences prefs = GBApplication.getDeviceSpecificSharedPrefs(device.getAddress());
+        long totalRemoved = 0;
+
+        for (final RetentionTable table : TABLES) {
+            final String prefKey = PREF_COMPACTED_UNTIL + table.tableName;
+            int from = prefs.getInt(prefKey, 0);
+            while (from < cutoffTimestamp) {
+                final int to;
+                try (DBHandler db = GBApplication.acquireDB()) {
+                    final Long deviceId = DBHelper.findDeviceId(device, db.getDaoSession());
+                    if (deviceId == null) {
+                        return;
+                    }
+                    if (from == 0) {
+                        // start at the first sample of the device
+                        final long first = getFirstTimestamp(db.getDatabase(), table, deviceId);
+                        if (first < 0) {
+                            break;
+                        }
+                        from = (int) (first / table.timestampScale / CHUNK_SECONDS * CHUNK_SECONDS);
+                        if (from >= cutoffTimestamp) {
+                            break;
+                        }
+                    }
+                    to = Math.min(from + CHUNK_SECONDS, cutoffTimestamp);
+                    totalRemoved += compactChunk(db.getDatabase(), table, deviceId, from, to);
+                }
+                from = to;
+                prefs.edit().putInt(prefKey, from).apply();
+            }
+        }
+
+        LOG.info("Compacted samples of {} older than {}, removed {} samples", device, cutoffTimestamp, totalRemoved);
+
+        if (totalRemoved > 0) {
+            vacuumIfWorthwhile();
+        }
+    }
+
+    private static long getFirstTimestamp(final SQLiteDatabase db, final RetentionTable table, final long deviceId) {
+        final String sql = "SELECT MIN(" + table.timestampProperty.columnName + ") FROM " + table.tableName +
+                " WHERE " + table.getDeviceCondition("");
+        try (Cursor cursor = db.rawQuery(sql, new String[]{String.valueOf(deviceId)})) {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Replaces the samples of the device in the given time range by one sample per bucket.
+     *
+     * @return the number of samples that were removed
+     */
+    private static long compactChunk(final SQLiteDatabase db, final RetentionTable table, final long deviceId,
+                                     final int fromSeconds, final int toSeconds) {
+        final String ts = table.timestampProperty.columnName;
+        final long bucket = (long) table.bucketSeconds * table.timestampScale;
+        final Object[] args = new Object[]{
+                deviceId,
+                (long) fromSeconds * table.timestampScale,
+                (long) toSeconds * table.timestampScale
+        };
+
+        final List<String> columns = getColumns(db, table.tableName);
+        final List<String> expressions = new ArrayList<>(columns.size());
+        final String bucketStart = "(t." + ts + " / " + bucket + ") * " + bucket;
+        for (final String column : columns) {
+            if (column.equals(ts)) {
+                expressions.add(bucketStart);
+            } else if (table.groupColumns.contains(column)) {
+                expressions.add("t." + column);
+            } else {
+                final Aggregation aggregation = table.aggregations.containsKey(column) ? table.aggregations.get(column) : Aggregation.LAST;
+                expressions.add(getExpression(table, aggregation, column, bucketStart, bucket));
+            }
+        }
+
+        final String groupBy = join(prefixed("t.", table.groupColumns)) + ", t." + ts + " / " + bucket;
+        final String createRollups = "CREATE TEMP TABLE retention_rollup AS SELECT " + join(expressions) +
+                " FROM " + table.tableName + " t WHERE " + table.getDeviceCondition("t.") +
+                " AND t." + ts + " >= ? AND t." + ts + " < ? GROUP BY " + groupBy;
+        final String deleteSamples = "DELETE FROM " + table.tableName + " WHERE " + table.getDeviceCondition("") +
+                " AND " + ts + " >= ? AND " + ts + " < ?";
+
+        final long removed;
+        db.beginTransaction();
+        try {
+            db.execSQL("DROP TABLE IF EXISTS temp.retention_rollup");
+            db.execSQL(createRollups, args);
+            final long before = countRows(db, "SELECT COUNT(*) FROM " + table.tableName + " WHERE " + table.getDeviceCondition("") +
+                    " AND " + ts + " >= ? AND " + ts + " < ?", args);
+            final long after = countRows(db, "SELECT COUNT(*) FROM temp.retention_rollup", new Object[0]);
+            removed = before - after;
+            if (removed > 0) {
+                db.execSQL(deleteSamples, args);
+                db.execSQL("INSERT INTO " + table.tableName + " (" + join(columns) + ") SELECT " + join(columns) + " FROM temp.retention_rollup");
+            }
+            db.execSQL("DROP TABLE temp.retention_rollup");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return removed;
+    }
+
+    private static String getExpression(final RetentionTable table,
+                                        final Aggregation aggregation,
+                                        final String column,
+                                        final String bucketStart,
+                                        final long bucket) {
+        final String c = "t." + column;
+        switch (aggregation) {
+            case SUM_POSITIVE:
+                return "CASE WHEN MAX(" + c + ") < 0 THEN MAX(" + c + ") ELSE SUM(MAX(" + c + ", 0)) END";
+            case MAX:
+                return "MAX(" + c + ")";
+            case MIN_POSITIVE:
+                return "COALESCE(MIN(CASE WHEN " + c + " > 0 THEN " + c + " END), MAX(" + c + "))";
+            case AVG_POSITIVE:
+                return "COALESCE(CAST(ROUND(AVG(CASE WHEN " + c + " > 0 THEN " + c + " END)) AS INTEGER), MAX(" + c + "))";
+            case AVG_HEART_RATE:
+                return "COALESCE(CAST(ROUND(AVG(CASE WHEN " + c + " > 0 AND " + c + " < 255 THEN " + c + " END)) AS INTEGER), MAX(" + c + "))";
+            case DOMINANT:
+                return "(SELECT s." + column + " FROM " + table.tableName + " s WHERE " + getBucketCondition(table, bucketStart, bucket) +
+                        " GROUP BY s." + column + " ORDER BY COUNT(*) DESC, MAX(s." + table.timestampProperty.columnName + ") DESC LIMIT 1)";
+            case LAST:
+            default:
+                return "(SELECT s." + column + " FROM " + table.tableName + " s WHERE " + getBucketCondition(table, bucketStart, bucket) +
+                        " ORDER BY s." + table.timestampProperty.columnName + " DESC LIMIT 1)";
+        }
+    }
+
+    /**
+     * The condition for a correlated sub-query that selects the samples (alias "s") of the same
+     * bucket as the current group (alias "t").
+     */
+    private static String getBucketCondition(final RetentionTable table, final String bucketStart, final long bucket) {
+        final StringBuilder sb = new StringBuilder();
+        for (final String groupColumn : table.groupColumns) {
+            sb.append("s.").append(groupColumn).append(" = t.").append(groupColumn).append(" AND ");
+        }
+        final String ts = table.timestampProperty.columnName;
+        sb.append("s.").append(ts).append(" >= ").append(bucketStart)
+                .append(" AND s.").append(ts).append(" < ").append(bucketStart).append(" + ").append(bucket);
+        return sb.toString();
+    }
+
+    private static void vacuumIfWorthwhile() {
+        if (GBApplication.isReadOnlyDBInUse()) {
+            // the vacuum would have to wait for the readers, while holding the database lock
+            LOG.debug("Not vacuuming the database, it is being read");
+            return;
+        }
+        try (DBHandler db = GBApplication.acquireDB()) {
+            final SQLiteDatabase database = db.getDatabase();
+            final long freeBytes = countRows(database, "PRAGMA freelist_count", new Object[0]) *
+                    countRows(database, "PRAGMA page_size", new Object[0]);
+            if (freeBytes < VACUUM_MIN_FREE_BYTES) {
+                LOG.debug("Not vacuuming the database, only {} bytes are free", freeBytes);
+                return;
+            }
+            LOG.info("Vacuuming the database to reclaim {} bytes", freeBytes);
+            // move the compacted pages from the write-ahead log into the database first, so that
+            // the vacuum does not copy them through the log again, and the log does not stay large
+            checkpoint(database);
+            database.execSQL("VACUUM");
+            checkpoint(database);
+        } catch (final Exception e) {
+            LOG.warn("Failed to vacuum the database", e);
+        }
+    }
+
+    private static void checkpoint(final SQLiteDatabase db) {
+        try (Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null)) {
+            // the result row tells whether the checkpoint was blocked by a reader
+            if (cursor.moveToFirst() && cursor.getInt(0) != 0) {
+                LOG.debug("The checkpoint of the database was blocked");
+            }
+        }
+    }
+
+    private static long countRows(final SQLiteDatabase db, final String sql, final Object[] args) {
+        final String[] stringArgs = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            stringArgs[i] = String.valueOf(args[i]);
+        }
+        try (Cursor cursor = db.rawQuery(sql, stringArgs)) {
+            if (cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            }
+        }
+        return 0;
+    }
+
+    private static List<String> getColumns(final SQLiteDatabase db, final String table) {
+        final List<String> columns = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null)) {
+            final int nameIndex = cursor.getColumnIndexOrThrow("name");
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(nameIndex));
+            }
+        }
+        return columns;
+    }
+
+    private static List<String> prefixed(final String prefix, final List<String> values) {
+        final List<String> ret = new ArrayList<>(values.size());
+        for (final String value : values) {
+            ret.add(prefix + value);
+        }
+        return ret;
+    }
+
+    private static String join(final List<String> values) {
+        final StringBuilder sb = new StringBuilder();
+        for (final String value : values) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+}
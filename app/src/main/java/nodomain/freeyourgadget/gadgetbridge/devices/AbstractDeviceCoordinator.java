@@ -58,6 +58,7 @@ import nodomain.freeyourgadget.gadgetbridge.capabilities.password.PasswordCapabi
 import nodomain.freeyourgadget.gadgetbridge.capabilities.widgets.WidgetManager;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.database.DailySummaryManager;
 import nodomain.freeyourgadget.gadgetbridge.entities.AlarmDao;
 import nodomain.freeyourgadget.gadgetbridge.entities.BatteryLevelDao;
 import nodomain.freeyourgadget.gadgetbridge.entities.CyclingSample;
@@ -170,9 +171,11 @@ public abstract class AbstractDeviceCoordinator implements DeviceCoordinator {
                 qb.where(DeviceAttributesDao.Properties.DeviceId.eq(device.getId())).buildDelete().executeDeleteWithoutDetachingEntities();
                 QueryBuilder<?> batteryLevelQueryBuilder = session.getBatteryLevelDao().queryBuilder();
                 batteryLevelQueryBuilder.where(BatteryLevelDao.Properties.DeviceId.eq(device.getId())).buildDelete().executeDeleteWithoutDetachingEntities();
+                DailySummaryManager.deleteDailySummaries(device.getId(), session);
                 QueryBuilder<?> alarmDeviceQueryBuilder = session.getAlarmDao().queryBuilder();
                 alarmDeviceQueryBuilder.where(AlarmDao.Properties.DeviceId.eq(device.getId())).buildDelete().executeDeleteWithoutDetachingEntities();
                 session.getDeviceDao().delete(device);
+                DBHelper.invalidateDeviceId(gbDevice.getAddress());
             } else {
                 LOG.info("device to delete not found in db: {}", gbDevice);
             }
@@ -455,6 +458,11 @@ public abstract class AbstractDeviceCoordinator implements DeviceCoordinator {
         return false;
     }
 
+    @Override
+    public boolean supportsSampleRetention() {
+        return false;
+    }
+
     @Override
     public boolean supportsActivityTracks() {
         return false;
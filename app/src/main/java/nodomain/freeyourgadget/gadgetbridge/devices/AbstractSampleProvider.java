@@ -26,21 +26,23 @@ import org.slf4j.LoggerFactory;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import de.greenrobot.dao.AbstractDao;
 import de.greenrobot.dao.Property;
 import de.greenrobot.dao.query.QueryBuilder;
 import de.greenrobot.dao.query.WhereCondition;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.database.DailySummaryManager;
 import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
-import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
@@ -54,6 +56,10 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
     private static final Logger LOG = LoggerFactory.getLogger(AbstractSampleProvider.class);
 
     private static final WhereCondition[] NO_CONDITIONS = new WhereCondition[0];
+    /**
+     * Time span of samples that #forEachActivitySample loads at once.
+     */
+    private static final int STREAM_CHUNK_SECONDS = 24 * 60 * 60;
     private final DaoSession mSession;
     private final GBDevice mDevice;
 
@@ -82,6 +88,21 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
         return getGBActivitySamplesHighRes(timestamp_from, timestamp_to);
     }
 
+    /**
+     * Streams the samples in chunks of one day. Subclasses post-process the samples of
+     * {@link #getGBActivitySamples(int, int)} as whole lists (gap filling, cumulative steps, sleep
+     * overlays), and like for any other time span they take care of the chunk boundaries themselves.
+     */
+    @Override
+    public void forEachActivitySample(final int timestamp_from, final int timestamp_to, final Consumer<? super T> consumer) {
+        for (long chunkFrom = timestamp_from; chunkFrom <= timestamp_to; chunkFrom += STREAM_CHUNK_SECONDS) {
+            final int chunkTo = (int) Math.min(chunkFrom + STREAM_CHUNK_SECONDS - 1, timestamp_to);
+            for (final T sample : getAllActivitySamples((int) chunkFrom, chunkTo)) {
+                consumer.accept(sample);
+            }
+        }
+    }
+
     @Override
     public boolean hasHighResData() {
         return false;
@@ -101,24 +122,26 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
     @Override
     public void addGBActivitySample(T activitySample) {
         getSampleDao().insertOrReplace(activitySample);
+        DailySummaryManager.onSamplesWritten(Collections.singletonList(activitySample));
     }
 
     @Override
     public void addGBActivitySamples(T[] activitySamples) {
         getSampleDao().insertOrReplaceInTx(activitySamples);
+        DailySummaryManager.onSamplesWritten(Arrays.asList(activitySamples));
     }
 
     @Nullable
     @Override
     public T getLatestActivitySample() {
         QueryBuilder<T> qb = getSampleDao().queryBuilder();
-        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
             // no device, no sample
             return null;
         }
         Property deviceProperty = getDeviceIdentifierSampleProperty();
-        qb.where(deviceProperty.eq(dbDevice.getId())).orderDesc(getTimestampSampleProperty()).limit(1);
+        qb.where(deviceProperty.eq(dbDeviceId)).orderDesc(getTimestampSampleProperty()).limit(1);
         List<T> samples = qb.build().list();
         if (samples.isEmpty()) {
             return null;
@@ -132,13 +155,13 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
     @Override
     public T getFirstActivitySample() {
         QueryBuilder<T> qb = getSampleDao().queryBuilder();
-        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
             // no device, no sample
             return null;
         }
         Property deviceProperty = getDeviceIdentifierSampleProperty();
-        qb.where(deviceProperty.eq(dbDevice.getId())).orderAsc(getTimestampSampleProperty()).limit(1);
+        qb.where(deviceProperty.eq(dbDeviceId)).orderAsc(getTimestampSampleProperty()).limit(1);
         List<T> samples = qb.build().list();
         if (samples.isEmpty()) {
             return null;
@@ -157,13 +180,13 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
     protected List<T> getGBActivitySamples(int timestamp_from, int timestamp_to) {
         QueryBuilder<T> qb = getSampleDao().queryBuilder();
         Property timestampProperty = getTimestampSampleProperty();
-        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
             // no device, no samples
             return Collections.emptyList();
         }
         Property deviceProperty = getDeviceIdentifierSampleProperty();
-        qb.where(deviceProperty.eq(dbDevice.getId()), timestampProperty.ge(timestamp_from))
+        qb.where(deviceProperty.eq(dbDeviceId), timestampProperty.ge(timestamp_from))
             .where(timestampProperty.le(timestamp_to));
         List<T> samples = qb.build().list();
         for (T sample : samples) {
@@ -278,15 +301,15 @@ public abstract class AbstractSampleProvider<T extends AbstractActivitySample> i
 
     @Nullable
     public T getLastSampleWithStepsBefore(final int timestampTo, final Property stepsSampleProperty) {
-        final Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        final Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
             // no device, no sample
             return null;
         }
 
         final List<T> samples = getSampleDao().queryBuilder()
                 .where(
-                        getDeviceIdentifierSampleProperty().eq(dbDevice.getId()),
+                        getDeviceIdentifierSampleProperty().eq(dbDeviceId),
                         getTimestampSampleProperty().le(timestampTo),
                         stepsSampleProperty.gt(-1)
                 ).orderDesc(getTimestampSampleProperty())
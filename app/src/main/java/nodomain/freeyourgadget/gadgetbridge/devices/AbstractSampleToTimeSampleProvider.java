@@ -21,6 +21,7 @@ import androidx.annotation.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
@@ -66,6 +67,16 @@ public abstract class AbstractSampleToTimeSampleProvider<T extends TimeSample, S
         return ret;
     }
 
+    @Override
+    public void forEachSample(final long timestampFrom, final long timestampTo, final Consumer<? super T> consumer) {
+        mSampleProvider.forEachActivitySample((int) (timestampFrom / 1000L), (int) (timestampTo / 1000L), sample -> {
+            final T converted = convertSample(sample);
+            if (converted != null) {
+                consumer.accept(converted);
+            }
+        });
+    }
+
     @Override
     public void addSample(final T timeSample) {
         throw new UnsupportedOperationException("This sample provider is read-only!");
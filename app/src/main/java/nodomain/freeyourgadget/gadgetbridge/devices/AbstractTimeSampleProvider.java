@@ -19,16 +19,19 @@ package nodomain.freeyourgadget.gadgetbridge.devices;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import de.greenrobot.dao.AbstractDao;
 import de.greenrobot.dao.Property;
+import de.greenrobot.dao.query.CloseableListIterator;
 import de.greenrobot.dao.query.QueryBuilder;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
+import nodomain.freeyourgadget.gadgetbridge.database.DailySummaryManager;
 import nodomain.freeyourgadget.gadgetbridge.entities.AbstractTimeSample;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
-import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 
 /**
@@ -38,6 +41,11 @@ import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
  * @param <T> the sample type
  */
 public abstract class AbstractTimeSampleProvider<T extends AbstractTimeSample> implements TimeSampleProvider<T> {
+    /**
+     * Number of samples after which #forEachSample detaches the visited samples from the session.
+     */
+    private static final int STREAM_DETACH_INTERVAL = 1000;
+
     private final DaoSession mSession;
     private final GBDevice mDevice;
 
@@ -59,40 +67,73 @@ public abstract class AbstractTimeSampleProvider<T extends AbstractTimeSample> i
     public List<T> getAllSamples(final long timestampFrom, final long timestampTo) {
         final QueryBuilder<T> qb = getSampleDao().queryBuilder();
         final Property timestampProperty = getTimestampSampleProperty();
-        final Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        final Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
             // no device, no samples
             return Collections.emptyList();
         }
         final Property deviceProperty = getDeviceIdentifierSampleProperty();
-        qb.where(deviceProperty.eq(dbDevice.getId()), timestampProperty.ge(timestampFrom))
+        qb.where(deviceProperty.eq(dbDeviceId), timestampProperty.ge(timestampFrom))
                 .where(timestampProperty.le(timestampTo));
         final List<T> samples = qb.build().list();
         detachFromSession();
         return samples;
     }
 
+    /**
+     * Reads the samples through a database cursor, one at a time. Subclasses that override
+     * {@link #getAllSamples(long, long)} to post-process the samples must override this as well.
+     */
+    @Override
+    public void forEachSample(final long timestampFrom, final long timestampTo, final Consumer<? super T> consumer) {
+        final Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
+            // no device, no samples
+            return;
+        }
+        final Property timestampProperty = getTimestampSampleProperty();
+        final QueryBuilder<T> qb = getSampleDao().queryBuilder();
+        qb.where(getDeviceIdentifierSampleProperty().eq(dbDeviceId), timestampProperty.ge(timestampFrom))
+                .where(timestampProperty.le(timestampTo))
+                .orderAsc(timestampProperty);
+        int count = 0;
+        try (CloseableListIterator<T> it = qb.build().listIterator()) {
+            while (it.hasNext()) {
+                consumer.accept(it.next());
+                if (++count % STREAM_DETACH_INTERVAL == 0) {
+                    detachFromSession();
+                }
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to close sample cursor", e);
+        } finally {
+            detachFromSession();
+        }
+    }
+
     @Override
     public void addSample(final T activitySample) {
         getSampleDao().insertOrReplace(activitySample);
+        DailySummaryManager.onSamplesWritten(Collections.singletonList(activitySample));
     }
 
     @Override
     public void addSamples(final List<T> activitySamples) {
         getSampleDao().insertOrReplaceInTx(activitySamples);
+        DailySummaryManager.onSamplesWritten(activitySamples);
     }
 
     @Nullable
     @Override
     public T getLatestSample() {
         final QueryBuilder<T> qb = getSampleDao().queryBuilder();
-        final Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        final Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
             // no device, no sample
             return null;
         }
         final Property deviceProperty = getDeviceIdentifierSampleProperty();
-        qb.where(deviceProperty.eq(dbDevice.getId())).orderDesc(getTimestampSampleProperty()).limit(1);
+        qb.where(deviceProperty.eq(dbDeviceId)).orderDesc(getTimestampSampleProperty()).limit(1);
         final List<T> samples = qb.build().list();
         if (samples.isEmpty()) {
             return null;
@@ -101,8 +142,8 @@ public abstract class AbstractTimeSampleProvider<T extends AbstractTimeSample> i
     }
 
     public T getLastSampleBefore(final long timestampTo) {
-        final Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        final Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
             // no device, no sample
             return null;
         }
@@ -110,7 +151,7 @@ public abstract class AbstractTimeSampleProvider<T extends AbstractTimeSample> i
         final Property deviceIdSampleProp = getDeviceIdentifierSampleProperty();
         final Property timestampSampleProp = getTimestampSampleProperty();
         final List<T> samples = getSampleDao().queryBuilder()
-                .where(deviceIdSampleProp.eq(dbDevice.getId()),
+                .where(deviceIdSampleProp.eq(dbDeviceId),
                         timestampSampleProp.le(timestampTo))
                 .orderDesc(getTimestampSampleProperty())
                 .limit(1)
@@ -120,8 +161,8 @@ public abstract class AbstractTimeSampleProvider<T extends AbstractTimeSample> i
     }
 
     public T getNextSampleAfter(final long timestampFrom) {
-        final Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        final Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
             // no device, no sample
             return null;
         }
@@ -129,7 +170,7 @@ public abstract class AbstractTimeSampleProvider<T extends AbstractTimeSample> i
         final Property deviceIdSampleProp = getDeviceIdentifierSampleProperty();
         final Property timestampSampleProp = getTimestampSampleProperty();
         final List<T> samples = getSampleDao().queryBuilder()
-                .where(deviceIdSampleProp.eq(dbDevice.getId()),
+                .where(deviceIdSampleProp.eq(dbDeviceId),
                         timestampSampleProp.ge(timestampFrom))
                 .orderAsc(getTimestampSampleProperty())
                 .limit(1)
@@ -142,13 +183,13 @@ public abstract class AbstractTimeSampleProvider<T extends AbstractTimeSample> i
     @Override
     public T getFirstSample() {
         final QueryBuilder<T> qb = getSampleDao().queryBuilder();
-        final Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        final Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
             // no device, no sample
             return null;
         }
         final Property deviceProperty = getDeviceIdentifierSampleProperty();
-        qb.where(deviceProperty.eq(dbDevice.getId())).orderAsc(getTimestampSampleProperty()).limit(1);
+        qb.where(deviceProperty.eq(dbDeviceId)).orderAsc(getTimestampSampleProperty()).limit(1);
         final List<T> samples = qb.build().list();
         if (samples.isEmpty()) {
             return null;
@@ -194,6 +194,12 @@ public interface DeviceCoordinator {
      */
     boolean supportsActivityTracking();
 
+    /**
+     * Returns true if old high resolution samples of the device can be compacted after a
+     * configurable retention period, see {@link nodomain.freeyourgadget.gadgetbridge.database.SampleRetentionManager}.
+     */
+    boolean supportsSampleRetention();
+
     /**
      * Returns true if cycling data is supported by the device
      * (with this coordinator).
@@ -18,6 +18,7 @@
 package nodomain.freeyourgadget.gadgetbridge.devices;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -62,6 +63,16 @@ public interface SampleProvider<T extends AbstractActivitySample> {
      */
     List<T> getAllActivitySamplesHighRes(int timestamp_from, int timestamp_to);
 
+    /**
+     * Same as {@link #getAllActivitySamples(int, int)}, but passes the samples to the given consumer
+     * in timestamp order instead of returning them, without holding all of them in memory at once.
+     * Use this for long time spans, e.g. aggregates over months or years.
+     * @param timestamp_from the start timestamp
+     * @param timestamp_to the end timestamp
+     * @param consumer receives every sample; must not keep references to them
+     */
+    void forEachActivitySample(int timestamp_from, int timestamp_to, Consumer<? super T> consumer);
+
     /**
      * Specifies that the sample provider has higher resolution data. Set to true if the sample
      * provider can provide more than one sample a minute.
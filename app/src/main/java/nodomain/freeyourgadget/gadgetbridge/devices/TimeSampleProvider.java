@@ -20,6 +20,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import nodomain.freeyourgadget.gadgetbridge.model.TimeSample;
 
@@ -47,6 +48,16 @@ public interface TimeSampleProvider<T extends TimeSample> {
     @NonNull
     List<T> getAllSamples(long timestampFrom, long timestampTo);
 
+    /**
+     * Same as {@link #getAllSamples(long, long)}, but passes the samples to the given consumer
+     * in timestamp order instead of returning them, without holding all of them in memory at once.
+     *
+     * @param timestampFrom the start timestamp, in milliseconds
+     * @param timestampTo   the end timestamp, in milliseconds
+     * @param consumer      receives every sample; must not keep references to them
+     */
+    void forEachSample(long timestampFrom, long timestampTo, Consumer<? super T> consumer);
+
     /**
      * Adds the given sample to the database. An existing sample with the same
      * timestamp will be overwritten.
@@ -23,6 +23,7 @@ import android.net.Uri;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
@@ -70,6 +71,10 @@ public class UnknownDeviceCoordinator extends AbstractDeviceCoordinator {
             return null;
         }
 
+        @Override
+        public void forEachActivitySample(int timestamp_from, int timestamp_to, Consumer<? super AbstractActivitySample> consumer) {
+        }
+
         @Override
         public boolean hasHighResData() {
             return false;
@@ -29,6 +29,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import de.greenrobot.dao.query.QueryBuilder;
@@ -37,7 +38,6 @@ import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummary;
 import nodomain.freeyourgadget.gadgetbridge.entities.BaseActivitySummaryDao;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
-import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySummaryData;
@@ -64,8 +64,8 @@ public class WorkoutVo2MaxSampleProvider implements Vo2MaxSampleProvider<Vo2MaxS
     @Override
     public List<Vo2MaxSample> getAllSamples(final long timestampFrom, final long timestampTo) {
         final BaseActivitySummaryDao summaryDao = session.getBaseActivitySummaryDao();
-        final Device dbDevice = DBHelper.findDevice(device, session);
-        if (dbDevice == null) {
+        final Long dbDeviceId = DBHelper.findDeviceId(device, session);
+        if (dbDeviceId == null) {
             // no device, no samples
             return Collections.emptyList();
         }
@@ -73,7 +73,7 @@ public class WorkoutVo2MaxSampleProvider implements Vo2MaxSampleProvider<Vo2MaxS
         final DeviceCoordinator coordinator = device.getDeviceCoordinator();
 
         final QueryBuilder<BaseActivitySummary> qb = summaryDao.queryBuilder();
-        qb.where(BaseActivitySummaryDao.Properties.DeviceId.eq(dbDevice.getId()))
+        qb.where(BaseActivitySummaryDao.Properties.DeviceId.eq(dbDeviceId))
                 .where(BaseActivitySummaryDao.Properties.StartTime.gt(new Date(timestampFrom)))
                 .where(BaseActivitySummaryDao.Properties.StartTime.lt(new Date(timestampTo)))
                 .orderAsc(BaseActivitySummaryDao.Properties.StartTime);
@@ -88,6 +88,14 @@ public class WorkoutVo2MaxSampleProvider implements Vo2MaxSampleProvider<Vo2MaxS
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public void forEachSample(final long timestampFrom, final long timestampTo, final Consumer<? super Vo2MaxSample> consumer) {
+        // the samples are derived from the workouts, which are few, so there is nothing to stream
+        for (final Vo2MaxSample sample : getAllSamples(timestampFrom, timestampTo)) {
+            consumer.accept(sample);
+        }
+    }
+
     @Override
     public void addSample(final Vo2MaxSample timeSample) {
         throw new UnsupportedOperationException("Read-only sample provider");
@@ -107,8 +115,8 @@ public class WorkoutVo2MaxSampleProvider implements Vo2MaxSampleProvider<Vo2MaxS
     @Override
     public Vo2MaxSample getLatestSample(final Vo2MaxSample.Type type, final long until) {
         final BaseActivitySummaryDao summaryDao = session.getBaseActivitySummaryDao();
-        final Device dbDevice = DBHelper.findDevice(device, session);
-        if (dbDevice == null) {
+        final Long dbDeviceId = DBHelper.findDeviceId(device, session);
+        if (dbDeviceId == null) {
             // no device, no samples
             return null;
         }
@@ -122,7 +130,7 @@ public class WorkoutVo2MaxSampleProvider implements Vo2MaxSampleProvider<Vo2MaxS
             qb.where(BaseActivitySummaryDao.Properties.StartTime.le(new Date(until)));
         }
 
-        qb.where(BaseActivitySummaryDao.Properties.DeviceId.eq(dbDevice.getId()))
+        qb.where(BaseActivitySummaryDao.Properties.DeviceId.eq(dbDeviceId))
                 .orderDesc(BaseActivitySummaryDao.Properties.StartTime)
                 .limit(1);
 
@@ -183,14 +191,14 @@ public class WorkoutVo2MaxSampleProvider implements Vo2MaxSampleProvider<Vo2MaxS
     @Override
     public Vo2MaxSample getFirstSample() {
         final BaseActivitySummaryDao summaryDao = session.getBaseActivitySummaryDao();
-        final Device dbDevice = DBHelper.findDevice(device, session);
-        if (dbDevice == null) {
+        final Long dbDeviceId = DBHelper.findDeviceId(device, session);
+        if (dbDeviceId == null) {
             // no device, no samples
             return null;
         }
 
         final QueryBuilder<BaseActivitySummary> qb = summaryDao.queryBuilder();
-        qb.where(BaseActivitySummaryDao.Properties.DeviceId.eq(dbDevice.getId()))
+        qb.where(BaseActivitySummaryDao.Properties.DeviceId.eq(dbDeviceId))
                 .orderAsc(BaseActivitySummaryDao.Properties.StartTime)
                 .limit(1);
 
@@ -25,10 +25,8 @@ import org.slf4j.LoggerFactory;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.ToLongFunction;
 
 import de.greenrobot.dao.AbstractDao;
 import de.greenrobot.dao.Property;
@@ -41,6 +39,7 @@ import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.util.TimeSeriesJoin;
 
 public class CmfActivitySampleProvider extends AbstractSampleProvider<CmfActivitySample> {
     private static final Logger LOG = LoggerFactory.getLogger(CmfActivitySampleProvider.class);
@@ -108,16 +107,9 @@ public class CmfActivitySampleProvider extends AbstractSampleProvider<CmfActivit
             convertCumulativeSteps(samples, CmfActivitySampleDao.Properties.Steps);
         }
 
-        final Map<Integer, CmfActivitySample> sampleByTs = new HashMap<>();
-        for (final CmfActivitySample sample : samples) {
-            sampleByTs.put(sample.getTimestamp(), sample);
-        }
-
-        overlayHeartRate(sampleByTs, timestamp_from, timestamp_to);
-        overlaySleep(sampleByTs, timestamp_from, timestamp_to);
-
-        final List<CmfActivitySample> finalSamples = new ArrayList<>(sampleByTs.values());
-        Collections.sort(finalSamples, (a, b) -> Integer.compare(a.getTimestamp(), b.getTimestamp()));
+        List<CmfActivitySample> finalSamples = TimeSeriesJoin.sortedDistinct(samples, CmfActivitySample::getTimestamp);
+        finalSamples = overlayHeartRate(finalSamples, timestamp_from, timestamp_to);
+        finalSamples = overlaySleep(finalSamples, timestamp_from, timestamp_to);
 
         final long nanoEnd = System.nanoTime();
 
@@ -128,48 +120,58 @@ public class CmfActivitySampleProvider extends AbstractSampleProvider<CmfActivit
         return finalSamples;
     }
 
-    private void overlayHeartRate(final Map<Integer, CmfActivitySample> sampleByTs, final int timestamp_from, final int timestamp_to) {
+    private List<CmfActivitySample> overlayHeartRate(final List<CmfActivitySample> samples, final int timestamp_from, final int timestamp_to) {
         final CmfHeartRateSampleProvider heartRateSampleProvider = new CmfHeartRateSampleProvider(getDevice(), getSession());
         final List<CmfHeartRateSample> hrSamples = heartRateSampleProvider.getAllSamples(timestamp_from * 1000L, timestamp_to * 1000L);
 
-        for (final CmfHeartRateSample hrSample : hrSamples) {
-            // round to the nearest minute, we don't need per-second granularity
-            final int tsSeconds = (int) ((hrSample.getTimestamp() / 1000) / 60) * 60;
-            CmfActivitySample sample = sampleByTs.get(tsSeconds);
-            if (sample == null) {
-                //LOG.debug("Adding dummy sample at {} for hr", tsSeconds);
-                sample = new CmfActivitySample();
-                sample.setTimestamp(tsSeconds);
-                sample.setProvider(this);
-                sampleByTs.put(tsSeconds, sample);
-            }
+        // round to the nearest minute, we don't need per-second granularity
+        final ToLongFunction<CmfHeartRateSample> minute = hrSample -> (hrSample.getTimestamp() / 1000 / 60) * 60;
 
-            sample.setHeartRate(hrSample.getHeartRate());
-        }
+        return TimeSeriesJoin.upsert(
+                samples,
+                CmfActivitySample::getTimestamp,
+                TimeSeriesJoin.sortedDistinct(hrSamples, minute),
+                minute,
+                this::createOverlaySample,
+                (sample, hrSample) -> sample.setHeartRate(hrSample.getHeartRate())
+        );
     }
 
-    private void overlaySleep(final Map<Integer, CmfActivitySample> sampleByTs, final int timestamp_from, final int timestamp_to) {
+    private List<CmfActivitySample> overlaySleep(final List<CmfActivitySample> samples, final int timestamp_from, final int timestamp_to) {
         final CmfSleepStageSampleProvider sleepStageSampleProvider = new CmfSleepStageSampleProvider(getDevice(), getSession());
         final List<CmfSleepStageSample> sleepStageSamples = sleepStageSampleProvider.getAllSamples(timestamp_from * 1000L, timestamp_to * 1000L);
 
+        // one sample per minute of each stage, later stages override earlier ones
+        final List<CmfActivitySample> sleepSamples = new ArrayList<>();
         for (final CmfSleepStageSample sleepStageSample : sleepStageSamples) {
             // round to the nearest minute, we don't need per-second granularity
             final int tsSeconds = (int) ((sleepStageSample.getTimestamp() / 1000) / 60) * 60;
+            final ActivityKind sleepRawKind = sleepStageToActivityKind(sleepStageSample.getStage());
             for (int i = tsSeconds; i < tsSeconds + sleepStageSample.getDuration(); i += 60) {
-                CmfActivitySample sample = sampleByTs.get(i);
-                if (sample == null) {
-                    //LOG.debug("Adding dummy sample at {} for sleep", i);
-                    sample = new CmfActivitySample();
-                    sample.setTimestamp(i);
-                    sample.setProvider(this);
-                    sampleByTs.put(i, sample);
-                }
-
-                final ActivityKind sleepRawKind = sleepStageToActivityKind(sleepStageSample.getStage());
-                sample.setRawKind(sleepRawKind.getCode());
-                sample.setRawIntensity(ActivitySample.NOT_MEASURED);
+                final CmfActivitySample sleepSample = createOverlaySample(i);
+                sleepSample.setRawKind(sleepRawKind.getCode());
+                sleepSamples.add(sleepSample);
             }
         }
+
+        return TimeSeriesJoin.upsert(
+                samples,
+                CmfActivitySample::getTimestamp,
+                TimeSeriesJoin.sortedDistinct(sleepSamples, CmfActivitySample::getTimestamp),
+                CmfActivitySample::getTimestamp,
+                this::createOverlaySample,
+                (sample, sleepSample) -> {
+                    sample.setRawKind(sleepSample.getRawKind());
+                    sample.setRawIntensity(ActivitySample.NOT_MEASURED);
+                }
+        );
+    }
+
+    private CmfActivitySample createOverlaySample(final long timestamp) {
+        final CmfActivitySample sample = new CmfActivitySample();
+        sample.setTimestamp((int) timestamp);
+        sample.setProvider(this);
+        return sample;
     }
 
     final ActivityKind sleepStageToActivityKind(final int sleepStage) {
@@ -23,10 +23,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.ToLongFunction;
 
 import de.greenrobot.dao.AbstractDao;
 import de.greenrobot.dao.Property;
@@ -40,6 +38,7 @@ import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.util.TimeSeriesJoin;
 
 public class ColmiActivitySampleProvider extends AbstractSampleProvider<ColmiActivitySample> {
     private static final Logger LOG = LoggerFactory.getLogger(ColmiActivitySampleProvider.class);
@@ -106,16 +105,9 @@ public class ColmiActivitySampleProvider extends AbstractSampleProvider<ColmiAct
                 timestamp_to
         );
 
-        final Map<Integer, ColmiActivitySample> sampleByTs = new HashMap<>();
-        for (final ColmiActivitySample sample : samples) {
-            sampleByTs.put(sample.getTimestamp(), sample);
-        }
-
-        overlayHeartRate(sampleByTs, timestamp_from, timestamp_to);
-        overlaySleep(sampleByTs, timestamp_from, timestamp_to);
-
-        final List<ColmiActivitySample> finalSamples = new ArrayList<>(sampleByTs.values());
-        Collections.sort(finalSamples, (a, b) -> Integer.compare(a.getTimestamp(), b.getTimestamp()));
+        List<ColmiActivitySample> finalSamples = TimeSeriesJoin.sortedDistinct(samples, ColmiActivitySample::getTimestamp);
+        finalSamples = overlayHeartRate(finalSamples, timestamp_from, timestamp_to);
+        finalSamples = overlaySleep(finalSamples, timestamp_from, timestamp_to);
 
         final long nanoEnd = System.nanoTime();
         final long executionTime = (nanoEnd - nanoStart) / 1000000;
@@ -124,26 +116,24 @@ public class ColmiActivitySampleProvider extends AbstractSampleProvider<ColmiAct
         return finalSamples;
     }
 
-    private void overlayHeartRate(final Map<Integer, ColmiActivitySample> sampleByTs, final int timestamp_from, final int timestamp_to) {
+    private List<ColmiActivitySample> overlayHeartRate(final List<ColmiActivitySample> samples, final int timestamp_from, final int timestamp_to) {
         final ColmiHeartRateSampleProvider heartRateSampleProvider = new ColmiHeartRateSampleProvider(getDevice(), getSession());
         final List<ColmiHeartRateSample> hrSamples = heartRateSampleProvider.getAllSamples(timestamp_from * 1000L, timestamp_to * 1000L);
 
-        for (final ColmiHeartRateSample hrSample : hrSamples) {
-            // round to the nearest minute, we don't need per-second granularity
-            final int tsSeconds = (int) ((hrSample.getTimestamp() / 1000) / 60) * 60;
-            ColmiActivitySample sample = sampleByTs.get(tsSeconds);
-            if (sample == null) {
-                sample = new ColmiActivitySample();
-                sample.setTimestamp(tsSeconds);
-                sample.setProvider(this);
-                sampleByTs.put(tsSeconds, sample);
-            }
+        // round to the nearest minute, we don't need per-second granularity
+        final ToLongFunction<ColmiHeartRateSample> minute = hrSample -> (hrSample.getTimestamp() / 1000 / 60) * 60;
 
-            sample.setHeartRate(hrSample.getHeartRate());
-        }
+        return TimeSeriesJoin.upsert(
+                samples,
+                ColmiActivitySample::getTimestamp,
+                TimeSeriesJoin.sortedDistinct(hrSamples, minute),
+                minute,
+                this::createOverlaySample,
+                (sample, hrSample) -> sample.setHeartRate(hrSample.getHeartRate())
+        );
     }
 
-    private void overlaySleep(final Map<Integer, ColmiActivitySample> sampleByTs, final int timestamp_from, final int timestamp_to) {
+    private List<ColmiActivitySample> overlaySleep(final List<ColmiActivitySample> samples, final int timestamp_from, final int timestamp_to) {
         final ColmiSleepStageSampleProvider sleepStageSampleProvider = new ColmiSleepStageSampleProvider(getDevice(), getSession());
         final List<ColmiSleepStageSample> sleepStageSamples = sleepStageSampleProvider.getAllSamples(timestamp_from * 1000L, timestamp_to * 1000L);
 
@@ -155,23 +145,38 @@ public class ColmiActivitySampleProvider extends AbstractSampleProvider<ColmiAct
             sleepStageSamples.add(0, lastSleepStageBeforeRange);
         }
 
+        // one sample per minute of each stage, later stages override earlier ones
+        final List<ColmiActivitySample> sleepSamples = new ArrayList<>();
         for (final ColmiSleepStageSample sleepStageSample : sleepStageSamples) {
             final ActivityKind sleepRawKind = sleepStageToActivityKind(sleepStageSample.getStage());
             // round to the nearest minute, we don't need per-second granularity
             final int tsSeconds = (int) ((sleepStageSample.getTimestamp() / 1000) / 60) * 60;
             for (int i = tsSeconds; i < tsSeconds + sleepStageSample.getDuration() * 60; i += 60) {
                 if (i < timestamp_from) continue;
-                ColmiActivitySample sample = sampleByTs.get(i);
-                if (sample == null) {
-                    sample = new ColmiActivitySample();
-                    sample.setTimestamp(i);
-                    sample.setProvider(this);
-                    sampleByTs.put(i, sample);
-                }
-                sample.setRawKind(sleepRawKind.getCode());
-                sample.setRawIntensity(ActivitySample.NOT_MEASURED);
+                final ColmiActivitySample sleepSample = createOverlaySample(i);
+                sleepSample.setRawKind(sleepRawKind.getCode());
+                sleepSamples.add(sleepSample);
             }
         }
+
+        return TimeSeriesJoin.upsert(
+                samples,
+                ColmiActivitySample::getTimestamp,
+                TimeSeriesJoin.sortedDistinct(sleepSamples, ColmiActivitySample::getTimestamp),
+                ColmiActivitySample::getTimestamp,
+                this::createOverlaySample,
+                (sample, sleepSample) -> {
+                    sample.setRawKind(sleepSample.getRawKind());
+                    sample.setRawIntensity(ActivitySample.NOT_MEASURED);
+                }
+        );
+    }
+
+    private ColmiActivitySample createOverlaySample(final long timestamp) {
+        final ColmiActivitySample sample = new ColmiActivitySample();
+        sample.setTimestamp((int) timestamp);
+        sample.setProvider(this);
+        return sample;
     }
 
     final ActivityKind sleepStageToActivityKind(final int sleepStage) {
@@ -121,7 +121,7 @@ public class GarminActivitySampleProvider extends AbstractSampleProvider<GarminA
 
     public void overlaySleep(final List<GarminActivitySample> samples, final int timestamp_from, final int timestamp_to) {
         // The samples provided by Garmin are upper-bound timestamps of the sleep stage
-        final RangeMap<Long, ActivityKind> stagesMap = new RangeMap<>(RangeMap.Mode.UPPER_BOUND);
+        final RangeMap<ActivityKind> stagesMap = new RangeMap<>(RangeMap.Mode.UPPER_BOUND);
 
         final GarminEventSampleProvider eventSampleProvider = new GarminEventSampleProvider(getDevice(), getSession());
         final List<GarminEventSample> sleepEventSamples = eventSampleProvider.getSleepEvents(
@@ -173,14 +173,12 @@ public class GarminActivitySampleProvider extends AbstractSampleProvider<GarminA
         }
 
         if (!stagesMap.isEmpty()) {
-            for (final GarminActivitySample sample : samples) {
-                final long ts = sample.getTimestamp() * 1000L;
-                final ActivityKind sleepType = stagesMap.get(ts);
+            stagesMap.getAll(samples, sample -> sample.getTimestamp() * 1000L, (sample, sleepType) -> {
                 if (sleepType != null && !sleepType.equals(ActivityKind.UNKNOWN)) {
                     sample.setRawKind(sleepType.getCode());
                     sample.setRawIntensity(ActivitySample.NOT_MEASURED);
                 }
-            }
+            });
         }
     }
 
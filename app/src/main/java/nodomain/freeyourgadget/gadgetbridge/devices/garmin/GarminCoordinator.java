@@ -209,6 +209,11 @@ public abstract class GarminCoordinator extends AbstractBLEDeviceCoordinator {
         return true;
     }
 
+    @Override
+    public boolean supportsSampleRetention() {
+        return true;
+    }
+
     @Override
     public boolean supportsActivityTracks() {
         return true;
@@ -27,7 +27,6 @@ import de.greenrobot.dao.query.QueryBuilder;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.devices.AbstractTimeSampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
-import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.GarminEventSample;
 import nodomain.freeyourgadget.gadgetbridge.entities.GarminEventSampleDao;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
@@ -63,13 +62,13 @@ public class GarminEventSampleProvider extends AbstractTimeSampleProvider<Garmin
     public List<GarminEventSample> getSleepEvents(final long timestampFrom, final long timestampTo) {
         final QueryBuilder<GarminEventSample> qb = getSampleDao().queryBuilder();
         final Property timestampProperty = getTimestampSampleProperty();
-        final Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        final Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
             // no device, no samples
             return Collections.emptyList();
         }
         final Property deviceProperty = getDeviceIdentifierSampleProperty();
-        qb.where(deviceProperty.eq(dbDevice.getId()), timestampProperty.ge(timestampFrom))
+        qb.where(deviceProperty.eq(dbDeviceId), timestampProperty.ge(timestampFrom))
                 .where(timestampProperty.le(timestampTo))
                 .where(GarminEventSampleDao.Properties.Event.eq(74));
 
@@ -79,8 +78,8 @@ public class GarminEventSampleProvider extends AbstractTimeSampleProvider<Garmin
     }
 
     public GarminEventSample getNextSleepEventAfter(final long timestampFrom) {
-        final Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        final Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
             // no device, no sample
             return null;
         }
@@ -89,7 +88,7 @@ public class GarminEventSampleProvider extends AbstractTimeSampleProvider<Garmin
         final Property timestampSampleProp = getTimestampSampleProperty();
         final List<GarminEventSample> samples = getSampleDao().queryBuilder()
                 .where(
-                        deviceIdSampleProp.eq(dbDevice.getId()),
+                        deviceIdSampleProp.eq(dbDeviceId),
                         timestampSampleProp.ge(timestampFrom),
                         GarminEventSampleDao.Properties.Event.eq(74)
                 ).orderAsc(getTimestampSampleProperty())
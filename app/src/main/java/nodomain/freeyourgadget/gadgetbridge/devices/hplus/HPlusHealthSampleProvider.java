@@ -35,7 +35,6 @@ import de.greenrobot.dao.query.QueryBuilder;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.devices.AbstractSampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
-import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.HPlusHealthActivityOverlay;
 import nodomain.freeyourgadget.gadgetbridge.entities.HPlusHealthActivityOverlayDao;
 import nodomain.freeyourgadget.gadgetbridge.entities.HPlusHealthActivitySample;
@@ -111,14 +110,14 @@ public class HPlusHealthSampleProvider extends AbstractSampleProvider<HPlusHealt
     public List<HPlusHealthActivitySample> getAllActivitySamples(int timestamp_from, int timestamp_to) {
         List<HPlusHealthActivitySample> samples = super.getGBActivitySamples(timestamp_from, timestamp_to);
 
-        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
             return Collections.emptyList();
         }
 
         QueryBuilder<HPlusHealthActivityOverlay> qb = getSession().getHPlusHealthActivityOverlayDao().queryBuilder();
 
-        qb.where(HPlusHealthActivityOverlayDao.Properties.DeviceId.eq(dbDevice.getId()),
+        qb.where(HPlusHealthActivityOverlayDao.Properties.DeviceId.eq(dbDeviceId),
                 HPlusHealthActivityOverlayDao.Properties.TimestampFrom.ge(timestamp_from - 3600 * 24),
                 HPlusHealthActivityOverlayDao.Properties.TimestampTo.le(timestamp_to),
                 HPlusHealthActivityOverlayDao.Properties.TimestampTo.ge(timestamp_from));
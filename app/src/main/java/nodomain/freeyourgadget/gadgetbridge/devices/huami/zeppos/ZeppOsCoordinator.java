@@ -144,6 +144,11 @@ public abstract class ZeppOsCoordinator extends HuamiCoordinator {
         return true;
     }
 
+    @Override
+    public boolean supportsSampleRetention() {
+        return true;
+    }
+
     @Override
     public boolean supportsManualHeartRateMeasurement(final GBDevice device) {
         // TODO: It should be supported, but not yet properly implemented
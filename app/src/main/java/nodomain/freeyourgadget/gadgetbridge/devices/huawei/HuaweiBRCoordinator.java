@@ -168,6 +168,11 @@ public abstract class HuaweiBRCoordinator extends AbstractBLClassicDeviceCoordin
         return true;
     }
 
+    @Override
+    public boolean supportsSampleRetention() {
+        return true;
+    }
+
     @Override
     public boolean supportsActivityTracks() {
         return true;
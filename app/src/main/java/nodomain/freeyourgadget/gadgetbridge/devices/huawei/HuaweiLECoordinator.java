@@ -177,6 +177,11 @@ public abstract class HuaweiLECoordinator extends AbstractBLEDeviceCoordinator i
         return true;
     }
 
+    @Override
+    public boolean supportsSampleRetention() {
+        return true;
+    }
+
     @Override
     public boolean supportsActivityTracks() {
         return true;
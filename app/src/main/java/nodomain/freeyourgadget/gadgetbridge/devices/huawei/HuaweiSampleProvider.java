@@ -30,7 +30,6 @@ import de.greenrobot.dao.query.QueryBuilder;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.devices.AbstractSampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
-import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.HuaweiActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.entities.HuaweiActivitySampleDao;
 import nodomain.freeyourgadget.gadgetbridge.entities.HuaweiWorkoutDataSample;
@@ -40,6 +39,7 @@ import nodomain.freeyourgadget.gadgetbridge.entities.HuaweiWorkoutSummarySampleD
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.util.TimeSeriesJoin;
 
 public class HuaweiSampleProvider extends AbstractSampleProvider<HuaweiActivitySample> {
     /*
@@ -125,13 +125,13 @@ public class HuaweiSampleProvider extends AbstractSampleProvider<HuaweiActivityS
     }
 
     private int getLastFetchTimestamp(QueryBuilder<HuaweiActivitySample> qb) {
-        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null)
+        Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null)
             return 0;
         Property deviceProperty = HuaweiActivitySampleDao.Properties.DeviceId;
         Property timestampProperty = HuaweiActivitySampleDao.Properties.Timestamp;
 
-        qb.where(deviceProperty.eq(dbDevice.getId()))
+        qb.where(deviceProperty.eq(dbDeviceId))
                 .orderDesc(timestampProperty)
                 .limit(1);
 
@@ -248,13 +248,13 @@ public class HuaweiSampleProvider extends AbstractSampleProvider<HuaweiActivityS
     private List<HuaweiActivitySample> getRawOrderedActivitySamples(int timestampFrom, int timestampTo) {
         QueryBuilder<HuaweiActivitySample> qb = getSampleDao().queryBuilder();
         Property timestampProperty = getTimestampSampleProperty();
-        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
             // no device, no samples
             return Collections.emptyList();
         }
         Property deviceProperty = getDeviceIdentifierSampleProperty();
-        qb.where(deviceProperty.eq(dbDevice.getId()), timestampProperty.ge(timestampFrom))
+        qb.where(deviceProperty.eq(dbDeviceId), timestampProperty.ge(timestampFrom))
                 .where(timestampProperty.le(timestampTo))
                 .orderAsc(timestampProperty);
         List<HuaweiActivitySample> samples = qb.build().list();
@@ -266,8 +266,8 @@ public class HuaweiSampleProvider extends AbstractSampleProvider<HuaweiActivityS
     }
 
     private List<HuaweiWorkoutDataSample> getRawOrderedWorkoutSamplesWithHeartRate(int timestampFrom, int timestampTo) {
-        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null)
+        Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null)
             return Collections.emptyList();
 
         QueryBuilder<HuaweiWorkoutDataSample> qb = getSession().getHuaweiWorkoutDataSampleDao().queryBuilder();
@@ -275,7 +275,7 @@ public class HuaweiSampleProvider extends AbstractSampleProvider<HuaweiActivityS
         Property heartRateProperty = HuaweiWorkoutDataSampleDao.Properties.HeartRate;
         Property deviceProperty = HuaweiWorkoutSummarySampleDao.Properties.DeviceId;
         qb.join(HuaweiWorkoutDataSampleDao.Properties.WorkoutId, HuaweiWorkoutSummarySample.class, HuaweiWorkoutSummarySampleDao.Properties.WorkoutId)
-                .where(deviceProperty.eq(dbDevice.getId()));
+                .where(deviceProperty.eq(dbDeviceId));
         qb.where(
                 timestampProperty.ge(timestampFrom),
                 timestampProperty.le(timestampTo),
@@ -308,8 +308,7 @@ public class HuaweiSampleProvider extends AbstractSampleProvider<HuaweiActivityS
 
     @Override
     protected List<HuaweiActivitySample> getGBActivitySamplesHighRes(int timestamp_from, int timestamp_to) {
-        List<HuaweiActivitySample> processedSamples = getRawOrderedActivitySamples(timestamp_from, timestamp_to);
-        addWorkoutSamples(processedSamples, timestamp_from, timestamp_to);
+        List<HuaweiActivitySample> processedSamples = addWorkoutSamples(getRawOrderedActivitySamples(timestamp_from, timestamp_to), timestamp_from, timestamp_to);
         // Filter out the end markers before returning
         return processedSamples.stream().filter(sample -> sample.getTimestamp() <= sample.getOtherTimestamp()).collect(Collectors.toList());
     }
@@ -489,33 +488,33 @@ public class HuaweiSampleProvider extends AbstractSampleProvider<HuaweiActivityS
         }
     }
 
-    private void addWorkoutSamples(List<HuaweiActivitySample> processedSamples, int timestamp_from, int timestamp_to) {
-        int currentIndex = 0;
+    private List<HuaweiActivitySample> addWorkoutSamples(List<HuaweiActivitySample> processedSamples, int timestamp_from, int timestamp_to) {
         List<HuaweiWorkoutDataSample> workoutSamples = getRawOrderedWorkoutSamplesWithHeartRate(timestamp_from, timestamp_to);
-
-        for (int i = 0; i < workoutSamples.size(); i++) {
-            // Look behind to see if this is still the same workout
-            boolean inWorkout = i != 0 && workoutSamples.get(i).getWorkoutId() == workoutSamples.get(i - 1).getWorkoutId();
-
-            // Skip the samples that are before this workout sample, and potentially clear the HR
-            // and intensity - see #4126 for the reasoning
-            while (currentIndex < processedSamples.size() && workoutSamples.get(i).getTimestamp() > processedSamples.get(currentIndex).getTimestamp()) {
-                if (inWorkout) {
-                    processedSamples.get(currentIndex).setHeartRate(ActivitySample.NOT_MEASURED);
-                    processedSamples.get(currentIndex).setRawIntensity(0);
-                }
-
-                currentIndex += 1;
+        if (workoutSamples.isEmpty())
+            return processedSamples;
+
+        // Clear the HR and intensity of the samples between two samples of the same workout - see
+        // #4126 for the reasoning
+        TimeSeriesJoin.asOfIndex(processedSamples, HuaweiActivitySample::getTimestamp, workoutSamples, HuaweiWorkoutDataSample::getTimestamp, (sample, i) -> {
+            boolean inWorkout = i >= 0 && i < workoutSamples.size() - 1 && workoutSamples.get(i).getWorkoutId() == workoutSamples.get(i + 1).getWorkoutId();
+            if (inWorkout) {
+                sample.setHeartRate(ActivitySample.NOT_MEASURED);
+                sample.setRawIntensity(0);
             }
+        });
 
+        List<HuaweiActivitySample> convertedSamples = new ArrayList<>(workoutSamples.size());
+        for (int i = 0; i < workoutSamples.size(); i++) {
             if (i < workoutSamples.size() - 1) {
-                processedSamples.add(currentIndex, convertWorkoutSampleToActivitySample(workoutSamples.get(i), workoutSamples.get(i + 1).getTimestamp()));
+                convertedSamples.add(convertWorkoutSampleToActivitySample(workoutSamples.get(i), workoutSamples.get(i + 1).getTimestamp()));
             } else {
                 // For the last workout sample we assume it is over 5 seconds
-                processedSamples.add(currentIndex, convertWorkoutSampleToActivitySample(workoutSamples.get(i), workoutSamples.get(i).getTimestamp() + 5));
+                convertedSamples.add(convertWorkoutSampleToActivitySample(workoutSamples.get(i), workoutSamples.get(i).getTimestamp() + 5));
             }
-            currentIndex += 1; // Prevent clearing the sample in the next loop
         }
+
+        // The workout samples go before the activity samples with the same timestamp
+        return TimeSeriesJoin.merge(convertedSamples, processedSamples, HuaweiActivitySample::getTimestamp);
     }
 
     private HuaweiActivitySample convertWorkoutSampleToActivitySample(HuaweiWorkoutDataSample workoutSample, int nextTimestamp) {
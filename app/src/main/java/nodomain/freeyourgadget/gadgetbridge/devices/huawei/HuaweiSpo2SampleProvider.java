@@ -24,6 +24,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import de.greenrobot.dao.AbstractDao;
 import de.greenrobot.dao.Property;
@@ -32,7 +33,6 @@ import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.devices.AbstractTimeSampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.AbstractSpo2Sample;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
-import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.HuaweiActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.entities.HuaweiActivitySampleDao;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
@@ -77,6 +77,13 @@ public class HuaweiSpo2SampleProvider extends AbstractTimeSampleProvider<HuaweiS
         return spo2Samples;
     }
 
+    @Override
+    public void forEachSample(long timestampFrom, long timestampTo, Consumer<? super HuaweiSpo2Sample> consumer) {
+        for (HuaweiSpo2Sample sample : getAllSamples(timestampFrom, timestampTo)) {
+            consumer.accept(sample);
+        }
+    }
+
     @Override
     public void addSample(HuaweiSpo2Sample activitySample) {
         LOG.error("Huawei Spo2 sample provider addSample called!");
@@ -91,12 +98,12 @@ public class HuaweiSpo2SampleProvider extends AbstractTimeSampleProvider<HuaweiS
     @Override
     public HuaweiSpo2Sample getLatestSample() {
         QueryBuilder<HuaweiActivitySample> qb = this.huaweiSampleProvider.getSampleDao().queryBuilder();
-        final Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null)
+        final Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null)
             return null;
         final Property deviceProperty = this.huaweiSampleProvider.getDeviceIdentifierSampleProperty();
         qb
-                .where(deviceProperty.eq(dbDevice.getId()))
+                .where(deviceProperty.eq(dbDeviceId))
                 .where(HuaweiActivitySampleDao.Properties.Spo.notEq(-1))
                 .orderDesc(this.huaweiSampleProvider.getTimestampSampleProperty())
                 .limit(1);
@@ -110,12 +117,12 @@ public class HuaweiSpo2SampleProvider extends AbstractTimeSampleProvider<HuaweiS
     @Override
     public HuaweiSpo2Sample getFirstSample() {
         QueryBuilder<HuaweiActivitySample> qb = this.huaweiSampleProvider.getSampleDao().queryBuilder();
-        final Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null)
+        final Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null)
             return null;
         final Property deviceProperty = this.huaweiSampleProvider.getDeviceIdentifierSampleProperty();
         qb
-                .where(deviceProperty.eq(dbDevice.getId()))
+                .where(deviceProperty.eq(dbDeviceId))
                 .where(HuaweiActivitySampleDao.Properties.Spo.notEq(-1))
                 .orderAsc(this.huaweiSampleProvider.getTimestampSampleProperty())
                 .limit(1);
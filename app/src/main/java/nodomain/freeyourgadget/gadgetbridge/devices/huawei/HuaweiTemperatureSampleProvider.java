@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -76,7 +77,7 @@ public class HuaweiTemperatureSampleProvider implements TimeSampleProvider<Tempe
         List<TemperatureSample> ret = new ArrayList<>();
 
         Long userId = DBHelper.getUser(this.session).getId();
-        Long deviceId = DBHelper.getDevice(this.device, this.session).getId();
+        Long deviceId = DBHelper.findDeviceId(this.device, this.session);
 
         if (deviceId == null || userId == null)
             return ret;
@@ -112,6 +113,13 @@ public class HuaweiTemperatureSampleProvider implements TimeSampleProvider<Tempe
         return ret;
     }
 
+    @Override
+    public void forEachSample(long timestampFrom, long timestampTo, Consumer<? super TemperatureSample> consumer) {
+        for (TemperatureSample sample : getAllSamples(timestampFrom, timestampTo)) {
+            consumer.accept(sample);
+        }
+    }
+
     @Override
     public void addSample(TemperatureSample timeSample) {
         throw new UnsupportedOperationException("read-only sample provider");
@@ -133,7 +141,7 @@ public class HuaweiTemperatureSampleProvider implements TimeSampleProvider<Tempe
     @Override
     public TemperatureSample getLatestSample() {
         Long userId = DBHelper.getUser(this.session).getId();
-        Long deviceId = DBHelper.getDevice(this.device, this.session).getId();
+        Long deviceId = DBHelper.findDeviceId(this.device, this.session);
 
         if (deviceId == null || userId == null)
             return null;
@@ -163,7 +171,7 @@ public class HuaweiTemperatureSampleProvider implements TimeSampleProvider<Tempe
     @Override
     public TemperatureSample getFirstSample() {
         Long userId = DBHelper.getUser(this.session).getId();
-        Long deviceId = DBHelper.getDevice(this.device, this.session).getId();
+        Long deviceId = DBHelper.findDeviceId(this.device, this.session);
 
         if (deviceId == null || userId == null)
             return null;
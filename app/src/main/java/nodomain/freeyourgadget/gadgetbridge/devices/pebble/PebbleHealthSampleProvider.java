@@ -28,7 +28,6 @@ import de.greenrobot.dao.query.QueryBuilder;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.devices.AbstractSampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
-import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.PebbleHealthActivityOverlay;
 import nodomain.freeyourgadget.gadgetbridge.entities.PebbleHealthActivityOverlayDao;
 import nodomain.freeyourgadget.gadgetbridge.entities.PebbleHealthActivitySample;
@@ -57,8 +56,8 @@ public class PebbleHealthSampleProvider extends AbstractSampleProvider<PebbleHea
     public List<PebbleHealthActivitySample> getAllActivitySamples(int timestamp_from, int timestamp_to) {
         List<PebbleHealthActivitySample> samples = super.getGBActivitySamples(timestamp_from, timestamp_to);
 
-        Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
             // no device, no samples
             return Collections.emptyList();
         }
@@ -66,7 +65,7 @@ public class PebbleHealthSampleProvider extends AbstractSampleProvider<PebbleHea
         QueryBuilder<PebbleHealthActivityOverlay> qb = getSession().getPebbleHealthActivityOverlayDao().queryBuilder();
 
         // I assume it returns the records by id ascending ... (last overlay is dominant)
-        qb.where(PebbleHealthActivityOverlayDao.Properties.DeviceId.eq(dbDevice.getId()), PebbleHealthActivityOverlayDao.Properties.TimestampTo.ge(timestamp_from))
+        qb.where(PebbleHealthActivityOverlayDao.Properties.DeviceId.eq(dbDeviceId), PebbleHealthActivityOverlayDao.Properties.TimestampTo.ge(timestamp_from))
                 .where(PebbleHealthActivityOverlayDao.Properties.TimestampFrom.le(timestamp_to));
         List<PebbleHealthActivityOverlay> overlayRecords = qb.build().list();
 
@@ -19,6 +19,7 @@ package nodomain.freeyourgadget.gadgetbridge.devices.sony.wena3;
 import androidx.annotation.NonNull;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import de.greenrobot.dao.AbstractDao;
 import de.greenrobot.dao.Property;
@@ -56,16 +57,28 @@ public class SonyWena3StressSampleProvider extends AbstractTimeSampleProvider<We
     public List<Wena3StressSample> getAllSamples(long timestampFrom, long timestampTo) {
         List<Wena3StressSample> samples = super.getAllSamples(timestampFrom, timestampTo);
         for(Wena3StressSample sample: samples) {
-            if(sample.getStress() < -100 || sample.getStress() > 100) {
-                sample.setStress(-1);
-            } else {
-                // Move from the original -100 .. 100 range to 0 .. 100
-                sample.setStress(Math.round(((float)sample.getStress() + 100.0f) / 2.0f));
-            }
+            normalizeStress(sample);
         }
         return samples;
     }
 
+    @Override
+    public void forEachSample(long timestampFrom, long timestampTo, Consumer<? super Wena3StressSample> consumer) {
+        super.forEachSample(timestampFrom, timestampTo, sample -> {
+            normalizeStress(sample);
+            consumer.accept(sample);
+        });
+    }
+
+    private static void normalizeStress(Wena3StressSample sample) {
+        if(sample.getStress() < -100 || sample.getStress() > 100) {
+            sample.setStress(-1);
+        } else {
+            // Move from the original -100 .. 100 range to 0 .. 100
+            sample.setStress(Math.round(((float)sample.getStress() + 100.0f) / 2.0f));
+        }
+    }
+
     @Override
     public Wena3StressSample createSample() {
         return new Wena3StressSample();
@@ -21,6 +21,7 @@ import androidx.annotation.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import nodomain.freeyourgadget.gadgetbridge.devices.TimeSampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.devices.test.TestDeviceRand;
@@ -39,6 +40,13 @@ public class TestHrvSummarySampleProvider implements TimeSampleProvider<HrvSumma
         return samples;
     }
 
+    @Override
+    public void forEachSample(final long timestampFrom, final long timestampTo, final Consumer<? super HrvSummarySample> consumer) {
+        for (final HrvSummarySample sample : getAllSamples(timestampFrom, timestampTo)) {
+            consumer.accept(sample);
+        }
+    }
+
     @Override
     public void addSample(final HrvSummarySample timeSample) {
         throw new UnsupportedOperationException("read-only sample provider");
@@ -21,6 +21,7 @@ import androidx.annotation.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import nodomain.freeyourgadget.gadgetbridge.devices.TimeSampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.devices.test.TestDeviceRand;
@@ -42,6 +43,13 @@ public class TestHrvValueSampleProvider implements TimeSampleProvider<HrvValueSa
         return samples;
     }
 
+    @Override
+    public void forEachSample(final long timestampFrom, final long timestampTo, final Consumer<? super HrvValueSample> consumer) {
+        for (final HrvValueSample sample : getAllSamples(timestampFrom, timestampTo)) {
+            consumer.accept(sample);
+        }
+    }
+
     @Override
     public void addSample(final HrvValueSample timeSample) {
         throw new UnsupportedOperationException("read-only sample provider");
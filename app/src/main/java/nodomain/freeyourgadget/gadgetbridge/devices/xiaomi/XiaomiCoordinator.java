@@ -250,6 +250,11 @@ public abstract class XiaomiCoordinator extends AbstractBLEDeviceCoordinator {
         return true;
     }
 
+    @Override
+    public boolean supportsSampleRetention() {
+        return true;
+    }
+
     @Override
     public boolean supportsActivityTracks() {
         return true;
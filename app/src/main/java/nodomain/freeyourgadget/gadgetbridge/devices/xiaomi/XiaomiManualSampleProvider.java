@@ -27,7 +27,6 @@ import de.greenrobot.dao.query.QueryBuilder;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.devices.AbstractTimeSampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
-import nodomain.freeyourgadget.gadgetbridge.entities.Device;
 import nodomain.freeyourgadget.gadgetbridge.entities.XiaomiManualSample;
 import nodomain.freeyourgadget.gadgetbridge.entities.XiaomiManualSampleDao;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
@@ -68,13 +67,13 @@ public class XiaomiManualSampleProvider extends AbstractTimeSampleProvider<Xiaom
     @Nullable
     public XiaomiManualSample getLatestSample(final int type) {
         final QueryBuilder<XiaomiManualSample> qb = getSampleDao().queryBuilder();
-        final Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        final Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
             // no device, no sample
             return null;
         }
         final Property deviceProperty = getDeviceIdentifierSampleProperty();
-        qb.where(deviceProperty.eq(dbDevice.getId()))
+        qb.where(deviceProperty.eq(dbDeviceId))
                 .where(XiaomiManualSampleDao.Properties.Type.eq(type))
                 .orderDesc(getTimestampSampleProperty()).limit(1);
         final List<XiaomiManualSample> samples = qb.build().list();
@@ -87,13 +86,13 @@ public class XiaomiManualSampleProvider extends AbstractTimeSampleProvider<Xiaom
     @Nullable
     public XiaomiManualSample getFirstSample(final int type) {
         final QueryBuilder<XiaomiManualSample> qb = getSampleDao().queryBuilder();
-        final Device dbDevice = DBHelper.findDevice(getDevice(), getSession());
-        if (dbDevice == null) {
+        final Long dbDeviceId = DBHelper.findDeviceId(getDevice(), getSession());
+        if (dbDeviceId == null) {
             // no device, no sample
             return null;
         }
         final Property deviceProperty = getDeviceIdentifierSampleProperty();
-        qb.where(deviceProperty.eq(dbDevice.getId()))
+        qb.where(deviceProperty.eq(dbDeviceId))
                 .where(XiaomiManualSampleDao.Properties.Type.eq(type))
                 .orderAsc(getTimestampSampleProperty()).limit(1);
         final List<XiaomiManualSample> samples = qb.build().list();
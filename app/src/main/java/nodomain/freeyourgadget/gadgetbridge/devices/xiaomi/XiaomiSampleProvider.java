@@ -123,7 +123,7 @@ public class XiaomiSampleProvider extends AbstractSampleProvider<XiaomiActivityS
      * found.
      */
     public void overlaySleep(final List<XiaomiActivitySample> samples, final int timestamp_from, final int timestamp_to) {
-        final RangeMap<Long, ActivityKind> stagesMap = new RangeMap<>(RangeMap.Mode.LOWER_BOUND);
+        final RangeMap<ActivityKind> stagesMap = new RangeMap<>(RangeMap.Mode.LOWER_BOUND);
 
         final XiaomiSleepTimeSampleProvider sleepTimeSampleProvider = new XiaomiSleepTimeSampleProvider(getDevice(), getSession());
         final XiaomiSleepStageSampleProvider sleepStagesSampleProvider = new XiaomiSleepStageSampleProvider(getDevice(), getSession());
@@ -198,14 +198,12 @@ public class XiaomiSampleProvider extends AbstractSampleProvider<XiaomiActivityS
             //       activity files, the stages will not get overlayed/inserted and the sleep charts
             //       will stay empty.
 
-            for (final XiaomiActivitySample sample : samples) {
-                final long ts = sample.getTimestamp() * 1000L;
-                final ActivityKind sleepType = stagesMap.get(ts);
+            stagesMap.getAll(samples, sample -> sample.getTimestamp() * 1000L, (sample, sleepType) -> {
                 if (sleepType != null && !sleepType.equals(ActivityKind.UNKNOWN)) {
                     sample.setRawKind(sleepType.getCode());
                     sample.setRawIntensity(ActivitySample.NOT_MEASURED);
                 }
-            }
+            });
         }
     }
 }
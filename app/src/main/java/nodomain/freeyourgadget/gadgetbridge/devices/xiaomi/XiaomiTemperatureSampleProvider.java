@@ -21,6 +21,7 @@ import androidx.annotation.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import nodomain.freeyourgadget.gadgetbridge.devices.TimeSampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.DaoSession;
@@ -51,6 +52,13 @@ public class XiaomiTemperatureSampleProvider implements TimeSampleProvider<Tempe
         return temperatureSamples;
     }
 
+    @Override
+    public void forEachSample(final long timestampFrom, final long timestampTo, final Consumer<? super TemperatureSample> consumer) {
+        for (final TemperatureSample sample : getAllSamples(timestampFrom, timestampTo)) {
+            consumer.accept(sample);
+        }
+    }
+
     @Override
     public void addSample(final TemperatureSample timeSample) {
         throw new UnsupportedOperationException("read-only sample provider");
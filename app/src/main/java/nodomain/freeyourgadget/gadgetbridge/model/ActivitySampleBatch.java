@@ -0,0 +1,217 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import nodomain.freeyourgadget.gadgetbridge.activities.charts.TrailingActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
+
+/**
+ * A columnar, primitive copy of a sequence of {@link ActivitySample}s, in timestamp order.
+ * <p>
+ * The analysis code only needs a handful of values per sample, so instead of keeping one object
+ * per minute alive, the values are copied into plain arrays while the samples are streamed
+ * from the database. Iterating over the batch does not box or allocate anything.
+ * <p>
+ * The activity kind is stored as {@link ActivityKind#getCode()}.
+ */
+public class ActivitySampleBatch implements Consumer<ActivitySample> {
+    private static final int DEFAULT_CAPACITY = 24 * 60;
+
+    private int size = 0;
+    private int[] timestamps;
+    private int[] steps;
+    private int[] distancesCm;
+    private int[] heartRates;
+    private int[] rawIntensities;
+    private float[] intensities;
+    private int[] rawKinds;
+    private int[] kinds;
+    private boolean[] trailing;
+
+    public ActivitySampleBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ActivitySampleBatch(final int initialCapacity) {
+        final int capacity = Math.max(initialCapacity, 16);
+        timestamps = new int[capacity];
+        steps = new int[capacity];
+        distancesCm = new int[capacity];
+        heartRates = new int[capacity];
+        rawIntensities = new int[capacity];
+        intensities = new float[capacity];
+        rawKinds = new int[capacity];
+        kinds = new int[capacity];
+        trailing = new boolean[capacity];
+    }
+
+    /**
+     * Fills a new batch with the samples of the given provider in the given range, streaming them
+     * from the database, so that the sample objects are never held in memory all at once.
+     */
+    public static ActivitySampleBatch fromProvider(final SampleProvider<? extends ActivitySample> provider,
+                                                   final int timestampFrom,
+                                                   final int timestampTo) {
+        final int expectedSamples = (timestampTo - timestampFrom) / 60 + 1;
+        final ActivitySampleBatch batch = new ActivitySampleBatch(Math.min(expectedSamples, DEFAULT_CAPACITY * 31));
+        provider.forEachActivitySample(timestampFrom, timestampTo, batch);
+        return batch;
+    }
+
+    public static ActivitySampleBatch fromSamples(final List<? extends ActivitySample> samples) {
+        final ActivitySampleBatch batch = new ActivitySampleBatch(samples.size());
+        for (final ActivitySample sample : samples) {
+            batch.accept(sample);
+        }
+        return batch;
+    }
+
+    @Override
+    public void accept(final ActivitySample sample) {
+        ensureCapacity(size + 1);
+        timestamps[size] = sample.getTimestamp();
+        steps[size] = sample.getSteps();
+        distancesCm[size] = sample.getDistanceCm();
+        heartRates[size] = sample.getHeartRate();
+        rawIntensities[size] = sample.getRawIntensity();
+        rawKinds[size] = sample.getRawKind();
+        trailing[size] = sample instanceof TrailingActivitySample;
+        if (trailing[size] && sample.getProvider() == null) {
+            // trailing samples may not have a provider to normalize their values
+            intensities[size] = ActivitySample.NOT_MEASURED;
+            kinds[size] = ActivityKind.NOT_MEASURED.getCode();
+        } else {
+            intensities[size] = sample.getIntensity();
+            kinds[size] = sample.getKind().getCode();
+        }
+        size++;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity <= timestamps.length) {
+            return;
+        }
+        final int newCapacity = Math.max(capacity, timestamps.length + (timestamps.length >> 1));
+        timestamps = Arrays.copyOf(timestamps, newCapacity);
+        steps = Arrays.copyOf(steps, newCapacity);
+        distancesCm = Arrays.copyOf(distancesCm, newCapacity);
+        heartRates = Arrays.copyOf(heartRates, newCapacity);
+        rawIntensities = Arrays.copyOf(rawIntensities, newCapacity);
+        intensities = Arrays.copyOf(intensities, newCapacity);
+        rawKinds = Arrays.copyOf(rawKinds, newCapacity);
+        kinds = Arrays.copyOf(kinds, newCapacity);
+        trailing = Arrays.copyOf(trailing, newCapacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the index of the first sample at or after the given timestamp, or {@link #size()}
+     * if there is none.
+     */
+    public int indexOfTimestamp(final int timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns a new batch with the samples from {@code fromIndex}, inclusive, to {@code toIndex},
+     * exclusive.
+     */
+    public ActivitySampleBatch copyOfRange(final int fromIndex, final int toIndex) {
+        final ActivitySampleBatch batch = new ActivitySampleBatch(toIndex - fromIndex);
+        batch.size = toIndex - fromIndex;
+        System.arraycopy(timestamps, fromIndex, batch.timestamps, 0, batch.size);
+        System.arraycopy(steps, fromIndex, batch.steps, 0, batch.size);
+        System.arraycopy(distancesCm, fromIndex, batch.distancesCm, 0, batch.size);
+        System.arraycopy(heartRates, fromIndex, batch.heartRates, 0, batch.size);
+        System.arraycopy(rawIntensities, fromIndex, batch.rawIntensities, 0, batch.size);
+        System.arraycopy(intensities, fromIndex, batch.intensities, 0, batch.size);
+        System.arraycopy(rawKinds, fromIndex, batch.rawKinds, 0, batch.size);
+        System.arraycopy(kinds, fromIndex, batch.kinds, 0, batch.size);
+        System.arraycopy(trailing, fromIndex, batch.trailing, 0, batch.size);
+        return batch;
+    }
+
+    public int getTimestamp(final int index) {
+        return timestamps[index];
+    }
+
+    public int getSteps(final int index) {
+        return steps[index];
+    }
+
+    public int getDistanceCm(final int index) {
+        return distancesCm[index];
+    }
+
+    public int getHeartRate(final int index) {
+        return heartRates[index];
+    }
+
+    public int getRawIntensity(final int index) {
+        return rawIntensities[index];
+    }
+
+    /**
+     * Returns the intensity, as normalized by the provider when the sample was added.
+     */
+    public float getIntensity(final int index) {
+        return intensities[index];
+    }
+
+    public int getRawKind(final int index) {
+        return rawKinds[index];
+    }
+
+    /**
+     * Returns the {@link ActivityKind#getCode()} of the sample.
+     */
+    public int getKindCode(final int index) {
+        return kinds[index];
+    }
+
+    /**
+     * Whether the sample was a synthetic {@link TrailingActivitySample} added by the charts.
+     */
+    public boolean isTrailing(final int index) {
+        return trailing[index];
+    }
+}
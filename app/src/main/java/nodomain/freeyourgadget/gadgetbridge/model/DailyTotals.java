@@ -31,9 +31,11 @@ import java.util.List;
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.activities.charts.ActivityAnalysis;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.database.DailySummaryManager;
 import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCoordinator;
 import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.entities.DailySummary;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 
 
@@ -69,7 +71,7 @@ public class DailyTotals implements Serializable {
 
     public static DailyTotals getDailyTotalsForDevice(GBDevice device, Calendar day) {
 
-        try (DBHandler handler = GBApplication.acquireDB()) {
+        try (DBHandler handler = GBApplication.acquireReadOnlyDB()) {
             return getDailyTotalsForDevice(device, day, handler);
         } catch (Exception e) {
             //GB.toast("Error loading sleep/steps widget data for device: " + device, Toast.LENGTH_SHORT, GB.ERROR, e);
@@ -78,17 +80,40 @@ public class DailyTotals implements Serializable {
     }
 
     public static DailyTotals getDailyTotalsForDevice(GBDevice device, Calendar day, DBHandler handler) {
+        return fromDailySummary(DailySummaryManager.getDailySummary(device, day, handler));
+    }
+
+    public static DailyTotals fromDailySummary(DailySummary summary) {
+        long[] sleep = new long[]{
+                summary.getLightSleepSeconds() / 60,
+                summary.getDeepSleepSeconds() / 60,
+                summary.getRemSleepSeconds() / 60,
+                summary.getAwakeSleepSeconds() / 60
+        };
+        return new DailyTotals(summary.getSteps(), summary.getDistanceCm(), sleep);
+    }
+
+    /**
+     * Calculates the totals from the samples, instead of the stored {@link DailySummary}.
+     */
+    public static DailyTotals calculateDailyTotalsForDevice(GBDevice device, Calendar day, DBHandler handler) {
         ActivityAnalysis analysis = new ActivityAnalysis();
         ActivityAmounts amountsSteps;
         ActivityAmounts amountsSleep;
 
-        amountsSteps = analysis.calculateActivityAmounts(getSamplesOfDay(handler, day, 0, device));
-        amountsSleep = analysis.calculateActivityAmounts(getSamplesOfDay(handler, day, -12, device));
+        amountsSteps = calculateActivityAmountsOfDay(analysis, handler, day, 0, device);
+        amountsSleep = calculateActivityAmountsOfDay(analysis, handler, day, DailySummaryManager.SLEEP_OFFSET_HOURS, device);
+
+        return fromActivityAmounts(amountsSteps, amountsSleep);
+    }
 
+    /**
+     * Aggregates the totals of a day from the amounts of its steps period and of its sleep period.
+     */
+    public static DailyTotals fromActivityAmounts(ActivityAmounts amountsSteps, ActivityAmounts amountsSleep) {
         long[] sleep = getTotalsSleepForActivityAmounts(amountsSleep);
         Pair<Long, Long> stepsDistance = getTotalsStepsForActivityAmounts(amountsSteps);
 
-        // Purposely not including awake sleep
         return new DailyTotals(stepsDistance.getLeft(), stepsDistance.getRight(), sleep);
     }
 
@@ -126,7 +151,7 @@ public class DailyTotals implements Serializable {
         return Pair.of(totalSteps, totalDistance);
     }
 
-    private static List<? extends ActivitySample> getSamplesOfDay(DBHandler db, Calendar day, int offsetHours, GBDevice device) {
+    private static ActivityAmounts calculateActivityAmountsOfDay(ActivityAnalysis analysis, DBHandler db, Calendar day, int offsetHours, GBDevice device) {
         int startTs;
         int endTs;
 
@@ -139,7 +164,9 @@ public class DailyTotals implements Serializable {
         startTs = (int) (day.getTimeInMillis() / 1000);
         endTs = startTs + 24 * 60 * 60 - 1;
 
-        return getSamples(db, device, startTs, endTs);
+        ActivityAnalysis.ActivityAmountsCollector collector = analysis.newActivityAmountsCollector();
+        getProvider(db, device).forEachActivitySample(startTs, endTs, collector);
+        return collector.getActivityAmounts();
     }
 
     public static List<? extends ActivitySample> getSamples(DBHandler db, GBDevice device, int tsFrom, int tsTo) {
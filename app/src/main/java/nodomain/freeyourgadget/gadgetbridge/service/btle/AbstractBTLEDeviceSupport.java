@@ -23,7 +23,11 @@ import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
 import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +42,7 @@ import java.util.Set;
 import java.util.UUID;
 
 import nodomain.freeyourgadget.gadgetbridge.Logging;
+import nodomain.freeyourgadget.gadgetbridge.database.BufferedSampleWriter;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.service.AbstractDeviceSupport;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.CheckInitializedAction;
@@ -57,7 +62,13 @@ import nodomain.freeyourgadget.gadgetbridge.service.btle.profiles.AbstractBlePro
 public abstract class AbstractBTLEDeviceSupport extends AbstractDeviceSupport implements GattCallback, GattServerCallback {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractBTLEDeviceSupport.class);
 
-    private int mMTU = 23;
+    /**
+     * The default MTU of a BLE connection, and the largest one that Android negotiates.
+     */
+    public static final int DEFAULT_MTU = 23;
+    public static final int MAX_MTU = 517;
+
+    private int mMTU = DEFAULT_MTU;
     private BtLEQueue mQueue;
     private Map<UUID, BluetoothGattCharacteristic> mAvailableCharacteristics;
     private final Set<UUID> mSupportedServices = new HashSet<>(4);
@@ -70,6 +81,15 @@ public abstract class AbstractBTLEDeviceSupport extends AbstractDeviceSupport im
 
     private BleIntentApi bleApi = null;
 
+    private BufferedSampleWriter mSampleWriter;
+
+    private int mBulkTransfers = 0;
+    private String mBulkTransferName;
+    private long mBulkTransferStart;
+    private long mBulkTransferBytesSent;
+    private long mBulkTransferBytesReceived;
+    private long mLastBulkTransferThroughput = -1;
+
     public AbstractBTLEDeviceSupport(Logger logger) {
         this.logger = logger;
         if (logger == null) {
@@ -174,6 +194,27 @@ public abstract class AbstractBTLEDeviceSupport extends AbstractDeviceSupport im
         if(bleApi != null) {
             bleApi.dispose();
         }
+
+        final BufferedSampleWriter sampleWriter;
+        synchronized (this) {
+            sampleWriter = mSampleWriter;
+            mSampleWriter = null;
+        }
+        if (sampleWriter != null) {
+            sampleWriter.dispose();
+        }
+    }
+
+    /**
+     * Returns a writer that buffers samples received from the device and writes them to the
+     * database in batches. Pending samples are flushed when the device disconnects, and when
+     * this support is disposed.
+     */
+    protected synchronized BufferedSampleWriter getSampleWriter() {
+        if (mSampleWriter == null) {
+            mSampleWriter = new BufferedSampleWriter(getClass().getSimpleName());
+        }
+        return mSampleWriter;
     }
 
     public TransactionBuilder createTransactionBuilder(String taskName) {
@@ -351,6 +392,18 @@ public abstract class AbstractBTLEDeviceSupport extends AbstractDeviceSupport im
         for (AbstractBleProfile<?> profile : mSupportedProfiles) {
             profile.onConnectionStateChange(gatt, status, newState);
         }
+
+        if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+            final BufferedSampleWriter sampleWriter;
+            synchronized (this) {
+                sampleWriter = mSampleWriter;
+                // the link parameters are negotiated again on the next connection
+                mBulkTransfers = 0;
+            }
+            if (sampleWriter != null) {
+                sampleWriter.flush();
+            }
+        }
     }
 
     @Override
@@ -468,6 +521,97 @@ public abstract class AbstractBTLEDeviceSupport extends AbstractDeviceSupport im
         return false;
     }
 
+    /**
+     * Tunes the link for a bulk transfer, such as a fetch, a firmware update or a file transfer:
+     * negotiates the MTU from {@link #getBulkTransferMtu()} and requests
+     * {@link BluetoothGatt#CONNECTION_PRIORITY_HIGH}. Each call must be followed by a call to
+     * {@link #endBulkTransfer(TransactionBuilder)}. Nested bulk transfers are counted, the link
+     * is tuned when the first one begins and tuned back when the last one ends.
+     *
+     * @param builder the builder of the first transaction of the bulk transfer
+     * @param name    the name of the bulk transfer, for the throughput log
+     */
+    public synchronized void beginBulkTransfer(final TransactionBuilder builder, final String name) {
+        if (mBulkTransfers++ > 0) {
+            return;
+        }
+
+        mBulkTransferName = name;
+        mBulkTransferStart = SystemClock.elapsedRealtime();
+        mBulkTransferBytesSent = mQueue != null ? mQueue.getBytesSent() : 0;
+        mBulkTransferBytesReceived = mQueue != null ? mQueue.getBytesReceived() : 0;
+
+        final int mtu = getBulkTransferMtu();
+        if (mtu > getMTU()) {
+            LOG.debug("Requesting MTU {} for bulk transfer {}", mtu, name);
+            builder.requestMtu(mtu);
+        }
+        builder.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH);
+    }
+
+    /**
+     * Ends a bulk transfer started by {@link #beginBulkTransfer(TransactionBuilder, String)},
+     * logs its throughput and, if it was the last one, requests
+     * {@link #getIdleConnectionPriority()} again.
+     *
+     * @param builder the builder of the last transaction of the bulk transfer, or null if the
+     *                device is not connected anymore
+     */
+    public synchronized void endBulkTransfer(@Nullable final TransactionBuilder builder) {
+        if (mBulkTransfers == 0) {
+            LOG.warn("Ending a bulk transfer that was not started");
+            return;
+        }
+        if (--mBulkTransfers > 0) {
+            return;
+        }
+
+        final long durationMillis = Math.max(1, SystemClock.elapsedRealtime() - mBulkTransferStart);
+        final long bytesSent = mQueue != null ? mQueue.getBytesSent() - mBulkTransferBytesSent : 0;
+        final long bytesReceived = mQueue != null ? mQueue.getBytesReceived() - mBulkTransferBytesReceived : 0;
+        mLastBulkTransferThroughput = (bytesSent + bytesReceived) * 1000 / durationMillis;
+        LOG.info(
+                "Bulk transfer {} on {} took {}ms, sent {} bytes, received {} bytes: {} B/s at MTU {}",
+                mBulkTransferName,
+                getDevice().getType(),
+                durationMillis,
+                bytesSent,
+                bytesReceived,
+                mLastBulkTransferThroughput,
+                getMTU()
+        );
+
+        if (builder != null) {
+            builder.requestConnectionPriority(getIdleConnectionPriority());
+        }
+    }
+
+    /**
+     * Returns the throughput of the last bulk transfer in bytes per second, or -1 if there was
+     * none since the device support was created.
+     */
+    public synchronized long getLastBulkTransferThroughput() {
+        return mLastBulkTransferThroughput;
+    }
+
+    /**
+     * Returns the MTU to negotiate for bulk transfers, or 0 to keep the current one, which is
+     * the default. Device supports whose devices are known to handle a larger MTU, e.g.
+     * {@link #MAX_MTU}, may return it.
+     */
+    protected int getBulkTransferMtu() {
+        return 0;
+    }
+
+    /**
+     * Returns the connection priority to go back to after bulk transfers,
+     * {@link BluetoothGatt#CONNECTION_PRIORITY_BALANCED} by default. Devices that mostly idle
+     * may return {@link BluetoothGatt#CONNECTION_PRIORITY_LOW_POWER}.
+     */
+    protected int getIdleConnectionPriority() {
+        return BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+    }
+
     /**
      * Gets the current MTU, or 0 if unknown
      * @return the current MTU, 0 if unknown
@@ -53,7 +53,8 @@ public abstract class AbstractBTLEOperation<T extends AbstractBTLEDeviceSupport>
     /**
      * Performs this operation. The whole operation is asynchronous, i.e.
      * this method quickly returns before the actual operation is finished.
-     * Calls #prePerform() and, if successful, #doPerform().
+     * Calls #prePerform() and, if successful, #doPerform(). If #doPerform()
+     * fails, #performFailed() is called.
      *
      * @throws IOException
      */
@@ -62,7 +63,15 @@ public abstract class AbstractBTLEOperation<T extends AbstractBTLEDeviceSupport>
         operationStatus = OperationStatus.STARTED;
         prePerform();
         operationStatus = OperationStatus.RUNNING;
-        doPerform();
+        boolean performed = false;
+        try {
+            doPerform();
+            performed = true;
+        } finally {
+            if (!performed) {
+                performFailed();
+            }
+        }
     }
 
     /**
@@ -73,6 +82,13 @@ public abstract class AbstractBTLEOperation<T extends AbstractBTLEDeviceSupport>
     protected void prePerform() throws IOException {
     }
 
+    /**
+     * Hook for subclasses to undo what #prePerform() did, when #doPerform()
+     * threw an exception and the operation will not finish by itself.
+     */
+    protected void performFailed() {
+    }
+
     /**
      * Subclasses must implement this. When invoked, #prePerform() returned
      * successfully.
@@ -23,6 +23,9 @@ import java.util.Locale;
 public abstract class AbstractTransaction {
     private final String mName;
     private final long creationTimestamp = System.currentTimeMillis();
+    private TransactionPriority priority = TransactionPriority.NORMAL;
+    private long sequence;
+    private long queuedAt;
 
     public AbstractTransaction(String taskName) {
         this.mName = taskName;
@@ -36,6 +39,37 @@ public abstract class AbstractTransaction {
         return DateFormat.getTimeInstance(DateFormat.MEDIUM).format(new Date(creationTimestamp));
     }
 
+    public TransactionPriority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(TransactionPriority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * The position of the transaction in its lane of the {@link BtLEQueue}, set when queued.
+     */
+    long getSequence() {
+        return sequence;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * The {@link android.os.SystemClock#elapsedRealtime()} when the transaction was queued in the
+     * {@link BtLEQueue}.
+     */
+    long getQueuedAt() {
+        return queuedAt;
+    }
+
+    void setQueuedAt(long queuedAt) {
+        this.queuedAt = queuedAt;
+    }
+
     public abstract int getActionCount();
 
     @Override
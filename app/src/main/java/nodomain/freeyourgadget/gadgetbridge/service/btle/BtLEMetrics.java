@@ -0,0 +1,356 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.btle;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport metrics of the {@link BtLEQueue} of a device: traffic, queue depth, latencies, write
+ * retries and the time spent paused. The metrics are kept per device address, so that they
+ * survive the queue being re-created on reconnection, until the process dies or they are reset.
+ */
+public final class BtLEMetrics {
+    private static final Map<String, BtLEMetrics> METRICS = new ConcurrentHashMap<>();
+
+    private final String address;
+    private volatile String name;
+    private volatile long since = SystemClock.elapsedRealtime();
+
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong packetsSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong packetsReceived = new AtomicLong();
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong failedActions = new AtomicLong();
+    private final AtomicLong writeRetries = new AtomicLong();
+    private final AtomicLong pauses = new AtomicLong();
+    private final AtomicLong pausedMillis = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+
+    /**
+     * The traffic since the process started, which is not reset, for measuring the throughput
+     * of transfers.
+     */
+    private final AtomicLong totalBytesSent = new AtomicLong();
+    private final AtomicLong totalBytesReceived = new AtomicLong();
+
+    /**
+     * The transactions queued before the new one, at the time it is queued.
+     */
+    private final Histogram queueDepth = new Histogram();
+
+    /**
+     * Milliseconds from a transaction being queued until its first action runs.
+     */
+    private final Histogram queueWait = new Histogram();
+
+    /**
+     * Milliseconds from an action being run until its GATT callback.
+     */
+    private final Histogram actionLatency = new Histogram();
+
+    private BtLEMetrics(final String address, final String name) {
+        this.address = address;
+        this.name = name;
+    }
+
+    /**
+     * Returns the metrics of a device, creating them on first use.
+     */
+    public static BtLEMetrics forDevice(final String address, final String name) {
+        final BtLEMetrics metrics = METRICS.computeIfAbsent(address, key -> new BtLEMetrics(key, name));
+        metrics.name = name;
+        return metrics;
+    }
+
+    /**
+     * Returns the metrics of all devices that had a queue since the process started, sorted by
+     * address.
+     */
+    public static List<BtLEMetrics> getAll() {
+        final List<BtLEMetrics> all = new ArrayList<>(METRICS.values());
+        Collections.sort(all, (a, b) -> a.address.compareTo(b.address));
+        return all;
+    }
+
+    /**
+     * Dumps the metrics of all devices.
+     */
+    public static String dumpAll() {
+        final List<BtLEMetrics> all = getAll();
+        if (all.isEmpty()) {
+            return "No BLE devices connected since startup.";
+        }
+        final StringBuilder builder = new StringBuilder();
+        for (final BtLEMetrics metrics : all) {
+            if (builder.length() > 0) {
+                builder.append("\n");
+            }
+            metrics.dump(builder);
+        }
+        return builder.toString();
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    void countSent(final int bytes) {
+        packetsSent.incrementAndGet();
+        bytesSent.addAndGet(bytes);
+        totalBytesSent.addAndGet(bytes);
+    }
+
+    void countReceived(final int bytes) {
+        packetsReceived.incrementAndGet();
+        bytesReceived.addAndGet(bytes);
+        totalBytesReceived.addAndGet(bytes);
+    }
+
+    void countWriteRetry() {
+        writeRetries.incrementAndGet();
+    }
+
+    void countFailedAction() {
+        failedActions.incrementAndGet();
+    }
+
+    void recordQueued(final int depth) {
+        queueDepth.record(depth);
+        long max;
+        do {
+            max = maxQueueDepth.get();
+        } while (depth > max && !maxQueueDepth.compareAndSet(max, depth));
+    }
+
+    void recordTransactionStarted(final long waitMillis) {
+        transactions.incrementAndGet();
+        queueWait.record(waitMillis);
+    }
+
+    void recordActionLatency(final long millis) {
+        actionLatency.record(millis);
+    }
+
+    void recordPause(final long millis) {
+        pauses.incrementAndGet();
+        pausedMillis.addAndGet(millis);
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getPacketsSent() {
+        return packetsSent.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived.get();
+    }
+
+    public long getWriteRetries() {
+        return writeRetries.get();
+    }
+
+    public long getPausedMillis() {
+        return pausedMillis.get();
+    }
+
+    /**
+     * Returns the bytes sent since the process started, regardless of {@link #reset()}.
+     */
+    public long getTotalBytesSent() {
+        return totalBytesSent.get();
+    }
+
+    /**
+     * Returns the bytes received since the process started, regardless of {@link #reset()}.
+     */
+    public long getTotalBytesReceived() {
+        return totalBytesReceived.get();
+    }
+
+    /**
+     * Resets the metrics shown to the user. The totals used for the throughput are kept.
+     */
+    public void reset() {
+        since = SystemClock.elapsedRealtime();
+        bytesSent.set(0);
+        packetsSent.set(0);
+        bytesReceived.set(0);
+        packetsReceived.set(0);
+        transactions.set(0);
+        failedActions.set(0);
+        writeRetries.set(0);
+        pauses.set(0);
+        pausedMillis.set(0);
+        maxQueueDepth.set(0);
+        queueDepth.reset();
+        queueWait.reset();
+        actionLatency.reset();
+    }
+
+    /**
+     * Returns the metrics as human readable text, one value per line.
+     */
+    public String dump() {
+        final StringBuilder builder = new StringBuilder();
+        dump(builder);
+        return builder.toString();
+    }
+
+    private void dump(final StringBuilder builder) {
+        final long seconds = Math.max(1, (SystemClock.elapsedRealtime() - since) / 1000);
+        builder.append(String.format(Locale.ROOT, "%s (%s), last %ds\n", name, address, seconds));
+        builder.append(String.format(Locale.ROOT, "  sent: %d bytes in %d packets (%d B/s)\n", bytesSent.get(), packetsSent.get(), bytesSent.get() / seconds));
+        builder.append(String.format(Locale.ROOT, "  received: %d bytes in %d packets (%d B/s)\n", bytesReceived.get(), packetsReceived.get(), bytesReceived.get() / seconds));
+        builder.append(String.format(Locale.ROOT, "  transactions: %d, failed actions: %d\n", transactions.get(), failedActions.get()));
+        builder.append(String.format(Locale.ROOT, "  write retries: %d\n", writeRetries.get()));
+        builder.append(String.format(Locale.ROOT, "  paused: %d ms in %d pauses\n", pausedMillis.get(), pauses.get()));
+        builder.append(String.format(Locale.ROOT, "  queue depth: max %d, %s\n", maxQueueDepth.get(), queueDepth));
+        builder.append(String.format(Locale.ROOT, "  queue wait (ms): %s\n", queueWait));
+        builder.append(String.format(Locale.ROOT, "  action latency (ms): %s\n", actionLatency));
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return dump();
+    }
+
+    /**
+     * A histogram with power of two buckets: the first one counts the values 0, and bucket i the
+     * values from 2^(i-1) to 2^i - 1. The last bucket also counts all larger values.
+     */
+    static final class Histogram {
+        static final int BUCKETS = 16;
+
+        private final long[] buckets = new long[BUCKETS];
+        private long count;
+        private long sum;
+        private long max;
+
+        static int bucketOf(final long value) {
+            if (value <= 0) {
+                return 0;
+            }
+            return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+        }
+
+        /**
+         * The largest value counted by a bucket, or {@link Long#MAX_VALUE} for the last one.
+         */
+        static long upperBoundOf(final int bucket) {
+            if (bucket >= BUCKETS - 1) {
+                return Long.MAX_VALUE;
+            }
+            return (1L << bucket) - 1;
+        }
+
+        synchronized void record(final long value) {
+            buckets[bucketOf(value)]++;
+            count++;
+            sum += Math.max(0, value);
+            max = Math.max(max, value);
+        }
+
+        synchronized long getCount() {
+            return count;
+        }
+
+        synchronized long getMax() {
+            return max;
+        }
+
+        /**
+         * Returns the upper bound of the bucket containing the given percentile, capped at the
+         * largest recorded value.
+         */
+        synchronized long getPercentile(final double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), max);
+                }
+            }
+            return max;
+        }
+
+        synchronized void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = 0;
+            }
+            count = 0;
+            sum = 0;
+            max = 0;
+        }
+
+        @NonNull
+        @Override
+        public synchronized String toString() {
+            if (count == 0) {
+                return "n=0";
+            }
+            final StringBuilder builder = new StringBuilder(String.format(
+                    Locale.ROOT,
+                    "n=%d avg=%d p50<=%d p95<=%d p99<=%d max=%d [",
+                    count, sum / count, getPercentile(50), getPercentile(95), getPercentile(99), max
+            ));
+            boolean first = true;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (buckets[i] == 0) {
+                    continue;
+                }
+                if (!first) {
+                    builder.append(", ");
+                }
+                first = false;
+                if (i == BUCKETS - 1) {
+                    builder.append(">=").append(1L << (i - 1));
+                } else {
+                    builder.append("<=").append(upperBoundOf(i));
+                }
+                builder.append(":").append(buckets[i]);
+            }
+            return builder.append("]").toString();
+        }
+    }
+}
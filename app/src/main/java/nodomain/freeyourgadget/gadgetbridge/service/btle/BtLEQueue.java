@@ -33,19 +33,17 @@ import android.bluetooth.BluetoothProfile;
 import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 
 import androidx.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.Logging;
@@ -68,12 +66,12 @@ public final class BtLEQueue {
     private BluetoothGattServer mBluetoothGattServer;
     private final Set<BluetoothGattService> mSupportedServerServices;
 
-    private final BlockingQueue<AbstractTransaction> mTransactions = new LinkedBlockingQueue<>();
+    private final TransactionQueue mTransactions = new TransactionQueue();
     private volatile boolean mDisposed;
     private volatile boolean mCrashed;
     private volatile boolean mAbortTransaction;
     private volatile boolean mAbortServerTransaction;
-    private volatile boolean mPauseTransaction = false;
+    private final PauseGate mPauseGate = new PauseGate();
 
     private final Context mContext;
     private CountDownLatch mWaitForActionResultLatch;
@@ -86,6 +84,14 @@ public final class BtLEQueue {
     private boolean scanReconnect;
     private boolean mImplicitGattCallbackModify = true;
     private boolean mSendWriteRequestResponse = false;
+    private final WriteCredits mWriteCredits = new WriteCredits();
+    private final BtLEMetrics mMetrics;
+
+    /**
+     * How often a pipelined write is retried while the stack is busy without writes in flight.
+     */
+    private static final int MAX_BUSY_RETRIES = 50;
+    private static final long BUSY_RETRY_DELAY_MILLIS = 10;
 
     private Thread dispatchThread = new Thread("Gadgetbridge GATT Dispatcher") {
 
@@ -111,6 +117,7 @@ public final class BtLEQueue {
                         mConnectionLatch.await();
                         mConnectionLatch = null;
                     }
+                    mMetrics.recordTransactionStarted(SystemClock.elapsedRealtime() - qTransaction.getQueuedAt());
 
                     if(qTransaction instanceof ServerTransaction) {
                         ServerTransaction serverTransaction = (ServerTransaction)qTransaction;
@@ -149,20 +156,36 @@ public final class BtLEQueue {
                             internalGattCallback.setTransactionGattCallback(transaction.getGattCallback());
                         }
                         mAbortTransaction = false;
+                        mPauseGate.reset();
+                        final boolean pipelineWrites = transaction.getMaxWritesInFlight() > 1;
+                        mWriteCredits.reset(transaction.getMaxWritesInFlight());
                         // Run all actions of the transaction until one doesn't succeed
                         for (BtLEAction action : transaction.getActions()) {
                             if (mAbortTransaction) { // got disconnected
                                 LOG.info("Aborting running transaction");
                                 break;
                             }
-                            while ((action instanceof WriteAction) && mPauseTransaction && !mAbortTransaction) {
-                              LOG.info("Pausing WriteAction");
-                              try {
-                                  Thread.sleep(100);
-                              } catch (Exception e) {
-                                  LOG.info("Exception during pause: {}", e);
-                                  break;
-                              }
+                            if ((action instanceof WriteAction) && mPauseGate.isPaused()) {
+                                LOG.info("Pausing WriteAction");
+                                final long pausedMillis = mPauseGate.await();
+                                if (pausedMillis < 0 || mAbortTransaction) {
+                                    LOG.info("Aborting paused transaction");
+                                    break;
+                                }
+                                LOG.info("Resuming WriteAction after {}ms", pausedMillis);
+                                mMetrics.recordPause(pausedMillis);
+                            }
+                            if (pipelineWrites && action instanceof WriteAction && ((WriteAction) action).canWriteWithoutResponse(transaction.isForceWriteWithoutResponse())) {
+                                if (!runPipelinedWrite((WriteAction) action)) {
+                                    LOG.error("Pipelined write failed: {}", action);
+                                    mMetrics.countFailedAction();
+                                    break; // abort the transaction
+                                }
+                                continue;
+                            }
+                            // the other actions must not overlap with the pipelined writes
+                            if (pipelineWrites && !mWriteCredits.awaitAll()) {
+                                break;
                             }
                             mWaitCharacteristic = action.getCharacteristic();
                             mWaitForActionResultLatch = new CountDownLatch(1);
@@ -174,21 +197,30 @@ public final class BtLEQueue {
                                 // always be the last action in the transaction
                                 internalGattCallback.setTransactionGattCallback(((GattListenerAction) action).getGattCallback());
                             }
+                            final long actionStart = SystemClock.elapsedRealtime();
                             if (action.run(mBluetoothGatt)) {
+                                countBytesSent(action);
                                 // check again, maybe due to some condition, action did not need to write, so we can't wait
                                 boolean waitForResult = action.expectsResult();
                                 if (waitForResult) {
                                     mWaitForActionResultLatch.await();
                                     mWaitForActionResultLatch = null;
+                                    mMetrics.recordActionLatency(SystemClock.elapsedRealtime() - actionStart);
                                     if (mAbortTransaction) {
                                         break;
                                     }
                                 }
                             } else {
                                 LOG.error("Action returned false: {}", action);
+                                mMetrics.countFailedAction();
                                 break; // abort the transaction
                             }
                         }
+                        if (pipelineWrites && !mAbortTransaction) {
+                            // complete the transaction before the next one starts
+                            mWriteCredits.awaitAll();
+                        }
+                        mWriteCredits.reset(1);
                     }
                 } catch (InterruptedException ignored) {
                     mConnectionLatch = null;
@@ -206,9 +238,95 @@ public final class BtLEQueue {
         }
     };
 
+    /**
+     * Issues a pipelined write without response as soon as a write credit is available.
+     * If the stack is busy, the write is retried once one of the writes in flight completed.
+     *
+     * @return false if the write failed, and the transaction must be aborted
+     */
+    private boolean runPipelinedWrite(WriteAction action) throws InterruptedException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("About to run pipelined write: " + action);
+        }
+        int busyRetries = 0;
+        while (!mAbortTransaction) {
+            if (!mWriteCredits.acquire(action.getCharacteristic().getUuid())) {
+                return false;
+            }
+            final BluetoothGatt gatt = mBluetoothGatt;
+            if (gatt == null) {
+                return false;
+            }
+            switch (action.writeWithoutResponse(gatt)) {
+                case WriteAction.WRITE_SUCCESS:
+                    countBytesSent(action);
+                    return true;
+                case WriteAction.WRITE_BUSY:
+                    mMetrics.countWriteRetry();
+                    if (++busyRetries > MAX_BUSY_RETRIES) {
+                        LOG.warn("Stack still busy after {} retries", MAX_BUSY_RETRIES);
+                        return false;
+                    }
+                    if (!mWriteCredits.giveBackBusy()) {
+                        // no write callback will wake us up, busy with something else
+                        Thread.sleep(BUSY_RETRY_DELAY_MILLIS);
+                    }
+                    break;
+                default:
+                    mWriteCredits.giveBack();
+                    return false;
+            }
+        }
+        return false;
+    }
+
+    private void countBytesSent(final BtLEAction action) {
+        if (action instanceof WriteAction) {
+            byte[] value = ((WriteAction) action).getValue();
+            if (value == null && action.getCharacteristic() != null) {
+                // the value was decided while running, and was only set on the characteristic
+                value = action.getCharacteristic().getValue();
+            }
+            if (value != null) {
+                mMetrics.countSent(value.length);
+            }
+        }
+    }
+
+    private void countBytesReceived(final BluetoothGattCharacteristic characteristic) {
+        final byte[] value = characteristic.getValue();
+        if (value != null) {
+            mMetrics.countReceived(value.length);
+        }
+    }
+
+    /**
+     * Returns the number of bytes written to characteristics of the device since the process
+     * started. Not affected by resetting the metrics.
+     */
+    public long getBytesSent() {
+        return mMetrics.getTotalBytesSent();
+    }
+
+    /**
+     * Returns the number of bytes received by characteristic changes and reads of the device
+     * since the process started. Not affected by resetting the metrics.
+     */
+    public long getBytesReceived() {
+        return mMetrics.getTotalBytesReceived();
+    }
+
+    /**
+     * Returns the transport metrics of the device, which outlive this queue.
+     */
+    public BtLEMetrics getMetrics() {
+        return mMetrics;
+    }
+
     public BtLEQueue(BluetoothAdapter bluetoothAdapter, GBDevice gbDevice, GattCallback externalGattCallback, GattServerCallback externalGattServerCallback, Context context, Set<BluetoothGattService> supportedServerServices) {
         mBluetoothAdapter = bluetoothAdapter;
         mGbDevice = gbDevice;
+        mMetrics = BtLEMetrics.forDevice(gbDevice.getAddress(), gbDevice.getName());
         internalGattCallback = new InternalGattCallback(externalGattCallback);
         internalGattServerCallback = new InternalGattServerCallback(externalGattServerCallback);
         mContext = context;
@@ -250,7 +368,7 @@ public final class BtLEQueue {
      * @return <code>true</code> whether the connection attempt was successfully triggered and <code>false</code> if that failed or if there is already a connection
      */
     public boolean connect() {
-        mPauseTransaction = false;
+        mPauseGate.resume();
         if (isConnected()) {
             LOG.warn("Ingoring connect() because already connected.");
             return false;
@@ -316,7 +434,7 @@ public final class BtLEQueue {
                 gatt.close();
                 setDeviceConnectionState(State.NOT_CONNECTED);
             }
-            mPauseTransaction = false;
+            mPauseGate.resume();
             BluetoothGattServer gattServer = mBluetoothGattServer;
             if (gattServer != null) {
                 mBluetoothGattServer = null;
@@ -330,9 +448,11 @@ public final class BtLEQueue {
         LOG.debug("handleDisconnected: {}", status);
         internalGattCallback.reset();
         mTransactions.clear();
-        mPauseTransaction = false;
         mAbortTransaction = true;
         mAbortServerTransaction = true;
+        mPauseGate.resume();
+        mPauseGate.abort();
+        mWriteCredits.clear();
         if (mWaitForActionResultLatch != null) {
             mWaitForActionResultLatch.countDown();
         }
@@ -370,7 +490,7 @@ public final class BtLEQueue {
 
             LOG.info("Enabling automatic ble reconnect...");
             boolean result = mBluetoothGatt.connect();
-            mPauseTransaction = false;
+            mPauseGate.resume();
             if (result) {
                 setDeviceConnectionState(State.WAITING_FOR_RECONNECT);
             }
@@ -379,8 +499,38 @@ public final class BtLEQueue {
         return false;
     }
 
+    /**
+     * Pauses or resumes the queue, see {@link #pause()} and {@link #resume()}.
+     */
     public void setPaused(boolean paused) {
-      mPauseTransaction = paused;
+        if (paused) {
+            pause();
+        } else {
+            resume();
+        }
+    }
+
+    /**
+     * Holds back the write actions of the queue, e.g. while the device signals that it cannot
+     * keep up. The running transaction continues until its next write action, and waits there
+     * until the queue is resumed or the transaction is aborted. The queue is resumed implicitly
+     * on (re)connection and disconnection.
+     */
+    public void pause() {
+        LOG.debug("pause()");
+        mPauseGate.pause();
+    }
+
+    /**
+     * Resumes the write actions held back by {@link #pause()} immediately.
+     */
+    public void resume() {
+        LOG.debug("resume()");
+        mPauseGate.resume();
+    }
+
+    public boolean isPaused() {
+        return mPauseGate.isPaused();
     }
 
     public void dispose() {
@@ -399,56 +549,61 @@ public final class BtLEQueue {
     }
 
     /**
-     * Adds a transaction to the end of the queue.
+     * Adds a transaction to the end of its lane of the queue.
      *
      * @param transaction
      */
     public void add(Transaction transaction) {
         LOG.debug("about to add: {}", transaction);
         if (!transaction.isEmpty()) {
-            mTransactions.add(transaction);
+            enqueue(transaction);
         }
     }
 
     /**
-     * Aborts the currently running transaction
+     * Aborts the currently running transaction, also if it waits for the queue to be resumed.
+     * The queue stays paused for the following transactions.
      */
     public void abortCurrentTransaction() {
         mAbortTransaction = true;
+        mPauseGate.abort();
+        mWriteCredits.cancel();
         if (mWaitForActionResultLatch != null) {
             mWaitForActionResultLatch.countDown();
         }
     }
 
     /**
-     * Adds a serverTransaction to the end of the queue
+     * Adds a serverTransaction to the end of its lane of the queue
      *
      * @param transaction
      */
     public void add(ServerTransaction transaction) {
         LOG.debug("about to add: {}", transaction);
         if(!transaction.isEmpty()) {
-            mTransactions.add(transaction);
+            enqueue(transaction);
         }
     }
 
     /**
-     * Adds a transaction to the beginning of the queue.
+     * Adds a transaction to the beginning of its lane of the queue.
      * Note that actions of the *currently executing* transaction
-     * will still be executed before the given transaction.
+     * will still be executed before the given transaction, as will
+     * queued transactions of a higher priority.
      */
     public void insert(Transaction transaction) {
         LOG.debug("about to insert: {}", transaction);
         if (!transaction.isEmpty()) {
-            List<AbstractTransaction> tail = new ArrayList<>(mTransactions.size() + 2);
-            //mTransactions.drainTo(tail);
-            tail.addAll(mTransactions);
-            mTransactions.clear();
-            mTransactions.add(transaction);
-            mTransactions.addAll(tail);
+            mMetrics.recordQueued(mTransactions.size());
+            mTransactions.insert(transaction);
         }
     }
 
+    private void enqueue(AbstractTransaction transaction) {
+        mMetrics.recordQueued(mTransactions.size());
+        mTransactions.add(transaction);
+    }
+
     public void clear() {
         mTransactions.clear();
     }
@@ -589,6 +744,20 @@ public final class BtLEQueue {
             if (getCallbackToUse() != null) {
                 getCallbackToUse().onCharacteristicWrite(gatt, characteristic, status);
             }
+            final int released = mWriteCredits.release(characteristic.getUuid());
+            if (released == WriteCredits.RELEASE_STALE) {
+                // late callback of a timed out or aborted transaction
+                return;
+            }
+            if (released == WriteCredits.RELEASE_CURRENT) {
+                // completed a pipelined write, nobody waits on the latch for it
+                if (status != BluetoothGatt.GATT_SUCCESS) {
+                    LOG.debug("failed pipelined write, aborting transaction: {}{}", characteristic.getUuid(), getStatusString(status));
+                    mMetrics.countFailedAction();
+                    abortCurrentTransaction();
+                }
+                return;
+            }
             checkWaitingCharacteristic(characteristic, status);
         }
 
@@ -622,6 +791,9 @@ public final class BtLEQueue {
             if (!checkCorrectGattInstance(gatt, "characteristic read")) {
                 return;
             }
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                countBytesReceived(characteristic);
+            }
             if (getCallbackToUse() != null) {
                 try {
                     getCallbackToUse().onCharacteristicRead(gatt, characteristic, status);
@@ -674,6 +846,7 @@ public final class BtLEQueue {
             if (!checkCorrectGattInstance(gatt, "characteristic changed")) {
                 return;
             }
+            countBytesReceived(characteristic);
             if (getCallbackToUse() != null) {
                 try {
                     getCallbackToUse().onCharacteristicChanged(gatt, characteristic);
@@ -705,6 +878,7 @@ public final class BtLEQueue {
                 if (characteristic != null) {
                     LOG.debug("failed btle action, aborting transaction: {}{}", characteristic.getUuid(), getStatusString(status));
                 }
+                mMetrics.countFailedAction();
                 mAbortTransaction = true;
             }
             if (characteristic != null && BtLEQueue.this.mWaitCharacteristic != null && characteristic.getUuid().equals(BtLEQueue.this.mWaitCharacteristic.getUuid())) {
@@ -0,0 +1,73 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.btle;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds back the writes of the {@link BtLEQueue} while the device asked to pause, e.g. by flow
+ * control. The dispatch thread blocks until the queue is resumed, or the transaction is aborted,
+ * instead of polling.
+ */
+final class PauseGate {
+    private boolean paused = false;
+    private boolean aborted = false;
+
+    synchronized void pause() {
+        paused = true;
+    }
+
+    synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Wakes up a wait for the current transaction, which is being aborted.
+     */
+    synchronized void abort() {
+        aborted = true;
+        notifyAll();
+    }
+
+    /**
+     * Starts a new transaction, which is not aborted. Does not change whether the gate is paused.
+     */
+    synchronized void reset() {
+        aborted = false;
+    }
+
+    /**
+     * Waits until the gate is not paused.
+     *
+     * @return the milliseconds waited, or -1 if the transaction was aborted
+     */
+    synchronized long await() throws InterruptedException {
+        final long start = System.nanoTime();
+        while (paused && !aborted) {
+            wait();
+        }
+        if (aborted) {
+            return -1;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
@@ -38,6 +38,9 @@ public class Transaction extends AbstractTransaction {
 
     private boolean modifyGattCallback;
 
+    private int maxWritesInFlight = 1;
+    private boolean forceWriteWithoutResponse = false;
+
     public Transaction(String taskName) {
         super(taskName);
     }
@@ -76,6 +79,30 @@ public class Transaction extends AbstractTransaction {
         return modifyGattCallback;
     }
 
+    /**
+     * Sets how many writes without response may be in flight at the same time.
+     * 1, the default, waits for the callback of each write before running the next action.
+     */
+    public void setMaxWritesInFlight(int maxWritesInFlight) {
+        this.maxWritesInFlight = Math.max(1, maxWritesInFlight);
+    }
+
+    public int getMaxWritesInFlight() {
+        return maxWritesInFlight;
+    }
+
+    /**
+     * Sets whether writes to characteristics that support writes without response are
+     * pipelined even if their write type asks for a response.
+     */
+    public void setForceWriteWithoutResponse(boolean forceWriteWithoutResponse) {
+        this.forceWriteWithoutResponse = forceWriteWithoutResponse;
+    }
+
+    public boolean isForceWriteWithoutResponse() {
+        return forceWriteWithoutResponse;
+    }
+
     @Override
     public int getActionCount() {
         return mActions.size();
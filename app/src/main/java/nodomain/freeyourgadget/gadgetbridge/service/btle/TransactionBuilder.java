@@ -41,6 +41,11 @@ import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.WriteAction;
 public class TransactionBuilder {
     private static final Logger LOG = LoggerFactory.getLogger(TransactionBuilder.class);
 
+    /**
+     * A sensible number of pipelined writes, see {@link #pipelineWrites(int)}.
+     */
+    public static final int DEFAULT_MAX_WRITES_IN_FLIGHT = 8;
+
     private final Transaction mTransaction;
     private boolean mQueued;
 
@@ -145,6 +150,42 @@ public class TransactionBuilder {
         return mTransaction.getGattCallback();
     }
 
+    /**
+     * Sets the lane of the transaction in the queue, {@link TransactionPriority#NORMAL} by default.
+     */
+    public TransactionBuilder setPriority(TransactionPriority priority) {
+        mTransaction.setPriority(priority);
+        return this;
+    }
+
+    /**
+     * Pipelines the writes without response of this transaction, keeping up to
+     * {@code maxWritesInFlight} of them in flight instead of waiting for the callback of each
+     * one. Meant for bulk transfers such as firmware, watchface and file uploads. Only writes to
+     * characteristics whose write type is {@link android.bluetooth.BluetoothGattCharacteristic#WRITE_TYPE_NO_RESPONSE}
+     * are pipelined, all other actions still run one at a time, after the writes in flight are
+     * completed.
+     *
+     * @param maxWritesInFlight the maximum number of writes in flight, e.g. {@link #DEFAULT_MAX_WRITES_IN_FLIGHT}
+     */
+    public TransactionBuilder pipelineWrites(int maxWritesInFlight) {
+        return pipelineWrites(maxWritesInFlight, false);
+    }
+
+    /**
+     * Like {@link #pipelineWrites(int)}, but optionally also pipelines the writes to
+     * characteristics that support writes without response, but whose write type was set to
+     * ask for a response. Only for devices that are known to accept those writes without response.
+     *
+     * @param maxWritesInFlight the maximum number of writes in flight, e.g. {@link #DEFAULT_MAX_WRITES_IN_FLIGHT}
+     * @param forceWithoutResponse whether to write without response regardless of the write type
+     */
+    public TransactionBuilder pipelineWrites(int maxWritesInFlight, boolean forceWithoutResponse) {
+        mTransaction.setMaxWritesInFlight(maxWritesInFlight);
+        mTransaction.setForceWriteWithoutResponse(forceWithoutResponse);
+        return this;
+    }
+
     /**
      * To be used as the final step to execute the transaction by the given queue.
      *
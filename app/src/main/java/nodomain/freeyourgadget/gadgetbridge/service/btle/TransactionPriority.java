@@ -0,0 +1,39 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.btle;
+
+/**
+ * The lane of a transaction in the {@link BtLEQueue}. Queued transactions of a higher priority
+ * run before the ones of a lower priority, and transactions of the same priority run in the order
+ * they were queued. A running transaction is never interrupted, so long transfers should be split
+ * into several bulk transactions to let the other lanes run in between.
+ */
+public enum TransactionPriority {
+    /**
+     * Transactions the user is waiting for, e.g. incoming calls, find my phone or realtime
+     * heart rate control.
+     */
+    INTERACTIVE,
+    /**
+     * The default.
+     */
+    NORMAL,
+    /**
+     * Long transfers such as firmware, watchface, AGPS or file uploads.
+     */
+    BULK,
+}
@@ -0,0 +1,89 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.btle;
+
+import android.os.SystemClock;
+
+import java.util.Comparator;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The pending transactions of a {@link BtLEQueue}, with one lane per {@link TransactionPriority}.
+ * Transactions are taken by priority, and within a lane in the order they were added, except
+ * for the inserted ones, which go before all others of their lane.
+ */
+final class TransactionQueue {
+    /**
+     * Orders the transactions by priority, and then by the order they were queued.
+     */
+    private static final Comparator<AbstractTransaction> TRANSACTION_ORDER = (a, b) -> {
+        final int byPriority = a.getPriority().compareTo(b.getPriority());
+        if (byPriority != 0) {
+            return byPriority;
+        }
+        return Long.compare(a.getSequence(), b.getSequence());
+    };
+
+    private final PriorityBlockingQueue<AbstractTransaction> transactions = new PriorityBlockingQueue<>(16, TRANSACTION_ORDER);
+    private final AtomicLong addSequence = new AtomicLong();
+    private final AtomicLong insertSequence = new AtomicLong();
+
+    /**
+     * Adds a transaction to the end of its lane.
+     */
+    void add(final AbstractTransaction transaction) {
+        transaction.setSequence(addSequence.incrementAndGet());
+        enqueue(transaction);
+    }
+
+    /**
+     * Adds a transaction to the beginning of its lane, before all added transactions
+     * and before the ones inserted earlier.
+     */
+    void insert(final AbstractTransaction transaction) {
+        transaction.setSequence(insertSequence.decrementAndGet());
+        enqueue(transaction);
+    }
+
+    /**
+     * Waits for the next transaction and removes it.
+     */
+    AbstractTransaction take() throws InterruptedException {
+        return transactions.take();
+    }
+
+    /**
+     * Removes the next transaction, or returns null if there is none.
+     */
+    AbstractTransaction poll() {
+        return transactions.poll();
+    }
+
+    int size() {
+        return transactions.size();
+    }
+
+    void clear() {
+        transactions.clear();
+    }
+
+    private void enqueue(final AbstractTransaction transaction) {
+        transaction.setQueuedAt(SystemClock.elapsedRealtime());
+        transactions.add(transaction);
+    }
+}
@@ -0,0 +1,234 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.service.btle;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Credit based flow control for pipelined writes without response. Each write takes a credit
+ * before it is issued, and its write callback returns it, so that at most a given number of
+ * writes are in flight.
+ * <p>
+ * The writes in flight are remembered per generation. Once a transaction timed out or was
+ * cancelled, the callbacks of its writes that still arrive are recognized as stale and dropped,
+ * instead of being mistaken for the callback of an action of the next transaction.
+ */
+final class WriteCredits {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteCredits.class);
+
+    /**
+     * How long to wait for a write callback before giving up on the writes in flight.
+     */
+    static final long TIMEOUT_MILLIS = 5000;
+
+    /**
+     * How long the writes of a previous generation are remembered, after that their callbacks
+     * are not expected anymore.
+     */
+    static final long STALE_MILLIS = 2 * TIMEOUT_MILLIS;
+
+    /**
+     * Results of {@link #release(UUID)}.
+     */
+    static final int RELEASE_NONE = 0;
+    static final int RELEASE_CURRENT = 1;
+    static final int RELEASE_STALE = 2;
+
+    private final Deque<PendingWrite> pendingWrites = new ArrayDeque<>();
+    private int generation = 0;
+    private int maxInFlight = 1;
+    private int inFlight = 0;
+    private boolean cancelled = false;
+
+    /**
+     * Starts a new transaction with the given number of credits. Writes still in flight
+     * from the previous transaction become stale.
+     */
+    synchronized void reset(final int maxInFlight) {
+        if (inFlight > 0) {
+            generation++;
+        }
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlight = 0;
+        this.cancelled = false;
+        notifyAll();
+    }
+
+    /**
+     * Waits until a credit is available, and takes it for a write to the given characteristic.
+     *
+     * @return false if cancelled, or if no write callback arrived in time
+     */
+    synchronized boolean acquire(final UUID characteristic) throws InterruptedException {
+        final long deadline = now() + TIMEOUT_MILLIS;
+        while (!cancelled && inFlight >= maxInFlight) {
+            final long remaining = deadline - now();
+            if (remaining <= 0) {
+                LOG.warn("Timed out waiting for a write credit, {} writes in flight", inFlight);
+                return false;
+            }
+            wait(remaining);
+        }
+        if (cancelled) {
+            return false;
+        }
+        inFlight++;
+        pendingWrites.addLast(new PendingWrite(characteristic, generation, now()));
+        return true;
+    }
+
+    /**
+     * Gives back the credit of the last write, which was not issued because the stack was busy.
+     * The window is shrunk to the writes that are still in flight, since the stack does not
+     * accept more than that.
+     *
+     * @return whether there are writes in flight whose callback will free a credit
+     */
+    synchronized boolean giveBackBusy() {
+        giveBack();
+        if (inFlight > 0 && inFlight < maxInFlight) {
+            LOG.debug("Stack busy, limiting writes in flight to {}", inFlight);
+            maxInFlight = inFlight;
+        }
+        return inFlight > 0;
+    }
+
+    /**
+     * Gives back the credit of the last write, which was not issued because it failed.
+     */
+    synchronized void giveBack() {
+        if (inFlight > 0 && !pendingWrites.isEmpty() && pendingWrites.peekLast().generation == generation) {
+            pendingWrites.removeLast();
+            inFlight--;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Returns the credit of a completed write, from the write callback.
+     *
+     * @return {@link #RELEASE_CURRENT} if the callback belongs to a write in flight,
+     * {@link #RELEASE_STALE} if it belongs to a write of a timed out or cancelled transaction,
+     * or {@link #RELEASE_NONE} if it does not belong to a pipelined write
+     */
+    synchronized int release(final UUID characteristic) {
+        expireStale();
+        final PendingWrite write = pendingWrites.peekFirst();
+        if (write == null || !write.characteristic.equals(characteristic)) {
+            return RELEASE_NONE;
+        }
+        pendingWrites.removeFirst();
+        if (write.generation != generation) {
+            LOG.debug("Dropping late callback of a pipelined write to {}", characteristic);
+            return RELEASE_STALE;
+        }
+        inFlight--;
+        notifyAll();
+        return RELEASE_CURRENT;
+    }
+
+    /**
+     * Waits until all writes in flight are completed.
+     *
+     * @return false if cancelled, or if no write callback arrived in time
+     */
+    synchronized boolean awaitAll() throws InterruptedException {
+        final long deadline = now() + TIMEOUT_MILLIS;
+        while (!cancelled && inFlight > 0) {
+            final long remaining = deadline - now();
+            if (remaining <= 0) {
+                LOG.warn("Timed out waiting for {} writes in flight", inFlight);
+                abandonInFlight();
+                return false;
+            }
+            wait(remaining);
+        }
+        return !cancelled;
+    }
+
+    /**
+     * Cancels all waits, e.g. when the transaction is aborted. The callbacks of the writes
+     * in flight are dropped when they arrive.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+        abandonInFlight();
+        notifyAll();
+    }
+
+    /**
+     * Cancels all waits and forgets the writes in flight, because the device disconnected
+     * and their callbacks will not arrive anymore.
+     */
+    synchronized void clear() {
+        cancel();
+        pendingWrites.clear();
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    synchronized int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    synchronized int getStaleCount() {
+        expireStale();
+        return pendingWrites.size() - inFlight;
+    }
+
+    private void abandonInFlight() {
+        if (inFlight > 0) {
+            generation++;
+            inFlight = 0;
+        }
+    }
+
+    private void expireStale() {
+        final long expired = now() - STALE_MILLIS;
+        while (!pendingWrites.isEmpty()) {
+            final PendingWrite write = pendingWrites.peekFirst();
+            if (write.generation == generation || write.issuedAt > expired) {
+                break;
+            }
+            pendingWrites.removeFirst();
+        }
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private static final class PendingWrite {
+        private final UUID characteristic;
+        private final int generation;
+        private final long issuedAt;
+
+        private PendingWrite(final UUID characteristic, final int generation, final long issuedAt) {
+            this.characteristic = characteristic;
+            this.generation = generation;
+            this.issuedAt = issuedAt;
+        }
+    }
+}
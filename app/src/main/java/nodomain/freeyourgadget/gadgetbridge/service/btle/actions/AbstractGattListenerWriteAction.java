@@ -45,5 +45,11 @@ public abstract class AbstractGattListenerWriteAction extends WriteAction implem
         };
     }
 
+    @Override
+    public boolean canWriteWithoutResponse(boolean force) {
+        // the gatt listener must be set before the write
+        return false;
+    }
+
     protected abstract boolean onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic);
 }
@@ -31,7 +31,8 @@ public class RequestConnectionPriorityAction extends BtLEAction {
 
     @Override
     public boolean expectsResult() {
-        return true;
+        // there is no public callback for connection parameter updates
+        return false;
     }
 
     @Override
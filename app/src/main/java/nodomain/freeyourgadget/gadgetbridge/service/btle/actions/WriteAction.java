@@ -20,6 +20,8 @@ package nodomain.freeyourgadget.gadgetbridge.service.btle.actions;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothStatusCodes;
+import android.os.Build;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +37,13 @@ import nodomain.freeyourgadget.gadgetbridge.service.btle.BtLEAction;
 public class WriteAction extends BtLEAction {
     private static final Logger LOG = LoggerFactory.getLogger(WriteAction.class);
 
+    /**
+     * Results of {@link #writeWithoutResponse(BluetoothGatt)}.
+     */
+    public static final int WRITE_SUCCESS = 0;
+    public static final int WRITE_BUSY = 1;
+    public static final int WRITE_FAILED = 2;
+
     private final byte[] value;
 
     public WriteAction(BluetoothGattCharacteristic characteristic, byte[] value) {
@@ -63,6 +72,68 @@ public class WriteAction extends BtLEAction {
         return false;
     }
 
+    /**
+     * Returns whether this action can be pipelined with {@link #writeWithoutResponse(BluetoothGatt)},
+     * i.e. the characteristic writes without response. Subclasses that decide on the
+     * value while running must return false.
+     *
+     * @param force whether to also pipeline writes to characteristics that support writes without
+     *              response, but whose write type asks for a response
+     */
+    public boolean canWriteWithoutResponse(boolean force) {
+        if (value == null) {
+            return false;
+        }
+        final BluetoothGattCharacteristic characteristic = getCharacteristic();
+        if (characteristic.getWriteType() == BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE) {
+            return true;
+        }
+        return force && (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) > 0;
+    }
+
+    /**
+     * Issues the write without response, without waiting for its callback.
+     *
+     * @return {@link #WRITE_SUCCESS}, {@link #WRITE_BUSY} if the stack has too many writes
+     * in flight and the write should be retried later, or {@link #WRITE_FAILED}
+     */
+    public int writeWithoutResponse(BluetoothGatt gatt) {
+        final BluetoothGattCharacteristic characteristic = getCharacteristic();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("writing without response to characteristic: " + characteristic.getUuid() + ": " + Logging.formatBytes(value));
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            try {
+                final int result = gatt.writeCharacteristic(characteristic, value, BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+                switch (result) {
+                    case BluetoothStatusCodes.SUCCESS:
+                        return WRITE_SUCCESS;
+                    case BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY:
+                        return WRITE_BUSY;
+                    default:
+                        LOG.error("Writing characteristic {} failed: {}", characteristic.getUuid(), result);
+                        return WRITE_FAILED;
+                }
+            } catch (final SecurityException ex) {
+                LOG.error("SecurityException while writing to characteristic {}: {}", characteristic.getUuid(), ex.getMessage(), ex);
+                return WRITE_FAILED;
+            }
+        }
+
+        if (!characteristic.setValue(value)) {
+            return WRITE_FAILED;
+        }
+        final int writeType = characteristic.getWriteType();
+        characteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+        try {
+            // before Android 13 the reason is not known, but it is the busy stack most of the time
+            return gatt.writeCharacteristic(characteristic) ? WRITE_SUCCESS : WRITE_BUSY;
+        } finally {
+            characteristic.setWriteType(writeType);
+        }
+    }
+
     public final byte[] getValue() {
         return value;
     }
@@ -1197,12 +1197,12 @@ public class BangleJSDeviceSupport extends AbstractBTLEDeviceSupport {
             for (int i=0;i<chars.length;i++) {
                 boolean ignoreChar = false;
                 if (chars[i]==19 /* XOFF */) {
-                    getQueue().setPaused(true);
+                    getQueue().pause();
                     LOG.info("RX: XOFF");
                     ignoreChar = true;
                 }
                 if (chars[i]==17 /* XON */) {
-                    getQueue().setPaused(false);
+                    getQueue().resume();
                     LOG.info("RX: XON");
                     ignoreChar = true;
                 }
@@ -194,6 +194,9 @@ public class FitProDeviceSupport extends AbstractBTLEDeviceSupport {
     @Override
     public TransactionBuilder initializeDevice(TransactionBuilder builder) {
         builder.add(new SetDeviceStateAction(getDevice(), GBDevice.State.INITIALIZING, getContext()));
+        // samples are buffered and new data is signalled once they are written to the database,
+        // data packets are flushed before they are acknowledged
+        getSampleWriter().setFlushListener(() -> GB.signalActivityDataFinish(getDevice()));
         readCharacteristic = getCharacteristic(UUID_CHARACTERISTIC_RX);
         writeCharacteristic = getCharacteristic(UUID_CHARACTERISTIC_TX);
 
@@ -365,7 +368,10 @@ public class FitProDeviceSupport extends AbstractBTLEDeviceSupport {
     public void indicateFinishedFetchingOperation() {
         //LOG.debug("download finish announced");
         GB.updateTransferNotification(null, "", false, 100, getContext());
-        GB.signalActivityDataFinish(getDevice());
+        if (getSampleWriter().getPendingCount() == 0) {
+            // otherwise, the flush listener signals the new data once it is written
+            GB.signalActivityDataFinish(getDevice());
+        }
         unsetBusy();
     }
 
@@ -1243,7 +1249,8 @@ public class FitProDeviceSupport extends AbstractBTLEDeviceSupport {
             sample.setRawKind(rawSleepKindToUniqueKind(activity_kind));
             samples.add(sample);
         }
-        if (addGBActivitySamples(samples)) {
+        // only acknowledge the packet once its samples are persisted, the band does not resend it
+        if (addGBActivitySamples(samples) && getSampleWriter().flush()) {
             sendAck(value[3], value[1], value[2], value[5]);
         }
     }
@@ -1293,7 +1300,8 @@ public class FitProDeviceSupport extends AbstractBTLEDeviceSupport {
             sample.setRawKind(rawActivityKindToUniqueKind(activity_kind));
             samples.add(sample);
         }
-        if (addGBActivitySamples(samples)) {
+        // only acknowledge the packet once its samples are persisted, the band does not resend it
+        if (addGBActivitySamples(samples) && getSampleWriter().flush()) {
             sendAck(value[3], value[1], value[2], value[5]);
         }
     }
@@ -1315,8 +1323,8 @@ public class FitProDeviceSupport extends AbstractBTLEDeviceSupport {
                 sample.setDevice(device);
                 sample.setUser(user);
                 sample.setProvider(provider);
-                provider.addGBActivitySample(sample);
             }
+            getSampleWriter().addAll(samples);
 
         } catch (Exception ex) {
             LOG.error("Error saving samples: " + ex);
@@ -1355,7 +1363,6 @@ public class FitProDeviceSupport extends AbstractBTLEDeviceSupport {
 
         addGBActivitySample(sample);
         broadcastSample(sample);
-        GB.signalActivityDataFinish(getDevice());
     }
 
     public void handleDayTotalsData(int steps, int distance, int calories) {
@@ -1400,6 +1407,7 @@ public class FitProDeviceSupport extends AbstractBTLEDeviceSupport {
 
     private int getStepsOnDay(Calendar dayStart, Calendar dayEnd) {
         //this is for day data values, not used in Gb, handleStepData uses 5min data which is better
+        getSampleWriter().flush();
         try (DBHandler dbHandler = GBApplication.acquireDB()) {
 
             FitProSampleProvider provider = new FitProSampleProvider(this.getDevice(), dbHandler.getDaoSession());
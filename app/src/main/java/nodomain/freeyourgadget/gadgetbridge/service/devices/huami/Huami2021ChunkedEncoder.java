@@ -16,12 +16,16 @@
     along with this program.  If not, see <https://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.service.devices.huami;
 
+import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 
+import androidx.annotation.Nullable;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.WriteAction;
 import nodomain.freeyourgadget.gadgetbridge.util.CheckSums;
 import nodomain.freeyourgadget.gadgetbridge.util.CryptoUtils;
 
@@ -58,9 +62,18 @@ public class Huami2021ChunkedEncoder {
         this.mMTU = mMTU;
     }
 
+    /**
+     * Adds the writes of the chunks of the given payload to the transaction.
+     * <p>
+     * The write handle and the encrypted sequence number are only assigned, and the payload
+     * encrypted, once the queue runs the first of these writes. The transaction may be taken
+     * from the queue before transactions that were built earlier, e.g. because of its
+     * priority, and the device expects the handles and sequence numbers in the order the
+     * messages are sent.
+     */
     public synchronized void write(final TransactionBuilder builder,
                                    final short type,
-                                   byte[] data,
+                                   final byte[] data,
                                    final boolean extended_flags,
                                    final boolean encrypt) {
         if (encrypt && sharedSessionKey == null) {
@@ -68,27 +81,40 @@ public class Huami2021ChunkedEncoder {
             return;
         }
 
+        final Message message = new Message(type, data, extended_flags, encrypt, mMTU);
+        final int chunkCount = message.getChunkCount();
+        for (int i = 0; i < chunkCount; i++) {
+            builder.add(new ChunkWriteAction(characteristicChunked2021Write, message, i));
+        }
+    }
+
+    /**
+     * Encodes the message into its chunks, assigning the next write handle and encrypted
+     * sequence number.
+     *
+     * @return the chunks, or null if the message could not be encoded
+     */
+    @Nullable
+    private synchronized byte[][] encode(final Message message) {
+        if (message.encrypt && sharedSessionKey == null) {
+            LOG.error("Can't encrypt without the shared session key");
+            return null;
+        }
+
         writeHandle++;
 
+        byte[] data = message.data;
         int remaining = data.length;
         int length = data.length;
         byte count = 0;
-        int header_size = 10;
-
-        if (extended_flags) {
-            header_size++;
-        }
+        int header_size = getHeaderSize(true, message.extendedFlags);
 
-        if (extended_flags && encrypt) {
+        if (message.extendedFlags && message.encrypt) {
             byte[] messagekey = new byte[16];
             for (int i = 0; i < 16; i++) {
                 messagekey[i] = (byte) (sharedSessionKey[i] ^ writeHandle);
             }
-            int encrypted_length = length + 8;
-            int overflow = encrypted_length % 16;
-            if (overflow > 0) {
-                encrypted_length += (16 - overflow);
-            }
+            int encrypted_length = getEncryptedLength(length);
 
             byte[] encryptable_payload = new byte[encrypted_length];
             System.arraycopy(data, 0, encryptable_payload, 0, length);
@@ -107,39 +133,40 @@ public class Huami2021ChunkedEncoder {
                 data = CryptoUtils.encryptAES(encryptable_payload, messagekey);
             } catch (Exception e) {
                 LOG.error("error while encrypting", e);
-                return;
+                return null;
             }
-
         }
 
+        final byte[][] chunks = new byte[message.getChunkCount()][];
+        int index = 0;
         while (remaining > 0) {
-            int MAX_CHUNKLENGTH = mMTU - 3 - header_size;
+            int MAX_CHUNKLENGTH = message.mtu - 3 - header_size;
             int copybytes = Math.min(remaining, MAX_CHUNKLENGTH);
             byte[] chunk = new byte[copybytes + header_size];
 
             byte flags = 0;
-            if (encrypt) {
+            if (message.encrypt) {
                 flags |= 0x08;
             }
             if (count == 0) {
                 flags |= 0x01;
                 int i = 4;
-                if (extended_flags) {
+                if (message.extendedFlags) {
                     i++;
                 }
                 chunk[i++] = (byte) (length & 0xff);
                 chunk[i++] = (byte) ((length >> 8) & 0xff);
                 chunk[i++] = (byte) ((length >> 16) & 0xff);
                 chunk[i++] = (byte) ((length >> 24) & 0xff);
-                chunk[i++] = (byte) (type & 0xff);
-                chunk[i] = (byte) ((type >> 8) & 0xff);
+                chunk[i++] = (byte) (message.type & 0xff);
+                chunk[i] = (byte) ((message.type >> 8) & 0xff);
             }
             if (remaining <= MAX_CHUNKLENGTH) {
                 flags |= 0x06; // last chunk?
             }
             chunk[0] = 0x03;
             chunk[1] = flags;
-            if (extended_flags) {
+            if (message.extendedFlags) {
                 chunk[2] = 0;
                 chunk[3] = writeHandle;
                 chunk[4] = count;
@@ -149,15 +176,101 @@ public class Huami2021ChunkedEncoder {
             }
 
             System.arraycopy(data, data.length - remaining, chunk, header_size, copybytes);
-            builder.write(characteristicChunked2021Write, chunk);
+            chunks[index++] = chunk;
             remaining -= copybytes;
-            header_size = 4;
+            header_size = getHeaderSize(false, message.extendedFlags);
+
+            count++;
+        }
+
+        return chunks;
+    }
+
+    private static int getHeaderSize(final boolean firstChunk, final boolean extended_flags) {
+        final int header_size = firstChunk ? 10 : 4;
+        return extended_flags ? header_size + 1 : header_size;
+    }
 
-            if (extended_flags) {
-                header_size++;
+    private static int getEncryptedLength(final int length) {
+        int encrypted_length = length + 8;
+        int overflow = encrypted_length % 16;
+        if (overflow > 0) {
+            encrypted_length += (16 - overflow);
+        }
+        return encrypted_length;
+    }
+
+    /**
+     * A message whose chunks are encoded when the first of them is written.
+     */
+    private final class Message {
+        private final short type;
+        private final byte[] data;
+        private final boolean extendedFlags;
+        private final boolean encrypt;
+        private final int mtu;
+
+        private boolean encoded = false;
+        private byte[][] chunks;
+
+        private Message(final short type, final byte[] data, final boolean extendedFlags, final boolean encrypt, final int mtu) {
+            this.type = type;
+            // the payload is only encoded later, the caller may reuse its buffer
+            this.data = data.clone();
+            this.extendedFlags = extendedFlags;
+            this.encrypt = encrypt;
+            this.mtu = mtu;
+        }
+
+        /**
+         * Returns the number of chunks, which does not depend on the handle or the sequence number.
+         */
+        private int getChunkCount() {
+            int remaining = extendedFlags && encrypt ? getEncryptedLength(data.length) : data.length;
+            int header_size = getHeaderSize(true, extendedFlags);
+            int count = 0;
+            while (remaining > 0) {
+                remaining -= Math.min(remaining, mtu - 3 - header_size);
+                header_size = getHeaderSize(false, extendedFlags);
+                count++;
             }
+            return count;
+        }
 
-            count++;
+        /**
+         * Returns the chunk with the given index, or null if the message could not be encoded.
+         */
+        @Nullable
+        private byte[] getChunk(final int index) {
+            if (!encoded) {
+                encoded = true;
+                chunks = encode(this);
+            }
+            return chunks != null ? chunks[index] : null;
+        }
+    }
+
+    /**
+     * Writes one chunk of a message, encoding the message when the first chunk is written.
+     * The transaction is aborted if the message can not be encoded.
+     */
+    private static final class ChunkWriteAction extends WriteAction {
+        private final Message message;
+        private final int index;
+
+        private ChunkWriteAction(final BluetoothGattCharacteristic characteristic, final Message message, final int index) {
+            super(characteristic, null);
+            this.message = message;
+            this.index = index;
+        }
+
+        @Override
+        protected boolean writeValue(final BluetoothGatt gatt, final BluetoothGattCharacteristic characteristic, final byte[] value) {
+            final byte[] chunk = message.getChunk(index);
+            if (chunk == null) {
+                return false;
+            }
+            return super.writeValue(gatt, characteristic, chunk);
         }
     }
 }
@@ -165,6 +165,7 @@ import nodomain.freeyourgadget.gadgetbridge.service.btle.BtLEAction;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.GattCharacteristic;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.GattService;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionPriority;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.AbortTransactionAction;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.ConditionalWriteAction;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.SetDeviceStateAction;
@@ -847,6 +848,9 @@ public abstract class HuamiSupport extends AbstractBTLEDeviceSupport implements
     protected void performPreferredNotification(String task, String notificationOrigin, SimpleNotification simpleNotification, int alertLevel, BtLEAction extraAction) {
         try {
             TransactionBuilder builder = performInitialized(task);
+            if (MiBandConst.ORIGIN_INCOMING_CALL.equals(notificationOrigin)) {
+                builder.setPriority(TransactionPriority.INTERACTIVE);
+            }
             Prefs prefs = getDevicePrefs();
             short vibrateTimes = getPreferredVibrateCount(notificationOrigin, prefs);
             VibrationProfile profile = getPreferredVibrateProfile(notificationOrigin, prefs, vibrateTimes);
@@ -1284,6 +1288,7 @@ public abstract class HuamiSupport extends AbstractBTLEDeviceSupport implements
             buf.put(new byte[]{0, 0, 0, 2});
             try {
                 TransactionBuilder builder = performInitialized("incoming call");
+                builder.setPriority(TransactionPriority.INTERACTIVE);
                 writeToChunked(builder, 0, buf.array());
                 builder.queue(getQueue());
             } catch (IOException e) {
@@ -1292,6 +1297,7 @@ public abstract class HuamiSupport extends AbstractBTLEDeviceSupport implements
         } else if ((callSpec.command == CallSpec.CALL_START) || (callSpec.command == CallSpec.CALL_END)) {
             try {
                 TransactionBuilder builder = performInitialized("end call");
+                builder.setPriority(TransactionPriority.INTERACTIVE);
                 writeToChunked(builder, 0, new byte[]{3, 3, 0, 0, 0, 0});
                 builder.queue(getQueue());
             } catch (IOException e) {
@@ -1303,6 +1309,7 @@ public abstract class HuamiSupport extends AbstractBTLEDeviceSupport implements
     private void stopCurrentCallNotification() {
         try {
             TransactionBuilder builder = performInitialized("stop notification");
+            builder.setPriority(TransactionPriority.INTERACTIVE);
             getNotificationStrategy().stopCurrentNotification(builder);
             builder.queue(getQueue());
         } catch (IOException e) {
@@ -1550,6 +1557,7 @@ public abstract class HuamiSupport extends AbstractBTLEDeviceSupport implements
         }
         try {
             TransactionBuilder builder = performInitialized("HeartRateTest");
+            builder.setPriority(TransactionPriority.INTERACTIVE);
             enableNotifyHeartRateMeasurements(true, builder);
             builder.write(characteristicHRControlPoint, stopHeartMeasurementContinuous);
             builder.write(characteristicHRControlPoint, stopHeartMeasurementManual);
@@ -1567,6 +1575,7 @@ public abstract class HuamiSupport extends AbstractBTLEDeviceSupport implements
         }
         try {
             TransactionBuilder builder = performInitialized("Enable realtime heart rate measurement");
+            builder.setPriority(TransactionPriority.INTERACTIVE);
             enableNotifyHeartRateMeasurements(enable, builder);
             if (enable) {
                 builder.write(characteristicHRControlPoint, stopHeartMeasurementManual);
@@ -1640,6 +1649,7 @@ public abstract class HuamiSupport extends AbstractBTLEDeviceSupport implements
         BluetoothGattCharacteristic characteristic = getCharacteristic(UUID_CHARACTERISTIC_ALERT_LEVEL);
         try {
             TransactionBuilder builder = performInitialized("find huami");
+            builder.setPriority(TransactionPriority.INTERACTIVE);
             builder.write(characteristic, start ? new byte[] {3} : new byte[] {0});
             builder.queue(getQueue());
         } catch (IOException e) {
@@ -2603,21 +2613,25 @@ public abstract class HuamiSupport extends AbstractBTLEDeviceSupport implements
                         sample.setRawIntensity(ActivitySample.NOT_MEASURED);
                         sample.setRawKind(HuamiConst.TYPE_ACTIVITY); // to make it visible in the charts TODO: add a MANUAL kind for that?
 
-                        provider.addGBActivitySample(sample);
+                        getSampleWriter().add(sample);
 
-                        // set the steps only afterwards, since realtime steps are also recorded
-                        // in the regular samples and we must not count them twice
-                        // Note: we know that the DAO sample is never committed again, so we simply
-                        // change the value here in memory.
-                        sample.setSteps(getSteps());
+                        // set the steps only on the broadcast copy, since realtime steps are also
+                        // recorded in the regular samples and we must not count them twice
+                        // Note: the stored sample is only written when the writer is flushed, so
+                        // it must not be changed here.
+                        MiBandActivitySample realtimeSample = createActivitySample(device, user, ts, provider);
+                        realtimeSample.setHeartRate(sample.getHeartRate());
+                        realtimeSample.setRawIntensity(sample.getRawIntensity());
+                        realtimeSample.setRawKind(sample.getRawKind());
+                        realtimeSample.setSteps(getSteps());
 
                         if (LOG.isDebugEnabled()) {
-                            LOG.debug("realtime sample: " + sample);
+                            LOG.debug("realtime sample: " + realtimeSample);
                         }
 
                         Intent intent = new Intent(DeviceService.ACTION_REALTIME_SAMPLES)
                                 .putExtra(GBDevice.EXTRA_DEVICE, getDevice())
-                                .putExtra(DeviceService.EXTRA_REALTIME_SAMPLE, sample);
+                                .putExtra(DeviceService.EXTRA_REALTIME_SAMPLE, realtimeSample);
                         LocalBroadcastManager.getInstance(getContext()).sendBroadcast(intent);
 
                     } catch (Exception e) {
@@ -140,6 +140,10 @@ public abstract class AbstractFetchOperation extends AbstractHuamiOperation {
             LOG.debug("Performing next operation {}", nextFetchOperation.getName());
             try {
                 nextFetchOperation.perform();
+                if (nextFetchOperation != this) {
+                    // the next operation holds the connection boost from now on
+                    handOverBulkTransfer();
+                }
                 return;
             } catch (final IOException e) {
                 GB.toast(
@@ -148,7 +152,6 @@ public abstract class AbstractFetchOperation extends AbstractHuamiOperation {
                         Toast.LENGTH_SHORT,
                         GB.ERROR, e
                 );
-                return;
             }
         }
 
@@ -29,6 +29,7 @@ import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiService;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.BLETypeConversions;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionPriority;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.SetDeviceBusyAction;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.SetProgressAction;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.AbstractHuamiFirmwareInfo;
@@ -249,6 +250,9 @@ public class UpdateFirmwareOperation2020 extends UpdateFirmwareOperation {
             }
 
             TransactionBuilder builder = performInitialized("send firmware packets");
+            builder.setPriority(TransactionPriority.BULK);
+            // the band acknowledges each chunk, so the packets within it can be pipelined
+            builder.pipelineWrites(TransactionBuilder.DEFAULT_MAX_WRITES_IN_FLIGHT);
 
             for (int i = 0; i < packets; i++) {
                 byte[] fwChunk = Arrays.copyOfRange(fwbytes, offset + i * packetLength, offset + i * packetLength + packetLength);
@@ -117,6 +117,7 @@ import nodomain.freeyourgadget.gadgetbridge.model.WeatherSpec;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.BLETypeConversions;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.GattCharacteristic;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionPriority;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiBatteryInfo;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiDeviceEvent;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiPhoneGpsStatus;
@@ -317,6 +318,7 @@ public class ZeppOsSupport extends HuamiSupport implements ZeppOsFileTransferSer
 
         try {
             final TransactionBuilder builder = performInitialized("find huami 2021");
+            builder.setPriority(TransactionPriority.INTERACTIVE);
             writeToChunked2021(builder, CHUNKED2021_ENDPOINT_FIND_DEVICE, findBandCommand, true);
             builder.queue(getQueue());
         } catch (IOException e) {
@@ -384,6 +386,7 @@ public class ZeppOsSupport extends HuamiSupport implements ZeppOsFileTransferSer
 
         try {
             final TransactionBuilder builder = performInitialized("HeartRateTest");
+            builder.setPriority(TransactionPriority.INTERACTIVE);
             enableNotifyHeartRateMeasurements(true, builder);
             //writeToChunked2021(builder, CHUNKED2021_ENDPOINT_HEARTRATE, new byte[]{HEART_RATE_CMD_REALTIME_SET, HEART_RATE_REALTIME_MODE_START}, false);
             builder.queue(getQueue());
@@ -408,6 +411,7 @@ public class ZeppOsSupport extends HuamiSupport implements ZeppOsFileTransferSer
 
         try {
             final TransactionBuilder builder = performInitialized("Set realtime heart rate measurement = " + enable);
+            builder.setPriority(TransactionPriority.INTERACTIVE);
             enableNotifyHeartRateMeasurements(enable, builder);
             writeToChunked2021(builder, CHUNKED2021_ENDPOINT_HEARTRATE, new byte[]{HEART_RATE_CMD_REALTIME_SET, hrcmd}, false);
             builder.queue(getQueue());
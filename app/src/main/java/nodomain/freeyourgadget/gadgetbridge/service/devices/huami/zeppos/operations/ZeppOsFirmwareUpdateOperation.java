@@ -37,6 +37,7 @@ import nodomain.freeyourgadget.gadgetbridge.devices.huami.zeppos.ZeppOsFwHelper;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.BLETypeConversions;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionPriority;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.SetDeviceBusyAction;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.actions.SetProgressAction;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.HuamiFirmwareType;
@@ -321,6 +322,7 @@ public class ZeppOsFirmwareUpdateOperation extends AbstractMiBandOperation<ZeppO
             }
 
             TransactionBuilder builder = performInitialized("send firmware packets");
+            builder.setPriority(TransactionPriority.BULK);
 
             for (int i = 0; i < packets; i++) {
                 raf.seek(offset + (long) i * packetLength);
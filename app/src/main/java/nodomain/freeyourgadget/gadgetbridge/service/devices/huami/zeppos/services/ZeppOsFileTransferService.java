@@ -20,17 +20,21 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
 import nodomain.freeyourgadget.gadgetbridge.devices.huami.HuamiService;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.BLETypeConversions;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionPriority;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.zeppos.ZeppOsSupport;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.zeppos.AbstractZeppOsService;
 import nodomain.freeyourgadget.gadgetbridge.util.CheckSums;
@@ -55,6 +59,7 @@ public class ZeppOsFileTransferService extends AbstractZeppOsService {
     private static final byte FLAG_CRC = 0x04;
 
     private final Map<Byte, FileTransferRequest> mSessionRequests = new HashMap<>();
+    private final Set<Byte> mUploadSessions = new HashSet<>();
 
     private int mVersion = -1;
     private int mChunkSize = -1;
@@ -320,9 +325,19 @@ public class ZeppOsFileTransferService extends AbstractZeppOsService {
             buf.put((byte) 0);
         }
 
-        write("send file upload request", buf.array());
+        try {
+            final TransactionBuilder builder = getSupport().performInitialized("send file upload request");
+            getSupport().beginBulkTransfer(builder, "file upload " + filename);
+            write(builder, buf.array());
+            builder.queue(getSupport().getQueue());
+        } catch (final IOException e) {
+            LOG.error("Failed to send file upload request", e);
+            callback.onFileUploadFinish(false);
+            return;
+        }
 
         mSessionRequests.put(session, request);
+        mUploadSessions.add(session);
     }
 
     private void sendNextQueuedData(final byte session) {
@@ -346,7 +361,7 @@ public class ZeppOsFileTransferService extends AbstractZeppOsService {
             if (session != 0) {
                 // FIXME non-zero session on v3
                 LOG.error("Sending non-zero session on v3 is not supported, got session={}", session);
-                mSessionRequests.remove(session);
+                onUploadFinish(session, false);
                 return;
             }
             writeChunkV3(request);
@@ -420,6 +435,7 @@ public class ZeppOsFileTransferService extends AbstractZeppOsService {
         final byte[] payload = buf.array();
 
         final TransactionBuilder builder = getSupport().createTransactionBuilder("send chunk v3");
+        builder.setPriority(TransactionPriority.BULK);
         for (int i = 0; i < payload.length; i += partSize) {
             final byte[] part = ArrayUtils.subarray(payload, i, i + partSize);
             builder.write(
@@ -442,6 +458,11 @@ public class ZeppOsFileTransferService extends AbstractZeppOsService {
         }
 
         mSessionRequests.remove(session);
+        if (mUploadSessions.remove(session)) {
+            final TransactionBuilder builder = getSupport().createTransactionBuilder("end file upload");
+            getSupport().endBulkTransfer(builder);
+            builder.queue(getSupport().getQueue());
+        }
 
         request.getCallback().onFileUploadFinish(success);
     }
@@ -39,6 +39,7 @@ import nodomain.freeyourgadget.gadgetbridge.model.NotificationSpec;
 import nodomain.freeyourgadget.gadgetbridge.model.NotificationType;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.BLETypeConversions;
 import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionPriority;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.zeppos.ZeppOsSupport;
 import nodomain.freeyourgadget.gadgetbridge.service.devices.huami.zeppos.AbstractZeppOsService;
 import nodomain.freeyourgadget.gadgetbridge.util.BitmapUtil;
@@ -173,6 +174,7 @@ public class ZeppOsNotificationService extends AbstractZeppOsService {
 
         try {
             final TransactionBuilder builder = new TransactionBuilder("send notification");
+            builder.setPriority(TransactionPriority.INTERACTIVE);
 
             baos.write(NOTIFICATION_CMD_SEND);
 
@@ -834,13 +834,20 @@ public class LefunDeviceSupport extends AbstractBTLEDeviceSupport {
     }
 
     /**
-     * Fetches an activity sample given the timestamp
+     * Fetches an activity sample given the timestamp, including samples that were not written
+     * to the database yet
      *
      * @param session   DAO session
      * @param timestamp the timestamp
      * @return fetched activity or null if none exists
      */
     private LefunActivitySample getActivitySample(DaoSession session, int timestamp) {
+        LefunActivitySample pending = getSampleWriter().findPending(LefunActivitySample.class,
+                s -> s.getTimestamp() == timestamp);
+        if (pending != null) {
+            return pending;
+        }
+
         LefunActivitySampleDao dao = session.getLefunActivitySampleDao();
         Long userId = DBHelper.getUser(session).getId();
         Long deviceId = DBHelper.getDevice(getDevice(), session).getId();
@@ -877,7 +884,7 @@ public class LefunDeviceSupport extends AbstractBTLEDeviceSupport {
             sample.setCalories(command.getCalories());
             sample.setRawIntensity(LefunConstants.INTENSITY_AWAKE);
 
-            session.getLefunActivitySampleDao().insertOrReplace(sample);
+            getSampleWriter().add(sample);
         } catch (Exception e) {
             LOG.error("Error handling activity data", e);
         }
@@ -908,7 +915,7 @@ public class LefunDeviceSupport extends AbstractBTLEDeviceSupport {
 
                 sample.setHeartRate(ppgData0);
 
-                session.getLefunActivitySampleDao().insertOrReplace(sample);
+                getSampleWriter().add(sample);
 
                 final Intent intent = new Intent(DeviceService.ACTION_REALTIME_SAMPLES)
                         .putExtra(GBDevice.EXTRA_DEVICE, getDevice())
@@ -922,7 +929,7 @@ public class LefunDeviceSupport extends AbstractBTLEDeviceSupport {
             bioSample.setType(ppgType);
             bioSample.setValue1(ppgData0);
             bioSample.setValue2(ppgData1);
-            session.getLefunBiometricSampleDao().insertOrReplace(bioSample);
+            getSampleWriter().add(bioSample);
         } catch (Exception e) {
             LOG.error("Error handling PPG data", e);
         }
@@ -995,13 +1002,13 @@ public class LefunDeviceSupport extends AbstractBTLEDeviceSupport {
             sample.setRawKind(rawKind);
             sample.setRawIntensity(intensity);
 
-            session.getLefunActivitySampleDao().insertOrReplace(sample);
+            getSampleWriter().add(sample);
 
             LefunSleepSample sleepSample = new LefunSleepSample(timestamp,
                     DBHelper.getDevice(getDevice(), session).getId());
             sleepSample.setUserId(DBHelper.getUser(session).getId());
             sleepSample.setType(command.getSleepType());
-            session.getLefunSleepSampleDao().insertOrReplace(sleepSample);
+            getSampleWriter().add(sleepSample);
         } catch (Exception e) {
             LOG.error("Error handling sleep data", e);
         }
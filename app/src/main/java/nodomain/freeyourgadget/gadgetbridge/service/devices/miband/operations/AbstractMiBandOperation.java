@@ -18,6 +18,8 @@ package nodomain.freeyourgadget.gadgetbridge.service.devices.miband.operations;
 
 import android.widget.Toast;
 
+import androidx.annotation.Nullable;
+
 import java.io.IOException;
 
 import nodomain.freeyourgadget.gadgetbridge.service.btle.AbstractBTLEDeviceSupport;
@@ -26,6 +28,8 @@ import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
 import nodomain.freeyourgadget.gadgetbridge.util.GB;
 
 public abstract class AbstractMiBandOperation<T extends AbstractBTLEDeviceSupport> extends AbstractBTLEOperation<T> {
+    private boolean bulkTransfer = false;
+
     protected AbstractMiBandOperation(T support) {
         super(support);
     }
@@ -37,25 +41,58 @@ public abstract class AbstractMiBandOperation<T extends AbstractBTLEDeviceSuppor
         TransactionBuilder builder = performInitialized("disabling some notifications");
         enableOtherNotifications(builder, false);
         enableNeededNotifications(builder, true);
+        if (!bulkTransfer) {
+            // an operation that is performed again keeps its bulk transfer
+            getSupport().beginBulkTransfer(builder, getName());
+            bulkTransfer = true;
+        }
         builder.queue(getQueue());
     }
 
+    @Override
+    protected void performFailed() {
+        finish();
+    }
+
     @Override
     protected void operationFinished() {
+        finish();
+    }
+
+    private void finish() {
         operationStatus = OperationStatus.FINISHED;
         if (getDevice() != null && getDevice().isConnected()) {
             unsetBusy();
             try {
                 TransactionBuilder builder = performInitialized("reenabling disabled notifications");
                 handleFinished(builder);
+                endBulkTransfer(builder);
                 builder.setCallback(null); // unset ourselves from being the queue's gatt callback
                 builder.queue(getQueue());
             } catch (IOException ex) {
                 GB.toast(getContext(), "Error enabling Mi Band notifications, you may need to connect and disconnect", Toast.LENGTH_LONG, GB.ERROR, ex);
+                endBulkTransfer(null);
             }
+        } else {
+            endBulkTransfer(null);
         }
     }
 
+    /**
+     * Ends the bulk transfer of this operation without finishing it, because the operation
+     * that was just performed after it took over. Since that one began its own bulk transfer
+     * already, the connection stays boosted in between.
+     */
+    protected void handOverBulkTransfer() {
+        endBulkTransfer(null);
+    }
+
+    private void endBulkTransfer(@Nullable TransactionBuilder builder) {
+        if (bulkTransfer) {
+            bulkTransfer = false;
+            getSupport().endBulkTransfer(builder);
+        }
+    }
 
     private void handleFinished(TransactionBuilder builder) {
         enableNeededNotifications(builder, false);
@@ -42,7 +42,6 @@ import nodomain.freeyourgadget.gadgetbridge.database.DBHelper;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventBatteryInfo;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventVersionInfo;
 import nodomain.freeyourgadget.gadgetbridge.devices.no1f1.No1F1Constants;
-import nodomain.freeyourgadget.gadgetbridge.devices.no1f1.No1F1SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.No1F1ActivitySample;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
@@ -490,7 +489,6 @@ public class No1F1Support extends AbstractBTLEDeviceSupport {
                 try (DBHandler dbHandler = GBApplication.acquireDB()) {
                     Long userId = DBHelper.getUser(dbHandler.getDaoSession()).getId();
                     Long deviceId = DBHelper.getDevice(getDevice(), dbHandler.getDaoSession()).getId();
-                    No1F1SampleProvider provider = new No1F1SampleProvider(getDevice(), dbHandler.getDaoSession());
                     for (int i = 0; i < samples.size(); i++) {
                         samples.get(i).setDeviceId(deviceId);
                         samples.get(i).setUserId(userId);
@@ -503,8 +501,8 @@ public class No1F1Support extends AbstractBTLEDeviceSupport {
                             else
                                 samples.get(i).setRawKind(ActivityKind.LIGHT_SLEEP.getCode());
                         }
-                        provider.addGBActivitySample(samples.get(i));
                     }
+                    getSampleWriter().addAll(samples);
                     LOG.info("Activity data saved");
                     if (data[0] == No1F1Constants.CMD_FETCH_STEPS) {
                         sendFetchCommand(No1F1Constants.CMD_FETCH_SLEEP);
@@ -514,6 +512,7 @@ public class No1F1Support extends AbstractBTLEDeviceSupport {
                         GB.updateTransferNotification(null,"", false, 100, getContext());
                         if (getDevice().isBusy()) {
                             getDevice().unsetBusyTask();
+                            getSampleWriter().flush();
                             GB.signalActivityDataFinish(getDevice());
                         }
                     }
@@ -580,10 +579,9 @@ public class No1F1Support extends AbstractBTLEDeviceSupport {
             try (DBHandler dbHandler = GBApplication.acquireDB()) {
                 Long userId = DBHelper.getUser(dbHandler.getDaoSession()).getId();
                 Long deviceId = DBHelper.getDevice(getDevice(), dbHandler.getDaoSession()).getId();
-                No1F1SampleProvider provider = new No1F1SampleProvider(getDevice(), dbHandler.getDaoSession());
                 sample.setDeviceId(deviceId);
                 sample.setUserId(userId);
-                provider.addGBActivitySample(sample);
+                getSampleWriter().add(sample);
             } catch (Exception ex) {
                 LOG.warn("Error saving current heart rate: " + ex.getLocalizedMessage());
             }
@@ -47,7 +47,6 @@ import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Locale;
-import java.util.Optional;
 import java.util.TimeZone;
 import java.util.UUID;
 
@@ -489,6 +488,8 @@ public class PineTimeJFSupport extends AbstractBTLEDeviceSupport implements DfuL
     @Override
     protected TransactionBuilder initializeDevice(TransactionBuilder builder) {
         builder.add(new SetDeviceStateAction(getDevice(), GBDevice.State.INITIALIZING, getContext()));
+        // realtime samples are buffered, signal new data once they are written to the database
+        getSampleWriter().setFlushListener(() -> GB.signalActivityDataFinish(getDevice()));
         requestDeviceInfo(builder);
         if (GBApplication.getPrefs().getBoolean("datetime_synconconnect", true)) {
             onSetTime();
@@ -1171,6 +1172,9 @@ public class PineTimeJFSupport extends AbstractBTLEDeviceSupport implements DfuL
      * @param timeStamp Time stamp (in seconds)  at some point during the requested day.
      */
     private int getStepsOnDay(int timeStamp) {
+        // the step count is read back from the database, so write the buffered samples first
+        getSampleWriter().flush();
+
         try (DBHandler dbHandler = GBApplication.acquireDB()) {
 
             Calendar dayStart = Calendar.getInstance();
@@ -1233,17 +1237,18 @@ public class PineTimeJFSupport extends AbstractBTLEDeviceSupport implements DfuL
 
                 sample.setRawIntensity(ActivitySample.NOT_MEASURED);
 
-                Optional<PineTimeActivitySample> storedSample = provider.getSampleForTimestamp(sample.getTimestamp());
-                if (storedSample.isPresent()) {
-                    sample.setHeartRate(Math.max(sample.getHeartRate(), storedSample.get().getHeartRate()));
-                    sample.setSteps(Math.max(sample.getSteps(), storedSample.get().getSteps()));
+                final int timestamp = sample.getTimestamp();
+                PineTimeActivitySample storedSample = getSampleWriter().findPending(PineTimeActivitySample.class, s -> s.getTimestamp() == timestamp);
+                if (storedSample == null) {
+                    storedSample = provider.getSampleForTimestamp(timestamp).orElse(null);
+                }
+                if (storedSample != null) {
+                    sample.setHeartRate(Math.max(sample.getHeartRate(), storedSample.getHeartRate()));
+                    sample.setSteps(Math.max(sample.getSteps(), storedSample.getSteps()));
                 }
 
-                provider.addGBActivitySample(sample);
+                getSampleWriter().add(sample);
             }
-
-            GB.signalActivityDataFinish(getDevice());
-
         } catch (Exception ex) {
             GB.toast(getContext(), "Error saving samples: " + ex.getLocalizedMessage(), Toast.LENGTH_LONG, GB.ERROR);
             GB.updateTransferNotification(null, "Data transfer failed", false, 0, getContext());
@@ -28,6 +28,7 @@ import nodomain.freeyourgadget.gadgetbridge.GBApplication;
 import nodomain.freeyourgadget.gadgetbridge.activities.DashboardFragment;
 import nodomain.freeyourgadget.gadgetbridge.activities.charts.StepAnalysis;
 import nodomain.freeyourgadget.gadgetbridge.database.DBHandler;
+import nodomain.freeyourgadget.gadgetbridge.database.DailySummaryManager;
 import nodomain.freeyourgadget.gadgetbridge.devices.DeviceCoordinator;
 import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
 import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
@@ -158,7 +159,18 @@ public class DashboardUtils {
         return goalFactor;
     }
 
+    /**
+     * Returns the active minutes from {@code dashboardData.timeFrom} to {@code dashboardData.timeTo}.
+     * If the range is a whole calendar day, or today up to now, the stored daily summary is used,
+     * otherwise the step sessions of the range are calculated from the samples.
+     */
     public static long getActiveMinutes(GBDevice gbDevice, DBHandler db, DashboardFragment.DashboardData dashboardData) {
+        Calendar day = GregorianCalendar.getInstance();
+        day.setTimeInMillis(dashboardData.timeTo * 1000L);
+        if (isSingleDay(dashboardData, day)) {
+            return DailySummaryManager.getDailySummary(gbDevice, day, db).getActiveMinutes();
+        }
+
         ActivitySession stepSessionsSummary = new ActivitySession();
         List<ActivitySession> stepSessions;
         List<? extends ActivitySample> activitySamples = getAllSamples(db, gbDevice, dashboardData);
@@ -176,6 +188,24 @@ public class DashboardUtils {
         return duration / 1000 / 60;
     }
 
+    /**
+     * Whether the range of the dashboard covers the same samples as the daily summary of the
+     * given day: it starts at midnight, and ends at the end of the day or now.
+     */
+    private static boolean isSingleDay(DashboardFragment.DashboardData dashboardData, Calendar day) {
+        Calendar start = (Calendar) day.clone();
+        start.set(Calendar.HOUR_OF_DAY, 0);
+        start.set(Calendar.MINUTE, 0);
+        start.set(Calendar.SECOND, 0);
+        start.set(Calendar.MILLISECOND, 0);
+        Calendar end = (Calendar) start.clone();
+        end.add(Calendar.DATE, 1);
+        int startTs = (int) (start.getTimeInMillis() / 1000);
+        int endTs = (int) (end.getTimeInMillis() / 1000) - 1;
+        int now = (int) (System.currentTimeMillis() / 1000);
+        return dashboardData.timeFrom == startTs && (dashboardData.timeTo >= endTs || dashboardData.timeTo >= now);
+    }
+
     public static List<? extends ActivitySample> getAllSamples(DBHandler db, GBDevice device, DashboardFragment.DashboardData dashboardData) {
         SampleProvider<? extends ActivitySample> provider = getProvider(db, device);
         return provider.getAllActivitySamples(dashboardData.timeFrom, dashboardData.timeTo);
@@ -60,6 +60,8 @@ import nodomain.freeyourgadget.gadgetbridge.GBEnvironment;
 import nodomain.freeyourgadget.gadgetbridge.R;
 import nodomain.freeyourgadget.gadgetbridge.activities.ControlCenterv2;
 import nodomain.freeyourgadget.gadgetbridge.activities.SettingsActivity;
+import nodomain.freeyourgadget.gadgetbridge.database.DailySummaryManager;
+import nodomain.freeyourgadget.gadgetbridge.database.SampleRetentionManager;
 import nodomain.freeyourgadget.gadgetbridge.deviceevents.GBDeviceEventScreenshot;
 import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
 import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
@@ -679,6 +681,12 @@ public class GB {
     }
 
     public static void signalActivityDataFinish(final GBDevice device) {
+        // update the daily summaries first, so that they are current when the receivers refresh
+        DailySummaryManager.updateAfterSync(device, () -> broadcastActivityDataFinish(device));
+        SampleRetentionManager.runIfDue(device);
+    }
+
+    private static void broadcastActivityDataFinish(final GBDevice device) {
         final Intent intent = new Intent(GBApplication.ACTION_NEW_DATA);
         intent.putExtra(GBDevice.EXTRA_DEVICE, device);
 
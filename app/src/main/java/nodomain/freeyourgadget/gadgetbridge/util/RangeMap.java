@@ -16,67 +16,143 @@
     along with this program.  If not, see <https://www.gnu.org/licenses/>. */
 package nodomain.freeyourgadget.gadgetbridge.util;
 
-import android.util.Pair;
-
 import androidx.annotation.Nullable;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
 
 /**
- * A map of bounds for ranges. Returns the value closest to the key, in upper or lower bound mode.
+ * A map of bounds for ranges, keyed by timestamps. Returns the value closest to the key, in upper
+ * or lower bound mode. If the same key is put more than once, the last value is used.
+ * <p>
+ * The keys are sorted once before the first lookup, and lookups use a binary search. When looking
+ * up all samples of a list that is sorted by timestamp, {@link #getAll(List, ToLongFunction, BiConsumer)}
+ * walks the keys along with the samples instead.
  */
-public class RangeMap<K extends Comparable<K>, V> {
-    private final List<Pair<K, V>> list = new ArrayList<>();
-    private boolean isSorted = false;
-    private final Comparator<K> comparator;
+public class RangeMap<V> {
+    private final Mode mode;
+
+    private long[] keys = new long[16];
+    private Object[] values = new Object[16];
+    private int size = 0;
+    private boolean isSorted = true;
 
     public RangeMap() {
         this(Mode.LOWER_BOUND);
     }
 
     public RangeMap(final Mode mode) {
-        switch (mode) {
-            case LOWER_BOUND:
-                comparator = (k1, k2) -> k1.compareTo(k2);
-                break;
-            case UPPER_BOUND:
-                comparator = (k1, k2) -> k2.compareTo(k1);
-                break;
-            default:
-                throw new IllegalArgumentException("Unknown mode " + mode);
+        this.mode = mode;
+    }
+
+    public void put(final long key, final V value) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        if (size > 0 && key <= keys[size - 1]) {
+            isSorted = false;
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+    }
+
+    @Nullable
+    public V get(final long key) {
+        sort();
+        return valueAt(find(key));
+    }
+
+    /**
+     * Calls the consumer for each item, in order, with the value for its key, or null if there is
+     * none. This is linear if the items are sorted by key, but works for unsorted items as well.
+     */
+    public <T> void getAll(final List<T> items, final ToLongFunction<? super T> itemKey, final BiConsumer<? super T, ? super V> consumer) {
+        sort();
+        long previousKey = Long.MIN_VALUE;
+        int index = mode == Mode.LOWER_BOUND ? -1 : 0;
+        for (final T item : items) {
+            final long key = itemKey.applyAsLong(item);
+            if (key < previousKey) {
+                index = find(key);
+            } else if (mode == Mode.LOWER_BOUND) {
+                while (index + 1 < size && keys[index + 1] <= key) {
+                    index++;
+                }
+            } else {
+                while (index < size && keys[index] < key) {
+                    index++;
+                }
+            }
+            previousKey = key;
+            consumer.accept(item, valueAt(index));
         }
     }
 
-    public void put(final K key, final V value) {
-        list.add(Pair.create(key, value));
-        isSorted = false;
+    /**
+     * Returns the index of the greatest key lower than or equal to the given one in lower bound
+     * mode, or of the lowest key greater than or equal to it in upper bound mode.
+     */
+    private int find(final long key) {
+        final int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            return index;
+        }
+        final int insertionPoint = -index - 1;
+        return mode == Mode.LOWER_BOUND ? insertionPoint - 1 : insertionPoint;
     }
 
     @Nullable
-    public V get(final K key) {
-        if (!isSorted) {
-            Collections.sort(list, (a, b) -> comparator.compare(a.first, b.first));
-            isSorted = true;
+    @SuppressWarnings("unchecked")
+    private V valueAt(final int index) {
+        if (index < 0 || index >= size) {
+            return null;
         }
+        return (V) values[index];
+    }
 
-        for (int i = list.size() - 1; i >= 0; i--) {
-            if (comparator.compare(key, list.get(i).first) >= 0) {
-                return list.get(i).second;
-            }
+    /**
+     * Sorts the keys, keeping only the last value put for each key.
+     */
+    private void sort() {
+        if (isSorted) {
+            return;
         }
 
-        return null;
+        final Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        // the sort is stable, so the last value put for a key stays last
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+        final long[] sortedKeys = new long[keys.length];
+        final Object[] sortedValues = new Object[values.length];
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (i + 1 < size && keys[order[i + 1]] == keys[order[i]]) {
+                continue;
+            }
+            sortedKeys[distinct] = keys[order[i]];
+            sortedValues[distinct] = values[order[i]];
+            distinct++;
+        }
+        keys = sortedKeys;
+        values = sortedValues;
+        size = distinct;
+        isSorted = true;
     }
 
     public boolean isEmpty() {
-        return list.isEmpty();
+        return size == 0;
     }
 
     public int size() {
-        return list.size();
+        sort();
+        return size;
     }
 
     public enum Mode {
@@ -0,0 +1,187 @@
+/*  Copyright (C) 2024 Gadgetbridge contributors
+
+    This file is part of Gadgetbridge.
+
+    Gadgetbridge is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Gadgetbridge is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>. */
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.LongFunction;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Joins of time series, e.g. to overlay heart rate or sleep stages from another table onto
+ * activity samples. All of them walk both series once, so the series must be sorted by their
+ * timestamps, in ascending order. Timestamps are compared as primitives, so both sides must use
+ * the same unit.
+ */
+public final class TimeSeriesJoin {
+    private TimeSeriesJoin() {
+        // utility class
+    }
+
+    /**
+     * Calls the consumer for each element of {@code left}, in order, with the last element of
+     * {@code right} at or before it, or null if there is none. If there are multiple such
+     * elements with the same timestamp, the last one is used.
+     */
+    public static <L, R> void asOf(final List<L> left,
+                                   final ToLongFunction<? super L> leftTimestamp,
+                                   final List<R> right,
+                                   final ToLongFunction<? super R> rightTimestamp,
+                                   final BiConsumer<? super L, ? super R> consumer) {
+        asOfIndex(left, leftTimestamp, right, rightTimestamp, (l, index) -> consumer.accept(l, index >= 0 ? right.get(index) : null));
+    }
+
+    /**
+     * Like {@link #asOf(List, ToLongFunction, List, ToLongFunction, BiConsumer)}, but passes the
+     * index of the element of {@code right}, or -1 if there is none, so that the consumer can
+     * also look at the elements around it.
+     */
+    public static <L, R> void asOfIndex(final List<L> left,
+                                        final ToLongFunction<? super L> leftTimestamp,
+                                        final List<R> right,
+                                        final ToLongFunction<? super R> rightTimestamp,
+                                        final ObjIntConsumer<? super L> consumer) {
+        final int rightSize = right.size();
+        int r = 0;
+        for (final L l : left) {
+            final long ts = leftTimestamp.applyAsLong(l);
+            while (r < rightSize && rightTimestamp.applyAsLong(right.get(r)) <= ts) {
+                r++;
+            }
+            consumer.accept(l, r - 1);
+        }
+    }
+
+    /**
+     * Calls the consumer for each element of {@code left}, in order, with the first element of
+     * {@code right} at or after it, or null if there is none. If there are multiple such
+     * elements with the same timestamp, the last one is used.
+     */
+    public static <L, R> void asOfNext(final List<L> left,
+                                       final ToLongFunction<? super L> leftTimestamp,
+                                       final List<R> right,
+                                       final ToLongFunction<? super R> rightTimestamp,
+                                       final BiConsumer<? super L, ? super R> consumer) {
+        final int rightSize = right.size();
+        int r = 0;
+        for (final L l : left) {
+            final long ts = leftTimestamp.applyAsLong(l);
+            while (r < rightSize && rightTimestamp.applyAsLong(right.get(r)) < ts) {
+                r++;
+            }
+            if (r == rightSize) {
+                consumer.accept(l, null);
+                continue;
+            }
+            // skip to the last element with the same timestamp
+            final long nextTs = rightTimestamp.applyAsLong(right.get(r));
+            int last = r;
+            while (last + 1 < rightSize && rightTimestamp.applyAsLong(right.get(last + 1)) == nextTs) {
+                last++;
+            }
+            consumer.accept(l, right.get(last));
+        }
+    }
+
+    /**
+     * Merges two series into a new list. Elements with the same timestamp keep their order, and
+     * the ones from {@code first} come before the ones from {@code second}.
+     */
+    public static <T> List<T> merge(final List<? extends T> first,
+                                    final List<? extends T> second,
+                                    final ToLongFunction<? super T> timestamp) {
+        final List<T> result = new ArrayList<>(first.size() + second.size());
+        int i = 0;
+        int j = 0;
+        while (i < first.size() && j < second.size()) {
+            if (timestamp.applyAsLong(second.get(j)) < timestamp.applyAsLong(first.get(i))) {
+                result.add(second.get(j++));
+            } else {
+                result.add(first.get(i++));
+            }
+        }
+        while (i < first.size()) {
+            result.add(first.get(i++));
+        }
+        while (j < second.size()) {
+            result.add(second.get(j++));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the elements sorted by timestamp. Of the elements with the same timestamp, only the
+     * last one is kept.
+     */
+    public static <T> List<T> sortedDistinct(final Collection<? extends T> elements,
+                                             final ToLongFunction<? super T> timestamp) {
+        final List<T> sorted = new ArrayList<>(elements);
+        // the sort is stable, so the last of the elements with the same timestamp stays last
+        Collections.sort(sorted, (a, b) -> Long.compare(timestamp.applyAsLong(a), timestamp.applyAsLong(b)));
+        final List<T> result = new ArrayList<>(sorted.size());
+        for (int i = 0; i < sorted.size(); i++) {
+            if (i + 1 == sorted.size() || timestamp.applyAsLong(sorted.get(i + 1)) != timestamp.applyAsLong(sorted.get(i))) {
+                result.add(sorted.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calls the consumer for each element of {@code right}, in order, with the element of
+     * {@code left} that has exactly the same timestamp. If there is none, it is created with the
+     * factory and inserted in order. The elements of {@code left} must have distinct timestamps.
+     *
+     * @return a new list with the elements of {@code left} and the created ones
+     */
+    public static <L, R> List<L> upsert(final List<L> left,
+                                        final ToLongFunction<? super L> leftTimestamp,
+                                        final List<R> right,
+                                        final ToLongFunction<? super R> rightTimestamp,
+                                        final LongFunction<? extends L> factory,
+                                        final BiConsumer<? super L, ? super R> consumer) {
+        final List<L> result = new ArrayList<>(left.size() + right.size());
+        final int leftSize = left.size();
+        int l = 0;
+        for (final R r : right) {
+            final long ts = rightTimestamp.applyAsLong(r);
+            while (l < leftSize && leftTimestamp.applyAsLong(left.get(l)) < ts) {
+                result.add(left.get(l++));
+            }
+
+            final L target;
+            if (l < leftSize && leftTimestamp.applyAsLong(left.get(l)) == ts) {
+                target = left.get(l);
+            } else if (!result.isEmpty() && leftTimestamp.applyAsLong(result.get(result.size() - 1)) == ts) {
+                // created for a previous element of right
+                target = result.get(result.size() - 1);
+            } else {
+                target = factory.apply(ts);
+                result.add(target);
+            }
+            consumer.accept(target, r);
+        }
+        while (l < leftSize) {
+            result.add(left.get(l++));
+        }
+        return result;
+    }
+}
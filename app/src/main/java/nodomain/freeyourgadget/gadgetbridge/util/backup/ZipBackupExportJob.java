@@ -154,9 +154,9 @@ public class ZipBackupExportJob extends AbstractZipBackupJob {
         LOG.debug("Exporting database");
 
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (DBHandler dbHandler = GBApplication.acquireDB()) {
+        try {
             final DBHelper helper = new DBHelper(context);
-            helper.exportDB(dbHandler, baos);
+            helper.exportDBSnapshot(baos);
         } catch (final Exception e) {
             throw new IOException("Failed to export database", e);
         }
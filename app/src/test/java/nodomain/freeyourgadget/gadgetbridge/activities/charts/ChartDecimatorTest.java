@@ -0,0 +1,64 @@
+package nodomain.freeyourgadget.gadgetbridge.activities.charts;
+
+import static org.junit.Assert.*;
+
+import com.github.mikephil.charting.data.Entry;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+public class ChartDecimatorTest extends TestBase {
+    @Test
+    public void testSmallDataIsKept() {
+        final List<Entry> entries = createEntries(400);
+        assertSame(entries, ChartDecimator.decimate(entries, 100));
+        assertSame(entries, ChartDecimator.decimate(entries, 1000));
+    }
+
+    @Test
+    public void testFirstAndLastAreKept() {
+        final List<Entry> entries = createEntries(10000);
+        final List<Entry> decimated = ChartDecimator.decimate(entries, 100);
+
+        assertTrue(decimated.size() <= 100 * 4);
+        assertSame(entries.get(0), decimated.get(0));
+        assertSame(entries.get(entries.size() - 1), decimated.get(decimated.size() - 1));
+        for (int i = 1; i < decimated.size(); i++) {
+            assertTrue(decimated.get(i).getX() > decimated.get(i - 1).getX());
+        }
+    }
+
+    @Test
+    public void testPeaksAreKept() {
+        final List<Entry> entries = createEntries(10000);
+        final Entry peak = entries.get(4321);
+        peak.setY(1000);
+        final Entry valley = entries.get(7654);
+        valley.setY(-1000);
+
+        final List<Entry> decimated = ChartDecimator.decimate(entries, 100);
+
+        assertTrue(decimated.contains(peak));
+        assertTrue(decimated.contains(valley));
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (final Entry entry : decimated) {
+            min = Math.min(min, entry.getY());
+            max = Math.max(max, entry.getY());
+        }
+        assertEquals(-1000, min, 0);
+        assertEquals(1000, max, 0);
+    }
+
+    private static List<Entry> createEntries(final int count) {
+        final List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(new Entry(i * 10, (float) Math.sin(i / 50.0) * 100));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,99 @@
+package nodomain.freeyourgadget.gadgetbridge.activities.charts;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+public class StepStreaksCalculatorTest extends TestBase {
+    private static final int GOAL = 5000;
+    private static final int[] STEPS = {0, 6000, 7000, 100, 5000, 5000, 8000, 0, 12000, 3000};
+
+    @Test
+    public void testSaveAndLoad() {
+        final GBDevice device = createDummyGDevice("00:00:00:00:00:01");
+        final StepStreaksCalculator calculator = calculate(0, STEPS.length);
+        calculator.save(device);
+
+        final StepStreaksCalculator loaded = StepStreaksCalculator.load(device, GOAL);
+        assertNotNull(loaded);
+        assertSameState(calculator, loaded);
+
+        // the state is only valid for the goal it was calculated with
+        assertNull(StepStreaksCalculator.load(device, GOAL + 1));
+    }
+
+    @Test
+    public void testOtherVersionIsDiscarded() {
+        final GBDevice device = createDummyGDevice("00:00:00:00:00:02");
+        calculate(0, STEPS.length).save(device);
+        final String state = GBApplication.getDeviceSpecificSharedPrefs(device.getAddress())
+                .getString(StepStreaksCalculator.PREF_STATE, null);
+        assertNotNull(state);
+        assertTrue(state, state.startsWith(StepStreaksCalculator.STATE_VERSION + ","));
+
+        GBApplication.getDeviceSpecificSharedPrefs(device.getAddress()).edit()
+                .putString(StepStreaksCalculator.PREF_STATE, (StepStreaksCalculator.STATE_VERSION + 1) + state.substring(state.indexOf(',')))
+                .commit();
+        assertNull(StepStreaksCalculator.load(device, GOAL));
+
+        GBApplication.getDeviceSpecificSharedPrefs(device.getAddress()).edit()
+                .putString(StepStreaksCalculator.PREF_STATE, "garbage")
+                .commit();
+        assertNull(StepStreaksCalculator.load(device, GOAL));
+    }
+
+    @Test
+    public void testIncrementalExtension() {
+        final StepStreaksCalculator full = calculate(0, STEPS.length);
+        assertEquals(1, full.getCurrentDays());
+        assertEquals(12000, full.getCurrentSteps());
+        assertEquals(3, full.getMaximumDays());
+        assertEquals(18000, full.getMaximumSteps());
+        assertEquals(6, full.getGoalDays());
+        assertEquals(8, full.getStepDays());
+        assertEquals(46100, full.getTotalSteps());
+
+        // continuing a persisted state gives the same result as calculating all days at once
+        for (int split = 1; split < STEPS.length; split++) {
+            final GBDevice device = createDummyGDevice("00:00:00:00:00:03");
+            calculate(0, split).save(device);
+            final StepStreaksCalculator resumed = StepStreaksCalculator.load(device, GOAL);
+            assertNotNull(resumed);
+            for (int i = split; i < STEPS.length; i++) {
+                addDay(resumed, i);
+            }
+            assertSameState(full, resumed);
+        }
+    }
+
+    private static StepStreaksCalculator calculate(final int from, final int to) {
+        final StepStreaksCalculator calculator = new StepStreaksCalculator(GOAL);
+        for (int i = from; i < to; i++) {
+            addDay(calculator, i);
+        }
+        return calculator;
+    }
+
+    private static void addDay(final StepStreaksCalculator calculator, final int index) {
+        // the last day is today, which does not interrupt the current streak
+        calculator.addDay(20240101 + index, 1704067200 + index * 86400, STEPS[index], index == STEPS.length - 1);
+    }
+
+    private static void assertSameState(final StepStreaksCalculator expected, final StepStreaksCalculator actual) {
+        assertEquals(expected.getLastDay(), actual.getLastDay());
+        assertEquals(expected.getCurrentDays(), actual.getCurrentDays());
+        assertEquals(expected.getCurrentSteps(), actual.getCurrentSteps());
+        assertEquals(expected.getCurrentTimestamp(), actual.getCurrentTimestamp());
+        assertEquals(expected.getMaximumDays(), actual.getMaximumDays());
+        assertEquals(expected.getMaximumSteps(), actual.getMaximumSteps());
+        assertEquals(expected.getMaximumTimestamp(), actual.getMaximumTimestamp());
+        assertEquals(expected.getTotalSteps(), actual.getTotalSteps());
+        assertEquals(expected.getGoalDays(), actual.getGoalDays());
+        assertEquals(expected.getStepDays(), actual.getStepDays());
+        assertEquals(expected.getFirstStepsTimestamp(), actual.getFirstStepsTimestamp());
+    }
+}
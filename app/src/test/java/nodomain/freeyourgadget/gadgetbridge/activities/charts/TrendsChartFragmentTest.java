@@ -0,0 +1,72 @@
+package nodomain.freeyourgadget.gadgetbridge.activities.charts;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.entities.DailySummary;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+public class TrendsChartFragmentTest extends TestBase {
+    @Test
+    public void testMonthlyAverages() {
+        final List<Calendar> buckets = TrendsChartFragment.getBuckets(TrendsChartFragment.Range.YEARS_2, day(2024, 1, 15), day(2024, 3, 10));
+        assertEquals(3, buckets.size());
+        assertEquals(day(2024, 1, 1).getTimeInMillis(), buckets.get(0).getTimeInMillis());
+        assertEquals(day(2024, 3, 1).getTimeInMillis(), buckets.get(2).getTimeInMillis());
+
+        final List<DailySummary> summaries = new ArrayList<>();
+        summaries.add(summary(20240115, 1000, 0));
+        summaries.add(summary(20240131, 3000, 80000));
+        summaries.add(summary(20240201, 0, 0));
+        summaries.add(summary(20240210, 5000, 0));
+        summaries.add(summary(20240305, 0, 0));
+
+        final TrendsChartFragment.Averages steps = TrendsChartFragment.calculateAverages(summaries, TrendsChartFragment.Metric.STEPS, false, buckets);
+        assertEquals(2000, steps.buckets[0], 0.001);
+        // the days without steps are not counted
+        assertEquals(5000, steps.buckets[1], 0.001);
+        assertTrue(Float.isNaN(steps.buckets[2]));
+        assertNotNull(steps.total);
+        assertEquals(3000, steps.total, 0.001);
+
+        final TrendsChartFragment.Averages weight = TrendsChartFragment.calculateAverages(summaries, TrendsChartFragment.Metric.WEIGHT, false, buckets);
+        assertEquals(80, weight.buckets[0], 0.001);
+        assertTrue(Float.isNaN(weight.buckets[1]));
+        assertNotNull(weight.total);
+        assertEquals(80, weight.total, 0.001);
+    }
+
+    @Test
+    public void testNoValues() {
+        final List<Calendar> buckets = TrendsChartFragment.getBuckets(TrendsChartFragment.Range.MONTHS_12, day(2024, 1, 1), day(2024, 12, 31));
+        assertTrue(buckets.size() >= 52);
+
+        final List<DailySummary> summaries = new ArrayList<>();
+        summaries.add(summary(20240601, 8000, 0));
+        final TrendsChartFragment.Averages hrv = TrendsChartFragment.calculateAverages(summaries, TrendsChartFragment.Metric.HRV, false, buckets);
+        assertNull(hrv.total);
+        for (final float average : hrv.buckets) {
+            assertTrue(Float.isNaN(average));
+        }
+    }
+
+    private static Calendar day(final int year, final int month, final int day) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day);
+        return calendar;
+    }
+
+    private static DailySummary summary(final int day, final int steps, final int weightGrams) {
+        final DailySummary summary = new DailySummary();
+        summary.setDay(day);
+        summary.setSteps(steps);
+        summary.setWeightGrams(weightGrams);
+        return summary;
+    }
+}
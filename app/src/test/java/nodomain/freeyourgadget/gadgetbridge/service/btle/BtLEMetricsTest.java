@@ -0,0 +1,83 @@
+package nodomain.freeyourgadget.gadgetbridge.service.btle;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+public class BtLEMetricsTest extends TestBase {
+    @Test
+    public void testHistogramBuckets() {
+        assertEquals(0, BtLEMetrics.Histogram.bucketOf(0));
+        assertEquals(1, BtLEMetrics.Histogram.bucketOf(1));
+        assertEquals(2, BtLEMetrics.Histogram.bucketOf(2));
+        assertEquals(2, BtLEMetrics.Histogram.bucketOf(3));
+        assertEquals(3, BtLEMetrics.Histogram.bucketOf(4));
+        assertEquals(BtLEMetrics.Histogram.BUCKETS - 1, BtLEMetrics.Histogram.bucketOf(Long.MAX_VALUE));
+        assertEquals(7, BtLEMetrics.Histogram.upperBoundOf(3));
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        final BtLEMetrics.Histogram histogram = new BtLEMetrics.Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals("n=0", histogram.toString());
+
+        for (int i = 0; i < 90; i++) {
+            histogram.record(5);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(100);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(100, histogram.getMax());
+        assertEquals(7, histogram.getPercentile(50));
+        assertEquals(7, histogram.getPercentile(90));
+        assertEquals(100, histogram.getPercentile(95));
+        assertEquals("n=100 avg=14 p50<=7 p95<=100 p99<=100 max=100 [<=7:90, <=127:10]", histogram.toString());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void testCountersAndReset() {
+        final BtLEMetrics metrics = BtLEMetrics.forDevice("00:11:22:33:44:55", "Test Device");
+        metrics.reset();
+        assertSame(metrics, BtLEMetrics.forDevice("00:11:22:33:44:55", "Renamed Device"));
+        assertEquals("Renamed Device", metrics.getName());
+        final long totalBytesSent = metrics.getTotalBytesSent();
+        final long totalBytesReceived = metrics.getTotalBytesReceived();
+
+        metrics.countSent(20);
+        metrics.countSent(30);
+        metrics.countReceived(12);
+        metrics.countWriteRetry();
+        metrics.recordPause(250);
+        metrics.recordQueued(3);
+        metrics.recordQueued(1);
+
+        assertEquals(50, metrics.getBytesSent());
+        assertEquals(2, metrics.getPacketsSent());
+        assertEquals(12, metrics.getBytesReceived());
+        assertEquals(1, metrics.getPacketsReceived());
+        assertEquals(1, metrics.getWriteRetries());
+        assertEquals(250, metrics.getPausedMillis());
+
+        final String dump = metrics.dump();
+        assertTrue(dump, dump.startsWith("Renamed Device (00:11:22:33:44:55)"));
+        assertTrue(dump, dump.contains("sent: 50 bytes in 2 packets"));
+        assertTrue(dump, dump.contains("queue depth: max 3, n=2"));
+        assertTrue(BtLEMetrics.dumpAll().contains("sent: 50 bytes in 2 packets"));
+
+        metrics.reset();
+        assertEquals(0, metrics.getBytesSent());
+        assertEquals(0, metrics.getPausedMillis());
+
+        // the totals used for the throughput of bulk transfers are not reset
+        assertEquals(totalBytesSent + 50, metrics.getTotalBytesSent());
+        assertEquals(totalBytesReceived + 12, metrics.getTotalBytesReceived());
+    }
+}
@@ -0,0 +1,68 @@
+package nodomain.freeyourgadget.gadgetbridge.service.btle;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+public class PauseGateTest extends TestBase {
+    @Test
+    public void testNotPaused() throws Exception {
+        final PauseGate gate = new PauseGate();
+        assertFalse(gate.isPaused());
+        assertTrue(gate.await() >= 0);
+    }
+
+    @Test
+    public void testResumeWakesWait() throws Exception {
+        final PauseGate gate = new PauseGate();
+        gate.pause();
+        assertTrue(gate.isPaused());
+
+        final CountDownLatch resumed = new CountDownLatch(1);
+        final AtomicLong result = startWait(gate, resumed);
+
+        assertFalse(resumed.await(100, TimeUnit.MILLISECONDS));
+        gate.resume();
+        assertTrue(resumed.await(1, TimeUnit.SECONDS));
+        assertTrue(result.get() >= 100);
+        assertFalse(gate.isPaused());
+    }
+
+    @Test
+    public void testAbortWakesWait() throws Exception {
+        final PauseGate gate = new PauseGate();
+        gate.pause();
+
+        final CountDownLatch resumed = new CountDownLatch(1);
+        final AtomicLong result = startWait(gate, resumed);
+
+        assertFalse(resumed.await(100, TimeUnit.MILLISECONDS));
+        gate.abort();
+        assertTrue(resumed.await(1, TimeUnit.SECONDS));
+        assertEquals(-1, result.get());
+
+        // the next transaction still waits until resumed
+        gate.reset();
+        assertTrue(gate.isPaused());
+        gate.resume();
+        assertTrue(gate.await() >= 0);
+    }
+
+    private static AtomicLong startWait(final PauseGate gate, final CountDownLatch done) {
+        final AtomicLong result = new AtomicLong(Long.MIN_VALUE);
+        new Thread(() -> {
+            try {
+                result.set(gate.await());
+            } catch (final InterruptedException ignored) {
+            }
+            done.countDown();
+        }).start();
+        return result;
+    }
+}
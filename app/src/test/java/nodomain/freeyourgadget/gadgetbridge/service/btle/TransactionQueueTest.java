@@ -0,0 +1,70 @@
+package nodomain.freeyourgadget.gadgetbridge.service.btle;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+public class TransactionQueueTest extends TestBase {
+    @Test
+    public void testLanesAreOrderedByPriority() {
+        final TransactionQueue queue = new TransactionQueue();
+        queue.add(transaction("bulk", TransactionPriority.BULK));
+        queue.add(transaction("normal", TransactionPriority.NORMAL));
+        queue.add(transaction("interactive", TransactionPriority.INTERACTIVE));
+
+        assertEquals(3, queue.size());
+        assertNext(queue, "interactive");
+        assertNext(queue, "normal");
+        assertNext(queue, "bulk");
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testLaneIsFifo() {
+        final TransactionQueue queue = new TransactionQueue();
+        queue.add(transaction("bulk 1", TransactionPriority.BULK));
+        queue.add(transaction("normal 1", TransactionPriority.NORMAL));
+        queue.add(transaction("bulk 2", TransactionPriority.BULK));
+        queue.add(transaction("normal 2", TransactionPriority.NORMAL));
+        queue.add(transaction("bulk 3", TransactionPriority.BULK));
+
+        assertNext(queue, "normal 1");
+        assertNext(queue, "normal 2");
+        assertNext(queue, "bulk 1");
+        assertNext(queue, "bulk 2");
+        assertNext(queue, "bulk 3");
+    }
+
+    @Test
+    public void testInsertJumpsAheadWithinLane() {
+        final TransactionQueue queue = new TransactionQueue();
+        queue.add(transaction("interactive", TransactionPriority.INTERACTIVE));
+        queue.add(transaction("normal 1", TransactionPriority.NORMAL));
+        queue.add(transaction("normal 2", TransactionPriority.NORMAL));
+        queue.insert(transaction("inserted 1", TransactionPriority.NORMAL));
+        queue.insert(transaction("inserted 2", TransactionPriority.NORMAL));
+        queue.insert(transaction("inserted bulk", TransactionPriority.BULK));
+
+        // inserted transactions do not overtake higher lanes, the latest insert goes first
+        assertNext(queue, "interactive");
+        assertNext(queue, "inserted 2");
+        assertNext(queue, "inserted 1");
+        assertNext(queue, "normal 1");
+        assertNext(queue, "normal 2");
+        assertNext(queue, "inserted bulk");
+    }
+
+    private static Transaction transaction(final String name, final TransactionPriority priority) {
+        final Transaction transaction = new Transaction(name);
+        transaction.setPriority(priority);
+        return transaction;
+    }
+
+    private static void assertNext(final TransactionQueue queue, final String name) {
+        final AbstractTransaction next = queue.poll();
+        assertNotNull(next);
+        assertEquals(name, next.getTaskName());
+    }
+}
@@ -0,0 +1,149 @@
+package nodomain.freeyourgadget.gadgetbridge.service.btle;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+public class WriteCreditsTest extends TestBase {
+    private static final UUID DATA = UUID.fromString("00000016-0000-3512-2118-0009af100700");
+    private static final UUID CONTROL = UUID.fromString("00000015-0000-3512-2118-0009af100700");
+
+    @Test
+    public void testAcquireRelease() throws Exception {
+        final WriteCredits credits = new WriteCredits();
+        credits.reset(2);
+
+        assertTrue(credits.acquire(DATA));
+        assertTrue(credits.acquire(DATA));
+        assertEquals(2, credits.getInFlight());
+
+        assertEquals(WriteCredits.RELEASE_CURRENT, credits.release(DATA));
+        assertTrue(credits.acquire(DATA));
+        assertEquals(WriteCredits.RELEASE_CURRENT, credits.release(DATA));
+        assertEquals(WriteCredits.RELEASE_CURRENT, credits.release(DATA));
+        assertEquals(WriteCredits.RELEASE_NONE, credits.release(DATA));
+        assertTrue(credits.awaitAll());
+    }
+
+    @Test
+    public void testAcquireWaitsForRelease() throws Exception {
+        final WriteCredits credits = new WriteCredits();
+        credits.reset(1);
+        assertTrue(credits.acquire(DATA));
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final AtomicBoolean result = new AtomicBoolean();
+        final Thread thread = new Thread(() -> {
+            try {
+                result.set(credits.acquire(DATA));
+            } catch (final InterruptedException ignored) {
+            }
+            acquired.countDown();
+        });
+        thread.start();
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        credits.release(DATA);
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        assertTrue(result.get());
+    }
+
+    @Test
+    public void testBusyShrinksWindow() throws Exception {
+        final WriteCredits credits = new WriteCredits();
+        credits.reset(4);
+        assertTrue(credits.acquire(DATA));
+        assertTrue(credits.acquire(DATA));
+        assertTrue(credits.acquire(DATA));
+
+        assertTrue(credits.giveBackBusy());
+        assertEquals(2, credits.getInFlight());
+        assertEquals(2, credits.getMaxInFlight());
+
+        credits.release(DATA);
+        credits.release(DATA);
+        assertFalse(credits.giveBackBusy());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final WriteCredits credits = new WriteCredits();
+        credits.reset(1);
+        assertTrue(credits.acquire(DATA));
+
+        credits.cancel();
+        assertFalse(credits.acquire(DATA));
+        assertFalse(credits.awaitAll());
+
+        credits.reset(1);
+        assertTrue(credits.acquire(DATA));
+    }
+
+    @Test
+    public void testLateCallbacksAfterCancelAreDropped() throws Exception {
+        final WriteCredits credits = new WriteCredits();
+        credits.reset(4);
+        assertTrue(credits.acquire(DATA));
+        assertTrue(credits.acquire(DATA));
+
+        credits.cancel();
+        credits.reset(1);
+        assertEquals(2, credits.getStaleCount());
+
+        // a write of the next transaction is not completed by the late callbacks
+        assertTrue(credits.acquire(DATA));
+        assertEquals(WriteCredits.RELEASE_STALE, credits.release(DATA));
+        assertEquals(WriteCredits.RELEASE_STALE, credits.release(DATA));
+        assertEquals(1, credits.getInFlight());
+        assertEquals(WriteCredits.RELEASE_CURRENT, credits.release(DATA));
+        assertEquals(0, credits.getStaleCount());
+    }
+
+    @Test
+    public void testLateCallbacksAfterTimeoutAreDropped() throws Exception {
+        final WriteCredits credits = new WriteCredits();
+        credits.reset(2);
+        assertTrue(credits.acquire(DATA));
+
+        assertFalse(credits.awaitAll());
+        credits.reset(1);
+
+        // the callback of another characteristic is left for the action waiting for it
+        assertEquals(WriteCredits.RELEASE_NONE, credits.release(CONTROL));
+        assertEquals(WriteCredits.RELEASE_STALE, credits.release(DATA));
+        assertEquals(WriteCredits.RELEASE_NONE, credits.release(DATA));
+    }
+
+    @Test
+    public void testClearForgetsWritesInFlight() throws Exception {
+        final WriteCredits credits = new WriteCredits();
+        credits.reset(2);
+        assertTrue(credits.acquire(DATA));
+
+        credits.clear();
+        credits.reset(2);
+        assertEquals(0, credits.getStaleCount());
+        assertEquals(WriteCredits.RELEASE_NONE, credits.release(DATA));
+    }
+
+    @Test
+    public void testFailedWriteGivesBackCredit() throws Exception {
+        final WriteCredits credits = new WriteCredits();
+        credits.reset(2);
+        assertTrue(credits.acquire(DATA));
+        assertTrue(credits.acquire(DATA));
+
+        credits.giveBack();
+        assertEquals(1, credits.getInFlight());
+        assertEquals(2, credits.getMaxInFlight());
+        assertEquals(WriteCredits.RELEASE_CURRENT, credits.release(DATA));
+        assertTrue(credits.awaitAll());
+    }
+}
@@ -0,0 +1,118 @@
+package nodomain.freeyourgadget.gadgetbridge.service.devices.huami;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import nodomain.freeyourgadget.gadgetbridge.impl.GBDevice;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.BtLEQueue;
+import nodomain.freeyourgadget.gadgetbridge.service.btle.TransactionBuilder;
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+public class AbstractHuamiOperationTest extends TestBase {
+    private GBDevice device;
+    private HuamiSupport support;
+    private BtLEQueue queue;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        device = createDummyGDevice("00:00:00:00:00:10");
+        device.setState(GBDevice.State.INITIALIZED);
+        support = new HuamiSupport() {
+            @Override
+            public TransactionBuilder performInitialized(final String taskName) {
+                return createTransactionBuilder(taskName);
+            }
+
+            @Override
+            public BtLEQueue getQueue() {
+                return queue;
+            }
+        };
+        support.setContext(device, null, getContext());
+        // never connected, so the queued transactions are not run
+        queue = new BtLEQueue(null, device, support, support, getContext(), Collections.emptySet());
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        queue.dispose();
+        super.tearDown();
+    }
+
+    @Test
+    public void testFailedPerformEndsBulkTransfer() {
+        final TestOperation operation = new TestOperation(support, true);
+        try {
+            operation.perform();
+            fail("perform should have failed");
+        } catch (final IOException ignored) {
+        }
+
+        assertTrue(support.getLastBulkTransferThroughput() >= 0);
+        assertFalse(device.isBusy());
+        assertFalse(operation.isOperationRunning());
+    }
+
+    @Test
+    public void testBulkTransferIsHandedOver() throws Exception {
+        final TestOperation first = new TestOperation(support, false);
+        first.perform();
+        final TestOperation second = new TestOperation(support, false);
+        second.perform();
+        first.handOver();
+
+        // still boosted while the second operation runs
+        assertEquals(-1, support.getLastBulkTransferThroughput());
+
+        second.finished();
+        assertTrue(support.getLastBulkTransferThroughput() >= 0);
+    }
+
+    @Test
+    public void testBulkTransferIsEndedOnce() throws Exception {
+        final TestOperation first = new TestOperation(support, false);
+        first.perform();
+        final TestOperation second = new TestOperation(support, false);
+        second.perform();
+
+        second.finished();
+        second.finished();
+        assertEquals(-1, support.getLastBulkTransferThroughput());
+
+        first.finished();
+        assertTrue(support.getLastBulkTransferThroughput() >= 0);
+    }
+
+    private static class TestOperation extends AbstractHuamiOperation {
+        private final boolean fail;
+
+        TestOperation(final HuamiSupport support, final boolean fail) {
+            super(support);
+            this.fail = fail;
+        }
+
+        @Override
+        protected void enableNeededNotifications(final TransactionBuilder builder, final boolean enable) {
+        }
+
+        @Override
+        protected void doPerform() throws IOException {
+            if (fail) {
+                throw new IOException("test");
+            }
+        }
+
+        void handOver() {
+            handOverBulkTransfer();
+        }
+
+        void finished() {
+            operationFinished();
+        }
+    }
+}
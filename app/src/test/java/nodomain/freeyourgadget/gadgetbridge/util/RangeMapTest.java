@@ -4,12 +4,16 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
 
 public class RangeMapTest extends TestBase {
     @Test
     public void testLowerBound() {
-        final RangeMap<Integer, Integer> map = new RangeMap<>();
+        final RangeMap<Integer> map = new RangeMap<>();
         assertEquals(0, map.size());
         assertNull(map.get(0));
 
@@ -30,7 +34,7 @@ public class RangeMapTest extends TestBase {
 
     @Test
     public void testUpperBound() {
-        final RangeMap<Integer, Integer> map = new RangeMap<>(RangeMap.Mode.UPPER_BOUND);
+        final RangeMap<Integer> map = new RangeMap<>(RangeMap.Mode.UPPER_BOUND);
         assertEquals(0, map.size());
         assertNull(map.get(0));
 
@@ -48,4 +52,53 @@ public class RangeMapTest extends TestBase {
         assertEquals(30, map.get(15).intValue());
         assertEquals(20, map.get(10).intValue());
     }
+
+    @Test
+    public void testUnsortedAndDuplicateKeys() {
+        final RangeMap<Integer> lower = new RangeMap<>(RangeMap.Mode.LOWER_BOUND);
+        final RangeMap<Integer> upper = new RangeMap<>(RangeMap.Mode.UPPER_BOUND);
+        for (final RangeMap<Integer> map : Arrays.asList(lower, upper)) {
+            map.put(30, 40);
+            map.put(10, 20);
+            map.put(20, 30);
+            map.put(10, 25);
+        }
+
+        assertEquals(3, lower.size());
+        assertEquals(25, lower.get(10).intValue());
+        assertEquals(25, lower.get(15).intValue());
+        assertEquals(40, lower.get(35).intValue());
+
+        assertEquals(3, upper.size());
+        assertEquals(25, upper.get(10).intValue());
+        assertEquals(25, upper.get(5).intValue());
+        assertEquals(30, upper.get(15).intValue());
+    }
+
+    @Test
+    public void testGetAll() {
+        final RangeMap<Integer> lower = new RangeMap<>(RangeMap.Mode.LOWER_BOUND);
+        final RangeMap<Integer> upper = new RangeMap<>(RangeMap.Mode.UPPER_BOUND);
+        for (final RangeMap<Integer> map : Arrays.asList(lower, upper)) {
+            map.put(10, 20);
+            map.put(20, 30);
+            map.put(30, 40);
+        }
+
+        // sorted, with a step back at the end to check that unsorted keys are found as well
+        final List<Long> keys = Arrays.asList(0L, 10L, 15L, 20L, 25L, 30L, 50L, 15L);
+
+        final List<Integer> lowerValues = new ArrayList<>();
+        lower.getAll(keys, key -> key, (key, value) -> lowerValues.add(value));
+        assertEquals(Arrays.asList(null, 20, 20, 30, 30, 40, 40, 20), lowerValues);
+
+        final List<Integer> upperValues = new ArrayList<>();
+        upper.getAll(keys, key -> key, (key, value) -> upperValues.add(value));
+        assertEquals(Arrays.asList(20, 20, 30, 30, 40, 40, null, 30), upperValues);
+
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(lower.get(keys.get(i)), lowerValues.get(i));
+            assertEquals(upper.get(keys.get(i)), upperValues.get(i));
+        }
+    }
 }
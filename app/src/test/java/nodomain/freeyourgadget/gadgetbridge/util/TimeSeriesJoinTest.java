@@ -0,0 +1,89 @@
+package nodomain.freeyourgadget.gadgetbridge.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import nodomain.freeyourgadget.gadgetbridge.test.TestBase;
+
+public class TimeSeriesJoinTest extends TestBase {
+    @Test
+    public void testAsOf() {
+        final List<Long> left = Arrays.asList(0L, 10L, 15L, 20L, 30L);
+        final List<long[]> right = Arrays.asList(new long[]{10, 1}, new long[]{20, 2}, new long[]{20, 3});
+        final List<Long> values = new ArrayList<>();
+
+        TimeSeriesJoin.asOf(left, l -> l, right, r -> r[0], (l, r) -> values.add(r != null ? r[1] : null));
+
+        assertEquals(Arrays.asList(null, 1L, 1L, 3L, 3L), values);
+    }
+
+    @Test
+    public void testAsOfNext() {
+        final List<Long> left = Arrays.asList(0L, 10L, 15L, 20L, 30L);
+        final List<long[]> right = Arrays.asList(new long[]{10, 1}, new long[]{20, 2}, new long[]{20, 3});
+        final List<Long> values = new ArrayList<>();
+
+        TimeSeriesJoin.asOfNext(left, l -> l, right, r -> r[0], (l, r) -> values.add(r != null ? r[1] : null));
+
+        assertEquals(Arrays.asList(1L, 1L, 3L, 3L, null), values);
+    }
+
+    @Test
+    public void testMerge() {
+        final List<long[]> first = Arrays.asList(new long[]{10, 1}, new long[]{20, 2});
+        final List<long[]> second = Arrays.asList(new long[]{5, 3}, new long[]{10, 4}, new long[]{30, 5});
+
+        final List<long[]> merged = TimeSeriesJoin.merge(first, second, e -> e[0]);
+
+        final List<Long> values = new ArrayList<>();
+        for (final long[] e : merged) {
+            values.add(e[1]);
+        }
+        assertEquals(Arrays.asList(3L, 1L, 4L, 2L, 5L), values);
+    }
+
+    @Test
+    public void testSortedDistinct() {
+        final List<long[]> elements = Arrays.asList(new long[]{20, 1}, new long[]{10, 2}, new long[]{20, 3});
+
+        final List<long[]> sorted = TimeSeriesJoin.sortedDistinct(elements, e -> e[0]);
+
+        assertEquals(2, sorted.size());
+        assertEquals(2, sorted.get(0)[1]);
+        assertEquals(3, sorted.get(1)[1]);
+    }
+
+    @Test
+    public void testUpsert() {
+        final List<long[]> left = Arrays.asList(new long[]{10, 0}, new long[]{20, 0});
+        final List<long[]> right = Arrays.asList(new long[]{5, 1}, new long[]{5, 2}, new long[]{20, 3}, new long[]{30, 4});
+
+        final List<long[]> result = TimeSeriesJoin.upsert(left, e -> e[0], right, e -> e[0], ts -> new long[]{ts, 0}, (l, r) -> l[1] = r[1]);
+
+        assertEquals(4, result.size());
+        assertArrayEquals(new long[]{5, 2}, result.get(0));
+        assertArrayEquals(new long[]{10, 0}, result.get(1));
+        assertArrayEquals(new long[]{20, 3}, result.get(2));
+        assertArrayEquals(new long[]{30, 4}, result.get(3));
+        assertSame(left.get(1), result.get(2));
+    }
+
+    @Test
+    public void testEmpty() {
+        final List<Long> left = Arrays.asList(0L, 10L);
+        final List<Long> values = new ArrayList<>();
+
+        TimeSeriesJoin.asOf(left, l -> l, Collections.<Long>emptyList(), r -> r, (l, r) -> values.add(r));
+        TimeSeriesJoin.asOfNext(left, l -> l, Collections.<Long>emptyList(), r -> r, (l, r) -> values.add(r));
+
+        assertEquals(Arrays.asList(null, null, null, null), values);
+        assertEquals(left, TimeSeriesJoin.upsert(left, l -> l, Collections.<Long>emptyList(), r -> r, ts -> ts, (l, r) -> {
+        }));
+    }
+}
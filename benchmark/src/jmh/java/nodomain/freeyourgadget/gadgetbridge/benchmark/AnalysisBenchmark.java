@@ -0,0 +1,124 @@
+package nodomain.freeyourgadget.gadgetbridge.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import nodomain.freeyourgadget.gadgetbridge.activities.charts.ActivityAnalysis;
+import nodomain.freeyourgadget.gadgetbridge.activities.charts.SleepAnalysis;
+import nodomain.freeyourgadget.gadgetbridge.activities.charts.StepAnalysis;
+import nodomain.freeyourgadget.gadgetbridge.database.DailySummaryManager;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityAmounts;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySampleBatch;
+import nodomain.freeyourgadget.gadgetbridge.model.DailyTotals;
+
+/**
+ * Benchmarks the analysis of a period of samples, as done by the charts and the daily summaries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AnalysisBenchmark {
+    @Param({"DAY", "MONTH", "YEAR"})
+    public SyntheticSamples.Period period;
+
+    @Param({"60", "1"})
+    public int resolution;
+
+    private List<SyntheticSamples.Sample> samples;
+    private ActivitySampleBatch batch;
+
+    /**
+     * The index of the first sample of each day, and one past the last sample at the end.
+     */
+    private int[] dayStart;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkEnvironment.setup();
+        samples = SyntheticSamples.generate(period, resolution);
+        batch = ActivitySampleBatch.fromSamples(samples);
+
+        dayStart = new int[period.getDays() + 1];
+        int index = 0;
+        for (int day = 0; day <= period.getDays(); day++) {
+            final int dayTimestamp = SyntheticSamples.START_TIMESTAMP + day * 86400;
+            while (index < samples.size() && samples.get(index).getTimestamp() < dayTimestamp) {
+                index++;
+            }
+            dayStart[day] = index;
+        }
+    }
+
+    @Benchmark
+    public ActivitySampleBatch sampleBatch() {
+        return ActivitySampleBatch.fromSamples(samples);
+    }
+
+    @Benchmark
+    public ActivityAmounts activityAnalysis() {
+        return new ActivityAnalysis().calculateActivityAmounts(batch);
+    }
+
+    @Benchmark
+    public ActivityAmounts activityAnalysisSamples() {
+        return new ActivityAnalysis().calculateActivityAmounts(samples);
+    }
+
+    @Benchmark
+    public Object stepAnalysis() {
+        return new StepAnalysis().calculateStepSessions(batch);
+    }
+
+    @Benchmark
+    public Object sleepAnalysis() {
+        return new SleepAnalysis().calculateSleepSessions(batch);
+    }
+
+    /**
+     * Calculates the {@link DailyTotals} of each day, from the samples of the day and from the
+     * ones of the sleep period ending at noon, like {@link DailyTotals#calculateDailyTotalsForDevice}.
+     */
+    @Benchmark
+    public void dailyTotals(final Blackhole blackhole) {
+        final int sleepOffset = DailySummaryManager.SLEEP_OFFSET_HOURS * 3600;
+        for (int day = 0; day < period.getDays(); day++) {
+            final int dayTimestamp = SyntheticSamples.START_TIMESTAMP + day * 86400;
+            final ActivityAnalysis analysis = new ActivityAnalysis();
+            final ActivityAmounts amountsSteps = analysis.calculateActivityAmounts(
+                    samples.subList(dayStart[day], dayStart[day + 1])
+            );
+            final ActivityAmounts amountsSleep = analysis.calculateActivityAmounts(
+                    samples.subList(indexOf(dayTimestamp + sleepOffset), indexOf(dayTimestamp + sleepOffset + 86400))
+            );
+            blackhole.consume(DailyTotals.fromActivityAmounts(amountsSteps, amountsSleep));
+        }
+    }
+
+    /**
+     * Returns the index of the first sample at or after the timestamp.
+     */
+    private int indexOf(final int timestamp) {
+        int low = 0;
+        int high = samples.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (samples.get(mid).getTimestamp() < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,59 @@
+package nodomain.freeyourgadget.gadgetbridge.benchmark;
+
+import android.content.SharedPreferences;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+import nodomain.freeyourgadget.gadgetbridge.GBApplication;
+import nodomain.freeyourgadget.gadgetbridge.util.GBPrefs;
+
+/**
+ * Sets up the parts of the app that the analysis code reads outside of an Android runtime.
+ */
+public final class BenchmarkEnvironment {
+    private static boolean isSetup = false;
+
+    private BenchmarkEnvironment() {
+        // utility class
+    }
+
+    /**
+     * Installs empty preferences, so that the analysis code uses the default settings.
+     */
+    public static synchronized void setup() {
+        if (isSetup) {
+            return;
+        }
+
+        final SharedPreferences sharedPrefs = (SharedPreferences) Proxy.newProxyInstance(
+                SharedPreferences.class.getClassLoader(),
+                new Class<?>[]{SharedPreferences.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "contains":
+                            return false;
+                        case "getAll":
+                            return Collections.emptyMap();
+                        default:
+                            if (method.getName().startsWith("get") && args != null && args.length == 2) {
+                                // the default value
+                                return args[1];
+                            }
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+        );
+
+        try {
+            final Field prefs = GBApplication.class.getDeclaredField("prefs");
+            prefs.setAccessible(true);
+            prefs.set(null, new GBPrefs(sharedPrefs));
+        } catch (final ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to set up the preferences", e);
+        }
+
+        isSetup = true;
+    }
+}
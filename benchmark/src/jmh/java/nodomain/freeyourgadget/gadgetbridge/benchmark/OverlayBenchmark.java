@@ -0,0 +1,118 @@
+package nodomain.freeyourgadget.gadgetbridge.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.util.RangeMap;
+import nodomain.freeyourgadget.gadgetbridge.util.TimeSeriesJoin;
+
+/**
+ * Benchmarks the joins that the sample providers use to overlay data from other tables onto the
+ * activity samples: heart rate measurements (Colmi, CMF), sleep stages (Garmin, Xiaomi) and high
+ * resolution workout samples (Huawei).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OverlayBenchmark {
+    @Param({"DAY", "MONTH", "YEAR"})
+    public SyntheticSamples.Period period;
+
+    @Param({"60", "1"})
+    public int resolution;
+
+    private List<SyntheticSamples.Sample> samples;
+
+    /**
+     * A heart rate measurement every 5 minutes, as {timestamp, heart rate}, not aligned with the
+     * samples.
+     */
+    private List<int[]> heartRates;
+
+    /**
+     * The sleep stage changes, as {timestamp, kind}.
+     */
+    private List<int[]> sleepStages;
+
+    /**
+     * An hour of workout samples at 5-second resolution each day.
+     */
+    private List<SyntheticSamples.Sample> workoutSamples;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        samples = SyntheticSamples.generate(period, resolution);
+
+        heartRates = new ArrayList<>();
+        sleepStages = new ArrayList<>();
+        workoutSamples = new ArrayList<>();
+        final int timestampTo = SyntheticSamples.START_TIMESTAMP + period.getDays() * 86400;
+        for (int ts = SyntheticSamples.START_TIMESTAMP + 7; ts < timestampTo; ts += 300) {
+            heartRates.add(new int[]{ts, 60 + ts % 40});
+        }
+        int previousKind = ActivityKind.UNKNOWN.getCode();
+        for (final SyntheticSamples.Sample sample : samples) {
+            if (sample.getRawKind() != previousKind) {
+                sleepStages.add(new int[]{sample.getTimestamp(), sample.getRawKind()});
+                previousKind = sample.getRawKind();
+            }
+        }
+        for (int day = 0; day < period.getDays(); day++) {
+            final int workoutStart = SyntheticSamples.START_TIMESTAMP + day * 86400 + 18 * 3600 + 3;
+            for (int ts = workoutStart; ts < workoutStart + 3600; ts += 5) {
+                workoutSamples.add(new SyntheticSamples.Sample(ts, ActivityKind.ACTIVITY.getCode(), 12, 80, 140));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<SyntheticSamples.Sample> heartRateUpsert() {
+        return TimeSeriesJoin.upsert(
+                samples,
+                SyntheticSamples.Sample::getTimestamp,
+                heartRates,
+                hr -> hr[0],
+                ts -> new SyntheticSamples.Sample((int) ts, ActivityKind.UNKNOWN.getCode(), 0, 0, ActivitySample.NOT_MEASURED),
+                (sample, hr) -> sample.setHeartRate(hr[1])
+        );
+    }
+
+    @Benchmark
+    public void heartRateAsOf(final Blackhole blackhole) {
+        TimeSeriesJoin.asOf(
+                samples,
+                SyntheticSamples.Sample::getTimestamp,
+                heartRates,
+                hr -> hr[0],
+                (sample, hr) -> blackhole.consume(hr != null ? hr[1] : ActivitySample.NOT_MEASURED)
+        );
+    }
+
+    @Benchmark
+    public void sleepStagesRangeMap(final Blackhole blackhole) {
+        final RangeMap<Integer> stagesMap = new RangeMap<>(RangeMap.Mode.UPPER_BOUND);
+        for (final int[] stage : sleepStages) {
+            stagesMap.put(stage[0], stage[1]);
+        }
+        stagesMap.getAll(samples, SyntheticSamples.Sample::getTimestamp, (sample, kind) -> blackhole.consume(kind));
+    }
+
+    @Benchmark
+    public List<SyntheticSamples.Sample> workoutMerge() {
+        return TimeSeriesJoin.merge(samples, workoutSamples, SyntheticSamples.Sample::getTimestamp);
+    }
+}
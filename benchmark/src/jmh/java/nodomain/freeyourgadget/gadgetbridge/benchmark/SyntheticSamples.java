@@ -0,0 +1,218 @@
+package nodomain.freeyourgadget.gadgetbridge.benchmark;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import nodomain.freeyourgadget.gadgetbridge.devices.SampleProvider;
+import nodomain.freeyourgadget.gadgetbridge.entities.AbstractActivitySample;
+import nodomain.freeyourgadget.gadgetbridge.model.ActivityKind;
+
+/**
+ * Generates activity samples like the TestSampleProvider does: a night of sleep cycling through
+ * light, deep and rem sleep, random bursts of activity during the day, and 15% of the samples
+ * missing. Unlike the test device, a single seeded {@link Random} is used, so that generating a
+ * year of samples does not dominate the setup, while staying deterministic between runs.
+ */
+public final class SyntheticSamples {
+    /**
+     * 2024-01-01 00:00:00 UTC.
+     */
+    public static final int START_TIMESTAMP = 1704067200;
+
+    private static final long SEED = 1420499943000L;
+
+    private static final int[] SLEEP_STAGES = new int[]{
+            ActivityKind.LIGHT_SLEEP.getCode(),
+            ActivityKind.DEEP_SLEEP.getCode(),
+            ActivityKind.REM_SLEEP.getCode(),
+    };
+
+    private SyntheticSamples() {
+        // utility class
+    }
+
+    public enum Period {
+        DAY(1),
+        MONTH(30),
+        YEAR(365),
+        ;
+
+        private final int days;
+
+        Period(final int days) {
+            this.days = days;
+        }
+
+        public int getDays() {
+            return days;
+        }
+    }
+
+    /**
+     * Generates the samples of a period, starting at {@link #START_TIMESTAMP}, sorted by timestamp.
+     *
+     * @param resolution the seconds between two samples, e.g. 60 or 1
+     */
+    public static List<Sample> generate(final Period period, final int resolution) {
+        final Random random = new Random(SEED);
+        final int timestampTo = START_TIMESTAMP + period.getDays() * 86400;
+        final List<Sample> samples = new ArrayList<>((int) ((long) period.getDays() * 86400 / resolution));
+
+        int sleepStageCurrent = 0;
+        int sleepStageDirection = 1;
+        int sleepStageSecondsRemaining = randInt(random, 30, 90) * 60;
+
+        boolean isActive = false;
+        float dayActivityFactor = random.nextFloat();
+        int stepsPerMinute = (int) (randInt(random, 0, 100) * dayActivityFactor);
+        int intensity = randInt(random, 0, 100);
+        int hr = randInt(random, 90, 153);
+
+        final Calendar cal = GregorianCalendar.getInstance(TimeZone.getTimeZone("UTC"));
+        int bedtime = 0;
+        int wakeTime = 0;
+        int dayOfYear = -1;
+
+        for (int ts = START_TIMESTAMP; ts < timestampTo; ts += resolution) {
+            cal.setTimeInMillis(ts * 1000L);
+            if (cal.get(Calendar.DAY_OF_YEAR) != dayOfYear) {
+                dayOfYear = cal.get(Calendar.DAY_OF_YEAR);
+                dayActivityFactor = random.nextFloat();
+                bedtime = randInt(random, 21, 22) * 60 + randInt(random, 0, 59);
+                wakeTime = randInt(random, 6, 9) * 60 + randInt(random, 0, 59);
+            }
+            final int minuteOfDay = cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE);
+            final boolean isSleep = minuteOfDay >= bedtime || minuteOfDay <= wakeTime;
+
+            if (isSleep) {
+                isActive = false;
+            } else if (isActive) {
+                isActive = random.nextFloat() < Math.pow(0.8f, resolution / 60f);
+            } else {
+                isActive = random.nextFloat() < 0.05f * resolution / 60f;
+            }
+
+            if (random.nextFloat() < 0.85f) {
+                samples.add(new Sample(
+                        ts,
+                        isSleep ? SLEEP_STAGES[sleepStageCurrent] : ActivityKind.UNKNOWN.getCode(),
+                        isActive ? Math.round(stepsPerMinute * resolution / 60f) : 0,
+                        intensity,
+                        hr
+                ));
+            }
+
+            if (isSleep) {
+                sleepStageSecondsRemaining -= resolution;
+                if (sleepStageSecondsRemaining <= 0) {
+                    sleepStageSecondsRemaining = randInt(random, 30, 90) * 60;
+                    sleepStageCurrent += sleepStageDirection;
+                    if (sleepStageCurrent == 0 || sleepStageCurrent == SLEEP_STAGES.length - 1) {
+                        sleepStageDirection *= -1;
+                    }
+                }
+            }
+
+            stepsPerMinute += (int) (randInt(random, -stepsPerMinute, 100 - stepsPerMinute) * dayActivityFactor);
+            intensity = Math.max(0, Math.min(100, intensity + randInt(random, -1, 1)));
+            hr = Math.max(40, Math.min(200, hr + randInt(random, -2, 2)));
+        }
+
+        return samples;
+    }
+
+    private static int randInt(final Random random, final int min, final int max) {
+        return random.nextInt((max - min) + 1) + min;
+    }
+
+    /**
+     * A sample that normalizes its values itself, like the TestActivitySample, but without the
+     * need for a provider.
+     */
+    public static class Sample extends AbstractActivitySample {
+        private final int timestamp;
+        private final int kind;
+        private final int steps;
+        private final int intensity;
+        private int hr;
+
+        public Sample(final int timestamp, final int kind, final int steps, final int intensity, final int hr) {
+            this.timestamp = timestamp;
+            this.kind = kind;
+            this.steps = steps;
+            this.intensity = intensity;
+            this.hr = hr;
+        }
+
+        @Override
+        public SampleProvider<?> getProvider() {
+            return null;
+        }
+
+        @Override
+        public ActivityKind getKind() {
+            return ActivityKind.fromCode(kind);
+        }
+
+        @Override
+        public float getIntensity() {
+            return intensity / 100f;
+        }
+
+        @Override
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public void setTimestamp(final int timestamp) {
+        }
+
+        @Override
+        public void setUserId(final long userId) {
+        }
+
+        @Override
+        public long getUserId() {
+            return 0;
+        }
+
+        @Override
+        public void setDeviceId(final long deviceId) {
+        }
+
+        @Override
+        public long getDeviceId() {
+            return 0;
+        }
+
+        @Override
+        public int getRawKind() {
+            return kind;
+        }
+
+        @Override
+        public int getRawIntensity() {
+            return intensity;
+        }
+
+        @Override
+        public int getSteps() {
+            return steps;
+        }
+
+        @Override
+        public int getHeartRate() {
+            return hr;
+        }
+
+        @Override
+        public void setHeartRate(final int heartRate) {
+            this.hr = heartRate;
+        }
+    }
+}